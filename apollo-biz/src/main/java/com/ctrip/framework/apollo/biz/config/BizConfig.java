@@ -23,14 +23,32 @@ public class BizConfig extends RefreshableConfig {
     private static final int DEFAULT_ITEM_VALUE_LENGTH = 20000;
     private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 60; // 60s
     private static final int DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL = 60; // 60s
+    private static final int DEFAULT_GRAY_RELEASE_RULE_RECONCILE_INTERVAL = 3600; // 1h
     private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; // 1s
     private static final int DEFAULT_ACCESSKEY_CACHE_SCAN_INTERVAL = 1; // 1s
     private static final int DEFAULT_ACCESSKEY_CACHE_REBUILD_INTERVAL = 60; // 60s
     private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; // 1s
     private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; // 1000ms
+    private static final int DEFAULT_RELEASE_MESSAGE_SCAN_MIN_INTERVAL_IN_MS = 50; // 50ms
+    private static final int DEFAULT_RELEASE_MESSAGE_SCAN_BATCH = 500;
     private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
     private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;// 100ms
+    private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS = 4;
+    private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
+    private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_RING_BUFFER_SIZE = 16384;
+    private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH = 100;
+    private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI = 1000;// 1000ms
+    private static final int DEFAULT_INSTANCE_CONFIG_AUDIT_THREADS = 2;
+    private static final int DEFAULT_INSTANCE_CONFIG_RETENTION = 25; // 25h
+    private static final int DEFAULT_INSTANCE_CONFIG_PURGE_INTERVAL = 3600; // 1h
     private static final int DEFAULT_LONG_POLLING_TIMEOUT = 60; // 60s
+    private static final int DEFAULT_NOTIFICATION_STREAM_TIMEOUT = 30 * 60; // 30min
+    private static final int DEFAULT_NOTIFICATION_STREAM_HEARTBEAT_INTERVAL = 30; // 30s
+    private static final int DEFAULT_NOTIFICATION_STREAM_CONNECT_QPS = 500;
+    private static final int DEFAULT_NOTIFICATION_STREAM_RETRY_IN_MILLI = 1000; // 1000ms
+    private static final int DEFAULT_CONFIG_CACHE_SNAPSHOT_INTERVAL = 60; // 60s
+    private static final int DEFAULT_CONFIG_CACHE_MEMORY_BUDGET = 1024; // 1024MB
+    private static final String DEFAULT_CONFIG_CACHE_SNAPSHOT_PATH = "/opt/data/apollo-configservice/config-cache.snapshot";
 
     private Gson gson = new Gson();
     private static final Type namespaceValueLengthOverrideTypeReference = new TypeToken<Map<Long, Integer>>() {
@@ -68,6 +86,15 @@ public class BizConfig extends RefreshableConfig {
         return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL);
     }
 
+    /**
+     * 灰度规则全量对账间隔，两次对账之间只增量读取变化的规则
+     */
+    public int grayReleaseRuleReconcileInterval() {
+        int interval = getIntProperty("apollo.gray-release-rule-reconcile.interval",
+                DEFAULT_GRAY_RELEASE_RULE_RECONCILE_INTERVAL);
+        return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_GRAY_RELEASE_RULE_RECONCILE_INTERVAL);
+    }
+
     /**
      * 长轮询超时时间
      * 
@@ -171,6 +198,27 @@ public class BizConfig extends RefreshableConfig {
         return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
     }
 
+    /**
+     * 扫描到新消息后的扫描间隔，空闲时逐步退避到 "apollo.message-scan.interval"
+     */
+    public int releaseMessageScanMinIntervalInMilli() {
+        int interval = getIntProperty("apollo.message-scan.min-interval",
+                DEFAULT_RELEASE_MESSAGE_SCAN_MIN_INTERVAL_IN_MS);
+        return checkInt(interval, 10, releaseMessageScanIntervalInMilli(), DEFAULT_RELEASE_MESSAGE_SCAN_MIN_INTERVAL_IN_MS);
+    }
+
+    public int releaseMessageScanBatch() {
+        int batch = getIntProperty("apollo.message-scan.batch", DEFAULT_RELEASE_MESSAGE_SCAN_BATCH);
+        return checkInt(batch, 1, 5000, DEFAULT_RELEASE_MESSAGE_SCAN_BATCH);
+    }
+
+    /**
+     * 发布消息来源：database(默认，定时扫描 ReleaseMessage 表)或 in-process(单进程部署)
+     */
+    public String releaseMessageSource() {
+        return getValue("apollo.release-message.source", "database");
+    }
+
     public int releaseMessageNotificationBatch() {
         int batch = getIntProperty("apollo.release-message.notification.batch",
                 DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
@@ -183,10 +231,169 @@ public class BizConfig extends RefreshableConfig {
         return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
     }
 
+    /**
+     * 大量通知时每秒通知的客户端数量上限，所有正在通知的 Watch Key 共享。<br>
+     * 默认为 batch / batch.interval，与之前按批次 sleep 的通知速度一致
+     */
+    public int releaseMessageNotificationRate() {
+        int defaultRate = (int) Math.min(Integer.MAX_VALUE,
+                releaseMessageNotificationBatch() * 1000L / releaseMessageNotificationBatchIntervalInMilli());
+        int rate = getIntProperty("apollo.release-message.notification.rate", defaultRate);
+        return checkInt(rate, 1, Integer.MAX_VALUE, defaultRate);
+    }
+
+    /**
+     * 大量通知时并行通知的线程数
+     */
+    public int releaseMessageNotificationThreads() {
+        int threads = getIntProperty("apollo.release-message.notification.threads",
+                DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS);
+        return checkInt(threads, 1, 64, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS);
+    }
+
+    /**
+     * 是否开启通知推送流(/notifications/v2/stream)，关闭后客户端自动回退到长轮询
+     */
+    public boolean isNotificationStreamEnabled() {
+        return getBooleanProperty("apollo.notification-stream.enabled", true);
+    }
+
+    /**
+     * 推送流连接的最长存活时间，到期后服务端下发重连间隔并关闭连接
+     */
+    public long notificationStreamTimeoutInMilli() {
+        int timeout = getIntProperty("apollo.notification-stream.timeout", DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+        return 1000L * checkInt(timeout, 60, Integer.MAX_VALUE, DEFAULT_NOTIFICATION_STREAM_TIMEOUT);
+    }
+
+    /**
+     * 推送流心跳间隔，java client's read timeout is 90 seconds, so it must be less than 90
+     */
+    public long notificationStreamHeartbeatIntervalInMilli() {
+        int interval = getIntProperty("apollo.notification-stream.heartbeat.interval",
+                DEFAULT_NOTIFICATION_STREAM_HEARTBEAT_INTERVAL);
+        return 1000L * checkInt(interval, 1, 60, DEFAULT_NOTIFICATION_STREAM_HEARTBEAT_INTERVAL);
+    }
+
+    /**
+     * 每秒允许建立的推送流连接数，同时用于计算下发给客户端的重连间隔，使重连均匀分布
+     */
+    public int notificationStreamConnectQps() {
+        int qps = getIntProperty("apollo.notification-stream.connect.qps", DEFAULT_NOTIFICATION_STREAM_CONNECT_QPS);
+        return checkInt(qps, 1, Integer.MAX_VALUE, DEFAULT_NOTIFICATION_STREAM_CONNECT_QPS);
+    }
+
+    /**
+     * 下发给客户端的最小重连间隔
+     */
+    public int notificationStreamRetryInMilli() {
+        int retry = getIntProperty("apollo.notification-stream.retry", DEFAULT_NOTIFICATION_STREAM_RETRY_IN_MILLI);
+        return checkInt(retry, 100, Integer.MAX_VALUE, DEFAULT_NOTIFICATION_STREAM_RETRY_IN_MILLI);
+    }
+
+    /**
+     * 待写入的 Instance 配置获取记录(去重后)的数量上限，超过后丢弃新的记录
+     */
+    public int instanceConfigAuditMaxSize() {
+        int size = getIntProperty("apollo.instance-config-audit.max-size", DEFAULT_INSTANCE_CONFIG_AUDIT_MAX_SIZE);
+        return checkInt(size, 1, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_MAX_SIZE);
+    }
+
+    /**
+     * 请求线程写入的 Instance 配置获取记录的环形队列大小，向上取整为 2 的幂，写满后丢弃新的记录
+     */
+    public int instanceConfigAuditRingBufferSize() {
+        int size = getIntProperty("apollo.instance-config-audit.ring-buffer.size",
+                DEFAULT_INSTANCE_CONFIG_AUDIT_RING_BUFFER_SIZE);
+        return checkInt(size, 16, 1 << 20, DEFAULT_INSTANCE_CONFIG_AUDIT_RING_BUFFER_SIZE);
+    }
+
+    /**
+     * Instance 配置获取记录每批写入的数量
+     */
+    public int instanceConfigAuditBatch() {
+        int batch = getIntProperty("apollo.instance-config-audit.batch", DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+        return checkInt(batch, 1, 1000, DEFAULT_INSTANCE_CONFIG_AUDIT_BATCH);
+    }
+
+    /**
+     * 不足一批时，等待多久后写入
+     */
+    public int instanceConfigAuditFlushIntervalInMilli() {
+        int interval = getIntProperty("apollo.instance-config-audit.flush.interval",
+                DEFAULT_INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI);
+        return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_AUDIT_FLUSH_INTERVAL_IN_MILLI);
+    }
+
+    /**
+     * 并行写入 Instance 配置获取记录的线程数
+     */
+    public int instanceConfigAuditThreads() {
+        int threads = getIntProperty("apollo.instance-config-audit.threads", DEFAULT_INSTANCE_CONFIG_AUDIT_THREADS);
+        return checkInt(threads, 1, 16, DEFAULT_INSTANCE_CONFIG_AUDIT_THREADS);
+    }
+
+    /**
+     * InstanceConfig 的保留时间，超过该时间未更新的记录被删除。<br>
+     * 不能小于 25 小时：InstanceConfig 的有效期为 25 小时，活跃的 Instance 每天至少更新一次
+     */
+    public int instanceConfigRetentionInHours() {
+        int retention = getIntProperty("apollo.instance-config.retention", DEFAULT_INSTANCE_CONFIG_RETENTION);
+        return checkInt(retention, DEFAULT_INSTANCE_CONFIG_RETENTION, Integer.MAX_VALUE,
+                DEFAULT_INSTANCE_CONFIG_RETENTION);
+    }
+
+    /**
+     * 删除过期 InstanceConfig 的间隔
+     */
+    public int instanceConfigPurgeInterval() {
+        int interval = getIntProperty("apollo.instance-config.purge.interval", DEFAULT_INSTANCE_CONFIG_PURGE_INTERVAL);
+        return checkInt(interval, 60, Integer.MAX_VALUE, DEFAULT_INSTANCE_CONFIG_PURGE_INTERVAL);
+    }
+
+    public TimeUnit instanceConfigPurgeIntervalTimeUnit() {
+        return TimeUnit.SECONDS;
+    }
+
     public boolean isConfigServiceCacheEnabled() {
         return getBooleanProperty("config-service.cache.enabled", false);
     }
 
+    /**
+     * 是否在启动时预加载所有 Namespace 最新的有效 Release 到 ConfigServiceWithCache ，预加载的缓存不会因为长时间未访问而过期
+     */
+    public boolean isConfigServiceCacheEagerLoadEnabled() {
+        return getBooleanProperty("config-service.cache.eager-load.enabled", false);
+    }
+
+    /**
+     * ConfigServiceWithCache 每个缓存中 Release 配置的总大小上限，超过后淘汰的缓存退化为按需加载。0 表示不限制
+     */
+    public long configServiceCacheMemoryBudgetInBytes() {
+        int budget = getIntProperty("config-service.cache.memory-budget", DEFAULT_CONFIG_CACHE_MEMORY_BUDGET);
+        return 1024L * 1024L * checkInt(budget, 0, Integer.MAX_VALUE, DEFAULT_CONFIG_CACHE_MEMORY_BUDGET);
+    }
+
+    /**
+     * 是否把 ConfigServiceWithCache 的缓存定期保存到本地文件，重启时从文件预热，避免大量请求同时查询 DB
+     */
+    public boolean isConfigServiceCacheSnapshotEnabled() {
+        return getBooleanProperty("config-service.cache.snapshot.enabled", true);
+    }
+
+    public String configServiceCacheSnapshotPath() {
+        return getValue("config-service.cache.snapshot.path", DEFAULT_CONFIG_CACHE_SNAPSHOT_PATH);
+    }
+
+    public int configServiceCacheSnapshotInterval() {
+        int interval = getIntProperty("config-service.cache.snapshot.interval", DEFAULT_CONFIG_CACHE_SNAPSHOT_INTERVAL);
+        return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_CONFIG_CACHE_SNAPSHOT_INTERVAL);
+    }
+
+    public TimeUnit configServiceCacheSnapshotIntervalTimeUnit() {
+        return TimeUnit.SECONDS;
+    }
+
     int checkInt(int value, int min, int max, int defaultValue) {
         if (value >= min && value <= max) {
             return value;
@@ -0,0 +1,356 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * 编译后的灰度规则索引，不可变，规则变化时整体重建后替换。<br>
+ * 1, 按 Watch Key(appId+cluster+namespace) 的编号用数组索引，查询不拼接字符串；<br>
+ * 2, clientAppId 使用忽略大小写的 TreeMap 索引，{@link #ALL_APP_ID} 匹配所有 clientAppId ；<br>
+ * 3, clientIp 支持精确 IP 、{@link GrayReleaseRuleItemDTO#ALL_IP} 和 IPv4 CIDR(如 10.0.0.0/8) ，
+ * CIDR 按前缀长度分组后二分查找。<br>
+ * 查询无锁且不创建对象。
+ */
+final class GrayReleaseRuleIndex {
+  static final String ALL_APP_ID = "*";
+  static final GrayReleaseRuleIndex EMPTY = new GrayReleaseRuleIndex(null, new CompiledRule[0][],
+      new TreeMap<String, TreeMap<String, IpMatcher>>(String.CASE_INSENSITIVE_ORDER),
+      new TreeMap<String, IpMatcher>(String.CASE_INSENSITIVE_ORDER));
+
+  private final WatchKeyDictionary watchKeyDictionary;
+  //watch key id -> active rules ordered by rule id
+  private final CompiledRule[][] rulesByWatchKey;
+  //clientAppId -> clientNamespace -> ip matcher
+  private final TreeMap<String, TreeMap<String, IpMatcher>> reversedRules;
+  //clientNamespace -> ip matcher, for rules of all client app ids
+  private final TreeMap<String, IpMatcher> reversedAllAppIdRules;
+
+  private GrayReleaseRuleIndex(WatchKeyDictionary watchKeyDictionary,
+      CompiledRule[][] rulesByWatchKey, TreeMap<String, TreeMap<String, IpMatcher>> reversedRules,
+      TreeMap<String, IpMatcher> reversedAllAppIdRules) {
+    this.watchKeyDictionary = watchKeyDictionary;
+    this.rulesByWatchKey = rulesByWatchKey;
+    this.reversedRules = reversedRules;
+    this.reversedAllAppIdRules = reversedAllAppIdRules;
+  }
+
+  /**
+   * 编译规则，只保留 ACTIVE 状态的分支
+   *
+   * @param watchKeyDictionary Watch Key 字典，为规则的 appId+cluster+namespace 分配编号
+   * @param rules appId+cluster+namespace -> 规则
+   */
+  static GrayReleaseRuleIndex build(WatchKeyDictionary watchKeyDictionary,
+      Map<String, Collection<GrayReleaseRuleCache>> rules) {
+    Map<Integer, List<GrayReleaseRuleCache>> rulesById = Maps.newHashMap();
+    Map<String, Map<String, IpMatcher.Builder>> reversed = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
+    int maxWatchKeyId = -1;
+    for (Map.Entry<String, Collection<GrayReleaseRuleCache>> entry : rules.entrySet()) {
+      int watchKeyId = watchKeyDictionary.intern(entry.getKey());
+      if (watchKeyId == WatchKeyDictionary.NOT_FOUND) {
+        continue;
+      }
+      for (GrayReleaseRuleCache rule : entry.getValue()) {
+        if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
+          continue;
+        }
+        List<GrayReleaseRuleCache> watchKeyRules = rulesById.get(watchKeyId);
+        if (watchKeyRules == null) {
+          watchKeyRules = Lists.newArrayList();
+          rulesById.put(watchKeyId, watchKeyRules);
+        }
+        watchKeyRules.add(rule);
+        maxWatchKeyId = Math.max(maxWatchKeyId, watchKeyId);
+
+        for (GrayReleaseRuleItemDTO ruleItem : rule.getRuleItems()) {
+          Map<String, IpMatcher.Builder> namespaces = reversed.get(ruleItem.getClientAppId());
+          if (namespaces == null) {
+            namespaces = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
+            reversed.put(ruleItem.getClientAppId(), namespaces);
+          }
+          IpMatcher.Builder ipMatcher = namespaces.get(rule.getNamespaceName());
+          if (ipMatcher == null) {
+            ipMatcher = new IpMatcher.Builder();
+            namespaces.put(rule.getNamespaceName(), ipMatcher);
+          }
+          ipMatcher.addAll(ruleItem.getClientIpList());
+        }
+      }
+    }
+
+    CompiledRule[][] rulesByWatchKey = new CompiledRule[maxWatchKeyId + 1][];
+    for (Map.Entry<Integer, List<GrayReleaseRuleCache>> entry : rulesById.entrySet()) {
+      List<GrayReleaseRuleCache> watchKeyRules = entry.getValue();
+      Collections.sort(watchKeyRules);
+      CompiledRule[] compiledRules = new CompiledRule[watchKeyRules.size()];
+      for (int i = 0; i < compiledRules.length; i++) {
+        compiledRules[i] = CompiledRule.compile(watchKeyRules.get(i));
+      }
+      rulesByWatchKey[entry.getKey()] = compiledRules;
+    }
+
+    TreeMap<String, TreeMap<String, IpMatcher>> reversedRules = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    TreeMap<String, IpMatcher> reversedAllAppIdRules = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    for (Map.Entry<String, Map<String, IpMatcher.Builder>> entry : reversed.entrySet()) {
+      TreeMap<String, IpMatcher> namespaces = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      for (Map.Entry<String, IpMatcher.Builder> namespace : entry.getValue().entrySet()) {
+        namespaces.put(namespace.getKey(), namespace.getValue().build());
+      }
+      if (ALL_APP_ID.equals(entry.getKey())) {
+        reversedAllAppIdRules = namespaces;
+      } else {
+        reversedRules.put(entry.getKey(), namespaces);
+      }
+    }
+    return new GrayReleaseRuleIndex(watchKeyDictionary, rulesByWatchKey, reversedRules,
+        reversedAllAppIdRules);
+  }
+
+  /**
+   * 查找 (clientAppId, clientIp) 适用的灰度发布，规则按编号顺序匹配
+   *
+   * @return 灰度发布的编号，不存在时返回 null
+   */
+  Long findReleaseId(String clientAppId, String clientIp, String configAppId, String configCluster,
+      String configNamespaceName) {
+    if (watchKeyDictionary == null) {
+      return null;
+    }
+    int watchKeyId = watchKeyDictionary.find(configAppId, configCluster, configNamespaceName);
+    if (watchKeyId == WatchKeyDictionary.NOT_FOUND || watchKeyId >= rulesByWatchKey.length) {
+      return null;
+    }
+    CompiledRule[] rules = rulesByWatchKey[watchKeyId];
+    if (rules == null) {
+      return null;
+    }
+    for (CompiledRule rule : rules) {
+      if (rule.matches(clientAppId, clientIp)) {
+        return rule.releaseId;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 是否有 clientAppId, clientIp, namespace 组合适用的规则
+   */
+  boolean hasRule(String clientAppId, String clientIp, String namespaceName) {
+    if (namespaceName == null) {
+      return false;
+    }
+    TreeMap<String, IpMatcher> namespaces = clientAppId == null ? null : reversedRules.get(clientAppId);
+    if (namespaces != null && matches(namespaces.get(namespaceName), clientIp)) {
+      return true;
+    }
+    return matches(reversedAllAppIdRules.get(namespaceName), clientIp);
+  }
+
+  private static boolean matches(IpMatcher ipMatcher, String clientIp) {
+    return ipMatcher != null && ipMatcher.matches(clientIp);
+  }
+
+  /**
+   * 一个分支的规则
+   */
+  private static final class CompiledRule {
+    private final Long releaseId;
+    //clientAppId -> ip matcher
+    private final TreeMap<String, IpMatcher> ipMatchers;
+    //ip matcher for all client app ids, may be null
+    private final IpMatcher allAppIdIpMatcher;
+
+    private CompiledRule(Long releaseId, TreeMap<String, IpMatcher> ipMatchers,
+        IpMatcher allAppIdIpMatcher) {
+      this.releaseId = releaseId;
+      this.ipMatchers = ipMatchers;
+      this.allAppIdIpMatcher = allAppIdIpMatcher;
+    }
+
+    static CompiledRule compile(GrayReleaseRuleCache rule) {
+      Map<String, IpMatcher.Builder> builders = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
+      for (GrayReleaseRuleItemDTO ruleItem : rule.getRuleItems()) {
+        IpMatcher.Builder builder = builders.get(ruleItem.getClientAppId());
+        if (builder == null) {
+          builder = new IpMatcher.Builder();
+          builders.put(ruleItem.getClientAppId(), builder);
+        }
+        builder.addAll(ruleItem.getClientIpList());
+      }
+      TreeMap<String, IpMatcher> ipMatchers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+      IpMatcher allAppIdIpMatcher = null;
+      for (Map.Entry<String, IpMatcher.Builder> entry : builders.entrySet()) {
+        if (ALL_APP_ID.equals(entry.getKey())) {
+          allAppIdIpMatcher = entry.getValue().build();
+        } else {
+          ipMatchers.put(entry.getKey(), entry.getValue().build());
+        }
+      }
+      return new CompiledRule(rule.getReleaseId(), ipMatchers, allAppIdIpMatcher);
+    }
+
+    boolean matches(String clientAppId, String clientIp) {
+      return (clientAppId != null && GrayReleaseRuleIndex.matches(ipMatchers.get(clientAppId), clientIp))
+          || GrayReleaseRuleIndex.matches(allAppIdIpMatcher, clientIp);
+    }
+  }
+
+  /**
+   * IP 匹配：所有 IP 、精确 IP 和 IPv4 CIDR
+   */
+  static final class IpMatcher {
+    private static final long[][] NO_NETWORKS = new long[0][];
+    private static final int[] NO_PREFIX_LENGTHS = new int[0];
+
+    private final boolean allIp;
+    private final Set<String> exactIps;
+    //prefix lengths that have networks, networks[i] are the sorted network addresses of prefixLengths[i]
+    private final int[] prefixLengths;
+    private final long[][] networks;
+
+    private IpMatcher(boolean allIp, Set<String> exactIps, int[] prefixLengths, long[][] networks) {
+      this.allIp = allIp;
+      this.exactIps = exactIps;
+      this.prefixLengths = prefixLengths;
+      this.networks = networks;
+    }
+
+    boolean matches(String clientIp) {
+      if (allIp) {
+        return true;
+      }
+      if (clientIp == null) {
+        return false;
+      }
+      if (exactIps.contains(clientIp)) {
+        return true;
+      }
+      if (prefixLengths.length == 0) {
+        return false;
+      }
+      long address = parseIpv4(clientIp, 0, clientIp.length());
+      if (address < 0) {
+        return false;
+      }
+      for (int i = 0; i < prefixLengths.length; i++) {
+        if (Arrays.binarySearch(networks[i], address & mask(prefixLengths[i])) >= 0) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static long mask(int prefixLength) {
+      return prefixLength == 0 ? 0 : (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+    }
+
+    /**
+     * 解析 IPv4 地址，格式不正确时返回 -1
+     */
+    static long parseIpv4(String ip, int from, int to) {
+      long address = 0;
+      int octets = 0;
+      int octet = -1;
+      for (int i = from; i < to; i++) {
+        char c = ip.charAt(i);
+        if (c >= '0' && c <= '9') {
+          octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+          if (octet > 255) {
+            return -1;
+          }
+        } else if (c == '.' && octet >= 0 && octets < 3) {
+          address = (address << 8) | octet;
+          octets++;
+          octet = -1;
+        } else {
+          return -1;
+        }
+      }
+      if (octet < 0 || octets != 3) {
+        return -1;
+      }
+      return (address << 8) | octet;
+    }
+
+    static final class Builder {
+      private boolean allIp;
+      private final Set<String> exactIps = Sets.newHashSet();
+      private final Map<Integer, Set<Long>> networks = Maps.newTreeMap();
+
+      void addAll(Collection<String> clientIps) {
+        if (clientIps == null) {
+          return;
+        }
+        for (String clientIp : clientIps) {
+          add(clientIp);
+        }
+      }
+
+      void add(String clientIp) {
+        if (clientIp == null) {
+          return;
+        }
+        if (GrayReleaseRuleItemDTO.ALL_IP.equals(clientIp)) {
+          allIp = true;
+          return;
+        }
+        int slash = clientIp.indexOf('/');
+        if (slash < 0) {
+          exactIps.add(clientIp);
+          return;
+        }
+        long address = parseIpv4(clientIp, 0, slash);
+        int prefixLength;
+        try {
+          prefixLength = Integer.parseInt(clientIp.substring(slash + 1));
+        } catch (NumberFormatException ex) {
+          prefixLength = -1;
+        }
+        if (address < 0 || prefixLength < 0 || prefixLength > 32) {
+          //not a valid cidr, keep the original exact match behavior
+          exactIps.add(clientIp);
+          return;
+        }
+        Set<Long> prefixNetworks = networks.get(prefixLength);
+        if (prefixNetworks == null) {
+          prefixNetworks = Sets.newHashSet();
+          networks.put(prefixLength, prefixNetworks);
+        }
+        prefixNetworks.add(address & mask(prefixLength));
+      }
+
+      IpMatcher build() {
+        if (allIp) {
+          return new IpMatcher(true, Collections.<String>emptySet(), NO_PREFIX_LENGTHS, NO_NETWORKS);
+        }
+        int[] prefixLengths = new int[networks.size()];
+        long[][] sortedNetworks = new long[networks.size()][];
+        int i = 0;
+        for (Map.Entry<Integer, Set<Long>> entry : networks.entrySet()) {
+          prefixLengths[i] = entry.getKey();
+          long[] prefixNetworks = new long[entry.getValue().size()];
+          int j = 0;
+          for (Long network : entry.getValue()) {
+            prefixNetworks[j++] = network;
+          }
+          Arrays.sort(prefixNetworks);
+          sortedNetworks[i++] = prefixNetworks;
+        }
+        return new IpMatcher(false, Sets.newHashSet(exactIps), prefixLengths, sortedNetworks);
+      }
+    }
+  }
+}
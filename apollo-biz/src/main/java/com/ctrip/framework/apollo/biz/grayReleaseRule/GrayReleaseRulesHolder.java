@@ -4,6 +4,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
@@ -14,6 +15,7 @@ import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
 import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
 import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
@@ -30,7 +32,11 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -45,27 +51,35 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
+  private static final int RULE_SCAN_BATCH = 500;
+  //rules modified within this window before the watermark are read again, to tolerate clock skew
+  //between the admin services which write the rules
+  private static final long MODIFIED_TIME_OVERLAP_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
 
   @Autowired
   private GrayReleaseRuleRepository grayReleaseRuleRepository;
   @Autowired
   private BizConfig bizConfig;
+  @Autowired
+  private WatchKeyDictionary watchKeyDictionary;
 
   private int databaseScanInterval;
+  private int reconcileInterval;
   private ScheduledExecutorService executorService;
   //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
   private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
-  //store clientAppId+clientNamespace+ip -> ruleId map
-  private Multimap<String, Long> reversedGrayReleaseRuleCache;
-  //an auto increment version to indicate the age of rules
+  //compiled rules for the request path, rebuilt and replaced when rules change
+  private volatile GrayReleaseRuleIndex grayReleaseRuleIndex = GrayReleaseRuleIndex.EMPTY;
+  //an auto increment version to indicate the age of rules, increased by each full reconciliation
   private AtomicLong loadVersion;
+  //the max DataChange_LastTime of the rules read, incremental syncs read the rules modified after it
+  private volatile long maxModifiedTime;
+  private volatile boolean reconciled;
 
   public GrayReleaseRulesHolder() {
     loadVersion = new AtomicLong();
     grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
         TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
-    reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(
-        TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("GrayReleaseRulesHolder", true));
   }
@@ -75,40 +89,66 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     populateDataBaseInterval();
     //force sync load for the first time
     periodicScanRules();
-    executorService.scheduleWithFixedDelay(this::periodicScanRules,
+    //only read the changed rules every scan interval
+    executorService.scheduleWithFixedDelay(this::periodicSyncChangedRules,
         getDatabaseScanIntervalSecond(), getDatabaseScanIntervalSecond(), getDatabaseScanTimeUnit()
     );
+    //full reconciliation at a much lower cadence
+    executorService.scheduleWithFixedDelay(this::periodicScanRules,
+        reconcileInterval, reconcileInterval, getDatabaseScanTimeUnit()
+    );
   }
 
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
-    logger.info("message received - channel: {}, message: {}", channel, message);
-    String releaseMessage = message.getMessage();
-    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(releaseMessage)) {
+    handleMessages(Collections.singletonList(message), channel);
+  }
+
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
       return;
     }
-    List<String> keys = STRING_SPLITTER.splitToList(releaseMessage);
-    //message should be appId+cluster+namespace
-    if (keys.size() != 3) {
-      logger.error("message format invalid - {}", releaseMessage);
-      return;
+    //read the changed rules once per batch instead of querying each namespace
+    boolean received = false;
+    for (ReleaseMessage message : messages) {
+      logger.info("message received - channel: {}, message: {}", channel, message);
+      String releaseMessage = message.getMessage();
+      if (Strings.isNullOrEmpty(releaseMessage)) {
+        continue;
+      }
+      //message should be appId+cluster+namespace
+      if (STRING_SPLITTER.splitToList(releaseMessage).size() != 3) {
+        logger.error("message format invalid - {}", releaseMessage);
+        continue;
+      }
+      received = true;
     }
-    String appId = keys.get(0);
-    String cluster = keys.get(1);
-    String namespace = keys.get(2);
 
-    List<GrayReleaseRule> rules = grayReleaseRuleRepository
-        .findByAppIdAndClusterNameAndNamespaceName(appId, cluster, namespace);
+    if (received) {
+      syncChangedRules();
+    }
+  }
 
-    mergeGrayReleaseRules(rules);
+  private void periodicSyncChangedRules() {
+    Transaction transaction = Tracer.newTransaction("Apollo.GrayReleaseRulesScanner",
+        "syncChangedGrayReleaseRules");
+    try {
+      syncChangedRules();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Sync changed gray release rule failed", ex);
+    } finally {
+      transaction.complete();
+    }
   }
 
   private void periodicScanRules() {
     Transaction transaction = Tracer.newTransaction("Apollo.GrayReleaseRulesScanner",
         "scanGrayReleaseRules");
     try {
-      loadVersion.incrementAndGet();
-      scanGrayReleaseRules();
+      transaction.addData("Drift", reconcileRules());
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       transaction.setStatus(ex);
@@ -120,22 +160,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String
       configAppId, String configCluster, String configNamespaceName) {
-    String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
-      return null;
-    }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
-      if (rule.matches(clientAppId, clientIp)) {
-        return rule.getReleaseId();
-      }
-    }
-    return null;
+    return grayReleaseRuleIndex.findReleaseId(clientAppId, clientIp, configAppId, configCluster,
+        configNamespaceName);
   }
 
   /**
@@ -144,15 +170,76 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
    * load gray releases. Because gray release rules actually apply to one more dimension - cluster.
    */
   public boolean hasGrayReleaseRule(String clientAppId, String clientIp, String namespaceName) {
-    return reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
-        namespaceName, clientIp)) || reversedGrayReleaseRuleCache.containsKey
-        (assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, GrayReleaseRuleItemDTO
-            .ALL_IP));
+    return grayReleaseRuleIndex.hasRule(clientAppId, clientIp, namespaceName);
+  }
+
+  /**
+   * Compile the current rules into a new index and replace the old one, the request path reads the
+   * index without locks
+   */
+  private synchronized void rebuildIndex() {
+    Map<String, Collection<GrayReleaseRuleCache>> rules;
+    synchronized (grayReleaseRuleCache) {
+      rules = Maps.newHashMap();
+      for (Map.Entry<String, Collection<GrayReleaseRuleCache>> entry : grayReleaseRuleCache.asMap()
+          .entrySet()) {
+        rules.put(entry.getKey(), Lists.newArrayList(entry.getValue()));
+      }
+    }
+    grayReleaseRuleIndex = GrayReleaseRuleIndex.build(watchKeyDictionary, rules);
   }
 
-  private void scanGrayReleaseRules() {
+  /**
+   * Read the rules modified since the last sync and merge them
+   */
+  private synchronized void syncChangedRules() {
+    Date modifiedAfter = new Date(Math.max(0, maxModifiedTime - MODIFIED_TIME_OVERLAP_IN_MILLI));
     long maxIdScanned = 0;
     boolean hasMore = true;
+    int changed = 0;
+
+    while (hasMore && !Thread.currentThread().isInterrupted()) {
+      List<GrayReleaseRule> grayReleaseRules = grayReleaseRuleRepository
+          .findFirst500ByDataChangeLastModifiedTimeAfterAndIdGreaterThanOrderByIdAsc(modifiedAfter,
+              maxIdScanned);
+      if (CollectionUtils.isEmpty(grayReleaseRules)) {
+        break;
+      }
+      changed += mergeGrayReleaseRules(grayReleaseRules);
+      int rulesScanned = grayReleaseRules.size();
+      maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
+      hasMore = rulesScanned == RULE_SCAN_BATCH;
+    }
+    if (changed > 0) {
+      rebuildIndex();
+    }
+  }
+
+  /**
+   * Read all the rules, merge them and remove the outdated inactive rules. The rules changed by the
+   * reconciliation are the drift missed by the incremental syncs.
+   *
+   * @return the number of rules missed by the incremental syncs
+   */
+  private synchronized int reconcileRules() {
+    loadVersion.incrementAndGet();
+    int drift = scanGrayReleaseRules();
+    rebuildIndex();
+    if (!reconciled) {
+      //the first full load is not a drift
+      reconciled = true;
+      return 0;
+    }
+    if (drift > 0) {
+      logger.warn("Gray release rule reconciliation found {} rules missed by incremental syncs", drift);
+    }
+    return drift;
+  }
+
+  private int scanGrayReleaseRules() {
+    long maxIdScanned = 0;
+    boolean hasMore = true;
+    int changed = 0;
 
     while (hasMore && !Thread.currentThread().isInterrupted()) {
       List<GrayReleaseRule> grayReleaseRules = grayReleaseRuleRepository
@@ -160,19 +247,27 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
       if (CollectionUtils.isEmpty(grayReleaseRules)) {
         break;
       }
-      mergeGrayReleaseRules(grayReleaseRules);
+      changed += mergeGrayReleaseRules(grayReleaseRules);
       int rulesScanned = grayReleaseRules.size();
       maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
-      //batch is 500
-      hasMore = rulesScanned == 500;
+      hasMore = rulesScanned == RULE_SCAN_BATCH;
     }
+    return changed;
   }
 
-  private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
+  /**
+   * @return the number of rules added or replaced
+   */
+  private int mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
     if (CollectionUtils.isEmpty(grayReleaseRules)) {
-      return;
+      return 0;
     }
+    int changed = 0;
     for (GrayReleaseRule grayReleaseRule : grayReleaseRules) {
+      Date modifiedTime = grayReleaseRule.getDataChangeLastModifiedTime();
+      if (modifiedTime != null && modifiedTime.getTime() > maxModifiedTime) {
+        maxModifiedTime = modifiedTime.getTime();
+      }
       if (grayReleaseRule.getReleaseId() == null || grayReleaseRule.getReleaseId() == 0) {
         //filter rules with no release id, i.e. never released
         continue;
@@ -200,6 +295,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         if (oldRule != null) {
           removeCache(key, oldRule);
         }
+        changed++;
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
           //update load version
@@ -210,28 +306,15 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         }
       }
     }
+    return changed;
   }
 
   private void addCache(String key, GrayReleaseRuleCache ruleCache) {
-    if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
-      for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-        for (String clientIp : ruleItemDTO.getClientIpList()) {
-          reversedGrayReleaseRuleCache.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-              .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
-        }
-      }
-    }
     grayReleaseRuleCache.put(key, ruleCache);
   }
 
   private void removeCache(String key, GrayReleaseRuleCache ruleCache) {
     grayReleaseRuleCache.remove(key, ruleCache);
-    for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
-      for (String clientIp : ruleItemDTO.getClientIpList()) {
-        reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
-            .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
-      }
-    }
   }
 
   private GrayReleaseRuleCache transformRuleToRuleCache(GrayReleaseRule grayReleaseRule) {
@@ -253,6 +336,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
 
   private void populateDataBaseInterval() {
     databaseScanInterval = bizConfig.grayReleaseRuleScanInterval();
+    //reconcile no more often than the incremental syncs
+    reconcileInterval = Math.max(bizConfig.grayReleaseRuleReconcileInterval(), databaseScanInterval);
   }
 
   private int getDatabaseScanIntervalSecond() {
@@ -268,9 +353,4 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return STRING_JOINER.join(configAppId, configCluster, configNamespaceName);
   }
 
-  private String assembleReversedGrayReleaseRuleKey(String clientAppId, String
-      clientNamespaceName, String clientIp) {
-    return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIp);
-  }
-
 }
@@ -10,6 +10,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.PostConstruct;
 import java.util.List;
@@ -75,6 +77,7 @@ public class DatabaseMessageSender implements MessageSender {
 			ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(message));
 			// 添加到清理 Message 队列。若队列已满，添加失败，不阻塞等待。
 			toClean.offer(newMessage.getId());
+			publishAfterCommit(newMessage);
 			transaction.setStatus(Transaction.SUCCESS);
 		} catch (Throwable ex) {
 			logger.error("Sending message to database failed", ex);
@@ -85,7 +88,24 @@ public class DatabaseMessageSender implements MessageSender {
 		}
 	}
 
-	
+	/**
+	 * 事务提交后把消息交给进程内的发布消息来源, 没有事务时直接交给它
+	 */
+	private void publishAfterCommit(ReleaseMessage savedMessage) {
+		ReleaseMessage message = new ReleaseMessage(savedMessage.getMessage());
+		message.setId(savedMessage.getId());
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			InProcessReleaseMessageSource.publish(message);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCommit() {
+				InProcessReleaseMessageSource.publish(message);
+			}
+		});
+	}
+
 	/**
 	 * spring调用, 启动定时任务<br>
 	 * 不断清理旧的 ReleaseMessage 记录的后台任务。
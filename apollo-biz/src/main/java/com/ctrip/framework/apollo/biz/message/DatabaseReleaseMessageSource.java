@@ -0,0 +1,130 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.util.CollectionUtils;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+
+/**
+ * 定时扫描 ReleaseMessage 表的发布消息来源(默认实现)<br>
+ * 扫描间隔自适应：扫描到新消息后使用最小间隔 "apollo.message-scan.min-interval"，
+ * 之后每次空闲扫描间隔翻倍，直到 "apollo.message-scan.interval"。每次查询的条数由 "apollo.message-scan.batch" 配置。
+ */
+public class DatabaseReleaseMessageSource implements ReleaseMessageSource {
+	private static final Logger logger = LoggerFactory.getLogger(DatabaseReleaseMessageSource.class);
+
+	private final BizConfig bizConfig;
+	private final ReleaseMessageRepository releaseMessageRepository;
+
+	/**
+	 * 定时任务服务
+	 */
+	private final ScheduledExecutorService executorService;
+
+	/**
+	 * 最后扫描到的 ReleaseMessage 的编号
+	 */
+	private long maxIdScanned;
+
+	/**
+	 * 下次扫描的间隔，单位：毫秒
+	 */
+	private long scanInterval;
+
+	private Consumer<List<ReleaseMessage>> consumer;
+
+	public DatabaseReleaseMessageSource(final BizConfig bizConfig,
+			final ReleaseMessageRepository releaseMessageRepository) {
+		this.bizConfig = bizConfig;
+		this.releaseMessageRepository = releaseMessageRepository;
+		executorService = Executors.newScheduledThreadPool(1,
+				ApolloThreadFactory.create("ReleaseMessageScanner", true));
+	}
+
+	@Override
+	public void start(long startId, Consumer<List<ReleaseMessage>> consumer) {
+		this.maxIdScanned = startId;
+		this.consumer = consumer;
+		this.scanInterval = bizConfig.releaseMessageScanMinIntervalInMilli();
+		scheduleScan();
+	}
+
+	@Override
+	public void stop() {
+		executorService.shutdownNow();
+	}
+
+	private void scheduleScan() {
+		executorService.schedule(() -> {
+			// 创建从 DB 中扫描 ReleaseMessage 表的任务，执行完后按扫描结果安排下一次
+			Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
+			boolean scanned = false;
+			try {
+				// 从 DB 中，扫描 ReleaseMessage 们
+				scanned = scanMessages();
+				transaction.setStatus(Transaction.SUCCESS);
+			} catch (Throwable ex) {
+				transaction.setStatus(ex);
+				logger.error("Scan and send message failed", ex);
+			} finally {
+				transaction.complete();
+			}
+			scanInterval = nextScanInterval(scanned, scanInterval, bizConfig.releaseMessageScanMinIntervalInMilli(),
+					bizConfig.releaseMessageScanIntervalInMilli());
+			if (!executorService.isShutdown()) {
+				scheduleScan();
+			}
+		}, scanInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 计算下次扫描的间隔：扫描到消息时使用最小间隔，否则翻倍直到最大间隔
+	 */
+	static long nextScanInterval(boolean scanned, long currentInterval, long minInterval, long maxInterval) {
+		if (scanned) {
+			return minInterval;
+		}
+		return Math.max(minInterval, Math.min(currentInterval * 2, maxInterval));
+	}
+
+	/**
+	 * 扫描信息(仅扫描新增的记录)<br>
+	 * Scan messages, continue scanning until there is no more messages
+	 *
+	 * @return whether any message is scanned
+	 */
+	private boolean scanMessages() {
+		boolean scanned = false;
+		boolean hasMoreMessages = true;
+		while (hasMoreMessages && !Thread.currentThread().isInterrupted()) {
+			int batchSize = bizConfig.releaseMessageScanBatch();
+			// 获得大于 maxIdScanned 的 batchSize 条 ReleaseMessage 记录，按照 id 升序
+			List<ReleaseMessage> releaseMessages = releaseMessageRepository
+					.findByIdGreaterThanOrderByIdAsc(maxIdScanned, PageRequest.of(0, batchSize));
+			if (CollectionUtils.isEmpty(releaseMessages)) {
+				break;
+			}
+
+			consumer.accept(releaseMessages);
+			scanned = true;
+			// 获得新的 maxIdScanned ，取最后一条记录
+			int messageScanned = releaseMessages.size();
+			maxIdScanned = releaseMessages.get(messageScanned - 1).getId();
+			hasMoreMessages = messageScanned == batchSize;
+		}
+		return scanned;
+	}
+}
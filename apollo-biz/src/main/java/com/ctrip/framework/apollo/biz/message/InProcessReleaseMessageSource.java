@@ -0,0 +1,140 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.CollectionUtils;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * 进程内的发布消息来源<br>
+ * DatabaseMessageSender 在事务提交后调用 {@link #publish(ReleaseMessage)}，消息直接交给同一个 JVM 内所有已启动的来源，不再定时扫描 ReleaseMessage 表。<br>
+ * Config Service 和 Admin Service 在不同的 Spring 容器中(例如 apollo-assembly)，所以通过静态的订阅者列表传递。<br>
+ * 仅适用于所有 ReleaseMessage 都由同一个进程写入的部署方式：<br>
+ * 1, 收到的消息编号刚好是下一个编号时直接回调；<br>
+ * 2, 编号有空缺时从 DB 补齐，空缺的编号记录下来，之后(较晚提交的事务)收到时再回调。
+ */
+public class InProcessReleaseMessageSource implements ReleaseMessageSource {
+	private static final Logger logger = LoggerFactory.getLogger(InProcessReleaseMessageSource.class);
+	private static final int BATCH_SIZE = 500;
+	/**
+	 * 记录的空缺编号的最大数量，超过时丢弃最旧的
+	 */
+	private static final int MAX_PENDING_GAPS = 1000;
+
+	private static final List<InProcessReleaseMessageSource> subscribers = Lists.newCopyOnWriteArrayList();
+
+	private final ReleaseMessageRepository releaseMessageRepository;
+
+	/**
+	 * 回调线程，保证同一时间只回调一次
+	 */
+	private final ExecutorService executorService;
+
+	/**
+	 * 已回调的最大消息编号
+	 */
+	private long maxIdDelivered;
+
+	/**
+	 * 从 DB 补齐时跳过的编号(可能是未提交的事务)
+	 */
+	private final Set<Long> pendingGaps = Sets.newLinkedHashSet();
+
+	private Consumer<List<ReleaseMessage>> consumer;
+
+	public InProcessReleaseMessageSource(final ReleaseMessageRepository releaseMessageRepository) {
+		this.releaseMessageRepository = releaseMessageRepository;
+		executorService = Executors.newSingleThreadExecutor(
+				ApolloThreadFactory.create("InProcessReleaseMessageSource", true));
+	}
+
+	/**
+	 * 发布已提交的消息给本进程内的所有来源
+	 */
+	public static void publish(ReleaseMessage message) {
+		for (InProcessReleaseMessageSource subscriber : subscribers) {
+			subscriber.executorService.submit(() -> subscriber.onMessage(message));
+		}
+	}
+
+	@Override
+	public void start(long startId, Consumer<List<ReleaseMessage>> consumer) {
+		this.maxIdDelivered = startId;
+		this.consumer = consumer;
+		subscribers.add(this);
+		// messages committed before subscribing
+		executorService.submit(this::catchUp);
+	}
+
+	@Override
+	public void stop() {
+		subscribers.remove(this);
+		executorService.shutdownNow();
+	}
+
+	private void onMessage(ReleaseMessage message) {
+		try {
+			long id = message.getId();
+			if (id == maxIdDelivered + 1) {
+				deliver(Collections.singletonList(message));
+			} else if (id > maxIdDelivered) {
+				catchUp();
+			} else if (pendingGaps.remove(id)) {
+				consumer.accept(Collections.singletonList(message));
+			}
+		} catch (Throwable ex) {
+			Tracer.logError(ex);
+			logger.error("Handle in process release message {} failed", message, ex);
+		}
+	}
+
+	/**
+	 * 从 DB 中补齐编号大于 maxIdDelivered 的消息
+	 */
+	private void catchUp() {
+		boolean hasMore = true;
+		while (hasMore && !Thread.currentThread().isInterrupted()) {
+			List<ReleaseMessage> releaseMessages = releaseMessageRepository
+					.findFirst500ByIdGreaterThanOrderByIdAsc(maxIdDelivered);
+			if (CollectionUtils.isEmpty(releaseMessages)) {
+				return;
+			}
+			deliver(releaseMessages);
+			hasMore = releaseMessages.size() == BATCH_SIZE;
+		}
+	}
+
+	private void deliver(List<ReleaseMessage> releaseMessages) {
+		for (ReleaseMessage releaseMessage : releaseMessages) {
+			long firstGap = Math.max(maxIdDelivered + 1, releaseMessage.getId() - MAX_PENDING_GAPS);
+			for (long gap = firstGap; gap < releaseMessage.getId(); gap++) {
+				addPendingGap(gap);
+			}
+			maxIdDelivered = releaseMessage.getId();
+		}
+		consumer.accept(releaseMessages);
+	}
+
+	private void addPendingGap(long id) {
+		pendingGaps.add(id);
+		if (pendingGaps.size() > MAX_PENDING_GAPS) {
+			Iterator<Long> iterator = pendingGaps.iterator();
+			iterator.next();
+			iterator.remove();
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package com.ctrip.framework.apollo.biz.message;
 
+import java.util.List;
+
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 
 /**
@@ -14,4 +16,16 @@ public interface ReleaseMessageListener {
 	 * @param channel
 	 */
 	void handleMessage(ReleaseMessage message, String channel);
+
+	/**
+	 * 批量处理一次扫描到的发布消息(按编号升序)，默认逐条调用 {@link #handleMessage(ReleaseMessage, String)}<br>
+	 * 同一批中相同 Namespace 的多条消息只需要处理最新的一条时，可以覆盖此方法合并处理
+	 * @param messages
+	 * @param channel
+	 */
+	default void handleMessages(List<ReleaseMessage> messages, String channel) {
+		for (ReleaseMessage message : messages) {
+			handleMessage(message, channel);
+		}
+	}
 }
@@ -0,0 +1,29 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+/**
+ * 发布消息来源(ReleaseMessageScanner 从这里获得新的发布消息)<br>
+ * 内置实现：<br>
+ * 1, database：定时扫描 ReleaseMessage 表，默认实现，适用于任意部署方式；<br>
+ * 2, in-process：Config Service 和 Admin Service 运行在同一个进程时，直接接收 DatabaseMessageSender 提交后的消息，不再定时扫描。<br>
+ * 其它实现(例如订阅 MySQL binlog 的 CDC 实现)注册为 Spring Bean 即可替换内置实现。
+ */
+public interface ReleaseMessageSource {
+	/**
+	 * 开始接收编号大于 startId 的发布消息<br>
+	 * 同一时间只会回调一次 consumer，每批消息按编号升序
+	 *
+	 * @param startId  已经处理过的最大消息编号
+	 * @param consumer 新消息的回调
+	 */
+	void start(long startId, Consumer<List<ReleaseMessage>> consumer);
+
+	/**
+	 * 停止接收发布消息
+	 */
+	void stop();
+}
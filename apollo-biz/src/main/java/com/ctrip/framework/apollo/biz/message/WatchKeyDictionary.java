@@ -0,0 +1,227 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Watch Key(appId+cluster+namespace) 字典，为每个三元组分配一个紧凑的 int 编号。<br>
+ * 1, 编号从 0 开始递增，分配后不回收，数量与实际出现过的 appId/cluster/namespace 组合相当。<br>
+ * 2, 忽略大小写，与 ReleaseMessage.message 在 MySQL 中的匹配规则保持一致；编号对应的名字以第一次出现时为准。<br>
+ * 3, 查询无锁且不拼接、不拆分字符串，仅分配新编号时加锁。
+ */
+@Component
+public class WatchKeyDictionary {
+  public static final int NOT_FOUND = -1;
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final char SEPARATOR = ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR.charAt(0);
+
+  private volatile AtomicReferenceArray<Entry> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+  // id -> entry
+  private volatile Entry[] entries = new Entry[INITIAL_CAPACITY];
+  private int size;
+
+  /**
+   * 查询编号，不存在时返回 {@link #NOT_FOUND}
+   */
+  public int find(String appId, String cluster, String namespace) {
+    int hash = hash(appId, cluster, namespace);
+    AtomicReferenceArray<Entry> currentTable = table;
+    for (Entry entry = currentTable.get(indexFor(hash, currentTable.length())); entry != null;
+        entry = entry.next) {
+      if (entry.hash == hash && entry.matches(appId, cluster, namespace)) {
+        return entry.id;
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * 通过 Watch Key 字符串(即 ReleaseMessage.message)查询编号，格式不正确或不存在时返回 {@link #NOT_FOUND}
+   */
+  public int find(String watchKey) {
+    int first = firstSeparator(watchKey);
+    int second = secondSeparator(watchKey, first);
+    if (second < 0) {
+      return NOT_FOUND;
+    }
+    int hash = hash(watchKey, first, second);
+    AtomicReferenceArray<Entry> currentTable = table;
+    for (Entry entry = currentTable.get(indexFor(hash, currentTable.length())); entry != null;
+        entry = entry.next) {
+      if (entry.hash == hash && entry.matches(watchKey, first, second)) {
+        return entry.id;
+      }
+    }
+    return NOT_FOUND;
+  }
+
+  /**
+   * 查询编号，不存在时分配新编号
+   */
+  public int intern(String appId, String cluster, String namespace) {
+    int id = find(appId, cluster, namespace);
+    if (id != NOT_FOUND) {
+      return id;
+    }
+    synchronized (this) {
+      id = find(appId, cluster, namespace);
+      if (id != NOT_FOUND) {
+        return id;
+      }
+      return add(appId, cluster, namespace, hash(appId, cluster, namespace));
+    }
+  }
+
+  /**
+   * 通过 Watch Key 字符串查询编号，不存在时分配新编号；格式不正确时返回 {@link #NOT_FOUND}
+   */
+  public int intern(String watchKey) {
+    int id = find(watchKey);
+    if (id != NOT_FOUND) {
+      return id;
+    }
+    int first = firstSeparator(watchKey);
+    int second = secondSeparator(watchKey, first);
+    if (second < 0) {
+      return NOT_FOUND;
+    }
+    return intern(watchKey.substring(0, first), watchKey.substring(first + 1, second),
+        watchKey.substring(second + 1));
+  }
+
+  public String watchKey(int id) {
+    return entries[id].watchKey;
+  }
+
+  public String appId(int id) {
+    return entries[id].appId;
+  }
+
+  public String cluster(int id) {
+    return entries[id].cluster;
+  }
+
+  public String namespace(int id) {
+    return entries[id].namespace;
+  }
+
+  /**
+   * 已分配的编号数量，编号范围为 [0, size)
+   */
+  public synchronized int size() {
+    return size;
+  }
+
+  private int add(String appId, String cluster, String namespace, int hash) {
+    int id = size;
+    Entry[] currentEntries = entries;
+    if (id == currentEntries.length) {
+      currentEntries = Arrays.copyOf(currentEntries, id << 1);
+    }
+    AtomicReferenceArray<Entry> currentTable = table;
+    if (id >= currentTable.length() * 3 / 4) {
+      currentTable = resize(currentTable);
+    }
+    int index = indexFor(hash, currentTable.length());
+    Entry entry = new Entry(id, appId, cluster, namespace,
+        ReleaseMessageKeyGenerator.generate(appId, cluster, namespace), hash, currentTable.get(index));
+    currentEntries[id] = entry;
+    entries = currentEntries;
+    currentTable.set(index, entry);
+    table = currentTable;
+    size++;
+    return id;
+  }
+
+  private AtomicReferenceArray<Entry> resize(AtomicReferenceArray<Entry> oldTable) {
+    AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<>(oldTable.length() << 1);
+    for (int i = 0; i < oldTable.length(); i++) {
+      for (Entry entry = oldTable.get(i); entry != null; entry = entry.next) {
+        int index = indexFor(entry.hash, newTable.length());
+        newTable.set(index, new Entry(entry.id, entry.appId, entry.cluster, entry.namespace, entry.watchKey,
+            entry.hash, newTable.get(index)));
+      }
+    }
+    return newTable;
+  }
+
+  private static int indexFor(int hash, int length) {
+    return (hash ^ (hash >>> 16)) & (length - 1);
+  }
+
+  private static int hash(String appId, String cluster, String namespace) {
+    int hash = hash(appId, 0, appId.length(), 0);
+    hash = hash(cluster, 0, cluster.length(), hash * 31 + SEPARATOR);
+    return hash(namespace, 0, namespace.length(), hash * 31 + SEPARATOR);
+  }
+
+  private static int hash(String watchKey, int first, int second) {
+    int hash = hash(watchKey, 0, first, 0);
+    hash = hash(watchKey, first + 1, second, hash * 31 + SEPARATOR);
+    return hash(watchKey, second + 1, watchKey.length(), hash * 31 + SEPARATOR);
+  }
+
+  private static int hash(String value, int from, int to, int hash) {
+    for (int i = from; i < to; i++) {
+      // same folding as String.CASE_INSENSITIVE_ORDER
+      hash = hash * 31 + Character.toLowerCase(Character.toUpperCase(value.charAt(i)));
+    }
+    return hash;
+  }
+
+  private static int firstSeparator(String watchKey) {
+    return watchKey == null ? -1 : watchKey.indexOf(SEPARATOR);
+  }
+
+  /**
+   * message should be appId+cluster+namespace, each part is non-empty
+   */
+  private static int secondSeparator(String watchKey, int first) {
+    if (first <= 0) {
+      return -1;
+    }
+    int second = watchKey.indexOf(SEPARATOR, first + 1);
+    if (second <= first + 1 || second == watchKey.length() - 1
+        || watchKey.indexOf(SEPARATOR, second + 1) >= 0) {
+      return -1;
+    }
+    return second;
+  }
+
+  private static final class Entry {
+    private final int id;
+    private final String appId;
+    private final String cluster;
+    private final String namespace;
+    private final String watchKey;
+    private final int hash;
+    private final Entry next;
+
+    private Entry(int id, String appId, String cluster, String namespace, String watchKey, int hash,
+        Entry next) {
+      this.id = id;
+      this.appId = appId;
+      this.cluster = cluster;
+      this.namespace = namespace;
+      this.watchKey = watchKey;
+      this.hash = hash;
+      this.next = next;
+    }
+
+    private boolean matches(String appId, String cluster, String namespace) {
+      return this.appId.equalsIgnoreCase(appId) && this.cluster.equalsIgnoreCase(cluster)
+          && this.namespace.equalsIgnoreCase(namespace);
+    }
+
+    private boolean matches(String watchKey, int first, int second) {
+      return watchKey.length() == this.watchKey.length()
+          && watchKey.regionMatches(true, 0, this.watchKey, 0, watchKey.length())
+          && first == appId.length() && second == first + 1 + cluster.length();
+    }
+  }
+}
@@ -4,6 +4,7 @@ import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
 
 import org.springframework.data.repository.PagingAndSortingRepository;
 
+import java.util.Date;
 import java.util.List;
 
 
@@ -17,4 +18,7 @@ public interface GrayReleaseRuleRepository extends PagingAndSortingRepository<Gr
 
   List<GrayReleaseRule> findFirst500ByIdGreaterThanOrderByIdAsc(Long id);
 
+  List<GrayReleaseRule> findFirst500ByDataChangeLastModifiedTimeAfterAndIdGreaterThanOrderByIdAsc(
+      Date dataChangeLastModifiedTime, Long id);
+
 }
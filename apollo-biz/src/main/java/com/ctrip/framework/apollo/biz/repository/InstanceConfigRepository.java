@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
@@ -18,6 +19,9 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   InstanceConfig findByInstanceIdAndConfigAppIdAndConfigNamespaceName(long instanceId, String
       configAppId, String configNamespaceName);
 
+  List<InstanceConfig> findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(String configAppId,
+      String configNamespaceName, Collection<Long> instanceIds);
+
   Page<InstanceConfig> findByReleaseKeyAndDataChangeLastModifiedTimeAfter(String releaseKey, Date
       validDate, Pageable pageable);
 
@@ -31,6 +35,21 @@ public interface InstanceConfigRepository extends PagingAndSortingRepository<Ins
   @Query("delete from InstanceConfig  where ConfigAppId=?1 and ConfigClusterName=?2 and ConfigNamespaceName = ?3")
   int batchDelete(String appId, String clusterName, String namespaceName);
 
+  @Query("select min(c.dataChangeLastModifiedTime) from InstanceConfig c")
+  Date findEarliestDataChangeLastModifiedTime();
+
+  @Query("select distinct c.instanceId from InstanceConfig c where c.dataChangeLastModifiedTime >= :from"
+      + " and c.dataChangeLastModifiedTime < :to")
+  List<Long> findInstanceIdsByDataChangeLastModifiedTimeBetween(@Param("from") Date from, @Param("to") Date to);
+
+  @Query("select distinct c.instanceId from InstanceConfig c where c.instanceId in :instanceIds")
+  List<Long> findInstanceIdsByInstanceIdIn(@Param("instanceIds") Collection<Long> instanceIds);
+
+  @Modifying
+  @Query("delete from InstanceConfig c where c.dataChangeLastModifiedTime >= :from"
+      + " and c.dataChangeLastModifiedTime < :to")
+  int deleteByDataChangeLastModifiedTimeBetween(@Param("from") Date from, @Param("to") Date to);
+
   @Query(
       value = "select b.Id from `InstanceConfig` a inner join `Instance` b on b.Id =" +
           " a.`InstanceId` where a.`ConfigAppId` = :configAppId and a.`ConfigClusterName` = " +
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.biz.repository;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.data.repository.query.Param;
@@ -15,6 +16,8 @@ import java.util.List;
 public interface ReleaseMessageRepository extends PagingAndSortingRepository<ReleaseMessage, Long> {
 	List<ReleaseMessage> findFirst500ByIdGreaterThanOrderByIdAsc(Long id);
 
+	List<ReleaseMessage> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+
 	ReleaseMessage findTopByOrderByIdDesc();
 
 	ReleaseMessage findTopByMessageInOrderByIdDesc(Collection<String> messages);
@@ -29,6 +29,16 @@ public interface ReleaseRepository extends PagingAndSortingRepository<Release, L
 
   List<Release> findByIdIn(Set<Long> releaseIds);
 
+  /**
+   * the latest active release id of each namespace whose id is in (fromNamespaceId, toNamespaceId],
+   * only the releases of these namespaces are scanned through the (appId, clusterName, namespaceName) index
+   */
+  @Query("select max(r.id) from Release r, Namespace n where n.id > :fromNamespaceId and n.id <= :toNamespaceId "
+      + "and r.appId = n.appId and r.clusterName = n.clusterName and r.namespaceName = n.namespaceName "
+      + "and r.isAbandoned = false group by r.appId, r.clusterName, r.namespaceName")
+  List<Long> findLatestActiveReleaseIdsOfNamespaces(@Param("fromNamespaceId") long fromNamespaceId,
+      @Param("toNamespaceId") long toNamespaceId);
+
   @Modifying
   @Query("update Release set isdeleted=1,DataChange_LastModifiedBy = ?4 where appId=?1 and clusterName=?2 and namespaceName = ?3")
   int batchDelete(String appId, String clusterName, String namespaceName, String operator);
@@ -0,0 +1,91 @@
+package com.ctrip.framework.apollo.biz.service;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Instance;
+import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 保存在 Instance 和 InstanceConfig 表的 {@link InstanceStore} ，默认实现<br>
+ * 定期删除超过 "apollo.instance-config.retention" 小时未更新的 InstanceConfig ，每次删除一个小时内的记录，
+ * 避免一次删除大量的行；同时删除不再有 InstanceConfig 的 Instance 。
+ */
+public class DatabaseInstanceStore implements InstanceStore, InitializingBean, DisposableBean {
+  private static final Logger logger = LoggerFactory.getLogger(DatabaseInstanceStore.class);
+  private static final long PURGE_RANGE_IN_MILLI = TimeUnit.HOURS.toMillis(1);
+
+  private final InstanceService instanceService;
+  private final BizConfig bizConfig;
+  private ScheduledExecutorService purgeExecutorService;
+
+  public DatabaseInstanceStore(final InstanceService instanceService, final BizConfig bizConfig) {
+    this.instanceService = instanceService;
+    this.bizConfig = bizConfig;
+  }
+
+  @Override
+  public void findOrCreateInstances(Collection<Instance> instances) {
+    instanceService.findOrCreateInstances(instances);
+  }
+
+  @Override
+  public int upsertInstanceConfigs(Collection<InstanceConfig> instanceConfigs, long touchThresholdInMilli) {
+    return instanceService.upsertInstanceConfigs(instanceConfigs, touchThresholdInMilli);
+  }
+
+  @Override
+  public int purgeInstanceConfigs(Date expireTime) {
+    int purged = 0;
+    Date from;
+    // 每次从最早的记录开始删除一个小时内的记录，跳过没有记录的时间段
+    while ((from = instanceService.findEarliestInstanceConfigTime()) != null && from.before(expireTime)) {
+      Date to = new Date(Math.min(from.getTime() + PURGE_RANGE_IN_MILLI, expireTime.getTime()));
+      purged += instanceService.deleteInstanceConfigs(from, to);
+    }
+    return purged;
+  }
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    purgeExecutorService = Executors.newSingleThreadScheduledExecutor(
+        ApolloThreadFactory.create("DatabaseInstanceStore", true));
+    purgeExecutorService.scheduleWithFixedDelay(this::purgeExpiredInstanceConfigs,
+        bizConfig.instanceConfigPurgeInterval(), bizConfig.instanceConfigPurgeInterval(),
+        bizConfig.instanceConfigPurgeIntervalTimeUnit());
+  }
+
+  @Override
+  public void destroy() {
+    if (purgeExecutorService != null) {
+      purgeExecutorService.shutdownNow();
+    }
+  }
+
+  private void purgeExpiredInstanceConfigs() {
+    Transaction transaction = Tracer.newTransaction("Apollo.InstanceStore", "purgeInstanceConfigs");
+    try {
+      Date expireTime = new Date(System.currentTimeMillis()
+          - TimeUnit.HOURS.toMillis(bizConfig.instanceConfigRetentionInHours()));
+      transaction.addData("Purged", purgeInstanceConfigs(expireTime));
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Purge expired instance configs failed", ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+}
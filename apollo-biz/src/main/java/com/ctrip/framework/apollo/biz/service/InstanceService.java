@@ -4,8 +4,12 @@ import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
 import com.ctrip.framework.apollo.biz.repository.InstanceConfigRepository;
 import com.ctrip.framework.apollo.biz.repository.InstanceRepository;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import java.util.Objects;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -16,9 +20,11 @@ import org.springframework.util.CollectionUtils;
 
 import java.math.BigInteger;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -27,6 +33,9 @@ import java.util.stream.Collectors;
  */
 @Service
 public class InstanceService {
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final int INSTANCE_DELETE_BATCH = 500;
+
   private final InstanceRepository instanceRepository;
   private final InstanceConfigRepository instanceConfigRepository;
 
@@ -57,6 +66,43 @@ public class InstanceService {
     return instanceRepository.save(instance);
   }
 
+  /**
+   * 批量查询 Instance ，不存在的批量创建。按 appId + clusterName + dataCenter 分组，每组只查询一次
+   *
+   * @param instances 待查询的 Instance ，查询到或者创建后的编号设置到这些对象上
+   */
+  @Transactional
+  public void findOrCreateInstances(Collection<Instance> instances) {
+    Map<String, List<Instance>> groups = Maps.newLinkedHashMap();
+    for (Instance instance : instances) {
+      groups.computeIfAbsent(STRING_JOINER.join(instance.getAppId(), instance.getClusterName(),
+          instance.getDataCenter()), key -> Lists.newArrayList()).add(instance);
+    }
+
+    List<Instance> toCreate = Lists.newArrayList();
+    for (List<Instance> group : groups.values()) {
+      Instance first = group.get(0);
+      Set<String> ips = group.stream().map(Instance::getIp).collect(Collectors.toSet());
+      Map<String, Long> existedIds = Maps.newHashMap();
+      for (Instance instance : instanceRepository.findByAppIdAndClusterNameAndDataCenterAndIpIn(
+          first.getAppId(), first.getClusterName(), first.getDataCenter(), ips)) {
+        existedIds.put(instance.getIp(), instance.getId());
+      }
+      for (Instance instance : group) {
+        Long existedId = existedIds.get(instance.getIp());
+        if (existedId != null) {
+          instance.setId(existedId);
+          continue;
+        }
+        instance.setId(0); //protection
+        toCreate.add(instance);
+      }
+    }
+    if (!toCreate.isEmpty()) {
+      instanceRepository.saveAll(toCreate);
+    }
+  }
+
   public InstanceConfig findInstanceConfig(long instanceId, String configAppId, String
       configNamespaceName) {
     return instanceConfigRepository
@@ -174,6 +220,86 @@ public class InstanceService {
     return instanceConfigRepository.save(existedInstanceConfig);
   }
 
+  /**
+   * 批量写入 InstanceConfig ：按 configAppId + configNamespaceName 分组，每组一次查询出已存在的记录，
+   * 不存在的新建，已存在的更新。ReleaseKey 相同且最近更新过的记录不再写入
+   *
+   * @param instanceConfigs 待写入的 InstanceConfig ，DataChangeLastModifiedTime 为客户端获取配置的时间
+   * @param touchThresholdInMilli ReleaseKey 相同时，距离上次更新超过该时间才更新
+   * @return 写入的记录数
+   */
+  @Transactional
+  public int upsertInstanceConfigs(Collection<InstanceConfig> instanceConfigs, long touchThresholdInMilli) {
+    Map<String, List<InstanceConfig>> groups = Maps.newLinkedHashMap();
+    for (InstanceConfig instanceConfig : instanceConfigs) {
+      groups.computeIfAbsent(STRING_JOINER.join(instanceConfig.getConfigAppId(),
+          instanceConfig.getConfigNamespaceName()), key -> Lists.newArrayList()).add(instanceConfig);
+    }
+
+    List<InstanceConfig> toSave = Lists.newArrayList();
+    for (List<InstanceConfig> group : groups.values()) {
+      InstanceConfig first = group.get(0);
+      Set<Long> instanceIds = group.stream().map(InstanceConfig::getInstanceId).collect(Collectors.toSet());
+      Map<Long, InstanceConfig> existed = Maps.newHashMap();
+      for (InstanceConfig instanceConfig : instanceConfigRepository
+          .findByConfigAppIdAndConfigNamespaceNameAndInstanceIdIn(first.getConfigAppId(),
+              first.getConfigNamespaceName(), instanceIds)) {
+        existed.put(instanceConfig.getInstanceId(), instanceConfig);
+      }
+      for (InstanceConfig instanceConfig : group) {
+        InstanceConfig existedInstanceConfig = existed.get(instanceConfig.getInstanceId());
+        if (existedInstanceConfig == null) {
+          instanceConfig.setId(0); //protection
+          toSave.add(instanceConfig);
+          continue;
+        }
+        Date lastModifiedTime = instanceConfig.getDataChangeLastModifiedTime();
+        if (!Objects.equals(existedInstanceConfig.getReleaseKey(), instanceConfig.getReleaseKey())) {
+          existedInstanceConfig.setConfigClusterName(instanceConfig.getConfigClusterName());
+          existedInstanceConfig.setReleaseKey(instanceConfig.getReleaseKey());
+          existedInstanceConfig.setReleaseDeliveryTime(instanceConfig.getReleaseDeliveryTime());
+        } else if (lastModifiedTime.getTime() - existedInstanceConfig.getDataChangeLastModifiedTime()
+            .getTime() < touchThresholdInMilli) {
+          // when releaseKey is the same, optimize to reduce writes if the record was updated not long ago
+          continue;
+        }
+        // update the last modified time even if the release key is the same, so that the record stays active
+        existedInstanceConfig.setDataChangeLastModifiedTime(lastModifiedTime);
+        toSave.add(existedInstanceConfig);
+      }
+    }
+    if (!toSave.isEmpty()) {
+      instanceConfigRepository.saveAll(toSave);
+    }
+    return toSave.size();
+  }
+
+  /**
+   * 最早的 InstanceConfig 的最后修改时间，没有记录时返回 null
+   */
+  public Date findEarliestInstanceConfigTime() {
+    return instanceConfigRepository.findEarliestDataChangeLastModifiedTime();
+  }
+
+  /**
+   * 删除最后修改时间在 [from, to) 内的 InstanceConfig ，以及删除后不再有 InstanceConfig 的 Instance
+   *
+   * @return 删除的 InstanceConfig 数量
+   */
+  @Transactional
+  public int deleteInstanceConfigs(Date from, Date to) {
+    List<Long> instanceIds = instanceConfigRepository.findInstanceIdsByDataChangeLastModifiedTimeBetween(from, to);
+    int deleted = instanceConfigRepository.deleteByDataChangeLastModifiedTimeBetween(from, to);
+    for (List<Long> ids : Lists.partition(instanceIds, INSTANCE_DELETE_BATCH)) {
+      Set<Long> unused = Sets.newHashSet(ids);
+      unused.removeAll(instanceConfigRepository.findInstanceIdsByInstanceIdIn(ids));
+      if (!unused.isEmpty()) {
+        instanceRepository.batchDelete(unused);
+      }
+    }
+    return deleted;
+  }
+
   @Transactional
   public int batchDeleteInstanceConfig(String configAppId, String configClusterName, String configNamespaceName){
     return instanceConfigRepository.batchDelete(configAppId, configClusterName, configNamespaceName);
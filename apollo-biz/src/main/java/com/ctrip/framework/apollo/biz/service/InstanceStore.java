@@ -0,0 +1,39 @@
+package com.ctrip.framework.apollo.biz.service;
+
+import com.ctrip.framework.apollo.biz.entity.Instance;
+import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+
+import java.util.Collection;
+import java.util.Date;
+
+/**
+ * Instance 和 InstanceConfig 的存储，记录 Instance 获取配置的情况<br>
+ * 默认实现为 {@link DatabaseInstanceStore} ，保存在 Instance 和 InstanceConfig 表。<br>
+ * 只包含 Config Service 的写入，Admin Service 仍然通过 {@link InstanceService} 从这两张表查询，
+ * 因此实现必须把记录写入这两张表，并删除过期的记录，避免两张表无限增长。
+ */
+public interface InstanceStore {
+
+  /**
+   * 批量查询 Instance ，不存在的批量创建
+   *
+   * @param instances 待查询的 Instance ，查询到或者创建后的编号设置到这些对象上
+   */
+  void findOrCreateInstances(Collection<Instance> instances);
+
+  /**
+   * 批量写入 InstanceConfig ，不存在的新建，已存在的更新
+   *
+   * @param instanceConfigs 待写入的 InstanceConfig ，DataChangeLastModifiedTime 为客户端获取配置的时间
+   * @param touchThresholdInMilli ReleaseKey 相同时，距离上次更新超过该时间才更新
+   * @return 写入的记录数
+   */
+  int upsertInstanceConfigs(Collection<InstanceConfig> instanceConfigs, long touchThresholdInMilli);
+
+  /**
+   * 删除最后修改时间早于 expireTime 的 InstanceConfig ，以及不再有 InstanceConfig 的 Instance
+   *
+   * @return 删除的 InstanceConfig 数量
+   */
+  int purgeInstanceConfigs(Date expireTime);
+}
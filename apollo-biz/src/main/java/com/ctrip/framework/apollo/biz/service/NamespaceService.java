@@ -10,6 +10,7 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.context.annotation.Lazy;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -81,6 +82,16 @@ public class NamespaceService {
 		return namespaceRepository.findByAppIdAndClusterNameAndNamespaceName(appId, clusterName, namespaceName);
 	}
 
+	/**
+	 * 按编号顺序分页获得 Namespace 编号
+	 *
+	 * @param id 上一页的最后一个编号，第一页为 0
+	 * @param size 每页数量
+	 */
+	public List<Long> findIdsGreaterThan(long id, int size) {
+		return namespaceRepository.findIdsGreaterThan(id, PageRequest.of(0, size));
+	}
+
 	public Namespace findPublicNamespaceForAssociatedNamespace(String clusterName, String namespaceName) {
 		AppNamespace appNamespace = appNamespaceService.findPublicNamespaceByName(namespaceName);
 		if (appNamespace == null) {
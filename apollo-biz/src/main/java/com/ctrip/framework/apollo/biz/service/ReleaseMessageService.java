@@ -29,6 +29,17 @@ public class ReleaseMessageService {
     return releaseMessageRepository.findTopByMessageInOrderByIdDesc(messages);
   }
 
+  public ReleaseMessage findLatestReleaseMessage() {
+    return releaseMessageRepository.findTopByOrderByIdDesc();
+  }
+
+  /**
+   * find at most 500 messages whose id is greater than the given id, in id order
+   */
+  public List<ReleaseMessage> findReleaseMessagesGreaterThan(long id) {
+    return releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(id);
+  }
+
   public List<ReleaseMessage> findLatestReleaseMessagesGroupByMessages(Collection<String> messages) {
     if (CollectionUtils.isEmpty(messages)) {
       return Collections.emptyList();
@@ -108,6 +108,15 @@ public class ReleaseService {
 				clusterName, namespaceName);
 	}
 
+	/**
+	 * 获得 Namespace 编号在 (fromNamespaceId, toNamespaceId] 之间的每个 Namespace 最新的有效 Release 的编号
+	 *
+	 * @see NamespaceService#findIdsGreaterThan(long, int)
+	 */
+	public List<Long> findLatestActiveReleaseIdsOfNamespaces(long fromNamespaceId, long toNamespaceId) {
+		return releaseRepository.findLatestActiveReleaseIdsOfNamespaces(fromNamespaceId, toNamespaceId);
+	}
+
 	public List<Release> findAllReleases(String appId, String clusterName, String namespaceName, Pageable page) {
 		List<Release> releases = releaseRepository.findByAppIdAndClusterNameAndNamespaceNameOrderByIdDesc(appId,
 				clusterName, namespaceName, page);
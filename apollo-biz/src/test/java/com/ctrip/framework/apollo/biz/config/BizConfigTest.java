@@ -53,6 +53,23 @@ public class BizConfigTest {
     assertEquals(defaultBatch, bizConfig.releaseMessageNotificationBatch());
   }
 
+  @Test
+  public void testReleaseMessageNotificationRate() throws Exception {
+    int someBatch = 20;
+    int someBatchInterval = 10;
+    when(environment.getProperty("apollo.release-message.notification.batch")).thenReturn(String.valueOf(someBatch));
+    when(environment.getProperty("apollo.release-message.notification.batch.interval"))
+        .thenReturn(String.valueOf(someBatchInterval));
+
+    //default to batch / batch interval
+    assertEquals(2000, bizConfig.releaseMessageNotificationRate());
+
+    int someRate = 500;
+    when(environment.getProperty("apollo.release-message.notification.rate")).thenReturn(String.valueOf(someRate));
+
+    assertEquals(someRate, bizConfig.releaseMessageNotificationRate());
+  }
+
   @Test
   public void testReleaseMessageNotificationBatchWithNAN() throws Exception {
     String someNAN = "someNAN";
@@ -0,0 +1,111 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GrayReleaseRuleIndexTest {
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final String someAppId = "someAppId";
+  private static final String someClusterName = "someClusterName";
+  private static final String someNamespaceName = "someNamespaceName";
+  private WatchKeyDictionary watchKeyDictionary;
+
+  @Before
+  public void setUp() throws Exception {
+    watchKeyDictionary = new WatchKeyDictionary();
+  }
+
+  @Test
+  public void testFindReleaseIdWithCidr() throws Exception {
+    GrayReleaseRuleIndex index = build(
+        assembleRule(1, 10, NamespaceBranchStatus.ACTIVE, new GrayReleaseRuleItemDTO("clientAppId",
+            Sets.newHashSet("10.1.0.0/16", "192.168.1.1"))));
+
+    assertEquals(Long.valueOf(10), findReleaseId(index, "clientAppId", "10.1.2.3"));
+    assertEquals(Long.valueOf(10), findReleaseId(index, "CLIENTAPPID", "10.1.255.255"));
+    assertEquals(Long.valueOf(10), findReleaseId(index, "clientAppId", "192.168.1.1"));
+    assertNull(findReleaseId(index, "clientAppId", "10.2.0.1"));
+    assertNull(findReleaseId(index, "clientAppId", "192.168.1.2"));
+    assertNull(findReleaseId(index, "clientAppId", "not.an.ip"));
+    assertNull(findReleaseId(index, "anotherClientAppId", "10.1.2.3"));
+    assertNull(index.findReleaseId("clientAppId", "10.1.2.3", someAppId, someClusterName,
+        "anotherNamespaceName"));
+
+    assertTrue(index.hasRule("clientAppId", "10.1.2.3", someNamespaceName.toUpperCase()));
+    assertFalse(index.hasRule("clientAppId", "10.2.0.1", someNamespaceName));
+  }
+
+  @Test
+  public void testFindReleaseIdWithAllAppIdAndAllIp() throws Exception {
+    GrayReleaseRuleIndex index = build(
+        assembleRule(2, 20, NamespaceBranchStatus.ACTIVE, new GrayReleaseRuleItemDTO(
+            GrayReleaseRuleIndex.ALL_APP_ID, Sets.newHashSet("1.1.1.1"))),
+        assembleRule(3, 30, NamespaceBranchStatus.ACTIVE, new GrayReleaseRuleItemDTO("clientAppId",
+            Sets.newHashSet(GrayReleaseRuleItemDTO.ALL_IP))),
+        assembleRule(1, 10, NamespaceBranchStatus.DELETED, new GrayReleaseRuleItemDTO("clientAppId",
+            Sets.newHashSet(GrayReleaseRuleItemDTO.ALL_IP))));
+
+    //rules are matched by rule id
+    assertEquals(Long.valueOf(20), findReleaseId(index, "clientAppId", "1.1.1.1"));
+    assertEquals(Long.valueOf(20), findReleaseId(index, "anyClientAppId", "1.1.1.1"));
+    assertEquals(Long.valueOf(30), findReleaseId(index, "clientAppId", "2.2.2.2"));
+    assertNull(findReleaseId(index, "anyClientAppId", "2.2.2.2"));
+    assertNull(findReleaseId(index, null, "2.2.2.2"));
+
+    assertTrue(index.hasRule("anyClientAppId", "1.1.1.1", someNamespaceName));
+    assertTrue(index.hasRule("clientAppId", "2.2.2.2", someNamespaceName));
+    assertFalse(index.hasRule("anyClientAppId", "2.2.2.2", someNamespaceName));
+  }
+
+  @Test
+  public void testEmptyIndex() throws Exception {
+    assertNull(GrayReleaseRuleIndex.EMPTY.findReleaseId("clientAppId", "1.1.1.1", someAppId,
+        someClusterName, someNamespaceName));
+    assertFalse(GrayReleaseRuleIndex.EMPTY.hasRule("clientAppId", "1.1.1.1", someNamespaceName));
+  }
+
+  @Test
+  public void testParseIpv4() throws Exception {
+    assertEquals(0x0A010203L, GrayReleaseRuleIndex.IpMatcher.parseIpv4("10.1.2.3", 0, 8));
+    assertEquals(0xFFFFFFFFL, GrayReleaseRuleIndex.IpMatcher.parseIpv4("255.255.255.255", 0, 15));
+    assertEquals(-1, GrayReleaseRuleIndex.IpMatcher.parseIpv4("256.1.1.1", 0, 9));
+    assertEquals(-1, GrayReleaseRuleIndex.IpMatcher.parseIpv4("1.1.1", 0, 5));
+    assertEquals(-1, GrayReleaseRuleIndex.IpMatcher.parseIpv4("1..1.1", 0, 6));
+    assertEquals(-1, GrayReleaseRuleIndex.IpMatcher.parseIpv4("::1", 0, 3));
+  }
+
+  private Long findReleaseId(GrayReleaseRuleIndex index, String clientAppId, String clientIp) {
+    return index.findReleaseId(clientAppId, clientIp, someAppId, someClusterName, someNamespaceName);
+  }
+
+  private GrayReleaseRuleIndex build(GrayReleaseRuleCache... rules) {
+    String key = STRING_JOINER.join(someAppId, someClusterName, someNamespaceName);
+    return GrayReleaseRuleIndex.build(watchKeyDictionary,
+        ImmutableMap.<String, Collection<GrayReleaseRuleCache>>of(key, Lists.newArrayList(rules)));
+  }
+
+  private GrayReleaseRuleCache assembleRule(long ruleId, long releaseId, int branchStatus,
+      GrayReleaseRuleItemDTO ruleItem) {
+    Set<GrayReleaseRuleItemDTO> ruleItems = Sets.newHashSet(ruleItem);
+    return new GrayReleaseRuleCache(ruleId, "someBranch" + ruleId, someNamespaceName, releaseId,
+        branchStatus, 0, ruleItems);
+  }
+}
@@ -9,6 +9,7 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
 import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
 import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
@@ -21,6 +22,7 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
@@ -29,6 +31,8 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 
@@ -53,6 +57,7 @@ public class GrayReleaseRulesHolderTest {
                                  bizConfig);
     ReflectionTestUtils.setField(grayReleaseRulesHolder, "grayReleaseRuleRepository",
         grayReleaseRuleRepository);
+    ReflectionTestUtils.setField(grayReleaseRulesHolder, "watchKeyDictionary", new WatchKeyDictionary());
     idCounter = new AtomicLong();
   }
 
@@ -112,8 +117,8 @@ public class GrayReleaseRulesHolderTest {
         someNamespaceName, Lists.newArrayList(assembleRuleItem(anotherClientAppId, Sets.newHashSet
             (anotherClientIp))), someReleaseId, activeBranchStatus);
 
-    when(grayReleaseRuleRepository.findByAppIdAndClusterNameAndNamespaceName(someAppId,
-        someClusterName, someNamespaceName)).thenReturn(Lists.newArrayList(anotherRule));
+    when(grayReleaseRuleRepository.findFirst500ByDataChangeLastModifiedTimeAfterAndIdGreaterThanOrderByIdAsc(
+        any(Date.class), eq(0L))).thenReturn(Lists.newArrayList(anotherRule));
 
     //send message
     grayReleaseRulesHolder.handleMessage(assembleReleaseMessage(someAppId, someClusterName,
@@ -137,6 +142,39 @@ public class GrayReleaseRulesHolderTest {
         anotherNamespaceName));
   }
 
+  @Test
+  public void testReconcileGrayReleaseRules() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someNamespaceName = "someNamespaceName";
+    String someClientAppId = "clientAppId1";
+    String someClientIp = "1.1.1.1";
+    Long someReleaseId = 1L;
+
+    GrayReleaseRule someRule = assembleGrayReleaseRule(someAppId, someClusterName,
+        someNamespaceName, Lists.newArrayList(assembleRuleItem(someClientAppId, Sets.newHashSet
+            (someClientIp))), someReleaseId, NamespaceBranchStatus.ACTIVE);
+
+    when(bizConfig.grayReleaseRuleScanInterval()).thenReturn(30);
+    when(bizConfig.grayReleaseRuleReconcileInterval()).thenReturn(3600);
+    when(grayReleaseRuleRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists
+        .<GrayReleaseRule>newArrayList(), Lists.newArrayList(someRule));
+
+    //nothing loaded for the first time
+    grayReleaseRulesHolder.afterPropertiesSet();
+
+    assertNull(grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule(someClientAppId,
+        someClientIp, someAppId, someClusterName, someNamespaceName));
+
+    //the rule missed by the incremental syncs is found by the reconciliation
+    ReflectionTestUtils.invokeMethod(grayReleaseRulesHolder, "periodicScanRules");
+
+    assertEquals(someReleaseId, grayReleaseRulesHolder.findReleaseIdFromGrayReleaseRule
+        (someClientAppId, someClientIp, someAppId, someClusterName, someNamespaceName));
+    assertTrue(grayReleaseRulesHolder.hasGrayReleaseRule(someClientAppId, someClientIp,
+        someNamespaceName));
+  }
+
   private GrayReleaseRule assembleGrayReleaseRule(String appId, String clusterName, String
       namespaceName, List<GrayReleaseRuleItemDTO> ruleItems, long releaseId, int branchStatus) {
     GrayReleaseRule rule = new GrayReleaseRule();
@@ -148,6 +186,7 @@ public class GrayReleaseRulesHolderTest {
     rule.setRules(gson.toJson(ruleItems));
     rule.setReleaseId(releaseId);
     rule.setBranchStatus(branchStatus);
+    rule.setDataChangeLastModifiedTime(new Date());
 
     return rule;
   }
@@ -0,0 +1,77 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.when;
+
+public class DatabaseReleaseMessageSourceTest extends AbstractUnitTest {
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private ReleaseMessageRepository releaseMessageRepository;
+  private DatabaseReleaseMessageSource releaseMessageSource;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessageSource = new DatabaseReleaseMessageSource(bizConfig, releaseMessageRepository);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    releaseMessageSource.stop();
+  }
+
+  @Test
+  public void testScanMessagesInBatches() throws Exception {
+    int someBatch = 2;
+    when(bizConfig.releaseMessageScanMinIntervalInMilli()).thenReturn(10);
+    when(bizConfig.releaseMessageScanBatch()).thenReturn(someBatch);
+
+    ReleaseMessage someMessage = assembleReleaseMessage(1, "someMessage");
+    ReleaseMessage anotherMessage = assembleReleaseMessage(2, "anotherMessage");
+    ReleaseMessage yetAnotherMessage = assembleReleaseMessage(3, "yetAnotherMessage");
+    when(releaseMessageRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, someBatch)))
+        .thenReturn(Lists.newArrayList(someMessage, anotherMessage));
+    when(releaseMessageRepository.findByIdGreaterThanOrderByIdAsc(2L, PageRequest.of(0, someBatch)))
+        .thenReturn(Lists.newArrayList(yetAnotherMessage));
+
+    BlockingQueue<List<ReleaseMessage>> batches = new LinkedBlockingQueue<>();
+    releaseMessageSource.start(0, batches::add);
+
+    assertEquals(Lists.newArrayList(someMessage, anotherMessage), batches.poll(5, TimeUnit.SECONDS));
+    assertEquals(Lists.newArrayList(yetAnotherMessage), batches.poll(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testNextScanInterval() throws Exception {
+    long minInterval = 50;
+    long maxInterval = 1000;
+
+    assertEquals(minInterval, DatabaseReleaseMessageSource.nextScanInterval(true, 800, minInterval, maxInterval));
+    assertEquals(100, DatabaseReleaseMessageSource.nextScanInterval(false, minInterval, minInterval, maxInterval));
+    assertEquals(maxInterval, DatabaseReleaseMessageSource.nextScanInterval(false, 800, minInterval, maxInterval));
+    assertEquals(maxInterval,
+        DatabaseReleaseMessageSource.nextScanInterval(false, maxInterval, minInterval, maxInterval));
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+}
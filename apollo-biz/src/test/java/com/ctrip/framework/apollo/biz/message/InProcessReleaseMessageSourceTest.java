@@ -0,0 +1,96 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InProcessReleaseMessageSourceTest extends AbstractUnitTest {
+  @Mock
+  private ReleaseMessageRepository releaseMessageRepository;
+  private InProcessReleaseMessageSource releaseMessageSource;
+  private BlockingQueue<ReleaseMessage> received;
+  private long someStartId;
+
+  @Before
+  public void setUp() throws Exception {
+    someStartId = 10;
+    received = new LinkedBlockingQueue<>();
+    releaseMessageSource = new InProcessReleaseMessageSource(releaseMessageRepository);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    releaseMessageSource.stop();
+  }
+
+  @Test
+  public void testPublishNextMessage() throws Exception {
+    ReleaseMessage someCommittedMessage = assembleReleaseMessage(someStartId + 1, "someMessage");
+    ReleaseMessage someMessage = assembleReleaseMessage(someStartId + 2, "anotherMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someStartId))
+        .thenReturn(Lists.newArrayList(someCommittedMessage));
+
+    releaseMessageSource.start(someStartId, received::addAll);
+    assertEquals(someCommittedMessage, received.poll(5, TimeUnit.SECONDS));
+
+    InProcessReleaseMessageSource.publish(someMessage);
+
+    assertEquals(someMessage, received.poll(5, TimeUnit.SECONDS));
+    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanOrderByIdAsc(someStartId);
+  }
+
+  @Test
+  public void testPublishWithGap() throws Exception {
+    ReleaseMessage someLateMessage = assembleReleaseMessage(someStartId + 1, "someMessage");
+    ReleaseMessage someMessage = assembleReleaseMessage(someStartId + 2, "anotherMessage");
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someStartId))
+        .thenReturn(Collections.emptyList(), Lists.newArrayList(someMessage));
+
+    releaseMessageSource.start(someStartId, received::addAll);
+    InProcessReleaseMessageSource.publish(someMessage);
+    assertEquals(someMessage, received.poll(5, TimeUnit.SECONDS));
+
+    // the transaction with the smaller id commits later
+    InProcessReleaseMessageSource.publish(someLateMessage);
+    assertEquals(someLateMessage, received.poll(5, TimeUnit.SECONDS));
+
+    InProcessReleaseMessageSource.publish(someLateMessage);
+    InProcessReleaseMessageSource.publish(someMessage);
+    assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testPublishAfterStop() throws Exception {
+    List<ReleaseMessage> messages = Lists.newCopyOnWriteArrayList();
+    releaseMessageSource.start(someStartId, messages::addAll);
+    releaseMessageSource.stop();
+
+    InProcessReleaseMessageSource.publish(assembleReleaseMessage(someStartId + 1, "someMessage"));
+
+    TimeUnit.MILLISECONDS.sleep(100);
+    assertEquals(0, messages.size());
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+}
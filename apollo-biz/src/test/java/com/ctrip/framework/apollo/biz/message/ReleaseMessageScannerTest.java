@@ -12,6 +12,7 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.concurrent.TimeUnit;
@@ -38,6 +39,9 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
     ReflectionTestUtils.setField(releaseMessageScanner, "bizConfig", bizConfig);
     databaseScanInterval = 100; //100 ms
     when(bizConfig.releaseMessageScanIntervalInMilli()).thenReturn(databaseScanInterval);
+    when(bizConfig.releaseMessageScanMinIntervalInMilli()).thenReturn(databaseScanInterval);
+    when(bizConfig.releaseMessageScanBatch()).thenReturn(500);
+    when(bizConfig.releaseMessageSource()).thenReturn(ReleaseMessageScanner.DATABASE_SOURCE);
     releaseMessageScanner.afterPropertiesSet();
   }
 
@@ -51,7 +55,7 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
     long someId = 100;
     ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, someMessage);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+    when(releaseMessageRepository.findByIdGreaterThanOrderByIdAsc(0L, PageRequest.of(0, 500))).thenReturn(
         Lists.newArrayList(someReleaseMessage));
 
     ReleaseMessage someListenerMessage =
@@ -68,7 +72,7 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
     long anotherId = someId + 1;
     ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(anotherId, anotherMessage);
 
-    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(someId)).thenReturn(
+    when(releaseMessageRepository.findByIdGreaterThanOrderByIdAsc(someId, PageRequest.of(0, 500))).thenReturn(
         Lists.newArrayList(anotherReleaseMessage));
 
     ReleaseMessage anotherListenerMessage =
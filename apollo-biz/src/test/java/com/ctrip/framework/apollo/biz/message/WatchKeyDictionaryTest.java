@@ -0,0 +1,118 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WatchKeyDictionaryTest {
+  private WatchKeyDictionary watchKeyDictionary;
+  private String someAppId;
+  private String someCluster;
+  private String someNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    watchKeyDictionary = new WatchKeyDictionary();
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    someNamespace = "someNamespace";
+  }
+
+  @Test
+  public void testIntern() throws Exception {
+    assertEquals(WatchKeyDictionary.NOT_FOUND, watchKeyDictionary.find(someAppId, someCluster, someNamespace));
+
+    int someId = watchKeyDictionary.intern(someAppId, someCluster, someNamespace);
+    int anotherId = watchKeyDictionary.intern(someAppId, someCluster, "anotherNamespace");
+
+    assertNotEquals(someId, anotherId);
+    assertEquals(someId, watchKeyDictionary.intern(someAppId, someCluster, someNamespace));
+    assertEquals(someId, watchKeyDictionary.find(someAppId, someCluster, someNamespace));
+    assertEquals(someId, watchKeyDictionary.find("someAppId+someCluster+someNamespace"));
+    assertEquals("someAppId+someCluster+someNamespace", watchKeyDictionary.watchKey(someId));
+    assertEquals(someAppId, watchKeyDictionary.appId(someId));
+    assertEquals(someCluster, watchKeyDictionary.cluster(someId));
+    assertEquals(someNamespace, watchKeyDictionary.namespace(someId));
+    assertEquals(2, watchKeyDictionary.size());
+  }
+
+  @Test
+  public void testInternIgnoresCase() throws Exception {
+    int someId = watchKeyDictionary.intern(someAppId, someCluster, someNamespace);
+
+    assertEquals(someId, watchKeyDictionary.find(someAppId.toUpperCase(), someCluster, someNamespace.toLowerCase()));
+    assertEquals(someId, watchKeyDictionary.intern("SOMEAPPID+somecluster+SomeNamespace"));
+    assertEquals(someAppId, watchKeyDictionary.appId(someId));
+  }
+
+  @Test
+  public void testInternWatchKey() throws Exception {
+    int someId = watchKeyDictionary.intern("someAppId+someCluster+someNamespace");
+
+    assertEquals(someId, watchKeyDictionary.find(someAppId, someCluster, someNamespace));
+    assertEquals(someNamespace, watchKeyDictionary.namespace(someId));
+  }
+
+  @Test
+  public void testInvalidWatchKey() throws Exception {
+    watchKeyDictionary.intern(someAppId, someCluster, someNamespace);
+
+    assertEquals(WatchKeyDictionary.NOT_FOUND, watchKeyDictionary.intern("someAppId+someCluster"));
+    assertEquals(WatchKeyDictionary.NOT_FOUND, watchKeyDictionary.intern("someAppId+someCluster+"));
+    assertEquals(WatchKeyDictionary.NOT_FOUND, watchKeyDictionary.intern("+someCluster+someNamespace"));
+    assertEquals(WatchKeyDictionary.NOT_FOUND, watchKeyDictionary.intern("a+b+c+d"));
+    assertEquals(WatchKeyDictionary.NOT_FOUND, watchKeyDictionary.intern(null));
+    assertEquals(WatchKeyDictionary.NOT_FOUND, watchKeyDictionary.find("someAppId+someClusterX+someNamespace"));
+    assertEquals(1, watchKeyDictionary.size());
+  }
+
+  @Test
+  public void testInternWithResize() throws Exception {
+    int count = 10000;
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, watchKeyDictionary.intern(someAppId + i, someCluster, someNamespace));
+    }
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, watchKeyDictionary.find(someAppId + i, someCluster, someNamespace));
+      assertEquals(someAppId + i, watchKeyDictionary.appId(i));
+    }
+    assertEquals(count, watchKeyDictionary.size());
+  }
+
+  @Test
+  public void testConcurrentIntern() throws Exception {
+    int threads = 8;
+    int keys = 2000;
+    Set<Integer> ids = ConcurrentHashMap.newKeySet();
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch latch = new CountDownLatch(threads);
+
+    for (int i = 0; i < threads; i++) {
+      executorService.submit(() -> {
+        try {
+          for (int j = 0; j < keys; j++) {
+            ids.add(watchKeyDictionary.intern(someAppId, someCluster, someNamespace + j));
+          }
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    assertEquals(keys, ids.size());
+    assertEquals(keys, watchKeyDictionary.size());
+  }
+}
@@ -0,0 +1,66 @@
+package com.ctrip.framework.apollo.biz.repository;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.entity.Namespace;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.annotation.Rollback;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReleaseRepositoryTest extends AbstractIntegrationTest {
+  @Autowired
+  private ReleaseRepository releaseRepository;
+  @Autowired
+  private NamespaceRepository namespaceRepository;
+
+  @Rollback
+  @Test
+  public void testFindLatestActiveReleaseIdsOfNamespaces() {
+    Namespace someNamespace = saveNamespace("someNamespace");
+    Namespace anotherNamespace = saveNamespace("anotherNamespace");
+    Namespace yetAnotherNamespace = saveNamespace("yetAnotherNamespace");
+    saveRelease("someNamespace", false);
+    Release someLatestRelease = saveRelease("someNamespace", false);
+    Release anotherLatestRelease = saveRelease("anotherNamespace", false);
+    saveRelease("anotherNamespace", true);
+    Release yetAnotherLatestRelease = saveRelease("yetAnotherNamespace", false);
+    saveRelease("namespaceNotExists", false);
+
+    long fromNamespaceId = someNamespace.getId() - 1;
+    List<Long> firstPage = namespaceRepository.findIdsGreaterThan(fromNamespaceId, PageRequest.of(0, 2));
+    List<Long> secondPage = namespaceRepository.findIdsGreaterThan(firstPage.get(firstPage.size() - 1),
+        PageRequest.of(0, 2));
+
+    assertEquals(Lists.newArrayList(someNamespace.getId(), anotherNamespace.getId()), firstPage);
+    assertEquals(Lists.newArrayList(yetAnotherNamespace.getId()), secondPage);
+    assertEquals(Sets.newHashSet(someLatestRelease.getId(), anotherLatestRelease.getId()),
+        Sets.newHashSet(releaseRepository.findLatestActiveReleaseIdsOfNamespaces(fromNamespaceId,
+            anotherNamespace.getId())));
+    assertEquals(Lists.newArrayList(yetAnotherLatestRelease.getId()),
+        releaseRepository.findLatestActiveReleaseIdsOfNamespaces(anotherNamespace.getId(),
+            yetAnotherNamespace.getId()));
+  }
+
+  private Namespace saveNamespace(String namespaceName) {
+    return namespaceRepository.save(new Namespace("someAppId", "default", namespaceName));
+  }
+
+  private Release saveRelease(String namespaceName, boolean abandoned) {
+    Release release = new Release();
+    release.setAppId("someAppId");
+    release.setClusterName("default");
+    release.setNamespaceName(namespaceName);
+    release.setName("someName");
+    release.setComment("someComment");
+    release.setReleaseKey("someReleaseKey" + System.nanoTime());
+    release.setConfigurations("{}");
+    release.setAbandoned(abandoned);
+    return releaseRepository.save(release);
+  }
+}
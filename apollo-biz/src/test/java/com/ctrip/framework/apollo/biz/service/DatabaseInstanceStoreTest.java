@@ -0,0 +1,107 @@
+package com.ctrip.framework.apollo.biz.service;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Instance;
+import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
+import com.google.common.collect.Sets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.Rollback;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DatabaseInstanceStoreTest extends AbstractIntegrationTest {
+  @Autowired
+  private InstanceService instanceService;
+  @Autowired
+  private BizConfig bizConfig;
+
+  private DatabaseInstanceStore databaseInstanceStore;
+
+  private String someConfigAppId;
+  private String someConfigClusterName;
+  private String someConfigNamespaceName;
+  private String anotherConfigNamespaceName;
+  private String someReleaseKey;
+
+  @Before
+  public void setUp() throws Exception {
+    databaseInstanceStore = new DatabaseInstanceStore(instanceService, bizConfig);
+
+    someConfigAppId = "someConfigAppId";
+    someConfigClusterName = "someConfigClusterName";
+    someConfigNamespaceName = "someConfigNamespaceName";
+    anotherConfigNamespaceName = "anotherConfigNamespaceName";
+    someReleaseKey = "someReleaseKey";
+  }
+
+  @Test
+  @Rollback
+  public void testPurgeInstanceConfigs() throws Exception {
+    long now = System.currentTimeMillis();
+    Date expireTime = new Date(now - TimeUnit.HOURS.toMillis(25));
+    Date someExpiredTime = new Date(now - TimeUnit.HOURS.toMillis(50));
+    Date anotherExpiredTime = new Date(now - TimeUnit.HOURS.toMillis(30));
+    Date someValidTime = new Date(now - TimeUnit.HOURS.toMillis(1));
+
+    Instance expiredInstance = instanceService.createInstance(assembleInstance("someIp"));
+    Instance activeInstance = instanceService.createInstance(assembleInstance("anotherIp"));
+
+    //expired instance configs in different hours
+    prepareInstanceConfig(expiredInstance.getId(), someConfigNamespaceName, someExpiredTime);
+    prepareInstanceConfig(expiredInstance.getId(), anotherConfigNamespaceName, anotherExpiredTime);
+    //the active instance still has a valid instance config
+    prepareInstanceConfig(activeInstance.getId(), someConfigNamespaceName, anotherExpiredTime);
+    prepareInstanceConfig(activeInstance.getId(), anotherConfigNamespaceName, someValidTime);
+
+    assertEquals(3, databaseInstanceStore.purgeInstanceConfigs(expireTime));
+
+    assertNull(instanceService.findInstanceConfig(expiredInstance.getId(), someConfigAppId,
+        someConfigNamespaceName));
+    assertNull(instanceService.findInstanceConfig(expiredInstance.getId(), someConfigAppId,
+        anotherConfigNamespaceName));
+    assertNull(instanceService.findInstanceConfig(activeInstance.getId(), someConfigAppId,
+        someConfigNamespaceName));
+    assertNotNull(instanceService.findInstanceConfig(activeInstance.getId(), someConfigAppId,
+        anotherConfigNamespaceName));
+
+    List<Instance> instances = instanceService.findInstancesByIds(Sets.newHashSet(expiredInstance.getId(),
+        activeInstance.getId()));
+    assertEquals(1, instances.size());
+    assertEquals(activeInstance.getId(), instances.get(0).getId());
+
+    //nothing more to purge
+    assertEquals(0, databaseInstanceStore.purgeInstanceConfigs(expireTime));
+  }
+
+  private Instance assembleInstance(String ip) {
+    Instance instance = new Instance();
+    instance.setAppId("someAppId");
+    instance.setClusterName("someClusterName");
+    instance.setDataCenter("someDataCenter");
+    instance.setIp(ip);
+    return instance;
+  }
+
+  private void prepareInstanceConfig(long instanceId, String configNamespaceName, Date lastModifiedTime) {
+    InstanceConfig instanceConfig = new InstanceConfig();
+    instanceConfig.setInstanceId(instanceId);
+    instanceConfig.setConfigAppId(someConfigAppId);
+    instanceConfig.setConfigClusterName(someConfigClusterName);
+    instanceConfig.setConfigNamespaceName(configNamespaceName);
+    instanceConfig.setReleaseKey(someReleaseKey);
+    instanceConfig.setReleaseDeliveryTime(lastModifiedTime);
+    instanceConfig.setDataChangeCreatedTime(lastModifiedTime);
+    instanceConfig.setDataChangeLastModifiedTime(lastModifiedTime);
+    instanceService.createInstanceConfig(instanceConfig);
+  }
+}
@@ -237,6 +237,56 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     assertEquals(Lists.newArrayList(someInstanceConfig, anotherInstanceConfig), instanceConfigs);
   }
 
+  @Test
+  @Rollback
+  public void testFindOrCreateInstancesAndUpsertInstanceConfigs() throws Exception {
+    String someAppId = "someAppId";
+    String someClusterName = "someClusterName";
+    String someDataCenter = "someDataCenter";
+    String someIp = "someIp";
+    String anotherIp = "anotherIp";
+    String someConfigAppId = "someConfigAppId";
+    String someConfigClusterName = "someConfigClusterName";
+    String someConfigNamespaceName = "someConfigNamespaceName";
+    String someReleaseKey = "someReleaseKey";
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    Instance someInstance = instanceService.createInstance(assembleInstance(someAppId,
+        someClusterName, someDataCenter, someIp));
+    Instance existedInstance = assembleInstance(someAppId, someClusterName, someDataCenter, someIp);
+    Instance newInstance = assembleInstance(someAppId, someClusterName, someDataCenter, anotherIp);
+
+    instanceService.findOrCreateInstances(Lists.newArrayList(existedInstance, newInstance));
+
+    assertEquals(someInstance.getId(), existedInstance.getId());
+    assertNotEquals(0, newInstance.getId());
+    assertEquals(newInstance.getId(), instanceService.findInstance(someAppId, someClusterName,
+        someDataCenter, anotherIp).getId());
+
+    Date someValidDate = new Date();
+    prepareInstanceConfigForInstance(someInstance.getId(), someConfigAppId, someConfigClusterName,
+        someConfigNamespaceName, someReleaseKey, someValidDate);
+
+    //same release key and updated not long ago, so only the new one is written
+    int written = instanceService.upsertInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstance.getId(), someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey, someValidDate),
+        assembleInstanceConfig(newInstance.getId(), someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, someReleaseKey, someValidDate)), 60000);
+
+    assertEquals(1, written);
+    assertEquals(someReleaseKey, instanceService.findInstanceConfig(newInstance.getId(),
+        someConfigAppId, someConfigNamespaceName).getReleaseKey());
+
+    written = instanceService.upsertInstanceConfigs(Lists.newArrayList(
+        assembleInstanceConfig(someInstance.getId(), someConfigAppId, someConfigClusterName,
+            someConfigNamespaceName, anotherReleaseKey, someValidDate)), 60000);
+
+    assertEquals(1, written);
+    assertEquals(anotherReleaseKey, instanceService.findInstanceConfig(someInstance.getId(),
+        someConfigAppId, someConfigNamespaceName).getReleaseKey());
+  }
+
   private InstanceConfig prepareInstanceConfigForInstance(long instanceId, String configAppId,
                                                           String configClusterName, String
                                                               configNamespace, String releaseKey,
@@ -271,4 +321,13 @@ public class InstanceServiceTest extends AbstractIntegrationTest {
     instanceConfig.setReleaseKey(releaseKey);
     return instanceConfig;
   }
+
+  private InstanceConfig assembleInstanceConfig(long instanceId, String configAppId, String
+      configClusterName, String configNamespaceName, String releaseKey, Date offerTime) {
+    InstanceConfig instanceConfig = assembleInstanceConfig(instanceId, configAppId,
+        configClusterName, configNamespaceName, releaseKey);
+    instanceConfig.setReleaseDeliveryTime(offerTime);
+    instanceConfig.setDataChangeLastModifiedTime(offerTime);
+    return instanceConfig;
+  }
 }
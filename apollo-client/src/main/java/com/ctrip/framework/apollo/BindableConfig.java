@@ -0,0 +1,26 @@
+package com.ctrip.framework.apollo;
+
+/**
+ * 支持把配置项绑定为 {@link ConfigKey} 句柄的 Config<br>
+ * 与 {@link Config} 分开定义，已有的 Config 实现不需要修改；默认的 ConfigFactory 创建的 Config 都实现了该接口。
+ */
+public interface BindableConfig extends Config {
+    /**
+     * Bind the property with the given key to a {@link ConfigKey} handle. The value is parsed once for each config
+     * change, and {@link ConfigKey#get()} returns it without lookup, parsing or locking. The handle is updated before
+     * the config change listeners are notified.
+     *
+     * @param key
+     *            the property name
+     * @param type
+     *            the property type, one of String, the primitive types and their wrappers, Date and enum types
+     * @param defaultValue
+     *            the default value when key is not found or any error occurred
+     * @param <T>
+     *            the property type
+     * @return the handle, binding the same key, type and default value again returns the same handle
+     * @throws IllegalArgumentException
+     *             if the type is not supported
+     */
+    public <T> ConfigKey<T> bind(String key, Class<T> type, T defaultValue);
+}
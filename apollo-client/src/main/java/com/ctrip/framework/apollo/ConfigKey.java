@@ -0,0 +1,93 @@
+package com.ctrip.framework.apollo;
+
+import com.google.common.base.Function;
+
+/**
+ * 绑定到某个配置项的句柄，由 {@link BindableConfig#bind(String, Class, Object)} 创建<br>
+ * 值在配置变化时解析一次，{@link #get()} 只是一次 volatile 读，不需要查找、解析和加锁，适合在热点路径中读取配置。<br>
+ * 句柄应该创建一次后保存下来使用，而不是每次读取时创建；相同的配置项、类型和默认值只会创建一个句柄。
+ *
+ * @param <T>
+ *            the property type
+ */
+public final class ConfigKey<T> {
+    private final Config m_config;
+    private final String m_key;
+    private final Function<String, T> m_parser;
+    private final T m_defaultValue;
+    private volatile T m_value;
+
+    /**
+     * Constructor.
+     *
+     * @param config
+     *            the config which the key belongs to
+     * @param key
+     *            the property name
+     * @param parser
+     *            the transform {@link Function} from String to the property type
+     * @param defaultValue
+     *            the default value when key is not found or any error occurred
+     */
+    public ConfigKey(Config config, String key, Function<String, T> parser, T defaultValue) {
+        m_config = config;
+        m_key = key;
+        m_parser = parser;
+        m_defaultValue = defaultValue;
+        m_value = defaultValue;
+    }
+
+    public String getKey() {
+        return m_key;
+    }
+
+    /**
+     * Return the current property value, or the default value if the key doesn't exist.
+     *
+     * @return the property value
+     */
+    public T get() {
+        return m_value;
+    }
+
+    /**
+     * Return the current property value as int, the value must be a non-null {@link Number}.
+     */
+    public int intValue() {
+        return ((Number) m_value).intValue();
+    }
+
+    /**
+     * Return the current property value as long, the value must be a non-null {@link Number}.
+     */
+    public long longValue() {
+        return ((Number) m_value).longValue();
+    }
+
+    /**
+     * Return the current property value as double, the value must be a non-null {@link Number}.
+     */
+    public double doubleValue() {
+        return ((Number) m_value).doubleValue();
+    }
+
+    /**
+     * Return the current property value as boolean, the value must be a non-null {@link Boolean}.
+     */
+    public boolean booleanValue() {
+        return (Boolean) m_value;
+    }
+
+    /**
+     * 从 Config 中重新读取并解析配置值。<br>
+     * 加锁保证并发刷新时，后开始的刷新(读到更新的配置)最后写入。
+     */
+    public synchronized void refresh() {
+        m_value = m_config.getProperty(m_key, m_parser, m_defaultValue);
+    }
+
+    @Override
+    public String toString() {
+        return "ConfigKey{" + "key='" + m_key + '\'' + ", value=" + m_value + '}';
+    }
+}
@@ -1,20 +1,28 @@
 package com.ctrip.framework.apollo.internals;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.BindableConfig;
 import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.ConfigKey;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
@@ -22,7 +30,6 @@ import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.model.ConfigChange;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.tracer.Tracer;
-import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.factory.PropertiesFactory;
 import com.ctrip.framework.apollo.util.function.Functions;
@@ -31,31 +38,46 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.primitives.Primitives;
 
 /**
  * 实现 Config 接口，Config 抽象类，实现了1）缓存读取属性值、2）异步通知监听器、3）计算属性变化等等特性。
  * 
  * @author Jason Song(song_s@ctrip.com)
  */
-public abstract class AbstractConfig implements Config {
+public abstract class AbstractConfig implements BindableConfig {
     private static final Logger logger = LoggerFactory.getLogger(AbstractConfig.class);
 
     /**
      * ExecutorService 对象，用于配置变化时，异步通知 ConfigChangeListener 监听器们
      *
-     * 静态属性，所有 Config 共享该线程池。
+     * 静态属性，所有 Config 共享该线程池。线程数有界，同一个监听器在线程池中最多只有一个任务，按顺序通知。
      */
     private static final ExecutorService m_executorService;
+    /**
+     * 合并窗口结束时通知合并后的配置变更，所有 Config 共享
+     */
+    private static final ScheduledExecutorService m_debounceExecutorService;
 
     /**
-     * ConfigChangeListener 集合
+     * ConfigChangeListener 的注册信息，按注册顺序排列，通过自身加锁
+     */
+    private final Map<ConfigChangeListener, ConfigChangeListenerRegistration> m_listeners = Maps.newLinkedHashMap();
+    /**
+     * 按感兴趣的配置项和前缀建立的监听器索引，监听器增减时重建
      */
-    private final List<ConfigChangeListener> m_listeners = Lists.newCopyOnWriteArrayList();
-    private final Map<ConfigChangeListener, Set<String>> m_interestedKeys = Maps.newConcurrentMap();
-    private final Map<ConfigChangeListener, Set<String>> m_interestedKeyPrefixes = Maps.newConcurrentMap();
+    private volatile ConfigChangeListenerIndex m_listenerIndex = ConfigChangeListenerIndex.EMPTY;
+    /**
+     * 绑定的配置项句柄，按类型和默认值去重，重复绑定不会增加句柄<br>
+     * KEY：配置项的名字<br>
+     * VALUE：[类型, 默认值] 与句柄的 Map
+     */
+    private final ConcurrentMap<String, ConcurrentMap<List<Object>, ConfigKey<?>>> m_configKeys = Maps
+            .newConcurrentMap();
     private final ConfigUtil m_configUtil;
     private volatile Cache<String, Integer> m_integerCache;
     private volatile Cache<String, Long> m_longCache;
@@ -81,11 +103,30 @@ public abstract class AbstractConfig implements Config {
      * {@link #getValueAndStoreToCache(String, Function, Cache, Object)} 方法
      */
     private final AtomicLong m_configVersion; // indicate config version
+    /**
+     * 当前版本的配置快照，为空时通过 {@link #getProperty(String, String)} 和上述 Cache 读取
+     */
+    private volatile ConfigSnapshot m_snapshot;
+    /**
+     * 合并窗口内等待通知的配置变更，按配置项合并，通过自身加锁<br>
+     * KEY：配置项
+     */
+    private final Map<String, ConfigChange> m_pendingChanges = Maps.newLinkedHashMap();
+    /**
+     * 是否已经安排了合并窗口结束时的通知
+     */
+    private boolean m_pendingChangesScheduled;
 
     protected PropertiesFactory propertiesFactory;
 
     static {
-        m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory.create("Config", true));
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), ApolloThreadFactory.create("Config", true));
+        executor.allowCoreThreadTimeOut(true);
+        m_executorService = executor;
+        m_debounceExecutorService = Executors
+                .newSingleThreadScheduledExecutor(ApolloThreadFactory.create("ConfigChangeDebounce", true));
     }
 
     public AbstractConfig() {
@@ -110,27 +151,34 @@ public abstract class AbstractConfig implements Config {
     @Override
     public void addChangeListener(ConfigChangeListener listener, Set<String> interestedKeys,
             Set<String> interestedKeyPrefixes) {
-        if (!m_listeners.contains(listener)) {
-            m_listeners.add(listener);
-            if (interestedKeys != null && !interestedKeys.isEmpty()) {
-                m_interestedKeys.put(listener, Sets.newHashSet(interestedKeys));
-            }
-            if (interestedKeyPrefixes != null && !interestedKeyPrefixes.isEmpty()) {
-                m_interestedKeyPrefixes.put(listener, Sets.newHashSet(interestedKeyPrefixes));
+        synchronized (m_listeners) {
+            if (!m_listeners.containsKey(listener)) {
+                m_listeners.put(listener,
+                        new ConfigChangeListenerRegistration(listener, interestedKeys, interestedKeyPrefixes));
+                m_listenerIndex = new ConfigChangeListenerIndex(Lists.newArrayList(m_listeners.values()));
             }
         }
     }
 
     @Override
     public boolean removeChangeListener(ConfigChangeListener listener) {
-        m_interestedKeys.remove(listener);
-        m_interestedKeyPrefixes.remove(listener);
-        return m_listeners.remove(listener);
+        synchronized (m_listeners) {
+            if (m_listeners.remove(listener) == null) {
+                return false;
+            }
+            m_listenerIndex = new ConfigChangeListenerIndex(Lists.newArrayList(m_listeners.values()));
+            return true;
+        }
     }
 
     @Override
     public Integer getIntProperty(String key, Integer defaultValue) {
         try {
+            Integer value = getValueFromSnapshot(key, ConfigSnapshot.INTEGER, Functions.TO_INT_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_integerCache == null) {
                 synchronized (this) {
                     if (m_integerCache == null) {
@@ -150,6 +198,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public Long getLongProperty(String key, Long defaultValue) {
         try {
+            Long value = getValueFromSnapshot(key, ConfigSnapshot.LONG, Functions.TO_LONG_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_longCache == null) {
                 synchronized (this) {
                     if (m_longCache == null) {
@@ -169,6 +222,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public Short getShortProperty(String key, Short defaultValue) {
         try {
+            Short value = getValueFromSnapshot(key, ConfigSnapshot.SHORT, Functions.TO_SHORT_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_shortCache == null) {
                 synchronized (this) {
                     if (m_shortCache == null) {
@@ -188,6 +246,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public Float getFloatProperty(String key, Float defaultValue) {
         try {
+            Float value = getValueFromSnapshot(key, ConfigSnapshot.FLOAT, Functions.TO_FLOAT_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_floatCache == null) {
                 synchronized (this) {
                     if (m_floatCache == null) {
@@ -207,6 +270,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public Double getDoubleProperty(String key, Double defaultValue) {
         try {
+            Double value = getValueFromSnapshot(key, ConfigSnapshot.DOUBLE, Functions.TO_DOUBLE_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_doubleCache == null) {
                 synchronized (this) {
                     if (m_doubleCache == null) {
@@ -226,6 +294,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public Byte getByteProperty(String key, Byte defaultValue) {
         try {
+            Byte value = getValueFromSnapshot(key, ConfigSnapshot.BYTE, Functions.TO_BYTE_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_byteCache == null) {
                 synchronized (this) {
                     if (m_byteCache == null) {
@@ -245,6 +318,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public Boolean getBooleanProperty(String key, Boolean defaultValue) {
         try {
+            Boolean value = getValueFromSnapshot(key, ConfigSnapshot.BOOLEAN, Functions.TO_BOOLEAN_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_booleanCache == null) {
                 synchronized (this) {
                     if (m_booleanCache == null) {
@@ -311,6 +389,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public Date getDateProperty(String key, Date defaultValue) {
         try {
+            Date value = getValueFromSnapshot(key, ConfigSnapshot.DATE, Functions.TO_DATE_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_dateCache == null) {
                 synchronized (this) {
                     if (m_dateCache == null) {
@@ -363,6 +446,11 @@ public abstract class AbstractConfig implements Config {
     @Override
     public long getDurationProperty(String key, long defaultValue) {
         try {
+            Long value = getValueFromSnapshot(key, ConfigSnapshot.DURATION, Functions.TO_DURATION_FUNCTION);
+            if (value != null) {
+                return value;
+            }
+
             if (m_durationCache == null) {
                 synchronized (this) {
                     if (m_durationCache == null) {
@@ -397,6 +485,109 @@ public abstract class AbstractConfig implements Config {
         return defaultValue;
     }
 
+    @SuppressWarnings("unchecked")
+    @Override
+    public <T> ConfigKey<T> bind(String key, Class<T> type, T defaultValue) {
+        ConcurrentMap<List<Object>, ConfigKey<?>> configKeys = m_configKeys.get(key);
+        if (configKeys == null) {
+            ConcurrentMap<List<Object>, ConfigKey<?>> newConfigKeys = Maps.newConcurrentMap();
+            configKeys = m_configKeys.putIfAbsent(key, newConfigKeys);
+            if (configKeys == null) {
+                configKeys = newConfigKeys;
+            }
+        }
+        // int.class and Integer.class share the same handle
+        List<Object> bindingKey = Arrays.<Object>asList(Primitives.wrap(type), defaultValue);
+        ConfigKey<?> configKey = configKeys.get(bindingKey);
+        if (configKey != null) {
+            return (ConfigKey<T>) configKey;
+        }
+
+        ConfigKey<T> newConfigKey = new ConfigKey<>(this, key, parserFor(type), defaultValue);
+        // only publish the handle after it is initialized
+        newConfigKey.refresh();
+        configKey = configKeys.putIfAbsent(bindingKey, newConfigKey);
+        if (configKey != null) {
+            return (ConfigKey<T>) configKey;
+        }
+        // read again after registered, so that a change between the two reads is not missed
+        newConfigKey.refresh();
+        return newConfigKey;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Function<String, T> parserFor(Class<T> type) {
+        Class<?> wrappedType = Primitives.wrap(type);
+        Function<String, ?> parser;
+        if (wrappedType == String.class) {
+            parser = com.google.common.base.Functions.identity();
+        } else if (wrappedType == Integer.class) {
+            parser = Functions.TO_INT_FUNCTION;
+        } else if (wrappedType == Long.class) {
+            parser = Functions.TO_LONG_FUNCTION;
+        } else if (wrappedType == Short.class) {
+            parser = Functions.TO_SHORT_FUNCTION;
+        } else if (wrappedType == Float.class) {
+            parser = Functions.TO_FLOAT_FUNCTION;
+        } else if (wrappedType == Double.class) {
+            parser = Functions.TO_DOUBLE_FUNCTION;
+        } else if (wrappedType == Byte.class) {
+            parser = Functions.TO_BYTE_FUNCTION;
+        } else if (wrappedType == Boolean.class) {
+            parser = Functions.TO_BOOLEAN_FUNCTION;
+        } else if (wrappedType == Date.class) {
+            parser = Functions.TO_DATE_FUNCTION;
+        } else if (wrappedType.isEnum()) {
+            parser = enumParser(wrappedType.asSubclass(Enum.class));
+        } else {
+            throw new IllegalArgumentException(String.format("Unsupported config key type %s", type.getName()));
+        }
+        return (Function<String, T>) parser;
+    }
+
+    private static <E extends Enum<E>> Function<String, E> enumParser(final Class<E> enumType) {
+        return new Function<String, E>() {
+            @Override
+            public E apply(String input) {
+                return Enum.valueOf(enumType, input);
+            }
+        };
+    }
+
+    /**
+     * 刷新变化的配置项绑定的句柄
+     *
+     * @param changedKeys
+     *            变化的配置项
+     */
+    private void refreshConfigKeys(Set<String> changedKeys) {
+        if (m_configKeys.isEmpty()) {
+            return;
+        }
+        for (String changedKey : changedKeys) {
+            Map<List<Object>, ConfigKey<?>> configKeys = m_configKeys.get(changedKey);
+            if (configKeys == null) {
+                continue;
+            }
+            for (ConfigKey<?> configKey : configKeys.values()) {
+                configKey.refresh();
+            }
+        }
+    }
+
+    /**
+     * 从配置快照中获取类型转换后的值
+     *
+     * @return 值，没有快照或者快照中没有该配置项时返回 null
+     */
+    private <T> T getValueFromSnapshot(String key, int type, Function<String, T> parser) {
+        ConfigSnapshot snapshot = m_snapshot;
+        if (snapshot == null) {
+            return null;
+        }
+        return snapshot.getTypedValue(key, type, parser);
+    }
+
     /**
      * 从缓存中获取数据, 如果没有, 添加默认值
      * 
@@ -468,6 +659,57 @@ public abstract class AbstractConfig implements Config {
         return cache;
     }
 
+    /**
+     * @return 当前版本的配置快照，可能为空
+     */
+    ConfigSnapshot getSnapshot() {
+        return m_snapshot;
+    }
+
+    /**
+     * 使用合并后的配置创建新版本的快照，替换当前快照
+     *
+     * @param properties
+     *            按照优先级合并后的配置
+     */
+    void updateSnapshot(Map<String, String> properties) {
+        synchronized (this) {
+            m_snapshot = new ConfigSnapshot(m_configVersion.incrementAndGet(), properties);
+        }
+    }
+
+    /**
+     * 在当前快照的基础上应用变化的配置项，未变化配置项的类型转换结果保留；没有快照时忽略
+     *
+     * @param changes
+     *            变化的配置项，值为 null 表示删除
+     */
+    void applySnapshotChanges(Map<String, String> changes) {
+        synchronized (this) {
+            ConfigSnapshot snapshot = m_snapshot;
+            if (snapshot != null) {
+                m_snapshot = snapshot.withChanges(m_configVersion.incrementAndGet(), changes);
+            }
+        }
+    }
+
+    /**
+     * 只清空变化的配置项的缓存
+     *
+     * @param keys
+     *            变化的配置项
+     */
+    protected void clearConfigCache(Collection<String> keys) {
+        synchronized (this) {
+            for (Cache c : allCaches) {
+                if (c != null) {
+                    c.invalidateAll(keys);
+                }
+            }
+            m_configVersion.incrementAndGet();
+        }
+    }
+
     /**
      * Clear config cache
      */
@@ -490,63 +732,77 @@ public abstract class AbstractConfig implements Config {
      * @param changeEvent
      */
     protected void fireConfigChange(final ConfigChangeEvent changeEvent) {
-    	// 缓存 ConfigChangeListener 数组
-        for (final ConfigChangeListener listener : m_listeners) {
-            // check whether the listener is interested in this change event
-            if (!isConfigChangeListenerInterested(listener, changeEvent)) {
-                continue;
+        // 先更新句柄，监听器中读到的是新的值
+        refreshConfigKeys(changeEvent.changedKeys());
+
+        long debounceInMillis = m_configUtil.getConfigChangeDebounceInMillis();
+        if (debounceInMillis <= 0) {
+            dispatchConfigChange(changeEvent);
+            return;
+        }
+        // 合并窗口内的变更，窗口结束时统一通知
+        synchronized (m_pendingChanges) {
+            mergePendingChanges(changeEvent);
+            if (m_pendingChangesScheduled) {
+                return;
             }
-            // 提交到线程池中，异步并发通知监听器们，从而避免有些监听器执行时间过长。
-            m_executorService.submit(new Runnable() {
-                @Override
-                public void run() {
-                    String listenerName = listener.getClass().getName();
-                    Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
-                    try {
-                    	// 通知监听器
-                        listener.onChange(changeEvent);
-                        transaction.setStatus(Transaction.SUCCESS);
-                    } catch (Throwable ex) {
-                        transaction.setStatus(ex);
-                        Tracer.logError(ex);
-                        logger.error("Failed to invoke config change listener {}", listenerName, ex);
-                    } finally {
-                        transaction.complete();
-                    }
-                }
-            });
+            m_pendingChangesScheduled = true;
         }
+        m_debounceExecutorService.schedule(new Runnable() {
+            @Override
+            public void run() {
+                firePendingChanges(changeEvent.getNamespace());
+            }
+        }, debounceInMillis, TimeUnit.MILLISECONDS);
     }
 
-    private boolean isConfigChangeListenerInterested(ConfigChangeListener configChangeListener,
-            ConfigChangeEvent configChangeEvent) {
-        Set<String> interestedKeys = m_interestedKeys.get(configChangeListener);
-        Set<String> interestedKeyPrefixes = m_interestedKeyPrefixes.get(configChangeListener);
-
-        if ((interestedKeys == null || interestedKeys.isEmpty())
-                && (interestedKeyPrefixes == null || interestedKeyPrefixes.isEmpty())) {
-            return true; // no interested keys means interested in all keys
-        }
-
-        if (interestedKeys != null) {
-            for (String interestedKey : interestedKeys) {
-                if (configChangeEvent.isChanged(interestedKey)) {
-                    return true;
-                }
+    /**
+     * 合并变更：保留第一次的旧值和最后一次的新值，重新计算变化类型，前后相同的配置项不再通知
+     */
+    private void mergePendingChanges(ConfigChangeEvent changeEvent) {
+        for (String key : changeEvent.changedKeys()) {
+            ConfigChange change = changeEvent.getChange(key);
+            ConfigChange pending = m_pendingChanges.get(key);
+            String oldValue = pending == null ? change.getOldValue() : pending.getOldValue();
+            String newValue = change.getNewValue();
+            if (Objects.equal(oldValue, newValue)) {
+                m_pendingChanges.remove(key);
+                continue;
             }
+            PropertyChangeType changeType = PropertyChangeType.MODIFIED;
+            if (oldValue == null) {
+                changeType = PropertyChangeType.ADDED;
+            } else if (newValue == null) {
+                changeType = PropertyChangeType.DELETED;
+            }
+            m_pendingChanges.put(key, new ConfigChange(change.getNamespace(), key, oldValue, newValue, changeType));
         }
+    }
 
-        if (interestedKeyPrefixes != null) {
-            for (String prefix : interestedKeyPrefixes) {
-                for (final String changedKey : configChangeEvent.changedKeys()) {
-                    if (changedKey.startsWith(prefix)) {
-                        return true;
-                    }
-                }
+    private void firePendingChanges(String namespace) {
+        Map<String, ConfigChange> changes;
+        synchronized (m_pendingChanges) {
+            m_pendingChangesScheduled = false;
+            if (m_pendingChanges.isEmpty()) {
+                return;
             }
+            changes = ImmutableMap.copyOf(m_pendingChanges);
+            m_pendingChanges.clear();
         }
+        dispatchConfigChange(new ConfigChangeEvent(namespace, changes));
+    }
 
-        return false;
+    /**
+     * 异步通知感兴趣的监听器，通过索引只查找匹配变化的配置项的监听器
+     */
+    private void dispatchConfigChange(final ConfigChangeEvent changeEvent) {
+        ConfigChangeListenerIndex listenerIndex = m_listenerIndex;
+        if (listenerIndex.isEmpty()) {
+            return;
+        }
+        for (ConfigChangeListenerRegistration registration : listenerIndex.match(changeEvent.changedKeys())) {
+            registration.dispatch(changeEvent, m_executorService);
+        }
     }
 
     /**
@@ -0,0 +1,127 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * ConfigChangeListener 的索引，不可变，监听器增减时整体重建<br>
+ * 1, 对所有配置项感兴趣的监听器单独记录，总是匹配；<br>
+ * 2, 感兴趣的配置项使用 HashMap 索引，按变化的配置项直接查找；<br>
+ * 3, 感兴趣的配置项前缀使用字典树索引，沿着变化的配置项逐个字符查找，经过的节点上的监听器都匹配。<br>
+ * 匹配的结果按注册顺序返回。
+ */
+final class ConfigChangeListenerIndex {
+    static final ConfigChangeListenerIndex EMPTY = new ConfigChangeListenerIndex(
+            Lists.<ConfigChangeListenerRegistration>newArrayList());
+
+    /**
+     * 按注册顺序排列的监听器，下标即监听器的序号
+     */
+    private final ConfigChangeListenerRegistration[] m_registrations;
+    /**
+     * 对所有配置项感兴趣的监听器的序号
+     */
+    private final BitSet m_allKeysListeners = new BitSet();
+    /**
+     * KEY：感兴趣的配置项 VALUE：监听器的序号
+     */
+    private final Map<String, BitSet> m_keyListeners = Maps.newHashMap();
+    /**
+     * 感兴趣的配置项前缀的字典树
+     */
+    private final PrefixNode m_prefixRoot = new PrefixNode();
+    private final boolean m_hasPrefixes;
+
+    ConfigChangeListenerIndex(List<ConfigChangeListenerRegistration> registrations) {
+        m_registrations = registrations.toArray(new ConfigChangeListenerRegistration[registrations.size()]);
+        boolean hasPrefixes = false;
+        for (int ordinal = 0; ordinal < m_registrations.length; ordinal++) {
+            ConfigChangeListenerRegistration registration = m_registrations[ordinal];
+            if (registration.isInterestedInAllKeys()) {
+                m_allKeysListeners.set(ordinal);
+                continue;
+            }
+            for (String key : registration.getInterestedKeys()) {
+                BitSet listeners = m_keyListeners.get(key);
+                if (listeners == null) {
+                    listeners = new BitSet();
+                    m_keyListeners.put(key, listeners);
+                }
+                listeners.set(ordinal);
+            }
+            for (String prefix : registration.getInterestedKeyPrefixes()) {
+                m_prefixRoot.add(prefix).m_listeners.set(ordinal);
+                hasPrefixes = true;
+            }
+        }
+        m_hasPrefixes = hasPrefixes;
+    }
+
+    boolean isEmpty() {
+        return m_registrations.length == 0;
+    }
+
+    /**
+     * 查找对变化的配置项感兴趣的监听器
+     *
+     * @param changedKeys
+     *            变化的配置项
+     * @return 匹配的监听器，按注册顺序排列
+     */
+    List<ConfigChangeListenerRegistration> match(Collection<String> changedKeys) {
+        BitSet matched = (BitSet) m_allKeysListeners.clone();
+        for (String changedKey : changedKeys) {
+            BitSet listeners = m_keyListeners.get(changedKey);
+            if (listeners != null) {
+                matched.or(listeners);
+            }
+            if (m_hasPrefixes) {
+                m_prefixRoot.collect(changedKey, matched);
+            }
+        }
+        List<ConfigChangeListenerRegistration> result = Lists.newArrayListWithCapacity(matched.cardinality());
+        for (int ordinal = matched.nextSetBit(0); ordinal >= 0; ordinal = matched.nextSetBit(ordinal + 1)) {
+            result.add(m_registrations[ordinal]);
+        }
+        return result;
+    }
+
+    /**
+     * 字典树的节点，m_listeners 为前缀正好到该节点结束的监听器
+     */
+    private static final class PrefixNode {
+        private final Map<Character, PrefixNode> m_children = Maps.newHashMap();
+        private final BitSet m_listeners = new BitSet();
+
+        PrefixNode add(String prefix) {
+            PrefixNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                Character c = prefix.charAt(i);
+                PrefixNode child = node.m_children.get(c);
+                if (child == null) {
+                    child = new PrefixNode();
+                    node.m_children.put(c, child);
+                }
+                node = child;
+            }
+            return node;
+        }
+
+        void collect(String key, BitSet matched) {
+            PrefixNode node = this;
+            matched.or(node.m_listeners);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.m_children.get(key.charAt(i));
+                if (node == null) {
+                    return;
+                }
+                matched.or(node.m_listeners);
+            }
+        }
+    }
+}
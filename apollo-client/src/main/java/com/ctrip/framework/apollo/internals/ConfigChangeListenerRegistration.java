@@ -0,0 +1,146 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Collections;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.model.ConfigChangeEvent;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * 一个 ConfigChangeListener 的注册信息<br>
+ * 1, 记录感兴趣的配置项和配置项前缀；<br>
+ * 2, 同一个监听器的通知按顺序串行执行，线程池中同一时刻最多只有该监听器的一个任务；<br>
+ * 3, 统计监听器的执行次数和耗时，通过 Tracer 上报。
+ */
+final class ConfigChangeListenerRegistration {
+    private static final Logger logger = LoggerFactory.getLogger(ConfigChangeListenerRegistration.class);
+
+    private final ConfigChangeListener m_listener;
+    private final Set<String> m_interestedKeys;
+    private final Set<String> m_interestedKeyPrefixes;
+    /**
+     * 等待通知的变更事件
+     */
+    private final Queue<ConfigChangeEvent> m_pendingEvents = new ConcurrentLinkedQueue<>();
+    /**
+     * 是否已经提交到线程池中
+     */
+    private final AtomicBoolean m_scheduled = new AtomicBoolean();
+    private final AtomicLong m_invocationCount = new AtomicLong();
+    private final AtomicLong m_totalLatencyInNanos = new AtomicLong();
+    private final AtomicLong m_maxLatencyInNanos = new AtomicLong();
+
+    ConfigChangeListenerRegistration(ConfigChangeListener listener, Set<String> interestedKeys,
+            Set<String> interestedKeyPrefixes) {
+        m_listener = listener;
+        m_interestedKeys = interestedKeys == null ? Collections.<String>emptySet()
+                : ImmutableSet.copyOf(interestedKeys);
+        m_interestedKeyPrefixes = interestedKeyPrefixes == null ? Collections.<String>emptySet()
+                : ImmutableSet.copyOf(interestedKeyPrefixes);
+    }
+
+    ConfigChangeListener getListener() {
+        return m_listener;
+    }
+
+    Set<String> getInterestedKeys() {
+        return m_interestedKeys;
+    }
+
+    Set<String> getInterestedKeyPrefixes() {
+        return m_interestedKeyPrefixes;
+    }
+
+    /**
+     * 没有感兴趣的配置项和前缀时，对所有配置项感兴趣
+     */
+    boolean isInterestedInAllKeys() {
+        return m_interestedKeys.isEmpty() && m_interestedKeyPrefixes.isEmpty();
+    }
+
+    /**
+     * 添加变更事件，监听器当前没有在执行时提交到线程池
+     */
+    void dispatch(ConfigChangeEvent changeEvent, Executor executor) {
+        m_pendingEvents.offer(changeEvent);
+        schedule(executor);
+    }
+
+    private void schedule(final Executor executor) {
+        if (!m_scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    drain(executor);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            m_scheduled.set(false);
+            logger.error("Failed to dispatch config change to listener {}", m_listener.getClass().getName(), ex);
+        }
+    }
+
+    private void drain(Executor executor) {
+        ConfigChangeEvent changeEvent;
+        while ((changeEvent = m_pendingEvents.poll()) != null) {
+            invoke(changeEvent);
+        }
+        m_scheduled.set(false);
+        // 清除标记前新加入的事件
+        if (!m_pendingEvents.isEmpty()) {
+            schedule(executor);
+        }
+    }
+
+    private void invoke(ConfigChangeEvent changeEvent) {
+        String listenerName = m_listener.getClass().getName();
+        Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
+        long start = System.nanoTime();
+        try {
+            // 通知监听器
+            m_listener.onChange(changeEvent);
+            transaction.setStatus(Transaction.SUCCESS);
+        } catch (Throwable ex) {
+            transaction.setStatus(ex);
+            Tracer.logError(ex);
+            logger.error("Failed to invoke config change listener {}", listenerName, ex);
+        } finally {
+            recordLatency(System.nanoTime() - start, transaction);
+            transaction.complete();
+        }
+    }
+
+    /**
+     * 累计执行次数和耗时，通过 Transaction 上报
+     */
+    private void recordLatency(long latencyInNanos, Transaction transaction) {
+        long count = m_invocationCount.incrementAndGet();
+        long total = m_totalLatencyInNanos.addAndGet(latencyInNanos);
+        long max;
+        while (latencyInNanos > (max = m_maxLatencyInNanos.get())) {
+            if (m_maxLatencyInNanos.compareAndSet(max, latencyInNanos)) {
+                max = latencyInNanos;
+                break;
+            }
+        }
+        transaction.addData("InvocationCount", count);
+        transaction.addData("AvgLatencyInMicros", TimeUnit.NANOSECONDS.toMicros(total / count));
+        transaction.addData("MaxLatencyInMicros", TimeUnit.NANOSECONDS.toMicros(max));
+    }
+}
@@ -0,0 +1,179 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+
+/**
+ * 某个版本的配置快照，不可变<br>
+ * 1, 配置在创建快照时已经按照优先级合并，读取时不需要再依次查找各个配置来源；<br>
+ * 2, 使用开放寻址(线性探测)的数组存储，读取无锁且不创建对象；<br>
+ * 3, 类型转换的结果按类型缓存在快照中，每个版本每个配置项只解析一次，配置变化时随快照一起替换。
+ */
+final class ConfigSnapshot {
+    static final int INTEGER = 0;
+    static final int LONG = 1;
+    static final int SHORT = 2;
+    static final int FLOAT = 3;
+    static final int DOUBLE = 4;
+    static final int BYTE = 5;
+    static final int BOOLEAN = 6;
+    static final int DATE = 7;
+    static final int DURATION = 8;
+    private static final int TYPE_COUNT = 9;
+
+    private final long m_version;
+    private final int m_mask;
+    private final String[] m_keys;
+    private final String[] m_values;
+    /**
+     * 类型转换后的值，按类型延迟创建，下标与 m_keys 一致
+     */
+    private final AtomicReferenceArray<AtomicReferenceArray<Object>> m_typedValues;
+
+    /**
+     * Constructor.
+     *
+     * @param version
+     *            配置版本号
+     * @param properties
+     *            合并后的配置
+     */
+    ConfigSnapshot(long version, Map<String, String> properties) {
+        int capacity = tableSizeFor(properties.size());
+        m_version = version;
+        m_mask = capacity - 1;
+        m_keys = new String[capacity];
+        m_values = new String[capacity];
+        m_typedValues = new AtomicReferenceArray<>(TYPE_COUNT);
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                continue;
+            }
+            int slot = hash(entry.getKey()) & m_mask;
+            while (m_keys[slot] != null && !m_keys[slot].equals(entry.getKey())) {
+                slot = (slot + 1) & m_mask;
+            }
+            m_keys[slot] = entry.getKey();
+            m_values[slot] = entry.getValue();
+        }
+    }
+
+    /**
+     * 在当前快照的基础上应用变化的配置项，创建新版本的快照。未变化的配置项的类型转换结果会复制到新快照中。
+     *
+     * @param version
+     *            新的配置版本号
+     * @param changes
+     *            变化的配置项，值为 null 表示删除
+     * @return 新的快照
+     */
+    ConfigSnapshot withChanges(long version, Map<String, String> changes) {
+        Map<String, String> properties = Maps.newHashMapWithExpectedSize(m_keys.length / 2 + changes.size());
+        for (int slot = 0; slot < m_keys.length; slot++) {
+            if (m_keys[slot] != null) {
+                properties.put(m_keys[slot], m_values[slot]);
+            }
+        }
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                properties.remove(change.getKey());
+            } else {
+                properties.put(change.getKey(), change.getValue());
+            }
+        }
+
+        ConfigSnapshot snapshot = new ConfigSnapshot(version, properties);
+        for (int type = 0; type < TYPE_COUNT; type++) {
+            AtomicReferenceArray<Object> typedValues = m_typedValues.get(type);
+            if (typedValues == null) {
+                continue;
+            }
+            for (int slot = 0; slot < m_keys.length; slot++) {
+                Object typedValue = typedValues.get(slot);
+                if (typedValue != null && !changes.containsKey(m_keys[slot])) {
+                    snapshot.typedValues(type).lazySet(snapshot.indexOf(m_keys[slot]), typedValue);
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    long getVersion() {
+        return m_version;
+    }
+
+    /**
+     * @return 配置值，不存在时返回 null
+     */
+    String getValue(String key) {
+        int slot = indexOf(key);
+        return slot < 0 ? null : m_values[slot];
+    }
+
+    /**
+     * 获得类型转换后的配置值，首次读取时解析并缓存。同一个 type 必须始终使用同一个类型的 parser 。
+     *
+     * @return 配置值，不存在或者解析结果为 null 时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    <T> T getTypedValue(String key, int type, Function<String, T> parser) {
+        int slot = indexOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        AtomicReferenceArray<Object> typedValues = typedValues(type);
+        Object value = typedValues.get(slot);
+        if (value == null) {
+            // parsed at most a few times under contention, the results are equal
+            value = parser.apply(m_values[slot]);
+            if (value == null) {
+                return null;
+            }
+            typedValues.lazySet(slot, value);
+        }
+        return (T) value;
+    }
+
+    private int indexOf(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int slot = hash(key) & m_mask;
+        String candidate;
+        while ((candidate = m_keys[slot]) != null) {
+            if (candidate == key || candidate.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & m_mask;
+        }
+        return -1;
+    }
+
+    private AtomicReferenceArray<Object> typedValues(int type) {
+        AtomicReferenceArray<Object> typedValues = m_typedValues.get(type);
+        if (typedValues == null) {
+            m_typedValues.compareAndSet(type, null, new AtomicReferenceArray<Object>(m_keys.length));
+            typedValues = m_typedValues.get(type);
+        }
+        return typedValues;
+    }
+
+    private static int hash(String key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * 负载因子不超过 0.5 ，保证总有空位结束探测
+     */
+    private static int tableSizeFor(int size) {
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
@@ -3,7 +3,9 @@ package com.ctrip.framework.apollo.internals;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -98,6 +100,34 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 	// 获取属性值
 	@Override
 	public String getProperty(String key, String defaultValue) {
+		// 快照中的配置已经按照下面的优先级合并，无锁读取
+		ConfigSnapshot snapshot = getSnapshot();
+		String value = snapshot == null ? null : snapshot.getValue(key);
+
+		// 远程配置和本地配置文件中都没有的配置项，仍然读取系统属性和环境变量
+		if (value == null) {
+			value = resolveProperty(key, m_configProperties.get());
+		}
+
+		// 打印告警日志
+		if (value == null && m_configProperties.get() == null && m_warnLogRateLimiter.tryAcquire()) {
+			logger.warn(
+					"Could not load config for namespace {} from Apollo, please check whether the configs are released in Apollo! Return default value now!",
+					m_namespace);
+		}
+
+		// 若为空，使用默认值
+		return value == null ? defaultValue : value;
+	}
+
+	/**
+	 * 依次从各个配置来源查找属性值
+	 *
+	 * @param key              属性名
+	 * @param configProperties 远程配置
+	 * @return 属性值，不存在时返回 null
+	 */
+	private String resolveProperty(String key, Properties configProperties) {
 		// step 1: check system properties, i.e. -Dkey=value
         // 系统属性优先
 		// 从系统 Properties 获得属性，例如，JVM 启动参数。
@@ -105,8 +135,8 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
 		// step 2: check local cached properties file
         // 从缓存的 远程配置中心属性中 获得属性
-		if (value == null && m_configProperties.get() != null) {
-			value = m_configProperties.get().getProperty(key);
+		if (value == null && configProperties != null) {
+			value = configProperties.getProperty(key);
 		}
 
 		/**
@@ -124,15 +154,7 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 			value = m_resourceProperties.getProperty(key);
 		}
 
-		// 打印告警日志
-		if (value == null && m_configProperties.get() == null && m_warnLogRateLimiter.tryAcquire()) {
-			logger.warn(
-					"Could not load config for namespace {} from Apollo, please check whether the configs are released in Apollo! Return default value now!",
-					m_namespace);
-		}
-
-		// 若为空，使用默认值
-		return value == null ? defaultValue : value;
+		return value;
 	}
 
 	@Override
@@ -199,6 +221,47 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 	private void updateConfig(Properties newConfigProperties, ConfigSourceType sourceType) {
 		m_configProperties.set(newConfigProperties);
 		m_sourceType = sourceType;
+		updateSnapshot(mergeProperties(newConfigProperties));
+	}
+
+	/**
+	 * 更新配置，快照只重新合并变化的配置项
+	 */
+	private void updateConfig(Properties newConfigProperties, ConfigSourceType sourceType, Set<String> changedKeys) {
+		if (getSnapshot() == null) {
+			updateConfig(newConfigProperties, sourceType);
+			return;
+		}
+		m_configProperties.set(newConfigProperties);
+		m_sourceType = sourceType;
+		Map<String, String> changes = new HashMap<>(changedKeys.size() * 2);
+		for (String key : changedKeys) {
+			// null means deleted
+			changes.put(key, resolveProperty(key, newConfigProperties));
+		}
+		applySnapshotChanges(changes);
+	}
+
+	/**
+	 * 合并远程配置和本地配置文件中的配置项，每个配置项的值按照 {@link #resolveProperty(String, Properties)} 的优先级取得，
+	 * 其中系统属性为合并时的值
+	 */
+	private Map<String, String> mergeProperties(Properties configProperties) {
+		Set<String> keys = new LinkedHashSet<>();
+		if (configProperties != null) {
+			keys.addAll(stringPropertyNames(configProperties));
+		}
+		if (m_resourceProperties != null) {
+			keys.addAll(stringPropertyNames(m_resourceProperties));
+		}
+		Map<String, String> merged = new HashMap<>(keys.size() * 2);
+		for (String key : keys) {
+			String value = resolveProperty(key, configProperties);
+			if (value != null) {
+				merged.put(key, value);
+			}
+		}
+		return merged;
 	}
 
     /**
@@ -223,9 +286,13 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 			change.setOldValue(this.getProperty(change.getPropertyName(), change.getOldValue()));
 		}
 
-		// 2. update m_configProperties
-		updateConfig(newConfigProperties, sourceType);
-		clearConfigCache();
+		// 2. update m_configProperties, only the changed keys are resolved again and evicted from the caches
+		Set<String> changedKeys = new LinkedHashSet<>(configChanges.size());
+		for (ConfigChange change : configChanges) {
+			changedKeys.add(change.getPropertyName());
+		}
+		updateConfig(newConfigProperties, sourceType, changedKeys);
+		clearConfigCache(changedKeys);
 
 		// 3. use getProperty to update configChange's new value and calc the final
 		// changes
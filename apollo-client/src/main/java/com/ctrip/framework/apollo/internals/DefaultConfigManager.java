@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.internals;
 
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigFile;
@@ -27,6 +28,10 @@ public class DefaultConfigManager implements ConfigManager {
      */
     private Map<String, Config> m_configs = Maps.newConcurrentMap();
     private Map<String, ConfigFile> m_configFiles = Maps.newConcurrentMap();
+    /**
+     * 每个 Namespace 一个创建锁，不同 Namespace 的 Config 可以并发创建
+     */
+    private ConcurrentMap<String, Object> m_configLocks = Maps.newConcurrentMap();
 
     public DefaultConfigManager() {
         m_factoryManager = ApolloInjector.getInstance(ConfigFactoryManager.class);
@@ -37,7 +42,7 @@ public class DefaultConfigManager implements ConfigManager {
         Config config = m_configs.get(namespace);
 
         if (config == null) {
-            synchronized (this) {
+            synchronized (configLock(namespace)) {
                 config = m_configs.get(namespace);
 
                 // 不存在, 进行创建
@@ -73,4 +78,16 @@ public class DefaultConfigManager implements ConfigManager {
 
         return configFile;
     }
+
+    private Object configLock(String namespace) {
+        Object lock = m_configLocks.get(namespace);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = m_configLocks.putIfAbsent(namespace, newLock);
+            if (lock == null) {
+                lock = newLock;
+            }
+        }
+        return lock;
+    }
 }
@@ -66,6 +66,8 @@ public class DefaultInjector implements Injector {
             bind(HttpUtil.class).in(Singleton.class);
             bind(ConfigServiceLocator.class).in(Singleton.class);
             bind(RemoteConfigLongPollService.class).in(Singleton.class);
+            bind(RemoteConfigBatchLoader.class).in(Singleton.class);
+            bind(RemoteConfigSyncScheduler.class).in(Singleton.class);
             bind(YamlParser.class).in(Singleton.class);
             bind(PropertiesFactory.class).to(DefaultPropertiesFactory.class).in(Singleton.class);
         }
@@ -0,0 +1,162 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+/**
+ * 本地缓存配置的二进制快照文件<br>
+ * 格式(大端序)：魔数(int) + 格式版本(int) + 配置项数量(int) + 配置项 + CRC32(long) ，<br>
+ * 每个配置项为 Key 长度(int) + Key(UTF-8) + Value 长度(int) + Value(UTF-8) ，CRC32 覆盖之前的所有字节。<br>
+ * 写入时先写临时文件再原子重命名，进程在写入过程中崩溃不会破坏已有的快照；读取时校验 CRC32 。<br>
+ * 读取时一次性读到堆内，不使用内存映射：Windows 上被映射的文件在 GC 回收映射前无法被替换，会导致后续写入失败。
+ */
+final class LocalConfigCacheFile {
+    private static final int MAGIC = 0x41504c43; // "APLC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int CRC_SIZE = 8;
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    private LocalConfigCacheFile() {
+    }
+
+    /**
+     * 将配置写入快照文件
+     *
+     * @param file
+     *            快照文件
+     * @param properties
+     *            配置
+     */
+    static void write(File file, Properties properties) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        int countPosition = out.size();
+        out.writeInt(0);
+        int count = 0;
+        for (String key : properties.stringPropertyNames()) {
+            String value = properties.getProperty(key);
+            if (value == null) {
+                continue;
+            }
+            writeString(out, key);
+            writeString(out, value);
+            count++;
+        }
+        out.flush();
+
+        byte[] content = bytes.toByteArray();
+        ByteBuffer.wrap(content).putInt(countPosition, count);
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+
+        ByteBuffer trailer = ByteBuffer.allocate(CRC_SIZE);
+        trailer.putLong(crc.getValue());
+        writeAtomically(file, content, trailer.array());
+    }
+
+    /**
+     * 从快照文件读取配置
+     *
+     * @param file
+     *            快照文件
+     * @param properties
+     *            读取到的配置放入该对象
+     * @return properties
+     * @throws IOException
+     *             文件不存在，格式或版本不支持，CRC32 校验失败
+     */
+    static Properties read(File file, Properties properties) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + CRC_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException(String.format("Invalid config cache file size %d", size));
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read fully
+            }
+            buffer.flip();
+            if (buffer.limit() != size) {
+                throw new IOException("Config cache file is truncated");
+            }
+        }
+
+        int contentLength = buffer.limit() - CRC_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, contentLength);
+        if (crc.getValue() != buffer.getLong(contentLength)) {
+            throw new IOException("Config cache file checksum mismatch");
+        }
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a config cache file");
+        }
+        int formatVersion = buffer.getInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException(String.format("Unsupported config cache file version %d", formatVersion));
+        }
+        int count = buffer.getInt();
+        buffer.limit(contentLength);
+        try {
+            for (int i = 0; i < count; i++) {
+                String key = readString(buffer);
+                String value = readString(buffer);
+                properties.setProperty(key, value);
+            }
+        } catch (RuntimeException ex) {
+            // e.g. BufferUnderflowException, the checksum matches but the content is not written by this format
+            throw new IOException("Malformed config cache file", ex);
+        }
+        return properties;
+    }
+
+    /**
+     * 先写入同目录的临时文件并刷到磁盘，再原子替换目标文件
+     */
+    static void writeAtomically(File file, byte[]... contents) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + TEMP_FILE_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(tempFile)) {
+            for (byte[] content : contents) {
+                out.write(content);
+            }
+            out.getFD().sync();
+        }
+        try {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalStateException(String.format("Invalid string length %d", length));
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
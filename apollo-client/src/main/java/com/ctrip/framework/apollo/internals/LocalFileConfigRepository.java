@@ -1,11 +1,10 @@
 package com.ctrip.framework.apollo.internals;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -257,7 +256,8 @@ public class LocalFileConfigRepository extends AbstractConfigRepository implemen
     }
 
     /**
-     * 从缓存配置文件
+     * 从缓存配置文件加载配置<br>
+     * 优先读取二进制快照文件；快照不存在、损坏，或者 .properties 文件比快照新(例如本地模式下手动修改)时，读取 .properties 文件。
      * 
      * @param baseDir
      * @param namespace
@@ -270,6 +270,20 @@ public class LocalFileConfigRepository extends AbstractConfigRepository implemen
         Preconditions.checkNotNull(baseDir, "Basedir cannot be null");
         // 拼接本地缓存的配置文件 File 对象
         File file = assembleLocalCacheFile(baseDir, namespace);
+        File snapshotFile = assembleLocalSnapshotFile(baseDir, namespace);
+        if (snapshotFile.isFile() && !(file.isFile() && file.lastModified() > snapshotFile.lastModified())) {
+            try {
+                Properties properties = LocalConfigCacheFile.read(snapshotFile,
+                        propertiesFactory.getPropertiesInstance());
+                logger.debug("Loading local config snapshot file {} successfully!", snapshotFile.getAbsolutePath());
+                return properties;
+            } catch (IOException ex) {
+                Tracer.logError(ex);
+                logger.warn("Loading local config snapshot file {} failed, fall back to {}, reason: {}",
+                        snapshotFile.getAbsolutePath(), file.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+            }
+        }
+
         Properties properties = null;
 
         if (file.isFile() && file.canRead()) {
@@ -302,7 +316,8 @@ public class LocalFileConfigRepository extends AbstractConfigRepository implemen
     }
 
     /**
-     * 向缓存文件写入配置信息
+     * 向缓存文件写入配置信息<br>
+     * 先写 .properties 文件(兼容旧版本客户端和手动查看)，再写二进制快照文件，保证快照不比 .properties 文件旧。两个文件都是原子替换。
      * 
      * @param baseDir
      * @param namespace
@@ -314,13 +329,13 @@ public class LocalFileConfigRepository extends AbstractConfigRepository implemen
         }
         File file = assembleLocalCacheFile(baseDir, namespace);
 
-        OutputStream out = null;
-
         Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistLocalConfigFile");
         transaction.addData("LocalConfigFile", file.getAbsolutePath());
         try {
-            out = new FileOutputStream(file);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
             m_fileProperties.store(out, "Persisted by DefaultConfig");
+            LocalConfigCacheFile.writeAtomically(file, out.toByteArray());
+            LocalConfigCacheFile.write(assembleLocalSnapshotFile(baseDir, namespace), m_fileProperties);
             transaction.setStatus(Transaction.SUCCESS);
         } catch (IOException ex) {
             ApolloConfigException exception = new ApolloConfigException(
@@ -330,13 +345,6 @@ public class LocalFileConfigRepository extends AbstractConfigRepository implemen
             logger.warn("Persist local cache file {} failed, reason: {}.", file.getAbsolutePath(),
                     ExceptionUtil.getDetailMessage(ex));
         } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException ex) {
-                    // ignore
-                }
-            }
             transaction.complete();
         }
     }
@@ -383,4 +391,14 @@ public class LocalFileConfigRepository extends AbstractConfigRepository implemen
                 .join(m_configUtil.getAppId(), m_configUtil.getCluster(), namespace));
         return new File(baseDir, fileName);
     }
+
+    /**
+     * 生成二进制快照文件的路径<br>
+     * ${baseDir}/config-cache/ + ${appId}+${cluster} + ${namespace}.bin
+     */
+    File assembleLocalSnapshotFile(File baseDir, String namespace) {
+        String fileName = String.format("%s.bin", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+                .join(m_configUtil.getAppId(), m_configUtil.getCluster(), namespace));
+        return new File(baseDir, fileName);
+    }
 }
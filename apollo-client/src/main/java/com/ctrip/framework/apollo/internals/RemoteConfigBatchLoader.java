@@ -0,0 +1,247 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQuery;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQueryResult;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.core.utils.StringUtils;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.common.reflect.TypeToken;
+
+/**
+ * 批量加载配置<br>
+ * 通过一次 POST /configs/{appId}/{clusterName} 请求加载多个 Namespace 的配置，结果暂存在本地，由各个
+ * RemoteConfigRepository 同步配置时取走：<br>
+ * 1, 启动时预加载所有 Namespace ，避免每个 Namespace 串行请求一次；<br>
+ * 2, 长轮询同时通知多个 Namespace 时，一次请求加载所有变化的 Namespace 。<br>
+ * 取走时 Repository 缓存的配置已经变化则丢弃；批量加载失败(例如服务端不支持)时不做任何事，各个 Repository 按原来的方式逐个加载。
+ */
+public class RemoteConfigBatchLoader {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteConfigBatchLoader.class);
+    private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
+    private static final Escaper pathEscaper = UrlEscapers.urlPathSegmentEscaper();
+    private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+    /**
+     * 一次批量加载最多尝试的 Config Service 数量
+     */
+    private static final int MAX_ATTEMPTS = 2;
+
+    private final ConfigUtil m_configUtil;
+    private final HttpUtil m_httpUtil;
+    private final Type m_responseType;
+
+    /**
+     * 预加载的配置<br>
+     * KEY：Namespace 的名字<br>
+     * VALUE：预加载的配置，一段时间没有被取走则过期
+     */
+    private final Cache<String, PreloadedConfig> m_preloadedConfigs;
+
+    /**
+     * Constructor.
+     */
+    public RemoteConfigBatchLoader() {
+        m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+        m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+        m_responseType = new TypeToken<List<ApolloConfigQueryResult>>() {
+        }.getType();
+        m_preloadedConfigs = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.MINUTES).build();
+    }
+
+    /**
+     * 启动时预加载 Namespace 的配置，之后创建的 RemoteConfigRepository 直接使用
+     *
+     * @param namespaces
+     *            Namespace 的名字
+     */
+    public void prefetch(Collection<String> namespaces) {
+        List<ApolloConfigQuery> queries = Lists.newArrayListWithCapacity(namespaces.size());
+        for (String namespace : namespaces) {
+            queries.add(new ApolloConfigQuery(namespace, null, null));
+        }
+        load(null, queries, Collections.<String, ApolloConfig> emptyMap());
+    }
+
+    /**
+     * 预加载长轮询通知的多个 Namespace 的配置
+     *
+     * @param notifiedConfigService
+     *            长轮询到配置更新的 Config Service ，优先访问
+     * @param repositories
+     *            被通知的 RemoteConfigRepository 和对应的通知消息
+     */
+    void preload(ServiceDTO notifiedConfigService,
+            Map<RemoteConfigRepository, ApolloNotificationMessages> repositories) {
+        List<ApolloConfigQuery> queries = Lists.newArrayListWithCapacity(repositories.size());
+        Map<String, ApolloConfig> baseConfigs = Maps.newHashMap();
+        for (Map.Entry<RemoteConfigRepository, ApolloNotificationMessages> entry : repositories.entrySet()) {
+            String namespace = entry.getKey().getNamespace();
+            ApolloConfig baseConfig = entry.getKey().getApolloConfig();
+            queries.add(new ApolloConfigQuery(namespace, baseConfig == null ? null : baseConfig.getReleaseKey(),
+                    entry.getValue()));
+            baseConfigs.put(namespace, baseConfig);
+        }
+        load(notifiedConfigService, queries, baseConfigs);
+    }
+
+    /**
+     * 取走预加载的配置
+     *
+     * @param namespace
+     *            Namespace 的名字
+     * @param baseConfig
+     *            Repository 当前缓存的配置
+     * @return 预加载的配置；没有预加载，或者预加载时的缓存配置与 baseConfig 不同时返回 null
+     */
+    ApolloConfig take(String namespace, ApolloConfig baseConfig) {
+        PreloadedConfig preloaded = m_preloadedConfigs.asMap().remove(namespace);
+        if (preloaded == null || preloaded.baseConfig != baseConfig) {
+            return null;
+        }
+        return preloaded.config;
+    }
+
+    private void load(ServiceDTO notifiedConfigService, List<ApolloConfigQuery> queries,
+            Map<String, ApolloConfig> baseConfigs) {
+        // a single namespace is loaded by its own repository
+        if (queries.size() < 2 || !m_configUtil.isConfigBatchLoadEnabled() || m_configUtil.isInLocalMode()) {
+            return;
+        }
+
+        try {
+            doLoad(notifiedConfigService, queries, baseConfigs);
+        } catch (Throwable ex) {
+            logger.warn("Batch load configs failed, reason: {}", ExceptionUtil.getDetailMessage(ex));
+            Tracer.logError(ex);
+        }
+    }
+
+    private void doLoad(ServiceDTO notifiedConfigService, List<ApolloConfigQuery> queries,
+            Map<String, ApolloConfig> baseConfigs) {
+        // the locator is resolved lazily since it fetches the config services when created
+        ConfigServiceLocator serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+        List<ServiceDTO> configServices = Lists.newLinkedList(serviceLocator.getConfigServices());
+        Collections.shuffle(configServices);
+        if (notifiedConfigService != null) {
+            configServices.add(0, notifiedConfigService);
+        }
+
+        String appId = m_configUtil.getAppId();
+        String cluster = m_configUtil.getCluster();
+        String secret = m_configUtil.getAccessKeySecret();
+        int attempts = 0;
+        for (ServiceDTO configService : configServices) {
+            if (attempts++ >= MAX_ATTEMPTS) {
+                break;
+            }
+            String url = assembleBatchQueryConfigUrl(configService.getHomepageUrl(), appId, cluster,
+                    m_configUtil.getDataCenter());
+            logger.debug("Batch loading configs from {}", url);
+
+            HttpRequest request = new HttpRequest(url);
+            if (!StringUtils.isBlank(secret)) {
+                Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
+                request.setHeaders(headers);
+            }
+
+            Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "batchQueryConfig");
+            transaction.addData("Url", url);
+            try {
+                HttpResponse<List<ApolloConfigQueryResult>> response = m_httpUtil.doPost(request, queries,
+                        m_responseType);
+                if (response.getBody() != null) {
+                    for (ApolloConfigQueryResult result : response.getBody()) {
+                        cache(result, baseConfigs.get(result.getNamespaceName()));
+                    }
+                }
+                transaction.addData("StatusCode", response.getStatusCode());
+                transaction.setStatus(Transaction.SUCCESS);
+                return;
+            } catch (Throwable ex) {
+                // e.g. the config service does not support batch query, the namespaces are loaded one by one
+                logger.warn("Batch load configs failed from {}, reason: {}", url, ExceptionUtil.getDetailMessage(ex));
+                Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+                transaction.setStatus(ex);
+            } finally {
+                transaction.complete();
+            }
+        }
+    }
+
+    private void cache(ApolloConfigQueryResult result, ApolloConfig baseConfig) {
+        if (result.getNamespaceName() == null) {
+            return;
+        }
+        // 404 is left to the repository so that it reports the error as before
+        if (result.getStatusCode() == 200 && result.getConfig() != null) {
+            m_preloadedConfigs.put(result.getNamespaceName(), new PreloadedConfig(baseConfig, result.getConfig()));
+        } else if (result.getStatusCode() == 304 && baseConfig != null) {
+            m_preloadedConfigs.put(result.getNamespaceName(), new PreloadedConfig(baseConfig, baseConfig));
+        }
+    }
+
+    /**
+     * 组装批量查询配置的 URL (/configs/{appId}/{clusterName} 接口)
+     */
+    String assembleBatchQueryConfigUrl(String uri, String appId, String cluster, String dataCenter) {
+        String pathExpanded = String.format("configs/%s/%s", pathEscaper.escape(appId), pathEscaper.escape(cluster));
+        Map<String, String> queryParams = Maps.newHashMap();
+
+        if (!Strings.isNullOrEmpty(dataCenter)) {
+            queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
+        }
+
+        String localIp = m_configUtil.getLocalIp();
+        if (!Strings.isNullOrEmpty(localIp)) {
+            queryParams.put("ip", queryParamEscaper.escape(localIp));
+        }
+
+        if (!queryParams.isEmpty()) {
+            pathExpanded += "?" + MAP_JOINER.join(queryParams);
+        }
+        if (!uri.endsWith("/")) {
+            uri += "/";
+        }
+        return uri + pathExpanded;
+    }
+
+    private static class PreloadedConfig {
+        /**
+         * 预加载时 Repository 缓存的配置
+         */
+        private final ApolloConfig baseConfig;
+        private final ApolloConfig config;
+
+        private PreloadedConfig(ApolloConfig baseConfig, ApolloConfig config) {
+            this.baseConfig = baseConfig;
+            this.config = config;
+        }
+    }
+}
@@ -25,6 +25,7 @@ import com.ctrip.framework.apollo.core.signature.Signature;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -32,6 +33,8 @@ import com.ctrip.framework.apollo.util.ExceptionUtil;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.ctrip.framework.apollo.util.http.ServerSentEvent;
+import com.ctrip.framework.apollo.util.http.ServerSentEventListener;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
@@ -48,7 +51,9 @@ import com.google.gson.Gson;
 /**
  * 远程配置长轮询服务。负责长轮询 Config Service 的配置变更通知 /notifications/v2 接口。当有新的通知时，触发
  * RemoteConfigRepository ，立即轮询 Config Service 的配置读取
- * /configs/{appId}/{clusterName}/{namespace:.+} 接口。
+ * /configs/{appId}/{clusterName}/{namespace:.+} 接口。<br>
+ * 开启通知推送流时，优先使用 /notifications/v2/stream 接口，一个连接接收所有 Namespace 的通知；
+ * 服务端不支持(如旧版本 Config Service)或连续失败时，自动回退到长轮询，一段时间后再尝试推送流。
  * 
  * @author Jason Song(song_s@ctrip.com)
  */
@@ -61,6 +66,11 @@ public class RemoteConfigLongPollService {
     // 90 seconds, should be longer than server side's long polling timeout,
     // which is now 60 seconds
     private static final int LONG_POLLING_READ_TIMEOUT = 90 * 1000;
+    // server side sends heartbeat every 30 seconds, so LONG_POLLING_READ_TIMEOUT is also used for the stream
+    private static final String NOTIFICATION_STREAM_EVENT = "notifications";
+    private static final long NOTIFICATION_STREAM_DEFAULT_RETRY_IN_MILLIS = 1000;
+    private static final int NOTIFICATION_STREAM_MAX_FAILURES = 3;
+    private static final long NOTIFICATION_STREAM_FALLBACK_IN_MILLIS = 10 * 60 * 1000;
 
     /**
      * 长轮询 ExecutorService
@@ -111,11 +121,27 @@ public class RemoteConfigLongPollService {
      */
     private final Map<String, ApolloNotificationMessages> m_remoteNotificationMessages;
 
+    /**
+     * 推送流不可用时回退到长轮询，直到该时间再尝试推送流
+     */
+    private long m_notificationStreamFallbackUntil;
+
+    /**
+     * 推送流连续失败次数
+     */
+    private int m_notificationStreamFailures;
+
+    /**
+     * 有新的 Namespace 时需要重建推送流，使新的 Namespace 也能收到通知
+     */
+    private final AtomicBoolean m_notificationStreamResetRequired;
+
     private Type m_responseType;
     private Gson gson;
     private ConfigUtil m_configUtil;
     private HttpUtil m_httpUtil;
     private ConfigServiceLocator m_serviceLocator;
+    private RemoteConfigBatchLoader m_batchLoader;
 
     /**
      * Constructor.
@@ -131,12 +157,14 @@ public class RemoteConfigLongPollService {
                 .synchronizedSetMultimap(HashMultimap.<String, RemoteConfigRepository> create());
         m_notifications = Maps.newConcurrentMap();
         m_remoteNotificationMessages = Maps.newConcurrentMap();
+        m_notificationStreamResetRequired = new AtomicBoolean(false);
         m_responseType = new TypeToken<List<ApolloConfigNotification>>() {
         }.getType();
         gson = new Gson();
         m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
         m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
         m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+        m_batchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
         m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
     }
 
@@ -151,8 +179,10 @@ public class RemoteConfigLongPollService {
     public boolean submit(String namespace, RemoteConfigRepository remoteConfigRepository) {
         // 添加到 m_longPollNamespaces 中
         boolean added = m_longPollNamespaces.put(namespace, remoteConfigRepository);
-        // 添加到 m_notifications 中
-        m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+        // 添加到 m_notifications 中，新的 Namespace 需要重建推送流
+        if (m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID) == null) {
+            m_notificationStreamResetRequired.set(true);
+        }
         // 若未启动长轮询定时任务，进行启动
         if (!m_longPollStarted.get()) {
             startLongPolling();
@@ -232,6 +262,14 @@ public class RemoteConfigLongPollService {
                 } catch (InterruptedException e) {
                 }
             }
+
+            // 优先使用推送流，推送流关闭后再次进入循环
+            if (isNotificationStreamAvailable()) {
+                lastServiceDto = doNotificationStreamRefresh(random, lastServiceDto, appId, cluster, dataCenter,
+                        secret);
+                continue;
+            }
+
             Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "pollNotification");
             String url = null;
             try {
@@ -312,6 +350,148 @@ public class RemoteConfigLongPollService {
         }
     }
 
+    private boolean isNotificationStreamAvailable() {
+        return m_configUtil.isNotificationStreamEnabled()
+                && System.currentTimeMillis() >= m_notificationStreamFallbackUntil;
+    }
+
+    /**
+     * 建立一次推送流，阻塞直到推送流被关闭，然后按服务端下发的重连间隔等待
+     * 
+     * @return 下次连接的 Config Service，为 null 时重新选择
+     */
+    private ServiceDTO doNotificationStreamRefresh(Random random, ServiceDTO lastServiceDto, String appId,
+            String cluster, String dataCenter, String secret) {
+        Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "streamNotification");
+        String url = null;
+        NotificationStreamListener listener = null;
+        long sleepTimeInMillis = 0;
+        try {
+            if (lastServiceDto == null) {
+                List<ServiceDTO> configServices = getConfigServices();
+                lastServiceDto = configServices.get(random.nextInt(configServices.size()));
+            }
+
+            url = assembleNotificationStreamUrl(lastServiceDto.getHomepageUrl(), appId, cluster, dataCenter,
+                    m_notifications);
+
+            logger.debug("Streaming notifications from {}", url);
+
+            HttpRequest request = new HttpRequest(url);
+            request.setReadTimeout(LONG_POLLING_READ_TIMEOUT);
+            if (!StringUtils.isBlank(secret)) {
+                Map<String, String> headers = Signature.buildHttpHeaders(url, appId, secret);
+                request.setHeaders(headers);
+            }
+
+            transaction.addData("Url", url);
+
+            m_notificationStreamResetRequired.set(false);
+            listener = new NotificationStreamListener(lastServiceDto);
+            m_httpUtil.doGetEventStream(request, listener);
+
+            logger.debug("Notification stream closed, url: {}", url);
+            m_notificationStreamFailures = 0;
+            m_longPollFailSchedulePolicyInSecond.success();
+            transaction.setStatus(Transaction.SUCCESS);
+
+            if (!m_notificationStreamResetRequired.get()) {
+                // closed by server (timeout, too many connections or shutdown), reconnect to a random config service
+                // after the retry interval issued by server, so that the reconnections are spread
+                lastServiceDto = null;
+                sleepTimeInMillis = listener.getRetryInMillis();
+            }
+        } catch (ApolloConfigStatusCodeException ex) {
+            transaction.setStatus(ex);
+            // the config service does not support notification stream, fallback to long polling
+            m_notificationStreamFallbackUntil = System.currentTimeMillis() + NOTIFICATION_STREAM_FALLBACK_IN_MILLIS;
+            logger.info("Notification stream is not available, fallback to long polling. url: {}, reason: {}", url,
+                    ExceptionUtil.getDetailMessage(ex));
+        } catch (Throwable ex) {
+            lastServiceDto = null;
+            transaction.setStatus(ex);
+            if (listener != null && listener.isConnected()) {
+                // the stream was broken after connected, e.g. config service restarted
+                m_notificationStreamFailures = 0;
+                sleepTimeInMillis = listener.getRetryInMillis();
+                logger.debug("Notification stream disconnected, will reconnect in {} ms. url: {}, reason: {}",
+                        sleepTimeInMillis, url, ExceptionUtil.getDetailMessage(ex));
+            } else {
+                Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+                // the stream may be blocked by proxies, fallback to long polling after several failures
+                if (++m_notificationStreamFailures >= NOTIFICATION_STREAM_MAX_FAILURES) {
+                    m_notificationStreamFailures = 0;
+                    m_notificationStreamFallbackUntil = System.currentTimeMillis()
+                            + NOTIFICATION_STREAM_FALLBACK_IN_MILLIS;
+                }
+                sleepTimeInMillis = TimeUnit.SECONDS.toMillis(m_longPollFailSchedulePolicyInSecond.fail());
+                logger.warn(
+                        "Notification stream failed, will retry in {} ms. appId: {}, cluster: {}, namespaces: {}, url: {}, reason: {}",
+                        sleepTimeInMillis, appId, cluster, assembleNamespaces(), url,
+                        ExceptionUtil.getDetailMessage(ex));
+            }
+        } finally {
+            transaction.complete();
+        }
+
+        if (sleepTimeInMillis > 0) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(sleepTimeInMillis);
+            } catch (InterruptedException ie) {
+                // ignore
+            }
+        }
+        return lastServiceDto;
+    }
+
+    /**
+     * 推送流事件处理，通知的处理与长轮询响应相同
+     */
+    private class NotificationStreamListener implements ServerSentEventListener {
+        private final ServiceDTO m_serviceDto;
+        private long m_retryInMillis = NOTIFICATION_STREAM_DEFAULT_RETRY_IN_MILLIS;
+        private boolean m_connected;
+
+        private NotificationStreamListener(ServiceDTO serviceDto) {
+            this.m_serviceDto = serviceDto;
+        }
+
+        @Override
+        public boolean onEvent(ServerSentEvent event) {
+            if (!m_connected) {
+                m_connected = true;
+                m_longPollFailSchedulePolicyInSecond.success();
+            }
+            if (event.getRetry() != null) {
+                m_retryInMillis = event.getRetry();
+            }
+            if (NOTIFICATION_STREAM_EVENT.equals(event.getName()) && !Strings.isNullOrEmpty(event.getData())) {
+                List<ApolloConfigNotification> notifications = gson.fromJson(event.getData(), m_responseType);
+                if (notifications != null && !notifications.isEmpty()) {
+                    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "streamNotified");
+                    try {
+                        updateNotifications(notifications);
+                        updateRemoteNotifications(notifications);
+                        transaction.addData("Result", notifications.toString());
+                        RemoteConfigLongPollService.this.notify(m_serviceDto, notifications);
+                        transaction.setStatus(Transaction.SUCCESS);
+                    } finally {
+                        transaction.complete();
+                    }
+                }
+            }
+            return !m_longPollingStopped.get() && !m_notificationStreamResetRequired.get();
+        }
+
+        long getRetryInMillis() {
+            return m_retryInMillis;
+        }
+
+        boolean isConnected() {
+            return m_connected;
+        }
+    }
+
     /**
      * 通知更新 m_remoteNotificationMessages
      * 
@@ -323,28 +503,43 @@ public class RemoteConfigLongPollService {
         if (notifications == null || notifications.isEmpty()) {
             return;
         }
+        // 被通知的 RemoteConfigRepository 和对应的通知消息
+        Map<RemoteConfigRepository, ApolloNotificationMessages> toBeNotified = Maps.newLinkedHashMap();
         // 循环 ApolloConfigNotification
         for (ApolloConfigNotification notification : notifications) {
             String namespaceName = notification.getNamespaceName();
             // 创建 RemoteConfigRepository 数组，避免并发问题
             // create a new list to avoid ConcurrentModificationException
-            List<RemoteConfigRepository> toBeNotified = Lists.newArrayList(m_longPollNamespaces.get(namespaceName));
+            List<RemoteConfigRepository> repositories = Lists.newArrayList(m_longPollNamespaces.get(namespaceName));
             ApolloNotificationMessages originalMessages = m_remoteNotificationMessages.get(namespaceName);
             ApolloNotificationMessages remoteMessages = originalMessages == null ? null : originalMessages.clone();
             // since .properties are filtered out by default, so we need to
             // check if there is any listener for it
             // 因为 .properties 在默认情况下被过滤掉，所以我们需要检查是否有监听器。若有，添加到
             // RemoteConfigRepository 数组
-            toBeNotified.addAll(m_longPollNamespaces
+            repositories.addAll(m_longPollNamespaces
                     .get(String.format("%s.%s", namespaceName, ConfigFileFormat.Properties.getValue())));
 
-            // 循环 RemoteConfigRepository ，进行通知
-            for (RemoteConfigRepository remoteConfigRepository : toBeNotified) {
-                try {
-                    remoteConfigRepository.onLongPollNotified(lastServiceDto, remoteMessages);
-                } catch (Throwable ex) {
-                    Tracer.logError(ex);
-                }
+            for (RemoteConfigRepository remoteConfigRepository : repositories) {
+                toBeNotified.put(remoteConfigRepository, remoteMessages);
+            }
+        }
+
+        // 多个 Namespace 同时变化时，一次请求批量加载它们的配置
+        if (toBeNotified.size() > 1) {
+            try {
+                m_batchLoader.preload(lastServiceDto, toBeNotified);
+            } catch (Throwable ex) {
+                Tracer.logError(ex);
+            }
+        }
+
+        // 循环 RemoteConfigRepository ，进行通知
+        for (Map.Entry<RemoteConfigRepository, ApolloNotificationMessages> entry : toBeNotified.entrySet()) {
+            try {
+                entry.getKey().onLongPollNotified(lastServiceDto, entry.getValue());
+            } catch (Throwable ex) {
+                Tracer.logError(ex);
             }
         }
     }
@@ -429,6 +624,19 @@ public class RemoteConfigLongPollService {
      */
     String assembleLongPollRefreshUrl(String uri, String appId, String cluster, String dataCenter,
             Map<String, Long> notificationsMap) {
+        return assembleNotificationUrl(uri, "notifications/v2", appId, cluster, dataCenter, notificationsMap);
+    }
+
+    /**
+     * 组装 Config Service 的通知推送流 /notifications/v2/stream 接口的 URL，参数与长轮询相同
+     */
+    String assembleNotificationStreamUrl(String uri, String appId, String cluster, String dataCenter,
+            Map<String, Long> notificationsMap) {
+        return assembleNotificationUrl(uri, "notifications/v2/stream", appId, cluster, dataCenter, notificationsMap);
+    }
+
+    private String assembleNotificationUrl(String uri, String path, String appId, String cluster, String dataCenter,
+            Map<String, Long> notificationsMap) {
         Map<String, String> queryParams = Maps.newHashMap();
         queryParams.put("appId", queryParamEscaper.escape(appId));
         queryParams.put("cluster", queryParamEscaper.escape(cluster));
@@ -452,7 +660,7 @@ public class RemoteConfigLongPollService {
             uri += "/";
         }
 
-        return uri + "notifications/v2?" + params;
+        return uri + path + "?" + params;
     }
 
     /**
@@ -4,8 +4,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
@@ -22,7 +20,6 @@ import com.ctrip.framework.apollo.core.dto.ServiceDTO;
 import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
 import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
 import com.ctrip.framework.apollo.core.signature.Signature;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
 import com.ctrip.framework.apollo.enums.ConfigSourceType;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
@@ -74,9 +71,19 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 	
 	// *************************轮询属性***************************************
 	/**
-	 * ScheduledExecutorService 对象
+	 * 所有 Namespace 共享的同步线程池
 	 */
-	private final static ScheduledExecutorService m_executorService;
+	private final RemoteConfigSyncScheduler m_syncScheduler;
+
+	/**
+	 * 是否已经提交了同步任务且还没有开始执行，用于合并同步请求
+	 */
+	private final AtomicBoolean m_syncQueued;
+
+	/**
+	 * 是否正在同步
+	 */
+	private final AtomicBoolean m_syncRunning;
 	
 	/**
 	 * 指向 ApolloNotificationMessages 的 AtomicReference
@@ -103,6 +110,11 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 	 * 远程配置长轮询服务
 	 */
 	private final RemoteConfigLongPollService remoteConfigLongPollService;
+
+	/**
+	 * 批量加载配置，同步时优先使用它预加载的配置
+	 */
+	private final RemoteConfigBatchLoader m_batchLoader;
 	
 	/**
      * 是否强制拉取缓存的标记<br>
@@ -117,12 +129,6 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
 	private final Gson gson;
 
-	static {
-		// 单线程
-		m_executorService = Executors.newScheduledThreadPool(1,
-				ApolloThreadFactory.create("RemoteConfigRepository", true));
-	}
-
 	/**
 	 * Constructor.
 	 *
@@ -135,6 +141,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 		m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
 		m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
 		remoteConfigLongPollService = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
+		m_batchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
+		m_syncScheduler = ApolloInjector.getInstance(RemoteConfigSyncScheduler.class);
+		m_syncQueued = new AtomicBoolean(false);
+		m_syncRunning = new AtomicBoolean(false);
 		m_longPollServiceDto = new AtomicReference<>();
 		m_remoteMessages = new AtomicReference<>();
 		m_loadConfigRateLimiter = RateLimiter.create(m_configUtil.getLoadConfigQPS());
@@ -173,26 +183,44 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 	}
 
 	/**
-     * 初始化定时刷新配置的任务(每隔配置时间调用trySync()方法更新)
+     * 初始化定时刷新配置的任务(每隔配置时间调用trySync()方法更新)<br>
+     * 首次刷新加上随机抖动，避免所有 Namespace 同时刷新
      */
 	private void schedulePeriodicRefresh() {
 		logger.debug("Schedule periodic refresh with interval: {} {}", m_configUtil.getRefreshInterval(),
 				m_configUtil.getRefreshIntervalTimeUnit());
 		
         // 创建定时任务，定时刷新配置(每隔5分钟, 调用trySync同步配置)
-		m_executorService.scheduleAtFixedRate(new Runnable() {
+		m_syncScheduler.scheduleWithJitter(new Runnable() {
 			@Override
 			public void run() {
+				// 已经有同步在等待或执行，它会拉取最新的配置，跳过本次刷新
+				if (m_syncRunning.get() || !m_syncQueued.compareAndSet(false, true)) {
+					logger.debug("skip periodic refresh for namespace: {}, a sync is in flight", m_namespace);
+					return;
+				}
 				Tracer.logEvent("Apollo.ConfigService", String.format("periodicRefresh: %s", m_namespace));
 				logger.debug("refresh config for namespace: {}", m_namespace);
 				
 				// 尝试同步配置
-				trySync();
+				runQueuedSync();
 				
 				Tracer.logEvent("Apollo.Client.Version", Apollo.VERSION);
 			}
-		}, m_configUtil.getRefreshInterval(), m_configUtil.getRefreshInterval(),
-				m_configUtil.getRefreshIntervalTimeUnit());
+		}, m_configUtil.getRefreshInterval(), m_configUtil.getRefreshIntervalTimeUnit());
+	}
+
+	/**
+	 * 执行已经标记为 queued 的同步
+	 */
+	private void runQueuedSync() {
+		m_syncRunning.set(true);
+		m_syncQueued.set(false);
+		try {
+			trySync();
+		} finally {
+			m_syncRunning.set(false);
+		}
 	}
 
 	@Override
@@ -247,6 +275,16 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 	 * @return
 	 */
 	private ApolloConfig loadApolloConfig() {
+		// 优先使用批量预加载的配置，预加载时的缓存配置必须和当前的一致
+		ApolloConfig preloaded = m_batchLoader.take(m_namespace, m_configCache.get());
+		if (preloaded != null) {
+			m_configNeedForceRefresh.set(false);
+			m_loadConfigFailSchedulePolicy.success();
+			m_longPollServiceDto.set(null);
+			logger.debug("Loaded config for {} from batch: {}", m_namespace, preloaded);
+			return preloaded;
+		}
+
 		// 限流
 		if (!m_loadConfigRateLimiter.tryAcquire(5, TimeUnit.SECONDS)) {
 			// wait at most 5 seconds
@@ -332,6 +370,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
 					// 有新的配置，进行返回新的 ApolloConfig 对象
 					ApolloConfig result = response.getBody();
+					// 增量配置，合并到缓存的配置上
+					if (result != null && result.isDelta()) {
+						result = applyDelta(m_configCache.get(), result);
+					}
 
 					logger.debug("Loaded config for {}: {}", m_namespace, result);
 
@@ -371,6 +413,35 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 		throw new ApolloConfigException(message, exception);
 	}
 
+	/**
+	 * 将增量配置合并到缓存的配置上，得到完整的配置
+	 *
+	 * @param previous 缓存的配置
+	 * @param delta    增量配置
+	 * @return 完整的配置
+	 */
+	private ApolloConfig applyDelta(ApolloConfig previous, ApolloConfig delta) {
+		if (previous == null || !delta.getBaseReleaseKey().equals(previous.getReleaseKey())) {
+			throw new ApolloConfigException(String.format(
+					"Config delta of namespace %s is based on release %s, but the cached release is %s", m_namespace,
+					delta.getBaseReleaseKey(), previous == null ? null : previous.getReleaseKey()));
+		}
+		Map<String, String> configurations = Maps.newLinkedHashMap(previous.getConfigurations());
+		if (delta.getDeletedKeys() != null) {
+			for (String deletedKey : delta.getDeletedKeys()) {
+				configurations.remove(deletedKey);
+			}
+		}
+		if (delta.getConfigurations() != null) {
+			configurations.putAll(delta.getConfigurations());
+		}
+
+		ApolloConfig result = new ApolloConfig(delta.getAppId(), delta.getCluster(), delta.getNamespaceName(),
+				delta.getReleaseKey());
+		result.setConfigurations(configurations);
+		return result;
+	}
+
 	/**
 	 * 组装轮询 Config Service 的配置读取 (/configs/{appId}/{clusterName}/{namespace:.+} 接口的 URL )
 	 * @param uri
@@ -393,6 +464,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 		// releaseKey
 		if (previousConfig != null) {
 			queryParams.put("releaseKey", queryParamEscaper.escape(previousConfig.getReleaseKey()));
+			// 有缓存的配置时，接受相对它的增量配置
+			if (m_configUtil.isConfigDeltaEnabled()) {
+				queryParams.put("delta", "true");
+			}
 		}
 
 		// dataCenter
@@ -446,18 +521,33 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 		m_longPollServiceDto.set(longPollNotifiedServiceDto);
 		// 设置 m_remoteMessages
 		m_remoteMessages.set(remoteMessages);
+		// 设置 m_configNeedForceRefresh 为 true
+		m_configNeedForceRefresh.set(true);
+		// 已经有同步在等待执行，它会使用最新的通知，合并为一次同步
+		if (!m_syncQueued.compareAndSet(false, true)) {
+			return;
+		}
 		// 提交同步任务
-		m_executorService.submit(new Runnable() {
+		m_syncScheduler.submit(new Runnable() {
 			@Override
 			public void run() {
-				// 设置 m_configNeedForceRefresh 为 true
-				m_configNeedForceRefresh.set(true);
 				// 尝试同步配置
-				trySync();
+				runQueuedSync();
 			}
 		});
 	}
 
+	String getNamespace() {
+		return m_namespace;
+	}
+
+	/**
+	 * 当前缓存的配置
+	 */
+	ApolloConfig getApolloConfig() {
+		return m_configCache.get();
+	}
+
 	/**
      * 获得所有 Config Service 信息(Config Service集群地址们)
      * 
@@ -0,0 +1,96 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
+
+/**
+ * 所有 RemoteConfigRepository 共享的同步线程池<br>
+ * 1, 有界的线程池，一个 Namespace 的慢请求不会阻塞其它 Namespace 的同步；<br>
+ * 2, 定时刷新的首次延迟加上随机抖动，避免所有 Namespace 同时刷新；<br>
+ * 3, 启动时在线程池中并发加载多个 Namespace 。
+ */
+public class RemoteConfigSyncScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(RemoteConfigSyncScheduler.class);
+
+    private final ScheduledExecutorService m_executorService;
+
+    /**
+     * Constructor.
+     */
+    public RemoteConfigSyncScheduler() {
+        ConfigUtil configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(configUtil.getConfigSyncThreads(),
+                ApolloThreadFactory.create("RemoteConfigRepository", true));
+        executor.setRemoveOnCancelPolicy(true);
+        m_executorService = executor;
+    }
+
+    /**
+     * 提交同步任务
+     */
+    public Future<?> submit(Runnable task) {
+        return m_executorService.submit(task);
+    }
+
+    /**
+     * 定时执行刷新任务，首次延迟为 period 加上 [0, period) 的随机抖动
+     */
+    public ScheduledFuture<?> scheduleWithJitter(Runnable task, long period, TimeUnit timeUnit) {
+        long periodInMillis = Math.max(1, timeUnit.toMillis(period));
+        long initialDelayInMillis = periodInMillis + ThreadLocalRandom.current().nextLong(periodInMillis);
+        return m_executorService.scheduleAtFixedRate(task, initialDelayInMillis, periodInMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在线程池中并发加载 Namespace 的 Config ，等待全部加载完成
+     *
+     * @param namespaces
+     *            Namespace 的名字
+     */
+    public void loadConcurrently(Collection<String> namespaces) {
+        if (namespaces.size() < 2) {
+            return;
+        }
+        final ConfigManager configManager = ApolloInjector.getInstance(ConfigManager.class);
+        List<Future<Config>> futures = Lists.newArrayListWithCapacity(namespaces.size());
+        for (final String namespace : namespaces) {
+            futures.add(m_executorService.submit(new Callable<Config>() {
+                @Override
+                public Config call() throws Exception {
+                    return configManager.getConfig(namespace);
+                }
+            }));
+        }
+        for (Future<Config> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException ex) {
+                // the namespace is loaded again by the caller
+                logger.warn("Load config concurrently failed", ex.getCause());
+                Tracer.logError(ex.getCause());
+            }
+        }
+    }
+}
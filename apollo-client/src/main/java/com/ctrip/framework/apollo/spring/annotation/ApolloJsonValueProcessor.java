@@ -72,11 +72,12 @@ public class ApolloJsonValueProcessor extends ApolloProcessor implements BeanFac
 
         // 是否开启自动更新机制
         if (configUtil.isAutoUpdateInjectedSpringPropertiesEnabled()) {
-            // 循环 `keys` ，创建对应的 SpringValue 对象，并添加到 `springValueRegistry` 中。
+            // 创建 SpringValue 对象，按依赖的所有 `keys` 添加到 `springValueRegistry` 中。
             Set<String> keys = placeholderHelper.extractPlaceholderKeys(placeholder);
-            for (String key : keys) {
-                SpringValue springValue = new SpringValue(key, placeholder, bean, beanName, field, true);
-                springValueRegistry.register(beanFactory, key, springValue);
+            if (!keys.isEmpty()) {
+                SpringValue springValue = new SpringValue(keys.iterator().next(), placeholder, bean, beanName, field,
+                        true);
+                springValueRegistry.register(beanFactory, keys, springValue);
                 logger.debug("Monitoring {}", springValue);
             }
         }
@@ -112,9 +113,10 @@ public class ApolloJsonValueProcessor extends ApolloProcessor implements BeanFac
 
         if (configUtil.isAutoUpdateInjectedSpringPropertiesEnabled()) {
             Set<String> keys = placeholderHelper.extractPlaceholderKeys(placeHolder);
-            for (String key : keys) {
-                SpringValue springValue = new SpringValue(key, apolloJsonValue.value(), bean, beanName, method, true);
-                springValueRegistry.register(beanFactory, key, springValue);
+            if (!keys.isEmpty()) {
+                SpringValue springValue = new SpringValue(keys.iterator().next(), apolloJsonValue.value(), bean,
+                        beanName, method, true);
+                springValueRegistry.register(beanFactory, keys, springValue);
                 logger.debug("Monitoring {}", springValue);
             }
         }
@@ -105,12 +105,11 @@ public class SpringValueProcessor extends ApolloProcessor implements BeanFactory
             return;
         }
 
-        // 循环 `keys` ，创建对应的 SpringValue 对象，并添加到 `springValueRegistry` 中。
-        for (String key : keys) {
-            SpringValue springValue = new SpringValue(key, value.value(), bean, beanName, field, false);
-            springValueRegistry.register(beanFactory, key, springValue);
-            logger.debug("Monitoring {}", springValue);
-        }
+        // 创建 SpringValue 对象，按依赖的所有 `keys` 添加到 `springValueRegistry` 中。
+        SpringValue springValue = new SpringValue(keys.iterator().next(), value.value(), bean, beanName, field,
+                false);
+        springValueRegistry.register(beanFactory, keys, springValue);
+        logger.debug("Monitoring {}", springValue);
     }
 
     @Override
@@ -141,12 +140,11 @@ public class SpringValueProcessor extends ApolloProcessor implements BeanFactory
             return;
         }
 
-        // 循环 `keys` ，创建对应的 SpringValue 对象，并添加到 `springValueRegistry` 中。
-        for (String key : keys) {
-            SpringValue springValue = new SpringValue(key, value.value(), bean, beanName, method, false);
-            springValueRegistry.register(beanFactory, key, springValue);
-            logger.info("Monitoring {}", springValue);
-        }
+        // 创建 SpringValue 对象，按依赖的所有 `keys` 添加到 `springValueRegistry` 中。
+        SpringValue springValue = new SpringValue(keys.iterator().next(), value.value(), bean, beanName, method,
+                false);
+        springValueRegistry.register(beanFactory, keys, springValue);
+        logger.info("Monitoring {}", springValue);
     }
 
     /**
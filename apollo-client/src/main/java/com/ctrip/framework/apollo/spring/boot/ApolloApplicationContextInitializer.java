@@ -14,7 +14,10 @@ import org.springframework.core.env.ConfigurableEnvironment;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.internals.RemoteConfigBatchLoader;
+import com.ctrip.framework.apollo.internals.RemoteConfigSyncScheduler;
 import com.ctrip.framework.apollo.spring.config.ConfigPropertySourceFactory;
 import com.ctrip.framework.apollo.spring.config.PropertySourcesConstants;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
@@ -111,6 +114,10 @@ public class ApolloApplicationContextInitializer
         // 创建复合属性源
         CompositePropertySource composite = new CompositePropertySource(
                 PropertySourcesConstants.APOLLO_BOOTSTRAP_PROPERTY_SOURCE_NAME);
+        // 一次请求预加载所有 Namespace 的配置
+        ApolloInjector.getInstance(RemoteConfigBatchLoader.class).prefetch(namespaceList);
+        // 并发创建 Namespace 的 Config
+        ApolloInjector.getInstance(RemoteConfigSyncScheduler.class).loadConcurrently(namespaceList);
         for (String namespace : namespaceList) {
             Config config = ConfigService.getConfig(namespace);
 
@@ -21,6 +21,8 @@ import org.springframework.core.env.PropertySource;
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigService;
 import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.internals.RemoteConfigBatchLoader;
+import com.ctrip.framework.apollo.internals.RemoteConfigSyncScheduler;
 import com.ctrip.framework.apollo.spring.property.AutoUpdateConfigChangeListener;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -125,6 +127,12 @@ public class PropertySourcesProcessor implements BeanFactoryPostProcessor, Envir
 		ImmutableSortedSet<Integer> orders = ImmutableSortedSet.copyOf(NAMESPACE_NAMES.keySet());
 		Iterator<Integer> iterator = orders.iterator();
 
+		// 一次请求预加载所有 Namespace 的配置，避免逐个 Namespace 串行加载
+		Set<String> namespaceNames = Sets.newLinkedHashSet(NAMESPACE_NAMES.values());
+		ApolloInjector.getInstance(RemoteConfigBatchLoader.class).prefetch(namespaceNames);
+		// 在共享的线程池中并发创建 Namespace 的 Config ，批量预加载失败时不必逐个串行请求
+		ApolloInjector.getInstance(RemoteConfigSyncScheduler.class).loadConcurrently(namespaceNames);
+
 		while (iterator.hasNext()) {
 			int order = iterator.next();
 			for (String namespace : NAMESPACE_NAMES.get(order)) {
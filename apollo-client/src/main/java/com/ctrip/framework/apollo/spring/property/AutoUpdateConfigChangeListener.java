@@ -16,6 +16,7 @@ import org.springframework.util.CollectionUtils;
 import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.spring.util.SpringInjector;
+import com.google.common.primitives.Primitives;
 import com.google.gson.Gson;
 
 /**
@@ -58,19 +59,13 @@ public class AutoUpdateConfigChangeListener implements ConfigChangeListener {
 			return;
 		}
 
-		// 循环 KEY 集合，更新 StringValue
-		for (String key : keys) {
-            // 忽略，若不在 SpringValueRegistry 中(不是所有的 Apollo 的配置项，应用程序中都在使用。)
-			// 1. check whether the changed key is relevant
-			Collection<SpringValue> targetValues = springValueRegistry.get(beanFactory, key);
-			if (targetValues == null || targetValues.isEmpty()) {
-				continue;
-			}
+		// 1. 查找依赖变化的配置项的 SpringValue ，依赖多个变化的配置项时只更新一次
+		// (不是所有的 Apollo 的配置项，应用程序中都在使用。)
+		Collection<SpringValue> targetValues = springValueRegistry.get(beanFactory, keys);
 
-			// 2. update the value
-			for (SpringValue val : targetValues) {
-				updateSpringValue(val);
-			}
+		// 2. update the value
+		for (SpringValue val : targetValues) {
+			updateSpringValue(val);
 		}
 	}
 
@@ -108,6 +103,9 @@ public class AutoUpdateConfigChangeListener implements ConfigChangeListener {
         // 如果值数据结构是 JSON 类型，则使用 Gson 解析成对应值的类型
 		if (springValue.isJson()) {
 			value = parseJsonValue((String) value, springValue.getGenericType());
+		} else if (value != null && Primitives.wrap(springValue.getTargetType()).isInstance(value)) {
+			// 已经是目标类型，例如 String ，不需要转换
+			return value;
 		} else {
             // 如果值类型为field
 			if (springValue.isField()) {
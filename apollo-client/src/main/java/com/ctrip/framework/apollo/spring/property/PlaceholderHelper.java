@@ -34,6 +34,11 @@ public class PlaceholderHelper {
         // resolve string value
         String strVal = beanFactory.resolveEmbeddedValue(placeholder);
 
+        // 没有表达式时不需要查找 BeanDefinition 和调用 BeanExpressionResolver
+        if (strVal == null || !strVal.contains(EXPRESSION_PREFIX)) {
+            return strVal;
+        }
+
         // 获得 BeanDefinition 对象
         BeanDefinition bd = (beanFactory.containsBean(beanName) ? beanFactory.getMergedBeanDefinition(beanName) : null);
 
@@ -1,9 +1,12 @@
 package com.ctrip.framework.apollo.spring.property;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 
 import org.springframework.core.MethodParameter;
@@ -62,6 +65,11 @@ public class SpringValue {
      */
     private boolean isJson;
 
+    /**
+     * 预先创建的 setter ，更新时不需要再反射调用；创建失败时为空，使用反射调用
+     */
+    private MethodHandle setter;
+
     public SpringValue(String key, String placeholder, Object bean, String beanName, Field field, boolean isJson) {
         this.beanRef = new WeakReference<>(bean);
         this.beanName = beanName;
@@ -73,6 +81,12 @@ public class SpringValue {
         if (isJson) {
             this.genericType = field.getGenericType();
         }
+        try {
+            field.setAccessible(true);
+            this.setter = ignoreReceiverIfStatic(MethodHandles.lookup().unreflectSetter(field), field.getModifiers());
+        } catch (Throwable ex) {
+            // fall back to reflection
+        }
     }
 
     public SpringValue(String key, String placeholder, Object bean, String beanName, Method method, boolean isJson) {
@@ -87,6 +101,22 @@ public class SpringValue {
         if (isJson) {
             this.genericType = method.getGenericParameterTypes()[0];
         }
+        try {
+            method.setAccessible(true);
+            this.setter = ignoreReceiverIfStatic(MethodHandles.lookup().unreflect(method), method.getModifiers());
+        } catch (Throwable ex) {
+            // fall back to reflection
+        }
+    }
+
+    /**
+     * 静态字段和方法的 MethodHandle 没有接收者参数，添加一个忽略的 Bean 参数，使调用方式与实例成员一致
+     */
+    private static MethodHandle ignoreReceiverIfStatic(MethodHandle handle, int modifiers) {
+        if (!Modifier.isStatic(modifiers)) {
+            return handle;
+        }
+        return MethodHandles.dropArguments(handle, 0, Object.class);
     }
 
     /**
@@ -98,13 +128,35 @@ public class SpringValue {
      * @date: 2020年5月7日 下午4:34:59
      */
     public void update(Object newVal) throws IllegalAccessException, InvocationTargetException {
-        if (isField()) {
+        if (setter != null) {
+            injectWithSetter(newVal);
+        } else if (isField()) {
             injectField(newVal);
         } else {
             injectMethod(newVal);
         }
     }
 
+    /**
+     * 通过预先创建的 setter 设置值
+     *
+     * @param newVal
+     * @throws InvocationTargetException
+     */
+    private void injectWithSetter(Object newVal) throws InvocationTargetException {
+        Object bean = beanRef.get();
+        if (bean == null) {
+            return;
+        }
+        try {
+            setter.invoke(bean, newVal);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            throw new InvocationTargetException(ex);
+        }
+    }
+
     /**
      * 设置对象的某个字段的值
      * 
@@ -171,6 +223,10 @@ public class SpringValue {
         return isJson;
     }
 
+    Object getBean() {
+        return beanRef.get();
+    }
+
     boolean isTargetBeanValid() {
         return beanRef.get() != null;
     }
@@ -1,79 +1,109 @@
 package com.ctrip.framework.apollo.spring.property;
 
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Collection;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.beans.factory.BeanFactory;
 
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
-import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
 
 /**
- * SpringValue 注册器
- * 
+ * SpringValue 注册器<br>
+ * 1, 按 BeanFactory 记录配置项到 SpringValue 的依赖关系，一个 SpringValue 依赖的所有配置项（包括嵌套的占位符
+ * ${a:${b}}）都指向同一个 SpringValue ，多个配置项同时变化时只更新一次；<br>
+ * 2, Bean 被回收后，通过 ReferenceQueue 得到通知并移除对应的 SpringValue ，不需要定时扫描全部 SpringValue ；<br>
+ * 3, 配置项的 SpringValue 集合的增删在 {@link #LOCK} 中进行，集合为空时移除，读取不加锁。
+ *
  * @author mengaijun
- * @Description: TODO
  * @date: 2020年5月7日 上午11:22:43
  */
 public class SpringValueRegistry {
-    private static final long CLEAN_INTERVAL_IN_SECONDS = 5;
-    
     /**
      * SpringValue 集合<br>
      *
      * KEY：属性 KEY ，即 Config 配置 KEY<br>
-     * VALUE：SpringValue 数组<br>
+     * VALUE：SpringValue 集合<br>
      */
-    private final Map<BeanFactory, Multimap<String, SpringValue>> registry = Maps.newConcurrentMap();
+    private final Map<BeanFactory, ConcurrentMap<String, Set<SpringValue>>> registry = Maps.newConcurrentMap();
 
-    private final AtomicBoolean initialized = new AtomicBoolean(false);
+    /**
+     * Bean 的弱引用，Bean 被回收后加入 {@link #queue}
+     */
+    private final Set<SpringValueReference> references = Sets.newConcurrentHashSet();
+
+    private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
 
     private final Object LOCK = new Object();
 
     /**
      * 注册属性和值
-     * 
+     *
      * @param beanFactory
      * @param key
      * @param springValue
      * @date: 2020年5月7日 下午4:26:20
      */
     public void register(BeanFactory beanFactory, String key, SpringValue springValue) {
-        if (!registry.containsKey(beanFactory)) {
+        register(beanFactory, Collections.singleton(key), springValue);
+    }
+
+    /**
+     * 注册 SpringValue 依赖的所有配置项
+     *
+     * @param beanFactory
+     * @param keys
+     *            SpringValue 的占位符中的所有配置项
+     * @param springValue
+     */
+    public void register(BeanFactory beanFactory, Collection<String> keys, SpringValue springValue) {
+        expungeStaleValues();
+        Object bean = springValue.getBean();
+        if (bean == null || keys.isEmpty()) {
+            return;
+        }
+
+        ConcurrentMap<String, Set<SpringValue>> springValues = registry.get(beanFactory);
+        if (springValues == null) {
             synchronized (LOCK) {
-                if (!registry.containsKey(beanFactory)) {
-                    registry.put(beanFactory,
-                            Multimaps.synchronizedListMultimap(LinkedListMultimap.<String, SpringValue> create()));
+                springValues = registry.get(beanFactory);
+                if (springValues == null) {
+                    springValues = Maps.newConcurrentMap();
+                    registry.put(beanFactory, springValues);
                 }
             }
         }
 
-        registry.get(beanFactory).put(key, springValue);
-
-        // lazy initialize
-        if (initialized.compareAndSet(false, true)) {
-            initialize();
+        synchronized (LOCK) {
+            for (String key : keys) {
+                Set<SpringValue> keySpringValues = springValues.get(key);
+                if (keySpringValues == null) {
+                    keySpringValues = Sets.newConcurrentHashSet();
+                    springValues.put(key, keySpringValues);
+                }
+                keySpringValues.add(springValue);
+            }
         }
+        references.add(new SpringValueReference(bean, queue, springValues, ImmutableSet.copyOf(keys), springValue));
     }
 
     /**
      * 获取
-     * 
+     *
      * @param beanFactory
      * @param key
      * @return Collection<SpringValue>
      * @date: 2020年5月7日 下午4:26:32
      */
     public Collection<SpringValue> get(BeanFactory beanFactory, String key) {
-        Multimap<String, SpringValue> beanFactorySpringValues = registry.get(beanFactory);
+        Map<String, Set<SpringValue>> beanFactorySpringValues = registry.get(beanFactory);
         if (beanFactorySpringValues == null) {
             return null;
         }
@@ -81,34 +111,68 @@ public class SpringValueRegistry {
     }
 
     /**
-     * 初始化任务
-     * 
-     * @date: 2020年5月7日 下午4:28:20
+     * 获取依赖变化的配置项的 SpringValue ，每个 SpringValue 只返回一次
+     *
+     * @param beanFactory
+     * @param keys
+     *            变化的配置项
+     * @return SpringValue 集合，没有时为空集合
+     */
+    public Collection<SpringValue> get(BeanFactory beanFactory, Collection<String> keys) {
+        expungeStaleValues();
+        Map<String, Set<SpringValue>> beanFactorySpringValues = registry.get(beanFactory);
+        if (beanFactorySpringValues == null) {
+            return Collections.emptySet();
+        }
+        Set<SpringValue> result = null;
+        for (String key : keys) {
+            Set<SpringValue> keySpringValues = beanFactorySpringValues.get(key);
+            if (keySpringValues == null || keySpringValues.isEmpty()) {
+                continue;
+            }
+            if (result == null) {
+                result = Sets.newLinkedHashSet();
+            }
+            result.addAll(keySpringValues);
+        }
+        return result == null ? Collections.<SpringValue>emptySet() : result;
+    }
+
+    /**
+     * 移除 Bean 已经被回收的 SpringValue
      */
-    private void initialize() {
-        Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory.create("SpringValueRegistry", true))
-                .scheduleAtFixedRate(new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            scanAndClean();
-                        } catch (Throwable ex) {
-                            ex.printStackTrace();
-                        }
-                    }
-                }, CLEAN_INTERVAL_IN_SECONDS, CLEAN_INTERVAL_IN_SECONDS, TimeUnit.SECONDS);
+    private void expungeStaleValues() {
+        Reference<?> reference;
+        while ((reference = queue.poll()) != null) {
+            SpringValueReference springValueReference = (SpringValueReference) reference;
+            references.remove(springValueReference);
+            synchronized (LOCK) {
+                springValueReference.unregister();
+            }
+        }
     }
 
-    private void scanAndClean() {
-        Iterator<Multimap<String, SpringValue>> iterator = registry.values().iterator();
-        while (!Thread.currentThread().isInterrupted() && iterator.hasNext()) {
-            Multimap<String, SpringValue> springValues = iterator.next();
-            Iterator<Entry<String, SpringValue>> springValueIterator = springValues.entries().iterator();
-            while (springValueIterator.hasNext()) {
-                Entry<String, SpringValue> springValue = springValueIterator.next();
-                if (!springValue.getValue().isTargetBeanValid()) {
-                    // clear unused spring values
-                    springValueIterator.remove();
+    /**
+     * SpringValue 对应 Bean 的弱引用，记录需要移除的位置
+     */
+    private static final class SpringValueReference extends WeakReference<Object> {
+        private final ConcurrentMap<String, Set<SpringValue>> springValues;
+        private final Set<String> keys;
+        private final SpringValue springValue;
+
+        SpringValueReference(Object bean, ReferenceQueue<Object> queue,
+                ConcurrentMap<String, Set<SpringValue>> springValues, Set<String> keys, SpringValue springValue) {
+            super(bean, queue);
+            this.springValues = springValues;
+            this.keys = keys;
+            this.springValue = springValue;
+        }
+
+        void unregister() {
+            for (String key : keys) {
+                Set<SpringValue> keySpringValues = springValues.get(key);
+                if (keySpringValues != null && keySpringValues.remove(springValue) && keySpringValues.isEmpty()) {
+                    springValues.remove(key, keySpringValues);
                 }
             }
         }
@@ -40,6 +40,11 @@ public class ConfigUtil {
     private boolean autoUpdateInjectedSpringProperties = true;
     private final RateLimiter warnLogRateLimiter;
     private boolean propertiesOrdered = false;
+    private boolean notificationStreamEnabled = true;
+    private boolean configBatchLoadEnabled = true;
+    private boolean configDeltaEnabled = true;
+    private int configSyncThreads = 8;
+    private long configChangeDebounceInMillis = 0;
 
     public ConfigUtil() {
         warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output
@@ -53,6 +58,11 @@ public class ConfigUtil {
         initLongPollingInitialDelayInMills();
         initAutoUpdateInjectedSpringProperties();
         initPropertiesOrdered();
+        initNotificationStreamEnabled();
+        initConfigBatchLoadEnabled();
+        initConfigDeltaEnabled();
+        initConfigSyncThreads();
+        initConfigChangeDebounceInMillis();
     }
 
     /**
@@ -358,4 +368,104 @@ public class ConfigUtil {
     public boolean isPropertiesOrderEnabled() {
         return propertiesOrdered;
     }
+
+    /**
+     * 初始化通知推送流开关<br>
+     * 默认开启，服务端不支持时自动回退到长轮询；可通过 -Dapollo.notificationStream.enabled=false
+     * 或者在 app.properties 中设置 apollo.notificationStream.enabled=false 直接使用长轮询。
+     */
+    private void initNotificationStreamEnabled() {
+        String enableNotificationStream = System.getProperty("apollo.notificationStream.enabled");
+        if (Strings.isNullOrEmpty(enableNotificationStream)) {
+            enableNotificationStream = Foundation.app().getProperty("apollo.notificationStream.enabled", null);
+        }
+        if (!Strings.isNullOrEmpty(enableNotificationStream)) {
+            notificationStreamEnabled = Boolean.parseBoolean(enableNotificationStream.trim());
+        }
+    }
+
+    public boolean isNotificationStreamEnabled() {
+        return notificationStreamEnabled;
+    }
+
+    /**
+     * 初始化批量加载配置开关<br>
+     * 默认开启，启动和多个 Namespace 同时变化时一次请求加载多个 Namespace ，服务端不支持时回退到逐个加载；
+     * 可通过 -Dapollo.configBatchLoad.enabled=false 或者在 app.properties 中设置 apollo.configBatchLoad.enabled=false 关闭。
+     */
+    private void initConfigBatchLoadEnabled() {
+        String enableConfigBatchLoad = System.getProperty("apollo.configBatchLoad.enabled");
+        if (Strings.isNullOrEmpty(enableConfigBatchLoad)) {
+            enableConfigBatchLoad = Foundation.app().getProperty("apollo.configBatchLoad.enabled", null);
+        }
+        if (!Strings.isNullOrEmpty(enableConfigBatchLoad)) {
+            configBatchLoadEnabled = Boolean.parseBoolean(enableConfigBatchLoad.trim());
+        }
+    }
+
+    public boolean isConfigBatchLoadEnabled() {
+        return configBatchLoadEnabled;
+    }
+
+    /**
+     * 初始化增量配置开关<br>
+     * 默认开启，配置变化时服务端只返回相对客户端当前 Release Key 的增量；
+     * 可通过 -Dapollo.configDelta.enabled=false 或者在 app.properties 中设置 apollo.configDelta.enabled=false 关闭。
+     */
+    private void initConfigDeltaEnabled() {
+        String enableConfigDelta = System.getProperty("apollo.configDelta.enabled");
+        if (Strings.isNullOrEmpty(enableConfigDelta)) {
+            enableConfigDelta = Foundation.app().getProperty("apollo.configDelta.enabled", null);
+        }
+        if (!Strings.isNullOrEmpty(enableConfigDelta)) {
+            configDeltaEnabled = Boolean.parseBoolean(enableConfigDelta.trim());
+        }
+    }
+
+    public boolean isConfigDeltaEnabled() {
+        return configDeltaEnabled;
+    }
+
+    /**
+     * 初始化同步配置的线程数，所有 Namespace 共享，可通过 -Dapollo.configSyncThreads 或者 app.properties 配置
+     */
+    private void initConfigSyncThreads() {
+        String customizedConfigSyncThreads = System.getProperty("apollo.configSyncThreads");
+        if (Strings.isNullOrEmpty(customizedConfigSyncThreads)) {
+            customizedConfigSyncThreads = Foundation.app().getProperty("apollo.configSyncThreads", null);
+        }
+        if (!Strings.isNullOrEmpty(customizedConfigSyncThreads)) {
+            try {
+                configSyncThreads = Math.max(1, Integer.parseInt(customizedConfigSyncThreads.trim()));
+            } catch (Throwable ex) {
+                logger.error("Config for apollo.configSyncThreads is invalid: {}", customizedConfigSyncThreads);
+            }
+        }
+    }
+
+    public int getConfigSyncThreads() {
+        return configSyncThreads;
+    }
+
+    /**
+     * 初始化配置变更通知的合并窗口，窗口内的多次变更合并为一个 ConfigChangeEvent ，默认为 0 即不合并。<br>
+     * 可通过 -Dapollo.configChangeDebounceInMillis 或者 app.properties 配置
+     */
+    private void initConfigChangeDebounceInMillis() {
+        String customizedDebounce = System.getProperty("apollo.configChangeDebounceInMillis");
+        if (Strings.isNullOrEmpty(customizedDebounce)) {
+            customizedDebounce = Foundation.app().getProperty("apollo.configChangeDebounceInMillis", null);
+        }
+        if (!Strings.isNullOrEmpty(customizedDebounce)) {
+            try {
+                configChangeDebounceInMillis = Math.max(0, Long.parseLong(customizedDebounce.trim()));
+            } catch (Throwable ex) {
+                logger.error("Config for apollo.configChangeDebounceInMillis is invalid: {}", customizedDebounce);
+            }
+        }
+    }
+
+    public long getConfigChangeDebounceInMillis() {
+        return configChangeDebounceInMillis;
+    }
 }
@@ -0,0 +1,211 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.gson.Gson;
+
+/**
+ * 基于 HttpURLConnection 的默认 Http 传输层<br>
+ * 1, 响应体读完后关闭，连接由 JDK 按目标地址保持复用(keep-alive)；<br>
+ * 2, 请求 gzip 压缩，服务端开启压缩时减少传输量；<br>
+ * 3, 响应体直接从流反序列化，不再先读成完整的字符串；<br>
+ * 4, POST 请求体为 JSON ；<br>
+ * 5, 推送流(text/event-stream)不压缩，逐个事件读取。
+ */
+public class DefaultHttpTransport implements HttpTransport {
+    private static final String GZIP = "gzip";
+    private static final String EVENT_STREAM_CONTENT_TYPE = "text/event-stream";
+    private final ConfigUtil m_configUtil;
+    private final Gson gson;
+
+    public DefaultHttpTransport() {
+        m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+        gson = new Gson();
+    }
+
+    @Override
+    public <T> HttpResponse<T> doGet(HttpRequest httpRequest, Type responseType) {
+        return execute("GET", httpRequest, null, responseType);
+    }
+
+    @Override
+    public <T> HttpResponse<T> doPost(HttpRequest httpRequest, Object requestBody, Type responseType) {
+        return execute("POST", httpRequest, gson.toJson(requestBody).getBytes(StandardCharsets.UTF_8),
+                responseType);
+    }
+
+    @Override
+    public void doGetEventStream(HttpRequest httpRequest, ServerSentEventListener listener) {
+        HttpURLConnection conn = null;
+        int statusCode;
+        try {
+            conn = connect(httpRequest, "GET", null, EVENT_STREAM_CONTENT_TYPE, false, m_configUtil);
+            statusCode = conn.getResponseCode();
+            if (statusCode != 200) {
+                drainErrorStream(conn);
+                throw new ApolloConfigStatusCodeException(statusCode,
+                        String.format("Get event stream failed for %s", httpRequest.getUrl()));
+            }
+
+            String contentType = conn.getContentType();
+            if (contentType == null || !contentType.startsWith(EVENT_STREAM_CONTENT_TYPE)) {
+                conn.disconnect();
+                throw new ApolloConfigStatusCodeException(statusCode, String.format(
+                        "Get event stream failed for %s, unexpected content type: %s", httpRequest.getUrl(),
+                        contentType));
+            }
+
+            try (InputStreamReader isr = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8)) {
+                ServerSentEventReader reader = new ServerSentEventReader(isr);
+                ServerSentEvent event;
+                while ((event = reader.next()) != null) {
+                    if (!listener.onEvent(event)) {
+                        // stop reading, the connection could not be reused since the stream is not finished
+                        conn.disconnect();
+                        return;
+                    }
+                }
+            }
+        } catch (ApolloConfigStatusCodeException ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            if (conn != null) {
+                conn.disconnect();
+            }
+            throw new ApolloConfigException("Could not complete get event stream operation", ex);
+        }
+    }
+
+    private <T> HttpResponse<T> execute(String method, HttpRequest httpRequest, byte[] requestBody,
+            Type responseType) {
+        int statusCode;
+        try {
+            HttpURLConnection conn = connect(httpRequest, method, requestBody, null, true, m_configUtil);
+            statusCode = conn.getResponseCode();
+
+            if (statusCode == 200) {
+                try (Reader reader = new InputStreamReader(responseStream(conn), StandardCharsets.UTF_8)) {
+                    T body = gson.fromJson(reader, responseType);
+                    drain(reader);
+                    return new HttpResponse<>(statusCode, body);
+                }
+            }
+
+            if (statusCode == 304) {
+                try (InputStream is = conn.getInputStream()) {
+                    drain(new InputStreamReader(is, StandardCharsets.UTF_8));
+                }
+                return new HttpResponse<>(statusCode, null);
+            }
+
+            drainErrorStream(conn);
+        } catch (Throwable ex) {
+            throw new ApolloConfigException(
+                    String.format("Could not complete %s operation", method.toLowerCase()), ex);
+        }
+
+        throw new ApolloConfigStatusCodeException(statusCode,
+                String.format("%s operation failed for %s", method.charAt(0) + method.substring(1).toLowerCase(),
+                        httpRequest.getUrl()));
+    }
+
+    @Override
+    public int getOrder() {
+        return LOWEST_PRECEDENCE;
+    }
+
+    private static HttpURLConnection connect(HttpRequest httpRequest, String method, byte[] requestBody,
+            String accept, boolean gzip, ConfigUtil configUtil) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
+
+        conn.setRequestMethod(method);
+
+        if (accept != null) {
+            conn.setRequestProperty("Accept", accept);
+        }
+
+        if (gzip) {
+            conn.setRequestProperty("Accept-Encoding", GZIP);
+        }
+
+        Map<String, String> headers = httpRequest.getHeaders();
+        if (headers != null && headers.size() > 0) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                conn.setRequestProperty(entry.getKey(), entry.getValue());
+            }
+        }
+
+        int connectTimeout = httpRequest.getConnectTimeout();
+        if (connectTimeout < 0) {
+            connectTimeout = configUtil.getConnectTimeout();
+        }
+
+        int readTimeout = httpRequest.getReadTimeout();
+        if (readTimeout < 0) {
+            readTimeout = configUtil.getReadTimeout();
+        }
+
+        conn.setConnectTimeout(connectTimeout);
+        conn.setReadTimeout(readTimeout);
+
+        if (requestBody != null) {
+            conn.setDoOutput(true);
+            conn.setRequestProperty("Content-Type", "application/json;charset=UTF-8");
+            conn.setFixedLengthStreamingMode(requestBody.length);
+            try (OutputStream os = conn.getOutputStream()) {
+                os.write(requestBody);
+            }
+            return conn;
+        }
+
+        conn.connect();
+        return conn;
+    }
+
+    /**
+     * read the error body so that the connection could be reused
+     */
+    private static void drainErrorStream(HttpURLConnection conn) {
+        InputStream errorStream = conn.getErrorStream();
+        if (errorStream == null) {
+            return;
+        }
+        try (InputStreamReader esr = new InputStreamReader(errorStream, StandardCharsets.UTF_8)) {
+            drain(esr);
+        } catch (IOException ex) {
+            // ignore
+        }
+    }
+
+    private static InputStream responseStream(HttpURLConnection conn) throws IOException {
+        InputStream is = conn.getInputStream();
+        if (GZIP.equalsIgnoreCase(conn.getContentEncoding())) {
+            return new GZIPInputStream(is);
+        }
+        return is;
+    }
+
+    /**
+     * read the rest of the body, e.g. trailing whitespaces or the gzip trailer, so that the connection could be reused
+     */
+    private static void drain(Reader reader) throws IOException {
+        char[] buffer = new char[256];
+        while (reader.read(buffer) != -1) {
+            // skip
+        }
+    }
+}
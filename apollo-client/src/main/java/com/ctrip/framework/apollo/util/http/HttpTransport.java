@@ -0,0 +1,56 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.lang.reflect.Type;
+
+import com.ctrip.framework.apollo.core.spi.Ordered;
+
+/**
+ * Http 传输层 SPI，HttpUtil 的 GET 、POST 和推送流请求都通过它执行<br>
+ * 通过 /META-INF/services/com.ctrip.framework.apollo.util.http.HttpTransport 加载，order 最小的实现生效，
+ * 默认实现为 {@link DefaultHttpTransport}
+ */
+public interface HttpTransport extends Ordered {
+    /**
+     * Do get operation for the http request.
+     *
+     * @param httpRequest
+     *            the request
+     * @param responseType
+     *            the response type
+     * @return the response, the body is null if the status code is 304
+     * @throws com.ctrip.framework.apollo.exceptions.ApolloConfigException
+     *             if any error happened or response code is neither 200 nor 304
+     */
+    <T> HttpResponse<T> doGet(HttpRequest httpRequest, Type responseType);
+
+    /**
+     * Do post operation for the http request, the request body is sent as json.
+     *
+     * @param httpRequest
+     *            the request
+     * @param requestBody
+     *            the request body, serialized as json
+     * @param responseType
+     *            the response type
+     * @return the response, the body is null if the status code is 304
+     * @throws com.ctrip.framework.apollo.exceptions.ApolloConfigException
+     *             if any error happened or response code is neither 200 nor 304
+     */
+    <T> HttpResponse<T> doPost(HttpRequest httpRequest, Object requestBody, Type responseType);
+
+    /**
+     * Do get operation for a text/event-stream, and read the events until the stream is closed by server or the
+     * listener returns false.
+     *
+     * @param httpRequest
+     *            the request, its read timeout should be longer than the server side heartbeat interval
+     * @param listener
+     *            the event listener
+     * @throws com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException
+     *             if response code is not 200 or the response is not an event stream, e.g. 404 when the server does
+     *             not support streaming
+     * @throws com.ctrip.framework.apollo.exceptions.ApolloConfigException
+     *             if any other error happened
+     */
+    void doGetEventStream(HttpRequest httpRequest, ServerSentEventListener listener);
+}
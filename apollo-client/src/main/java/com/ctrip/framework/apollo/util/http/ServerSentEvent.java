@@ -0,0 +1,50 @@
+package com.ctrip.framework.apollo.util.http;
+
+/**
+ * Server-Sent Event(text/event-stream) 中的一个事件，注释行(以 ':' 开头，如心跳)也作为事件返回
+ */
+public class ServerSentEvent {
+    private final String m_name;
+    private final String m_data;
+    private final Long m_retry;
+    private final String m_comment;
+
+    public ServerSentEvent(String name, String data, Long retry, String comment) {
+        this.m_name = name;
+        this.m_data = data;
+        this.m_retry = retry;
+        this.m_comment = comment;
+    }
+
+    /**
+     * 事件名，未指定时为 null
+     */
+    public String getName() {
+        return m_name;
+    }
+
+    public String getData() {
+        return m_data;
+    }
+
+    /**
+     * 服务端下发的重连间隔(毫秒)，未指定时为 null
+     */
+    public Long getRetry() {
+        return m_retry;
+    }
+
+    public String getComment() {
+        return m_comment;
+    }
+
+    public boolean isComment() {
+        return m_comment != null;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerSentEvent{" + "name='" + m_name + '\'' + ", data='" + m_data + '\'' + ", retry=" + m_retry
+                + ", comment='" + m_comment + '\'' + '}';
+    }
+}
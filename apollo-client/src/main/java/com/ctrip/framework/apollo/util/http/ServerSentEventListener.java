@@ -0,0 +1,14 @@
+package com.ctrip.framework.apollo.util.http;
+
+/**
+ * Server-Sent Event 监听器
+ */
+public interface ServerSentEventListener {
+
+    /**
+     * 收到事件(包括心跳等注释)
+     *
+     * @return 是否继续读取，返回 false 时关闭连接
+     */
+    boolean onEvent(ServerSentEvent event);
+}
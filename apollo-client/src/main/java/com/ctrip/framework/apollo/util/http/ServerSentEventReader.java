@@ -0,0 +1,71 @@
+package com.ctrip.framework.apollo.util.http;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+import com.google.common.base.Strings;
+
+/**
+ * text/event-stream 解析器，按 https://html.spec.whatwg.org/multipage/server-sent-events.html 的格式读取事件。<br>
+ * 空行结束一个事件，注释行单独作为事件返回，未知字段忽略。
+ */
+public class ServerSentEventReader {
+    private final BufferedReader m_reader;
+
+    public ServerSentEventReader(Reader reader) {
+        this.m_reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    /**
+     * 读取下一个事件，连接关闭时返回 null
+     */
+    public ServerSentEvent next() throws IOException {
+        String name = null;
+        StringBuilder data = null;
+        Long retry = null;
+
+        String line;
+        while ((line = m_reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (name != null || data != null || retry != null) {
+                    return new ServerSentEvent(name, data == null ? null : data.toString(), retry, null);
+                }
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon == 0) {
+                // comment, e.g. heartbeat
+                return new ServerSentEvent(null, null, null, line.substring(1).trim());
+            }
+            String field = colon < 0 ? line : line.substring(0, colon);
+            String value = colon < 0 ? "" : line.substring(colon + 1);
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+            switch (field) {
+                case "event":
+                    name = Strings.emptyToNull(value);
+                    break;
+                case "data":
+                    if (data == null) {
+                        data = new StringBuilder(value);
+                    } else {
+                        data.append('\n').append(value);
+                    }
+                    break;
+                case "retry":
+                    try {
+                        retry = Long.parseLong(value.trim());
+                    } catch (NumberFormatException ex) {
+                        // ignore invalid retry
+                    }
+                    break;
+                default:
+                    // id and unknown fields are ignored
+                    break;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.Test;
+
+public class ConfigChangeListenerIndexTest {
+
+  @Test
+  public void testMatch() throws Exception {
+    ConfigChangeListenerRegistration allKeys = registration(null, null);
+    ConfigChangeListenerRegistration someKey = registration(Sets.newHashSet("someKey"), null);
+    ConfigChangeListenerRegistration somePrefix = registration(null, Sets.newHashSet("some.prefix."));
+    ConfigChangeListenerRegistration shorterPrefix = registration(Sets.newHashSet("anotherKey"),
+        Sets.newHashSet("some."));
+    ConfigChangeListenerIndex index = new ConfigChangeListenerIndex(
+        Lists.newArrayList(allKeys, someKey, somePrefix, shorterPrefix));
+
+    assertEquals(Lists.newArrayList(allKeys, someKey), index.match(Sets.newHashSet("someKey")));
+    assertEquals(Lists.newArrayList(allKeys, somePrefix, shorterPrefix),
+        index.match(Sets.newHashSet("some.prefix.key")));
+    assertEquals(Lists.newArrayList(allKeys, shorterPrefix), index.match(Sets.newHashSet("some.other")));
+    assertEquals(Lists.newArrayList(allKeys, shorterPrefix), index.match(Sets.newHashSet("anotherKey")));
+    assertEquals(Lists.newArrayList(allKeys, someKey, somePrefix, shorterPrefix),
+        index.match(Sets.newHashSet("some.prefix.key", "someKey")));
+    assertEquals(Lists.newArrayList(allKeys), index.match(Sets.newHashSet("some")));
+  }
+
+  @Test
+  public void testMatchWithEmptyPrefix() throws Exception {
+    ConfigChangeListenerRegistration emptyPrefix = registration(null, Sets.newHashSet(""));
+    ConfigChangeListenerIndex index = new ConfigChangeListenerIndex(Lists.newArrayList(emptyPrefix));
+
+    assertEquals(Lists.newArrayList(emptyPrefix), index.match(Sets.newHashSet("anyKey")));
+    assertTrue(index.match(Collections.<String>emptySet()).isEmpty());
+  }
+
+  @Test
+  public void testEmptyIndex() throws Exception {
+    assertTrue(ConfigChangeListenerIndex.EMPTY.isEmpty());
+    assertTrue(ConfigChangeListenerIndex.EMPTY.match(Sets.newHashSet("someKey")).isEmpty());
+  }
+
+  private ConfigChangeListenerRegistration registration(Set<String> interestedKeys,
+      Set<String> interestedKeyPrefixes) {
+    return new ConfigChangeListenerRegistration(mock(ConfigChangeListener.class), interestedKeys,
+        interestedKeyPrefixes);
+  }
+}
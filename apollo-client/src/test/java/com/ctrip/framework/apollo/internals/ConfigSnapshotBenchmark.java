@@ -0,0 +1,113 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.enums.ConfigSourceType;
+import com.ctrip.framework.apollo.util.function.Functions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares hot path reads of {@link DefaultConfig}: the legacy path checks the system properties, the remote
+ * {@link Properties}, the environment and the resource properties on every call and keeps typed values in a Guava
+ * cache, while the snapshot path reads the pre-merged {@link ConfigSnapshot}.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ctrip.framework.apollo.internals.ConfigSnapshotBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ConfigSnapshotBenchmark {
+  private static final String SOME_STRING_KEY = "some.config.key.1";
+  private static final String SOME_INT_KEY = "some.int.key";
+
+  @Param({"100", "1000"})
+  private int keys;
+
+  private Properties configProperties;
+  private Properties resourceProperties;
+  private Cache<String, Integer> integerCache;
+  private DefaultConfig defaultConfig;
+
+  @Setup
+  public void setUp() {
+    configProperties = new Properties();
+    for (int i = 0; i < keys; i++) {
+      configProperties.setProperty("some.config.key." + i, "someValue-" + i);
+    }
+    configProperties.setProperty(SOME_INT_KEY, "12345");
+    resourceProperties = new Properties();
+    integerCache = CacheBuilder.newBuilder().maximumSize(500).expireAfterAccess(1, TimeUnit.MINUTES).build();
+
+    ConfigRepository configRepository = mock(ConfigRepository.class);
+    when(configRepository.getConfig()).thenReturn(configProperties);
+    when(configRepository.getSourceType()).thenReturn(ConfigSourceType.REMOTE);
+    defaultConfig = new DefaultConfig("application", configRepository);
+  }
+
+  @Benchmark
+  public String legacyGetProperty() {
+    return legacyLookup(SOME_STRING_KEY);
+  }
+
+  @Benchmark
+  public String snapshotGetProperty() {
+    return defaultConfig.getProperty(SOME_STRING_KEY, null);
+  }
+
+  @Benchmark
+  public Integer legacyGetIntProperty() {
+    Integer result = integerCache.getIfPresent(SOME_INT_KEY);
+    if (result != null) {
+      return result;
+    }
+    result = Functions.TO_INT_FUNCTION.apply(legacyLookup(SOME_INT_KEY));
+    integerCache.put(SOME_INT_KEY, result);
+    return result;
+  }
+
+  @Benchmark
+  public Integer snapshotGetIntProperty() {
+    return defaultConfig.getIntProperty(SOME_INT_KEY, null);
+  }
+
+  private String legacyLookup(String key) {
+    String value = System.getProperty(key);
+    if (value == null) {
+      value = configProperties.getProperty(key);
+    }
+    if (value == null) {
+      value = System.getenv(key);
+    }
+    if (value == null) {
+      value = resourceProperties.getProperty(key);
+    }
+    return value;
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(ConfigSnapshotBenchmark.class.getSimpleName()).build()).run();
+  }
+}
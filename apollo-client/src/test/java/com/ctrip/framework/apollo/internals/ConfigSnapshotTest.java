@@ -0,0 +1,108 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.ctrip.framework.apollo.util.function.Functions;
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class ConfigSnapshotTest {
+
+  @Test
+  public void testGetValue() throws Exception {
+    Map<String, String> properties = Maps.newHashMap();
+    for (int i = 0; i < 1000; i++) {
+      properties.put("someKey" + i, "someValue" + i);
+    }
+    // same hash code
+    properties.put("Aa", "someAaValue");
+    properties.put("BB", "someBBValue");
+
+    ConfigSnapshot snapshot = new ConfigSnapshot(1, properties);
+
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("someValue" + i, snapshot.getValue("someKey" + i));
+    }
+    assertEquals("someAaValue", snapshot.getValue("Aa"));
+    assertEquals("someBBValue", snapshot.getValue("BB"));
+    assertNull(snapshot.getValue("someMissingKey"));
+    assertNull(snapshot.getValue(null));
+    assertEquals(1, snapshot.getVersion());
+  }
+
+  @Test
+  public void testGetValueFromEmptySnapshot() throws Exception {
+    ConfigSnapshot snapshot = new ConfigSnapshot(1, Maps.<String, String>newHashMap());
+
+    assertNull(snapshot.getValue("someKey"));
+    assertNull(snapshot.getTypedValue("someKey", ConfigSnapshot.INTEGER, Functions.TO_INT_FUNCTION));
+  }
+
+  @Test
+  public void testGetTypedValueParsedOnce() throws Exception {
+    ConfigSnapshot snapshot = new ConfigSnapshot(1, ImmutableMap.of("someKey", "1024"));
+    final AtomicInteger parseCount = new AtomicInteger();
+    Function<String, Integer> someParser = new Function<String, Integer>() {
+      @Override
+      public Integer apply(String input) {
+        parseCount.incrementAndGet();
+        return Integer.parseInt(input);
+      }
+    };
+
+    Integer someValue = snapshot.getTypedValue("someKey", ConfigSnapshot.INTEGER, someParser);
+    Integer anotherValue = snapshot.getTypedValue("someKey", ConfigSnapshot.INTEGER, someParser);
+    Long someLongValue = snapshot.getTypedValue("someKey", ConfigSnapshot.LONG, Functions.TO_LONG_FUNCTION);
+
+    assertEquals(1024, someValue.intValue());
+    assertSame(someValue, anotherValue);
+    assertEquals(1, parseCount.get());
+    assertEquals(1024L, someLongValue.longValue());
+    assertNull(snapshot.getTypedValue("someMissingKey", ConfigSnapshot.INTEGER, someParser));
+  }
+
+  @Test
+  public void testWithChanges() throws Exception {
+    ConfigSnapshot snapshot = new ConfigSnapshot(1,
+        ImmutableMap.of("someKey", "1", "anotherKey", "2", "yetAnotherKey", "3"));
+    Integer someValue = snapshot.getTypedValue("someKey", ConfigSnapshot.INTEGER, Functions.TO_INT_FUNCTION);
+    snapshot.getTypedValue("anotherKey", ConfigSnapshot.INTEGER, Functions.TO_INT_FUNCTION);
+    Map<String, String> changes = Maps.newHashMap();
+    changes.put("anotherKey", "20");
+    changes.put("yetAnotherKey", null);
+    changes.put("newKey", "4");
+
+    ConfigSnapshot newSnapshot = snapshot.withChanges(2, changes);
+
+    assertEquals(2, newSnapshot.getVersion());
+    assertEquals("1", newSnapshot.getValue("someKey"));
+    assertEquals("20", newSnapshot.getValue("anotherKey"));
+    assertNull(newSnapshot.getValue("yetAnotherKey"));
+    assertEquals("4", newSnapshot.getValue("newKey"));
+    // the parsed value of the unchanged key is kept
+    assertSame(someValue, newSnapshot.getTypedValue("someKey", ConfigSnapshot.INTEGER,
+        new Function<String, Integer>() {
+          @Override
+          public Integer apply(String input) {
+            throw new AssertionError("should not parse again");
+          }
+        }));
+    assertEquals(20, newSnapshot.getTypedValue("anotherKey", ConfigSnapshot.INTEGER,
+        Functions.TO_INT_FUNCTION).intValue());
+    // the previous snapshot is not changed
+    assertEquals("2", snapshot.getValue("anotherKey"));
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void testGetTypedValueWithInvalidValue() throws Exception {
+    ConfigSnapshot snapshot = new ConfigSnapshot(1, ImmutableMap.of("someKey", "someValue"));
+
+    snapshot.getTypedValue("someKey", ConfigSnapshot.INTEGER, Functions.TO_INT_FUNCTION);
+  }
+}
@@ -3,6 +3,8 @@ package com.ctrip.framework.apollo.internals;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -33,6 +35,7 @@ import org.junit.Test;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.ConfigKey;
 import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
@@ -907,6 +910,157 @@ public class DefaultConfigTest {
     assertEquals(someValue, defaultConfig.getProperty(someKey, someDefaultValue));
   }
 
+  @Test
+  public void testBind() throws Exception {
+    String someIntKey = "someIntKey";
+    String someBooleanKey = "someBooleanKey";
+    String someEnumKey = "someEnumKey";
+    String someMissingKey = "someMissingKey";
+    someProperties = new Properties();
+    someProperties.setProperty(someIntKey, "100");
+    someProperties.setProperty(someBooleanKey, "true");
+    someProperties.setProperty(someEnumKey, "someValue");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig = new DefaultConfig(someNamespace, configRepository);
+
+    ConfigKey<Integer> someIntConfigKey = defaultConfig.bind(someIntKey, Integer.class, 1);
+    ConfigKey<Integer> someMissingConfigKey = defaultConfig.bind(someMissingKey, int.class, 2);
+    ConfigKey<Boolean> someBooleanConfigKey = defaultConfig.bind(someBooleanKey, Boolean.class, false);
+    ConfigKey<SomeEnum> someEnumConfigKey = defaultConfig.bind(someEnumKey, SomeEnum.class, SomeEnum.defaultValue);
+
+    assertEquals(100, someIntConfigKey.intValue());
+    assertEquals(2, someMissingConfigKey.intValue());
+    assertTrue(someBooleanConfigKey.booleanValue());
+    assertEquals(SomeEnum.someValue, someEnumConfigKey.get());
+    // the same key, type and default value share one handle
+    assertSame(someIntConfigKey, defaultConfig.bind(someIntKey, int.class, 1));
+    assertNotSame(someIntConfigKey, defaultConfig.bind(someIntKey, Integer.class, 3));
+  }
+
+  @Test
+  public void testBindUpdatedBeforeListenersNotified() throws Exception {
+    String someKey = "someKey";
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, "100");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig = new DefaultConfig(someNamespace, configRepository);
+    final ConfigKey<Long> someConfigKey = defaultConfig.bind(someKey, Long.class, 1L);
+    final SettableFuture<Long> valueInListener = SettableFuture.create();
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        valueInListener.set(someConfigKey.get());
+      }
+    });
+
+    Properties newProperties = new Properties();
+    newProperties.setProperty(someKey, "200");
+    defaultConfig.onRepositoryChange(someNamespace, newProperties);
+
+    assertEquals(200L, someConfigKey.longValue());
+    assertEquals(200L, valueInListener.get(500, TimeUnit.MILLISECONDS).longValue());
+
+    // invalid value falls back to the default value
+    Properties invalidProperties = new Properties();
+    invalidProperties.setProperty(someKey, "someInvalidValue");
+    defaultConfig.onRepositoryChange(someNamespace, invalidProperties);
+
+    assertEquals(1L, someConfigKey.longValue());
+  }
+
+  @Test
+  public void testListenerNotifiedInOrder() throws Exception {
+    String someKey = "someKey";
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, "0");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig = new DefaultConfig(someNamespace, configRepository);
+    final List<String> values = Collections.synchronizedList(Lists.<String>newArrayList());
+    final SettableFuture<Boolean> done = SettableFuture.create();
+    ConfigChangeListener someListener = new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        String value = changeEvent.getChange("someKey").getNewValue();
+        values.add(value);
+        if ("10".equals(value)) {
+          done.set(true);
+        }
+      }
+    };
+    defaultConfig.addChangeListener(someListener, Sets.newHashSet(someKey));
+
+    for (int i = 1; i <= 10; i++) {
+      Properties newProperties = new Properties();
+      newProperties.setProperty(someKey, String.valueOf(i));
+      defaultConfig.onRepositoryChange(someNamespace, newProperties);
+    }
+
+    done.get(1, TimeUnit.SECONDS);
+    assertEquals(Lists.newArrayList("1", "2", "3", "4", "5", "6", "7", "8", "9", "10"), values);
+    assertTrue(defaultConfig.removeChangeListener(someListener));
+    assertFalse(defaultConfig.removeChangeListener(someListener));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBindWithUnsupportedType() throws Exception {
+    when(configRepository.getConfig()).thenReturn(new Properties());
+
+    DefaultConfig defaultConfig = new DefaultConfig(someNamespace, configRepository);
+
+    defaultConfig.bind("someKey", List.class, null);
+  }
+
+  @Test
+  public void testOnRepositoryChangeWithDebounce() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithDebounce());
+    String someKey = "someKey";
+    String anotherKey = "anotherKey";
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, "someValue");
+    someProperties.setProperty(anotherKey, "anotherValue");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig = new DefaultConfig(someNamespace, configRepository);
+    final List<ConfigChangeEvent> changeEvents = Collections.synchronizedList(Lists.<ConfigChangeEvent>newArrayList());
+    final SettableFuture<ConfigChangeEvent> configChangeFuture = SettableFuture.create();
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        changeEvents.add(changeEvent);
+        configChangeFuture.set(changeEvent);
+      }
+    });
+
+    Properties newProperties = new Properties();
+    newProperties.setProperty(someKey, "newValue");
+    newProperties.setProperty(anotherKey, "anotherValue");
+    defaultConfig.onRepositoryChange(someNamespace, newProperties);
+    Properties yetNewProperties = new Properties();
+    yetNewProperties.setProperty(someKey, "yetNewValue");
+    yetNewProperties.setProperty(anotherKey, "anotherValue");
+    yetNewProperties.setProperty("newKey", "newValue");
+    defaultConfig.onRepositoryChange(someNamespace, yetNewProperties);
+    Properties revertedProperties = new Properties();
+    revertedProperties.setProperty(someKey, "yetNewValue");
+    revertedProperties.setProperty(anotherKey, "anotherValue");
+    defaultConfig.onRepositoryChange(someNamespace, revertedProperties);
+
+    // the values are updated immediately
+    assertEquals("yetNewValue", defaultConfig.getProperty(someKey, null));
+
+    ConfigChangeEvent changeEvent = configChangeFuture.get(1, TimeUnit.SECONDS);
+    TimeUnit.MILLISECONDS.sleep(200);
+
+    assertEquals(1, changeEvents.size());
+    assertEquals(Sets.newHashSet(someKey), changeEvent.changedKeys());
+    assertEquals("someValue", changeEvent.getChange(someKey).getOldValue());
+    assertEquals("yetNewValue", changeEvent.getChange(someKey).getNewValue());
+    assertEquals(PropertyChangeType.MODIFIED, changeEvent.getChange(someKey).getChangeType());
+  }
+
   private void checkDatePropertyWithFormat(Config config, Date expected, String propertyName, String format, Date
       defaultValue) {
     assertEquals(expected, config.getDateProperty(propertyName, format, defaultValue));
@@ -945,6 +1099,13 @@ public class DefaultConfigTest {
     }
   }
 
+  public static class MockConfigUtilWithDebounce extends MockConfigUtil {
+    @Override
+    public long getConfigChangeDebounceInMillis() {
+      return 100;
+    }
+  }
+
   public static class MockConfigUtilWithSmallCache extends MockConfigUtil {
     @Override
     public long getMaxConfigCacheSize() {
@@ -0,0 +1,89 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.ctrip.framework.apollo.util.OrderedProperties;
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LocalConfigCacheFileTest {
+  private File someBaseDir;
+  private File someFile;
+
+  @Before
+  public void setUp() throws Exception {
+    someBaseDir = Files.createTempDir();
+    someFile = new File(someBaseDir, "someApp+someCluster+someNamespace.bin");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    for (File file : someBaseDir.listFiles()) {
+      file.delete();
+    }
+    someBaseDir.delete();
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    Properties someProperties = new OrderedProperties();
+    someProperties.setProperty("someKey", "someValue\nxxx");
+    someProperties.setProperty("anotherKey", "中文");
+    someProperties.setProperty("emptyKey", "");
+
+    LocalConfigCacheFile.write(someFile, someProperties);
+    Properties result = LocalConfigCacheFile.read(someFile, new OrderedProperties());
+
+    assertEquals(someProperties, result);
+    assertEquals(Lists.newArrayList(someProperties.stringPropertyNames()),
+        Lists.newArrayList(result.stringPropertyNames()));
+    assertFalse(new File(someBaseDir, someFile.getName() + ".tmp").exists());
+  }
+
+  @Test
+  public void testWriteAndReadLargeFile() throws Exception {
+    Properties someProperties = new Properties();
+    for (int i = 0; i < 10000; i++) {
+      someProperties.setProperty("someKey" + i, "someValue" + i + "-0123456789012345678901234567890123456789");
+    }
+
+    LocalConfigCacheFile.write(someFile, someProperties);
+
+    assertEquals(someProperties, LocalConfigCacheFile.read(someFile, new Properties()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadCorruptedFile() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty("someKey", "someValue");
+    LocalConfigCacheFile.write(someFile, someProperties);
+
+    try (RandomAccessFile file = new RandomAccessFile(someFile, "rw")) {
+      file.seek(16);
+      file.write('x');
+    }
+
+    LocalConfigCacheFile.read(someFile, new Properties());
+  }
+
+  @Test(expected = IOException.class)
+  public void testReadTruncatedFile() throws Exception {
+    Properties someProperties = new Properties();
+    someProperties.setProperty("someKey", "someValue");
+    LocalConfigCacheFile.write(someFile, someProperties);
+
+    try (RandomAccessFile file = new RandomAccessFile(someFile, "rw")) {
+      file.setLength(file.length() - 3);
+    }
+
+    LocalConfigCacheFile.read(someFile, new Properties());
+  }
+}
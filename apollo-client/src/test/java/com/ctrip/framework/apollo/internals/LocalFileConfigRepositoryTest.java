@@ -3,6 +3,7 @@ package com.ctrip.framework.apollo.internals;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -89,6 +90,11 @@ public class LocalFileConfigRepositoryTest {
     file.delete();
   }
 
+  private String assembleLocalSnapshotFileName() {
+    return String.format("%s.bin", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, someNamespace));
+  }
+
   private String assembleLocalCacheFileName() {
     return String.format("%s.properties", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
         .join(someAppId, someCluster, someNamespace));
@@ -195,6 +201,67 @@ public class LocalFileConfigRepositoryTest {
     assertEquals(anotherSourceType, localFileConfigRepository.getSourceType());
   }
 
+  @Test
+  public void testPersistAndLoadFromSnapshotFile() throws Exception {
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace, upstreamRepo);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+    localRepo.persistLocalCacheFile(someBaseDir, someNamespace);
+
+    File file = new File(someBaseDir, assembleLocalCacheFileName());
+    File snapshotFile = new File(someBaseDir, assembleLocalSnapshotFileName());
+    assertTrue(file.isFile());
+    assertTrue(snapshotFile.isFile());
+
+    assertEquals(someProperties, LocalConfigCacheFile.read(snapshotFile, new Properties()));
+
+    // the legacy file is not read when the snapshot is not older
+    Properties someSnapshotProperties = new Properties();
+    someSnapshotProperties.setProperty(defaultKey, "someSnapshotValue");
+    LocalConfigCacheFile.write(snapshotFile, someSnapshotProperties);
+    Files.write(defaultKey + "=someOtherValue", file, Charsets.UTF_8);
+    file.setLastModified(snapshotFile.lastModified());
+
+    LocalFileConfigRepository anotherLocalRepo = new LocalFileConfigRepository(someNamespace);
+    anotherLocalRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals("someSnapshotValue", anotherLocalRepo.getConfig().getProperty(defaultKey));
+  }
+
+  @Test
+  public void testLoadConfigWithCorruptedSnapshotFile() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    File file = createLocalCachePropertyFile(someProperties);
+    File snapshotFile = new File(someBaseDir, assembleLocalSnapshotFileName());
+    Files.write("corrupted", snapshotFile, Charsets.UTF_8);
+    snapshotFile.setLastModified(file.lastModified());
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals(someValue, localRepo.getConfig().getProperty(someKey));
+  }
+
+  @Test
+  public void testLoadConfigWithLocalFileNewerThanSnapshotFile() throws Exception {
+    String someKey = "someKey";
+    Properties someSnapshotProperties = new Properties();
+    someSnapshotProperties.setProperty(someKey, "someSnapshotValue");
+    File snapshotFile = new File(someBaseDir, assembleLocalSnapshotFileName());
+    LocalConfigCacheFile.write(snapshotFile, someSnapshotProperties);
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, "someEditedValue");
+    File file = createLocalCachePropertyFile(someProperties);
+    file.setLastModified(snapshotFile.lastModified() + 1000);
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace);
+    localRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals("someEditedValue", localRepo.getConfig().getProperty(someKey));
+  }
+
   public static class MockConfigUtil extends ConfigUtil {
     @Override
     public String getAppId() {
@@ -0,0 +1,159 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQuery;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQueryResult;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigBatchLoaderTest {
+  @Mock
+  private HttpUtil httpUtil;
+  @Mock
+  private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private ServiceDTO someServiceDTO;
+  private RemoteConfigBatchLoader batchLoader;
+  private String someNamespace;
+  private String anotherNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.reset();
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
+    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+
+    when(someServiceDTO.getHomepageUrl()).thenReturn("http://someServer");
+    when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(someServiceDTO));
+
+    someNamespace = "someNamespace";
+    anotherNamespace = "anotherNamespace";
+    batchLoader = new RemoteConfigBatchLoader();
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    ApolloConfig someConfig = new ApolloConfig("someAppId", "someCluster", someNamespace, "someReleaseKey");
+    mockBatchResponse(new ApolloConfigQueryResult(someNamespace, 200, someConfig),
+        new ApolloConfigQueryResult(anotherNamespace, 404, null));
+
+    batchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    assertSame(someConfig, batchLoader.take(someNamespace, null));
+    // taken only once
+    assertNull(batchLoader.take(someNamespace, null));
+    assertNull(batchLoader.take(anotherNamespace, null));
+  }
+
+  @Test
+  public void testPreloadNotifiedRepositories() throws Exception {
+    ApolloConfig someBaseConfig = new ApolloConfig("someAppId", "someCluster", someNamespace, "someOldKey");
+    ApolloConfig someNewConfig = new ApolloConfig("someAppId", "someCluster", someNamespace, "someNewKey");
+    ApolloConfig anotherBaseConfig = new ApolloConfig("someAppId", "someCluster", anotherNamespace, "anotherKey");
+    ApolloNotificationMessages someMessages = new ApolloNotificationMessages();
+    someMessages.put("someAppId+someCluster+someNamespace", 10L);
+
+    Map<RemoteConfigRepository, ApolloNotificationMessages> repositories = Maps.newLinkedHashMap();
+    repositories.put(mockRepository(someNamespace, someBaseConfig), someMessages);
+    repositories.put(mockRepository(anotherNamespace, anotherBaseConfig), null);
+    ArgumentCaptor<Object> queriesCaptor = mockBatchResponse(
+        new ApolloConfigQueryResult(someNamespace, 200, someNewConfig),
+        new ApolloConfigQueryResult(anotherNamespace, 304, null));
+
+    batchLoader.preload(someServiceDTO, repositories);
+
+    List<ApolloConfigQuery> queries = (List<ApolloConfigQuery>) queriesCaptor.getValue();
+    assertEquals(2, queries.size());
+    assertEquals("someOldKey", queries.get(0).getReleaseKey());
+    assertSame(someMessages, queries.get(0).getMessages());
+    assertEquals("anotherKey", queries.get(1).getReleaseKey());
+
+    // the repository's cache has changed since the batch was loaded
+    assertNull(batchLoader.take(someNamespace, someNewConfig));
+    // not modified means the cached config
+    assertSame(anotherBaseConfig, batchLoader.take(anotherNamespace, anotherBaseConfig));
+  }
+
+  @Test
+  public void testPrefetchSingleNamespace() throws Exception {
+    batchLoader.prefetch(Lists.newArrayList(someNamespace));
+
+    verify(httpUtil, never()).doPost(any(HttpRequest.class), any(), any(Type.class));
+    assertNull(batchLoader.take(someNamespace, null));
+  }
+
+  @Test
+  public void testPrefetchFailed() throws Exception {
+    when(httpUtil.doPost(any(HttpRequest.class), any(), any(Type.class)))
+        .thenThrow(new IllegalStateException("some error"));
+
+    batchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    assertNull(batchLoader.take(someNamespace, null));
+  }
+
+  private RemoteConfigRepository mockRepository(String namespace, ApolloConfig config) {
+    RemoteConfigRepository repository = mock(RemoteConfigRepository.class);
+    when(repository.getNamespace()).thenReturn(namespace);
+    when(repository.getApolloConfig()).thenReturn(config);
+    return repository;
+  }
+
+  private ArgumentCaptor<Object> mockBatchResponse(ApolloConfigQueryResult... results) {
+    ArgumentCaptor<Object> queriesCaptor = ArgumentCaptor.forClass(Object.class);
+    HttpResponse<List<ApolloConfigQueryResult>> response =
+        new HttpResponse<List<ApolloConfigQueryResult>>(200, Lists.newArrayList(results));
+    when(httpUtil.<List<ApolloConfigQueryResult>>doPost(any(HttpRequest.class), queriesCaptor.capture(),
+        any(Type.class))).thenReturn(response);
+    return queriesCaptor;
+  }
+
+  private static class MockConfigUtil extends ConfigUtil {
+    @Override
+    public String getAppId() {
+      return "someAppId";
+    }
+
+    @Override
+    public String getCluster() {
+      return "someCluster";
+    }
+
+    @Override
+    public String getAccessKeySecret() {
+      return null;
+    }
+
+    @Override
+    public String getDataCenter() {
+      return null;
+    }
+  }
+}
@@ -17,13 +17,17 @@ import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
 import com.ctrip.framework.apollo.core.signature.Signature;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.ctrip.framework.apollo.util.http.ServerSentEvent;
+import com.ctrip.framework.apollo.util.http.ServerSentEventListener;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.gson.Gson;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
@@ -58,6 +62,7 @@ public class RemoteConfigLongPollServiceTest {
   private static String someAppId;
   private static String someCluster;
   private static String someSecret;
+  private static boolean someNotificationStreamEnabled;
 
   @Before
   public void setUp() throws Exception {
@@ -71,7 +76,9 @@ public class RemoteConfigLongPollServiceTest {
     when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
     MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
 
+    someNotificationStreamEnabled = false;
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, mock(RemoteConfigBatchLoader.class));
 
     remoteConfigLongPollService = new RemoteConfigLongPollService();
 
@@ -178,6 +185,128 @@ public class RemoteConfigLongPollServiceTest {
     assertEquals(anotherNotificationId, captured.get(anotherKey).longValue());
   }
 
+  @Test
+  public void testSubmitNotificationStreamWithNotification() throws Exception {
+    someNotificationStreamEnabled = true;
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    ApolloNotificationMessages notificationMessages = new ApolloNotificationMessages();
+    String someKey = "someKey";
+    long someNotificationId = 1;
+    notificationMessages.put(someKey, someNotificationId);
+
+    ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, someNotificationId);
+    someNotification.setMessages(notificationMessages);
+    final String someData = new Gson().toJson(Lists.newArrayList(someNotification));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        HttpRequest request = invocation.getArgumentAt(0, HttpRequest.class);
+        ServerSentEventListener listener = invocation.getArgumentAt(1, ServerSentEventListener.class);
+
+        assertTrue(request.getUrl().contains(someServerUrl + "/notifications/v2/stream?"));
+        assertTrue(request.getUrl().contains("appId=" + someAppId));
+        assertTrue(request.getUrl().contains(someNamespace));
+
+        listener.onEvent(new ServerSentEvent(null, null, 5000L, null));
+        listener.onEvent(new ServerSentEvent(null, null, null, "heartbeat"));
+        listener.onEvent(new ServerSentEvent("notifications", someData, null, null));
+
+        //keep the stream open until notified
+        onNotified.get(5000, TimeUnit.MILLISECONDS);
+        return null;
+      }
+    }).when(httpUtil).doGetEventStream(any(HttpRequest.class), any(ServerSentEventListener.class));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    final ArgumentCaptor<ApolloNotificationMessages> captor = ArgumentCaptor.forClass(ApolloNotificationMessages.class);
+    verify(someRepository, times(1)).onLongPollNotified(any(ServiceDTO.class), captor.capture());
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), eq(responseType));
+
+    assertEquals(someNotificationId, captor.getValue().get(someKey).longValue());
+  }
+
+  @Test
+  public void testNotificationStreamNotSupportedFallbackToLongPolling() throws Exception {
+    someNotificationStreamEnabled = true;
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+
+    ApolloConfigNotification someNotification = new ApolloConfigNotification(someNamespace, 1);
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(pollResponse.getBody()).thenReturn(Lists.newArrayList(someNotification));
+
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        throw new ApolloConfigStatusCodeException(HttpServletResponse.SC_NOT_FOUND, "not found");
+      }
+    }).when(httpUtil).doGetEventStream(any(HttpRequest.class), any(ServerSentEventListener.class));
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    final SettableFuture<Boolean> onNotified = SettableFuture.create();
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        onNotified.set(true);
+        return null;
+      }
+    }).when(someRepository).onLongPollNotified(any(ServiceDTO.class), any(ApolloNotificationMessages.class));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    onNotified.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    verify(httpUtil, times(1)).doGetEventStream(any(HttpRequest.class), any(ServerSentEventListener.class));
+  }
+
+  @Test
+  public void testAssembleNotificationStreamUrl() throws Exception {
+    String someUri = someServerUrl;
+    String someAppId = "someAppId";
+    String someCluster = "someCluster+ &.-_someSign";
+    String someNamespace = "someName";
+    long someNotificationId = 1;
+    Map<String, Long> notificationsMap = ImmutableMap.of(someNamespace, someNotificationId);
+
+    String streamUrl = remoteConfigLongPollService
+        .assembleNotificationStreamUrl(someUri, someAppId, someCluster, null, notificationsMap);
+
+    assertTrue(streamUrl.contains(someServerUrl + "/notifications/v2/stream?"));
+    assertTrue(streamUrl.contains("appId=" + someAppId));
+    assertTrue(streamUrl.contains("cluster=someCluster%2B+%26.-_someSign"));
+  }
+
   @Test
   public void testSubmitLongPollNamespaceWithAccessKeySecret() throws Exception {
     someSecret = "someSecret";
@@ -553,6 +682,11 @@ public class RemoteConfigLongPollServiceTest {
     public long getLongPollingInitialDelayInMills() {
       return 0;
     }
+
+    @Override
+    public boolean isNotificationStreamEnabled() {
+      return someNotificationStreamEnabled;
+    }
   }
 
 }
@@ -2,13 +2,16 @@ package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -17,6 +20,7 @@ import static org.mockito.Mockito.when;
 import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQueryResult;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
 import com.ctrip.framework.apollo.core.signature.Signature;
@@ -66,6 +70,7 @@ public class RemoteConfigRepositoryTest {
   @Mock
   private static HttpResponse<List<ApolloConfigNotification>> pollResponse;
   private RemoteConfigLongPollService remoteConfigLongPollService;
+  private RemoteConfigBatchLoader remoteConfigBatchLoader;
   @Mock
   private PropertiesFactory propertiesFactory;
 
@@ -94,6 +99,10 @@ public class RemoteConfigRepositoryTest {
     httpUtil = spy(new MockHttpUtil());
     MockInjector.setInstance(HttpUtil.class, httpUtil);
 
+    remoteConfigBatchLoader = new RemoteConfigBatchLoader();
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, remoteConfigBatchLoader);
+    MockInjector.setInstance(RemoteConfigSyncScheduler.class, new RemoteConfigSyncScheduler());
+
     remoteConfigLongPollService = new RemoteConfigLongPollService();
 
     MockInjector.setInstance(RemoteConfigLongPollService.class, remoteConfigLongPollService);
@@ -195,6 +204,24 @@ public class RemoteConfigRepositoryTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
   }
 
+  @Test
+  public void testLoadConfigFromBatch() throws Exception {
+    String anotherNamespace = "anotherName";
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+    HttpResponse<List<ApolloConfigQueryResult>> batchResponse = new HttpResponse<List<ApolloConfigQueryResult>>(
+        200, Lists.newArrayList(new ApolloConfigQueryResult(someNamespace, 200, someApolloConfig),
+        new ApolloConfigQueryResult(anotherNamespace, 404, null)));
+    doReturn(batchResponse).when(httpUtil).doPost(any(HttpRequest.class), any(), any(Type.class));
+
+    remoteConfigBatchLoader.prefetch(Lists.newArrayList(someNamespace, anotherNamespace));
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    assertEquals(configurations, remoteConfigRepository.getConfig());
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), any(Class.class));
+    remoteConfigLongPollService.stopLongPollingRefresh();
+  }
+
   @Test(expected = ApolloConfigException.class)
   public void testGetRemoteConfigWithServerError() throws Exception {
 
@@ -235,6 +262,33 @@ public class RemoteConfigRepositoryTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
   }
 
+  @Test
+  public void testLoadConfigWithDelta() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "anotherValue",
+        "deletedKey", "deletedValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    ApolloConfig someDelta = new ApolloConfig(someApolloConfig.getAppId(), someApolloConfig.getCluster(),
+        someNamespace, "2");
+    someDelta.setBaseReleaseKey(someApolloConfig.getReleaseKey());
+    someDelta.setConfigurations(ImmutableMap.of("someKey", "newValue", "addedKey", "addedValue"));
+    someDelta.setDeletedKeys(Lists.newArrayList("deletedKey"));
+    when(someResponse.getBody()).thenReturn(someDelta);
+
+    remoteConfigRepository.sync();
+
+    assertEquals(ImmutableMap.of("someKey", "newValue", "anotherKey", "anotherValue", "addedKey", "addedValue"),
+        remoteConfigRepository.getConfig());
+    assertEquals("2", remoteConfigRepository.getApolloConfig().getReleaseKey());
+    assertFalse(remoteConfigRepository.getApolloConfig().isDelta());
+    remoteConfigLongPollService.stopLongPollingRefresh();
+  }
+
   @Test
   public void testLongPollingRefresh() throws Exception {
     Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
@@ -322,6 +376,7 @@ public class RemoteConfigRepositoryTest {
             "http://someServer/configs/someAppId/someCluster+%20&.-_someSign/" + someNamespace));
     assertTrue(queryConfigUrl
         .contains("releaseKey=20160705193346-583078ef5716c055%2B20160705193308-31c471ddf9087c3f"));
+    assertTrue(queryConfigUrl.contains("delta=true"));
     assertTrue(queryConfigUrl
         .contains("messages=" + UrlEscapers.urlFormParameterEscaper()
             .escape(gson.toJson(notificationMessages))));
@@ -385,6 +440,11 @@ public class RemoteConfigRepositoryTest {
     public long getLongPollingInitialDelayInMills() {
       return 0;
     }
+
+    @Override
+    public boolean isNotificationStreamEnabled() {
+      return false;
+    }
   }
 
   public static class MockHttpUtil extends HttpUtil {
@@ -0,0 +1,86 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.Config;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigSyncSchedulerTest {
+  @Mock
+  private ConfigManager configManager;
+  @Mock
+  private Config someConfig;
+  private RemoteConfigSyncScheduler syncScheduler;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigUtil.class, new ConfigUtil());
+    MockInjector.setInstance(ConfigManager.class, configManager);
+
+    syncScheduler = new RemoteConfigSyncScheduler();
+  }
+
+  @Test
+  public void testScheduleWithJitter() throws Exception {
+    long somePeriod = 5;
+
+    for (int i = 0; i < 10; i++) {
+      ScheduledFuture<?> future = syncScheduler.scheduleWithJitter(new Runnable() {
+        @Override
+        public void run() {
+        }
+      }, somePeriod, TimeUnit.MINUTES);
+      long delay = future.getDelay(TimeUnit.MILLISECONDS);
+      future.cancel(false);
+
+      assertTrue(delay > TimeUnit.MINUTES.toMillis(somePeriod) - 1000);
+      assertTrue(delay < TimeUnit.MINUTES.toMillis(somePeriod * 2));
+    }
+  }
+
+  @Test
+  public void testLoadConcurrently() throws Exception {
+    String someNamespace = "someNamespace";
+    String anotherNamespace = "anotherNamespace";
+    when(configManager.getConfig(anyString())).thenReturn(someConfig);
+
+    syncScheduler.loadConcurrently(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    verify(configManager).getConfig(someNamespace);
+    verify(configManager).getConfig(anotherNamespace);
+  }
+
+  @Test
+  public void testLoadConcurrentlyWithFailure() throws Exception {
+    String someNamespace = "someNamespace";
+    String anotherNamespace = "anotherNamespace";
+    when(configManager.getConfig(someNamespace)).thenThrow(new IllegalStateException("some error"));
+    when(configManager.getConfig(anotherNamespace)).thenReturn(someConfig);
+
+    syncScheduler.loadConcurrently(Lists.newArrayList(someNamespace, anotherNamespace));
+
+    verify(configManager).getConfig(anotherNamespace);
+  }
+
+  @Test
+  public void testLoadSingleNamespace() throws Exception {
+    syncScheduler.loadConcurrently(Lists.newArrayList("someNamespace"));
+
+    verify(configManager, never()).getConfig(anyString());
+  }
+}
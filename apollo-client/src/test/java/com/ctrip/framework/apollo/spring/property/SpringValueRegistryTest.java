@@ -0,0 +1,122 @@
+package com.ctrip.framework.apollo.spring.property;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.lang.ref.Reference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.BeanFactory;
+
+public class SpringValueRegistryTest {
+
+  private SpringValueRegistry springValueRegistry;
+  private BeanFactory someBeanFactory;
+
+  @Before
+  public void setUp() throws Exception {
+    springValueRegistry = new SpringValueRegistry();
+    someBeanFactory = mock(BeanFactory.class);
+  }
+
+  @Test
+  public void testGetWithNestedPlaceholder() throws Exception {
+    SomeBean someBean = new SomeBean();
+    Field someField = SomeBean.class.getDeclaredField("someValue");
+    SpringValue nestedValue = new SpringValue("a", "${a:${b}}", someBean, "someBean", someField, false);
+    SpringValue anotherValue = new SpringValue("b", "${b}", someBean, "someBean", someField, false);
+    springValueRegistry.register(someBeanFactory, Sets.newHashSet("a", "b"), nestedValue);
+    springValueRegistry.register(someBeanFactory, "b", anotherValue);
+
+    assertEquals(Lists.newArrayList(nestedValue),
+        Lists.newArrayList(springValueRegistry.get(someBeanFactory, Sets.newHashSet("a"))));
+    Collection<SpringValue> springValues = springValueRegistry.get(someBeanFactory, Sets.newHashSet("a", "b"));
+    assertEquals(2, springValues.size());
+    assertTrue(springValues.containsAll(Lists.newArrayList(nestedValue, anotherValue)));
+    assertTrue(springValueRegistry.get(someBeanFactory, Sets.newHashSet("c")).isEmpty());
+    assertTrue(springValueRegistry.get(mock(BeanFactory.class), Sets.newHashSet("a")).isEmpty());
+  }
+
+  @Test
+  public void testRemoveEmptyKeyWhenBeanCollected() throws Exception {
+    SomeBean someBean = new SomeBean();
+    SomeBean anotherBean = new SomeBean();
+    Field someField = SomeBean.class.getDeclaredField("someValue");
+    SpringValue someValue = new SpringValue("a", "${a}", someBean, "someBean", someField, false);
+    SpringValue anotherValue = new SpringValue("b", "${b}", anotherBean, "anotherBean", someField, false);
+    springValueRegistry.register(someBeanFactory, "a", someValue);
+    springValueRegistry.register(someBeanFactory, "b", anotherValue);
+
+    //simulate that someBean is garbage collected
+    for (Object reference : (Collection<?>) getField(springValueRegistry, "references")) {
+      if (((Reference<?>) reference).get() == someBean) {
+        ((Reference<?>) reference).enqueue();
+      }
+    }
+
+    assertTrue(springValueRegistry.get(someBeanFactory, Sets.newHashSet("a", "b")).contains(anotherValue));
+    Map<?, ?> registry = (Map<?, ?>) getField(springValueRegistry, "registry");
+    Map<?, ?> springValues = (Map<?, ?>) registry.get(someBeanFactory);
+    assertFalse(springValues.containsKey("a"));
+    assertTrue(springValues.containsKey("b"));
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    SomeBean someBean = new SomeBean();
+    Field someField = SomeBean.class.getDeclaredField("someValue");
+    Method someMethod = SomeBean.class.getDeclaredMethod("setAnotherValue", int.class);
+    SpringValue fieldValue = new SpringValue("a", "${a}", someBean, "someBean", someField, false);
+    SpringValue methodValue = new SpringValue("b", "${b}", someBean, "someBean", someMethod, false);
+
+    fieldValue.update("someValue");
+    methodValue.update(10);
+
+    assertEquals("someValue", someBean.someValue);
+    assertEquals(10, someBean.anotherValue);
+  }
+
+  @Test
+  public void testUpdateStaticMember() throws Exception {
+    SomeBean someBean = new SomeBean();
+    Field someField = SomeBean.class.getDeclaredField("someStaticValue");
+    Method someMethod = SomeBean.class.getDeclaredMethod("setAnotherStaticValue", int.class);
+    SpringValue fieldValue = new SpringValue("a", "${a}", someBean, "someBean", someField, false);
+    SpringValue methodValue = new SpringValue("b", "${b}", someBean, "someBean", someMethod, false);
+
+    fieldValue.update("someValue");
+    methodValue.update(10);
+
+    assertEquals("someValue", SomeBean.someStaticValue);
+    assertEquals(10, SomeBean.anotherStaticValue);
+  }
+
+  private static Object getField(Object target, String name) throws Exception {
+    Field field = target.getClass().getDeclaredField(name);
+    field.setAccessible(true);
+    return field.get(target);
+  }
+
+  private static class SomeBean {
+    private static String someStaticValue;
+    private static int anotherStaticValue;
+    private String someValue;
+    private int anotherValue;
+
+    private void setAnotherValue(int anotherValue) {
+      this.anotherValue = anotherValue;
+    }
+
+    private static void setAnotherStaticValue(int anotherStaticValue) {
+      SomeBean.anotherStaticValue = anotherStaticValue;
+    }
+  }
+}
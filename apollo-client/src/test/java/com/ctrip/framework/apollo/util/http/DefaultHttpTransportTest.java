@@ -0,0 +1,168 @@
+package com.ctrip.framework.apollo.util.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.NetworkConnector;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DefaultHttpTransportTest {
+  private Server server;
+  private String baseUrl;
+  private ApolloConfig someApolloConfig;
+  private DefaultHttpTransport httpTransport;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigUtil.class, new ConfigUtil());
+
+    someApolloConfig = new ApolloConfig("someAppId", "someCluster", "someNamespace", "someReleaseKey");
+    someApolloConfig.setConfigurations(ImmutableMap.of("someKey", "someValue"));
+    final byte[] body = new Gson().toJson(someApolloConfig).getBytes(StandardCharsets.UTF_8);
+
+    server = new Server(0);
+    server.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+          HttpServletResponse response) throws IOException {
+        baseRequest.setHandled(true);
+        if ("/notModified".equals(target)) {
+          response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+          return;
+        }
+        if ("/echo".equals(target)) {
+          response.setContentType("application/json;charset=UTF-8");
+          assertEquals("POST", request.getMethod());
+          ByteStreams.copy(request.getInputStream(), response.getOutputStream());
+          return;
+        }
+        if ("/stream".equals(target)) {
+          response.setContentType("text/event-stream;charset=UTF-8");
+          response.getOutputStream().write(
+              ":heartbeat\n\nevent:notifications\ndata:[]\n\nevent:notifications\ndata:[1]\n\n"
+                  .getBytes(StandardCharsets.UTF_8));
+          return;
+        }
+        if ("/notFound".equals(target)) {
+          response.sendError(HttpServletResponse.SC_NOT_FOUND);
+          return;
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+          response.setHeader("Content-Encoding", "gzip");
+          try (OutputStream os = new GZIPOutputStream(response.getOutputStream())) {
+            os.write(body);
+          }
+          return;
+        }
+        response.getOutputStream().write(body);
+      }
+    });
+    server.start();
+    baseUrl = "http://localhost:" + ((NetworkConnector) server.getConnectors()[0]).getLocalPort();
+
+    httpTransport = new DefaultHttpTransport();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop();
+    MockInjector.reset();
+  }
+
+  @Test
+  public void testDoGetWithGzipResponse() throws Exception {
+    HttpResponse<ApolloConfig> response = httpTransport.doGet(new HttpRequest(baseUrl + "/configs"),
+        ApolloConfig.class);
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals(someApolloConfig.getReleaseKey(), response.getBody().getReleaseKey());
+    assertEquals(someApolloConfig.getConfigurations(), response.getBody().getConfigurations());
+  }
+
+  @Test
+  public void testDoGetNotModified() throws Exception {
+    HttpResponse<ApolloConfig> response = httpTransport.doGet(new HttpRequest(baseUrl + "/notModified"),
+        ApolloConfig.class);
+
+    assertEquals(304, response.getStatusCode());
+    assertNull(response.getBody());
+  }
+
+  @Test
+  public void testDoGetNotFound() throws Exception {
+    try {
+      httpTransport.doGet(new HttpRequest(baseUrl + "/notFound"), ApolloConfig.class);
+      fail("should fail");
+    } catch (ApolloConfigStatusCodeException ex) {
+      assertEquals(404, ex.getStatusCode());
+    }
+  }
+
+  @Test
+  public void testDoPost() throws Exception {
+    HttpResponse<ApolloConfig> response = httpTransport.doPost(new HttpRequest(baseUrl + "/echo"),
+        someApolloConfig, ApolloConfig.class);
+
+    assertEquals(200, response.getStatusCode());
+    assertEquals(someApolloConfig.getReleaseKey(), response.getBody().getReleaseKey());
+    assertEquals(someApolloConfig.getConfigurations(), response.getBody().getConfigurations());
+  }
+
+  @Test
+  public void testDoGetEventStream() throws Exception {
+    final List<ServerSentEvent> events = Lists.newArrayList();
+
+    httpTransport.doGetEventStream(new HttpRequest(baseUrl + "/stream"), new ServerSentEventListener() {
+      @Override
+      public boolean onEvent(ServerSentEvent event) {
+        events.add(event);
+        return events.size() < 2;
+      }
+    });
+
+    assertEquals(2, events.size());
+    assertTrue(events.get(0).isComment());
+    assertEquals("notifications", events.get(1).getName());
+    assertEquals("[]", events.get(1).getData());
+  }
+
+  @Test
+  public void testDoGetEventStreamWithUnexpectedContentType() throws Exception {
+    try {
+      httpTransport.doGetEventStream(new HttpRequest(baseUrl + "/configs"), new ServerSentEventListener() {
+        @Override
+        public boolean onEvent(ServerSentEvent event) {
+          return true;
+        }
+      });
+      fail("should fail");
+    } catch (ApolloConfigStatusCodeException ex) {
+      assertEquals(200, ex.getStatusCode());
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.ctrip.framework.apollo.util.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringReader;
+import org.junit.Test;
+
+public class ServerSentEventReaderTest {
+
+  @Test
+  public void testReadEvents() throws Exception {
+    String stream = "retry:1500\n\n"
+        + ":heartbeat\n\n"
+        + "event:notifications\n"
+        + "data:[{\"namespaceName\":\"application\",\"notificationId\":1}]\n\n"
+        + "id: 1\n"
+        + "data: first line\n"
+        + "data: second line\n\n";
+
+    ServerSentEventReader reader = new ServerSentEventReader(new StringReader(stream));
+
+    ServerSentEvent retryEvent = reader.next();
+    assertEquals(1500L, retryEvent.getRetry().longValue());
+    assertNull(retryEvent.getData());
+
+    ServerSentEvent heartbeat = reader.next();
+    assertTrue(heartbeat.isComment());
+    assertEquals("heartbeat", heartbeat.getComment());
+
+    ServerSentEvent notifications = reader.next();
+    assertEquals("notifications", notifications.getName());
+    assertEquals("[{\"namespaceName\":\"application\",\"notificationId\":1}]", notifications.getData());
+    assertNull(notifications.getRetry());
+
+    ServerSentEvent multiLine = reader.next();
+    assertNull(multiLine.getName());
+    assertEquals("first line\nsecond line", multiLine.getData());
+
+    assertNull(reader.next());
+  }
+
+  @Test
+  public void testReadIncompleteEvent() throws Exception {
+    ServerSentEventReader reader = new ServerSentEventReader(
+        new StringReader("retry:abc\n\nevent:notifications\ndata:[]"));
+
+    //invalid retry and event without the ending blank line are ignored
+    assertNull(reader.next());
+  }
+}
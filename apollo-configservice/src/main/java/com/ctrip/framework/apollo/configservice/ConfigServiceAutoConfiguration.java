@@ -3,6 +3,9 @@ package com.ctrip.framework.apollo.configservice;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageScanner;
+import com.ctrip.framework.apollo.biz.service.DatabaseInstanceStore;
+import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.InstanceStore;
 import com.ctrip.framework.apollo.configservice.controller.ConfigFileController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationController;
 import com.ctrip.framework.apollo.configservice.controller.NotificationControllerV2;
@@ -44,6 +47,12 @@ public class ConfigServiceAutoConfiguration {
 		return new DefaultConfigService();
 	}
 
+	@Bean
+	public InstanceStore instanceStore(InstanceService instanceService) {
+		// 写入 Instance 和 InstanceConfig 表，Admin Service 从这两张表查询 Instance ，并定期删除过期的记录
+		return new DatabaseInstanceStore(instanceService, bizConfig);
+	}
+
 	@Bean
 	public static NoOpPasswordEncoder passwordEncoder() {
 		return (NoOpPasswordEncoder) NoOpPasswordEncoder.getInstance();
@@ -3,11 +3,16 @@ package com.ctrip.framework.apollo.configservice.controller;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDeltaService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDeltaService.ConfigDelta;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseSnapshot;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQuery;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQueryResult;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
@@ -16,8 +21,11 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -41,26 +49,40 @@ public class ConfigController {
 	 * ","逗号分隔
 	 */
 	private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+	/**
+	 * 客户端支持增量配置时带上的请求参数
+	 */
+	private static final String DELTA_PARAMETER = "delta";
+	/**
+	 * 客户端没有 Release Key 时的默认值
+	 */
+	private static final String NO_RELEASE_KEY = "-1";
 	private final ConfigService configService;
 	private final AppNamespaceServiceWithCache appNamespaceService;
 	private final NamespaceUtil namespaceUtil;
 	private final InstanceConfigAuditUtil instanceConfigAuditUtil;
+	private final ConfigDeltaService configDeltaService;
 	private final Gson gson;
 
 	private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
 	}.getType();
 
 	public ConfigController(final ConfigService configService, final AppNamespaceServiceWithCache appNamespaceService,
-			final NamespaceUtil namespaceUtil, final InstanceConfigAuditUtil instanceConfigAuditUtil, final Gson gson) {
+			final NamespaceUtil namespaceUtil, final InstanceConfigAuditUtil instanceConfigAuditUtil,
+			final ConfigDeltaService configDeltaService, final Gson gson) {
 		this.configService = configService;
 		this.appNamespaceService = appNamespaceService;
 		this.namespaceUtil = namespaceUtil;
 		this.instanceConfigAuditUtil = instanceConfigAuditUtil;
+		this.configDeltaService = configDeltaService;
 		this.gson = gson;
 	}
 
 	/**
-	 * 查询Config
+	 * 查询Config<br>
+	 * 只有一个 Release 且请求的 appId, cluster, namespace 和 Release 一致时(最常见的情况)，
+	 * 直接写出 {@link ReleaseSnapshot} 预序列化的响应体，返回 null 。<br>
+	 * 请求参数 delta=true 时，若能计算出相对 clientSideReleaseKey 的增量，只返回增量配置。
 	 * @param appId
 	 * @param clusterName
 	 * @param namespace
@@ -83,14 +105,82 @@ public class ConfigController {
 			@RequestParam(value = "ip", required = false) String clientIp,
 			@RequestParam(value = "messages", required = false) String messagesAsString, HttpServletRequest request,
 			HttpServletResponse response) throws IOException {
+		boolean acceptDelta = Boolean.parseBoolean(request.getParameter(DELTA_PARAMETER));
+		return doQueryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp,
+				messagesAsString, request, response, true, acceptDelta);
+	}
+
+	/**
+	 * 查询Config ，总是返回 ApolloConfig 对象，供 {@link ConfigFileController} 使用
+	 */
+	public ApolloConfig loadConfig(String appId, String clusterName, String namespace, String dataCenter,
+			String clientSideReleaseKey, String clientIp, String messagesAsString, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
+		return doQueryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp,
+				messagesAsString, request, response, false, false);
+	}
+
+	/**
+	 * 批量查询Config，一次请求加载多个 Namespace<br>
+	 * 每个 Namespace 返回一个 ApolloConfigQueryResult ，配置没有变化时只返回 304 状态码，不返回配置
+	 * @param appId
+	 * @param clusterName
+	 * @param dataCenter
+	 * @param clientIp
+	 * 				客户端ip, 用于灰度发布
+	 * @param queries
+	 * 				每个 Namespace 的名字、客户端侧的 Release Key 和通知消息明细
+	 * @param request
+	 * @return
+	 */
+	@PostMapping(value = "/{appId}/{clusterName:.+}")
+	public List<ApolloConfigQueryResult> queryConfigs(@PathVariable String appId, @PathVariable String clusterName,
+			@RequestParam(value = "dataCenter", required = false) String dataCenter,
+			@RequestParam(value = "ip", required = false) String clientIp,
+			@RequestBody List<ApolloConfigQuery> queries, HttpServletRequest request) {
+		// 若 clientIp 未提交，从 Request 中获取。
+		if (Strings.isNullOrEmpty(clientIp)) {
+			clientIp = tryToGetClientIp(request);
+		}
+
+		List<ApolloConfigQueryResult> results = Lists.newArrayListWithCapacity(queries.size());
+		for (ApolloConfigQuery query : queries) {
+			String originalNamespace = query.getNamespaceName();
+			if (Strings.isNullOrEmpty(originalNamespace)) {
+				continue;
+			}
+			String namespace = normalizeNamespace(appId, originalNamespace);
+			LoadedReleases loadedReleases = loadReleases(appId, clusterName, namespace, dataCenter, clientIp,
+					query.getMessages());
+
+			if (loadedReleases.isEmpty()) {
+				Tracer.logEvent("Apollo.Config.NotFound", assembleKey(appId, clusterName, originalNamespace, dataCenter));
+				results.add(new ApolloConfigQueryResult(originalNamespace, HttpServletResponse.SC_NOT_FOUND, null));
+				continue;
+			}
+
+			auditReleases(appId, clusterName, dataCenter, clientIp, loadedReleases.releases);
+
+			String appClusterNameLoaded = loadedReleases.clusterName;
+			if (loadedReleases.mergedReleaseKey().equals(query.getReleaseKey())) {
+				Tracer.logEvent("Apollo.Config.NotModified",
+						assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+				results.add(new ApolloConfigQueryResult(originalNamespace, HttpServletResponse.SC_NOT_MODIFIED, null));
+				continue;
+			}
+
+			Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+			results.add(new ApolloConfigQueryResult(originalNamespace, HttpServletResponse.SC_OK,
+					assembleApolloConfig(appId, originalNamespace, loadedReleases)));
+		}
+		return results;
+	}
+
+	private ApolloConfig doQueryConfig(String appId, String clusterName, String namespace, String dataCenter,
+			String clientSideReleaseKey, String clientIp, String messagesAsString, HttpServletRequest request,
+			HttpServletResponse response, boolean writeSnapshot, boolean acceptDelta) throws IOException {
 		String originalNamespace = namespace;
-		// strip out .properties suffix
-		// 若 Namespace 名以 .properties 结尾，移除该结尾，并设置到 ApolloConfigNotification 中。
-		// 例如 application.properties => application 。
-		namespace = namespaceUtil.filterNamespaceName(namespace);
-		// fix the character case issue, such as FX.apollo <-> fx.apollo
-		// 获得归一化的 Namespace 名字。避免客户端 Namespace 会填写错大小写。
-		namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+		namespace = normalizeNamespace(appId, namespace);
 
 		// 若 clientIp 未提交，从 Request 中获取。
 		if (Strings.isNullOrEmpty(clientIp)) {
@@ -99,7 +189,96 @@ public class ConfigController {
 
 		// 解析 messagesAsString 参数，创建 ApolloNotificationMessages 对象。
 		ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
-		
+
+		LoadedReleases loadedReleases = loadReleases(appId, clusterName, namespace, dataCenter, clientIp,
+				clientMessages);
+
+		// 若获得不到 Release ，返回状态码为 404 的响应
+		if (loadedReleases.isEmpty()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND,
+					String.format("Could not load configurations with appId: %s, clusterName: %s, namespace: %s", appId,
+							clusterName, originalNamespace));
+			Tracer.logEvent("Apollo.Config.NotFound", assembleKey(appId, clusterName, originalNamespace, dataCenter));
+			return null;
+		}
+
+		List<Release> releases = loadedReleases.releases;
+		String appClusterNameLoaded = loadedReleases.clusterName;
+
+		// 记录 InstanceConfig
+		auditReleases(appId, clusterName, dataCenter, clientIp, releases);
+
+		// 对比 Client 的合并 Release Key 。若相等，说明没有改变，返回状态码为 302 的响应
+		if (loadedReleases.mergedReleaseKey().equals(clientSideReleaseKey)) {
+			// Client side configuration is the same with server side, return 304
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			Tracer.logEvent("Apollo.Config.NotModified",
+					assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+			return null;
+		}
+
+		// 客户端支持增量配置，只返回相对客户端 Release Key 的变化
+		if (acceptDelta && !Strings.isNullOrEmpty(clientSideReleaseKey) && !NO_RELEASE_KEY.equals(clientSideReleaseKey)) {
+			ApolloConfig delta = assembleDeltaApolloConfig(appId, originalNamespace, loadedReleases,
+					clientSideReleaseKey);
+			if (delta != null) {
+				Tracer.logEvent("Apollo.Config.Delta",
+						assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+				return delta;
+			}
+		}
+
+		// 单个 Release ，直接写出预序列化的响应体
+		if (writeSnapshot && releases.size() == 1) {
+			ReleaseSnapshot snapshot = configService.findSnapshot(releases.get(0));
+			if (snapshot != null && snapshot.matches(appId, appClusterNameLoaded, originalNamespace)) {
+				writeSnapshot(response, snapshot);
+				Tracer.logEvent("Apollo.Config.Found",
+						assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+				return null;
+			}
+		}
+
+		Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+		return assembleApolloConfig(appId, originalNamespace, loadedReleases);
+	}
+
+	/**
+	 * 组装增量配置
+	 *
+	 * @return 增量配置，无法计算增量时返回 null
+	 */
+	private ApolloConfig assembleDeltaApolloConfig(String appId, String originalNamespace,
+			LoadedReleases loadedReleases, String clientSideReleaseKey) {
+		String mergedReleaseKey = loadedReleases.mergedReleaseKey();
+		ConfigDelta delta = configDeltaService.findDelta(clientSideReleaseKey, loadedReleases.releases,
+				mergedReleaseKey, () -> mergeReleaseConfigurations(loadedReleases.releases));
+		if (delta == null) {
+			return null;
+		}
+		ApolloConfig apolloConfig = new ApolloConfig(appId, loadedReleases.clusterName, originalNamespace,
+				mergedReleaseKey);
+		apolloConfig.setBaseReleaseKey(clientSideReleaseKey);
+		apolloConfig.setConfigurations(delta.getChanges());
+		apolloConfig.setDeletedKeys(delta.getDeletedKeys());
+		return apolloConfig;
+	}
+
+	private String normalizeNamespace(String appId, String namespace) {
+		// strip out .properties suffix
+		// 若 Namespace 名以 .properties 结尾，移除该结尾，并设置到 ApolloConfigNotification 中。
+		// 例如 application.properties => application 。
+		namespace = namespaceUtil.filterNamespaceName(namespace);
+		// fix the character case issue, such as FX.apollo <-> fx.apollo
+		// 获得归一化的 Namespace 名字。避免客户端 Namespace 会填写错大小写。
+		return namespaceUtil.normalizeNamespace(appId, namespace);
+	}
+
+	/**
+	 * 获得 Namespace 对应的 Release 数组，当前 App 的 Release 在前，关联的公共 Namespace 的 Release 在后
+	 */
+	private LoadedReleases loadReleases(String appId, String clusterName, String namespace, String dataCenter,
+			String clientIp, ApolloNotificationMessages clientMessages) {
 		// 创建 Release 数组
 		List<Release> releases = Lists.newLinkedList();
 		// 获得 Namespace 对应的 Release 对象
@@ -130,38 +309,15 @@ public class ConfigController {
 				releases.add(publicRelease);
 			}
 		}
+		return new LoadedReleases(releases, appClusterNameLoaded);
+	}
 
-		// 若获得不到 Release ，返回状态码为 404 的响应
-		if (releases.isEmpty()) {
-			response.sendError(HttpServletResponse.SC_NOT_FOUND,
-					String.format("Could not load configurations with appId: %s, clusterName: %s, namespace: %s", appId,
-							clusterName, originalNamespace));
-			Tracer.logEvent("Apollo.Config.NotFound", assembleKey(appId, clusterName, originalNamespace, dataCenter));
-			return null;
-		}
-
-		// 记录 InstanceConfig
-		auditReleases(appId, clusterName, dataCenter, clientIp, releases);
-
-		// 计算 Config Service 的合并 ReleaseKey
-		String mergedReleaseKey = releases.stream().map(Release::getReleaseKey)
-				.collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
-
-		// 对比 Client 的合并 Release Key 。若相等，说明没有改变，返回状态码为 302 的响应
-		if (mergedReleaseKey.equals(clientSideReleaseKey)) {
-			// Client side configuration is the same with server side, return 304
-			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-			Tracer.logEvent("Apollo.Config.NotModified",
-					assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
-			return null;
-		}
-
+	private ApolloConfig assembleApolloConfig(String appId, String originalNamespace, LoadedReleases loadedReleases) {
 		// 创建 ApolloConfig 对象
-		ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace, mergedReleaseKey);
+		ApolloConfig apolloConfig = new ApolloConfig(appId, loadedReleases.clusterName, originalNamespace,
+				loadedReleases.mergedReleaseKey());
 		// 合并 Release 的配置，并将结果设置到 ApolloConfig 中
-		apolloConfig.setConfigurations(mergeReleaseConfigurations(releases));
-
-		Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+		apolloConfig.setConfigurations(mergeReleaseConfigurations(loadedReleases.releases));
 		return apolloConfig;
 	}
 
@@ -208,11 +364,27 @@ public class ConfigController {
 	Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
 		Map<String, String> result = Maps.newLinkedHashMap();
 		for (Release release : Lists.reverse(releases)) {
-			result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+			// 优先使用预解析的配置 Map
+			ReleaseSnapshot snapshot = configService.findSnapshot(release);
+			if (snapshot != null) {
+				result.putAll(snapshot.getConfigurations());
+			} else {
+				result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+			}
 		}
 		return result;
 	}
 
+	private void writeSnapshot(HttpServletResponse response, ReleaseSnapshot snapshot) throws IOException {
+		byte[] body = snapshot.getBody();
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+		response.setContentLength(body.length);
+		response.getOutputStream().write(body);
+		// commit the response so that nothing else is written for the null return value
+		response.flushBuffer();
+	}
+
 	private String assembleKey(String appId, String cluster, String namespace, String dataCenter) {
 		List<String> keyParts = Lists.newArrayList(appId, cluster, namespace);
 		if (!Strings.isNullOrEmpty(dataCenter)) {
@@ -263,4 +435,29 @@ public class ConfigController {
 
 		return notificationMessages;
 	}
+
+	/**
+	 * 一个 Namespace 加载到的 Release 数组，以及当前 App 的 Release 所在的 Cluster
+	 */
+	private static class LoadedReleases {
+		private final List<Release> releases;
+		private final String clusterName;
+
+		private LoadedReleases(List<Release> releases, String clusterName) {
+			this.releases = releases;
+			this.clusterName = clusterName;
+		}
+
+		private boolean isEmpty() {
+			return releases.isEmpty();
+		}
+
+		/**
+		 * 计算 Config Service 的合并 ReleaseKey
+		 */
+		private String mergedReleaseKey() {
+			return releases.stream().map(Release::getReleaseKey)
+					.collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
+		}
+	}
 }
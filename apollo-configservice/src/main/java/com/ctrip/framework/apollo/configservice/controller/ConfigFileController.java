@@ -215,7 +215,7 @@ public class ConfigFileController implements ReleaseMessageListener {
                             String namespace, String dataCenter, String clientIp,
                             HttpServletRequest request,
                             HttpServletResponse response) throws IOException {
-    ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
+    ApolloConfig apolloConfig = configController.loadConfig(appId, clusterName, namespace,
         dataCenter, "-1", clientIp, null, request, response);
 
     if (apolloConfig == null || apolloConfig.getConfigurations() == null) {
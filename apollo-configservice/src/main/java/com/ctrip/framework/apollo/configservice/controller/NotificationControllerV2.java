@@ -1,15 +1,23 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
 import java.lang.reflect.Type;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
-import java.util.function.Function;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import javax.annotation.PreDestroy;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,30 +29,34 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.common.exception.NotFoundException;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.NotificationFanOutScheduler;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyIds;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
-import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
-import com.google.common.collect.TreeMultimap;
+import com.google.common.util.concurrent.RateLimiter;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
@@ -57,7 +69,13 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 	private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
 
 	/**
-     * Watch Key 与 DeferredResultWrapper 的 Multimap; 维护所有请求<br>
+	 * 推送流发送线程数，以及等待发送的推送流的上限(每个推送流最多只有一个发送任务在排队)
+	 */
+	private static final int NOTIFICATION_STREAM_SEND_THREADS = 8;
+	private static final int NOTIFICATION_STREAM_SEND_QUEUE_CAPACITY = 100000;
+
+	/**
+     * Watch Key 与 DeferredResultWrapper 的注册表; 维护所有请求<br>
      * key: 监听的key(ReleaseMessage.message)
      * Value：DeferredResultWrapper(每个key对应多个等待通知的客户端) <br>
      * 目前 Apollo 的实现上，Watch Key 等价于 ReleaseMessage 的通知内容 message 字段<br>
@@ -65,22 +83,36 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
      * 对应的 Watch Key 们，注册到 deferredResults 中。<br>
      * 等到 Namespace 配置发生变更时，在 #handleMessage(...) 中，进行通知。
      */
-	private final Multimap<String, DeferredResultWrapper> deferredResults = Multimaps
-			.synchronizedSetMultimap(TreeMultimap.create(String.CASE_INSENSITIVE_ORDER, Ordering.natural()));
+	private final WatchKeyRegistry<DeferredResultWrapper> deferredResults = new WatchKeyRegistry<>();
 
 	/**
-	 * "+" 拼接符
+	 * Watch Key 与通知推送流的注册表，推送流发送通知后不注销，直到连接关闭
 	 */
-	private static final Splitter STRING_SPLITTER = Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
-			.omitEmptyStrings();
+	private final WatchKeyRegistry<NotificationStreamWrapper> notificationStreams = new WatchKeyRegistry<>();
+
+	/**
+	 * 所有打开的推送流，用于心跳和计算重连间隔
+	 */
+	private final Set<NotificationStreamWrapper> openNotificationStreams = ConcurrentHashMap.newKeySet();
 
 	private static final Type notificationsTypeReference = new TypeToken<List<ApolloConfigNotification>>() {
 	}.getType();
 
 	/**
-	 * 大量通知分批执行 ExecutorService
+	 * 推送流心跳 ScheduledExecutorService，第一个推送流建立时启动
 	 */
-	private final ExecutorService largeNotificationBatchExecutorService;
+	private final ScheduledExecutorService notificationStreamHeartbeatService;
+	private final AtomicBoolean notificationStreamHeartbeatStarted = new AtomicBoolean(false);
+
+	/**
+	 * 推送流发送线程池，向客户端写出事件可能阻塞，不能占用扫描、通知和心跳线程
+	 */
+	private final ExecutorService notificationStreamSendService;
+
+	/**
+	 * 推送流建连限流，超过限制的连接直接下发重连间隔后关闭
+	 */
+	private volatile RateLimiter notificationStreamConnectRateLimiter;
 
 	private final WatchKeysUtil watchKeysUtil;
 	private final ReleaseMessageServiceWithCache releaseMessageService;
@@ -88,19 +120,30 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 	private final NamespaceUtil namespaceUtil;
 	private final Gson gson;
 	private final BizConfig bizConfig;
+	private final WatchKeyDictionary watchKeyDictionary;
+	private final NotificationFanOutScheduler notificationFanOutScheduler;
 
 	@Autowired
 	public NotificationControllerV2(final WatchKeysUtil watchKeysUtil,
 			final ReleaseMessageServiceWithCache releaseMessageService, final EntityManagerUtil entityManagerUtil,
-			final NamespaceUtil namespaceUtil, final Gson gson, final BizConfig bizConfig) {
-		largeNotificationBatchExecutorService = Executors
-				.newSingleThreadExecutor(ApolloThreadFactory.create("NotificationControllerV2", true));
+			final NamespaceUtil namespaceUtil, final Gson gson, final BizConfig bizConfig,
+			final WatchKeyDictionary watchKeyDictionary, final NotificationFanOutScheduler notificationFanOutScheduler) {
+		notificationStreamHeartbeatService = Executors.newSingleThreadScheduledExecutor(
+				ApolloThreadFactory.create("NotificationControllerV2Heartbeat", true));
+		ThreadPoolExecutor sendService = new ThreadPoolExecutor(NOTIFICATION_STREAM_SEND_THREADS,
+				NOTIFICATION_STREAM_SEND_THREADS, 60, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(NOTIFICATION_STREAM_SEND_QUEUE_CAPACITY),
+				ApolloThreadFactory.create("NotificationControllerV2StreamSender", true));
+		sendService.allowCoreThreadTimeOut(true);
+		notificationStreamSendService = sendService;
 		this.watchKeysUtil = watchKeysUtil;
 		this.releaseMessageService = releaseMessageService;
 		this.entityManagerUtil = entityManagerUtil;
 		this.namespaceUtil = namespaceUtil;
 		this.gson = gson;
 		this.bizConfig = bizConfig;
+		this.watchKeyDictionary = watchKeyDictionary;
+		this.notificationFanOutScheduler = notificationFanOutScheduler;
 	}
 
 	/**
@@ -123,24 +166,7 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 
 		// 客户端监听的namespace
 		// 解析 notificationsAsString 参数，创建 ApolloConfigNotification 数组。
-		List<ApolloConfigNotification> notifications = null;
-		try {
-            // 因为一个客户端可以订阅多个 Namespace ，所以该参数是 List 。
-            // 参数是{客户端需要使用的namespace-客户端最新更新编号}集合
-			/*
-			 * 接口真正返回的结果也是 List<ApolloConfigNotification> ，
-			 * 仅返回配置发生变化的 Namespace 对应的 ApolloConfigNotification 。
-			 * 也就说，当有几个 配置发生变化的 Namespace ，返回几个对应的 ApolloConfigNotification 。
-			 * 另外，客户端接收到返回后，会增量合并到本地的配置通知信息。客户端下次请求时，使用合并后的配置通知信息。
-			 */
-			// 客户端请求时，只传递 ApolloConfigNotification 的 namespaceName + notificationId ，不传递 messages 。
-			notifications = gson.fromJson(notificationsAsString, notificationsTypeReference);
-		} catch (Throwable ex) {
-			Tracer.logError(ex);
-		}
-		if (CollectionUtils.isEmpty(notifications)) {
-			throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
-		}
+		List<ApolloConfigNotification> notifications = parseNotifications(notificationsAsString);
 
         // 创建 DeferredResultWrapper 对象(对应单个请求, 请求可能监听多个namespace)
 		DeferredResultWrapper deferredResultWrapper = new DeferredResultWrapper(bizConfig.longPollingTimeoutInMilli());
@@ -170,11 +196,11 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 			throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
 		}
 
-		// 组装 Watch Key Multimap(Key 为 Namespace 的名字，Value 为 Watch Key)
-		Multimap<String, String> watchedKeysMap = watchKeysUtil.assembleAllWatchKeys(appId, cluster, namespaces,
-				dataCenter);
-		// 生成 Watch Key 集合
-		Set<String> watchedKeys = Sets.newHashSet(watchedKeysMap.values());
+		// 组装 Watch Key 编号 Map(Key 为 Namespace 的名字，Value 为 Watch Key 编号)
+		Map<String, WatchKeyIds> watchedKeyIdsMap = watchKeysUtil.assembleAllWatchKeyIds(appId, cluster,
+				namespaces, dataCenter);
+		// 合并所有 Namespace 的 Watch Key
+		WatchKeyIds watchedKeyIds = WatchKeyIds.flatten(watchedKeyIdsMap.values());
 
 		/**
 		 * 1、set deferredResult before the check, for avoid more waiting If the check
@@ -183,37 +209,25 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 		 */
 		// 注册超时事件
 		deferredResultWrapper.onTimeout(
-				() -> logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys"));
+				() -> logWatchedKeys(watchedKeyIds, "Apollo.LongPoll.TimeOutKeys"));
 
 		// 注册监听结束事件
 		deferredResultWrapper.onCompletion(() -> {
 			// unregister all keys
 			// 移除 Watch Key + DeferredResultWrapper 出 `deferredResults`
-			for (String key : watchedKeys) {
-				deferredResults.remove(key, deferredResultWrapper);
-			}
+			deferredResults.unregister(watchedKeyIds, deferredResultWrapper);
 			// 记录日志
-			logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
+			logWatchedKeys(watchedKeyIds, "Apollo.LongPoll.CompletedKeys");
 		});
 
 		// 注册 Watch Key + DeferredResultWrapper 到 `deferredResults` 中，等待配置发生变化后通知。
 		// 详见 `#handleMessage(...)` 方法。
 		// register all keys
-		for (String key : watchedKeys) {
-			// 注册监听
-			this.deferredResults.put(key, deferredResultWrapper);
-		}
-
-		logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
-		logger.debug("Listening {} from appId: {}, cluster: {}, namespace: {}, datacenter: {}", watchedKeys, appId,
-				cluster, namespaces, dataCenter);
+		this.deferredResults.register(watchedKeyIds, deferredResultWrapper);
 
-		/**
-		 * 2、check new release<br> 
-		 * 获得 Watch Key 集合中，每个 Watch Key 对应的 最新的ReleaseMessage 记录。
-		 */
-		List<ReleaseMessage> latestReleaseMessages = releaseMessageService
-				.findLatestReleaseMessagesGroupByMessages(watchedKeys);
+		logWatchedKeys(watchedKeyIds, "Apollo.LongPoll.RegisteredKeys");
+		logger.debug("Listening {} watch keys from appId: {}, cluster: {}, namespace: {}, datacenter: {}",
+				watchedKeyIds.size(), appId, cluster, namespaces, dataCenter);
 
 		/**
 		 * Manually close the entity manager. Since for async request, Spring won't do
@@ -226,9 +240,13 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 		// 实际上，下面的过程，我们已经不需要 db 连接，因此进行关闭。
 		entityManagerUtil.closeEntityManager();
 
-        // 获得 ApolloConfigNotification 通知数组(发布信息比client现在存储的发布信息新)
+		/**
+		 * 2、check new release<br>
+		 * 获得 ApolloConfigNotification 通知数组(发布信息比client现在存储的发布信息新)，
+		 * 每个 Watch Key 对应的最新的ReleaseMessage 记录从缓存中按编号获取。
+		 */
 		List<ApolloConfigNotification> newNotifications = getApolloConfigNotifications(namespaces,
-				clientSideNotifications, watchedKeysMap, latestReleaseMessages);
+				clientSideNotifications, watchedKeyIdsMap);
 
 		// 若有新的通知，调用 DeferredResultWrapper#setResult(List<ApolloConfigNotification>) 方法
 		// 直接设置 DeferredResult 的结果，从而结束长轮询。
@@ -239,6 +257,116 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 		return deferredResultWrapper.getResult();
 	}
 
+	/**
+	 * 通知推送流，一个连接复用客户端的所有 Namespace，有新的 ReleaseMessage 时推送 ApolloConfigNotification，
+	 * 连接不会因为推送而结束。参数与 {@link #pollNotification} 相同。<br>
+	 * 1, 建连后先下发重连间隔(SSE retry)，连接因超时、限流或服务下线关闭时，客户端等待该间隔再重连。
+	 * 重连间隔按打开的推送流数量和建连 QPS 打散，避免发布或重启后的重连风暴。<br>
+	 * 2, 关闭推送流时返回 404，客户端自动回退到长轮询。
+	 */
+	@GetMapping("/stream")
+	public SseEmitter streamNotification(
+			@RequestParam(value = "appId") String appId, @RequestParam(value = "cluster") String cluster,
+			@RequestParam(value = "notifications") String notificationsAsString,
+			@RequestParam(value = "dataCenter", required = false) String dataCenter,
+			@RequestParam(value = "ip", required = false) String clientIp) {
+		if (!bizConfig.isNotificationStreamEnabled()) {
+			throw new NotFoundException("Notification stream is disabled");
+		}
+
+		List<ApolloConfigNotification> notifications = parseNotifications(notificationsAsString);
+
+		NotificationStreamWrapper stream = new NotificationStreamWrapper(notificationStreamTimeoutInMilli(), gson,
+				notificationStreamSendService);
+
+		// 建连过多(如 Config Service 重启后)，下发重连间隔后直接关闭
+		if (!tryAcquireNotificationStreamConnection()) {
+			Tracer.logEvent("Apollo.NotificationStream.Rejected", appId);
+			stream.close(notificationStreamRetryInMilli());
+			return stream.getEmitter();
+		}
+
+		Set<String> namespaces = Sets.newHashSet();
+		Map<String, Long> clientSideNotifications = Maps.newHashMap();
+		Map<String, ApolloConfigNotification> filteredNotifications = filterNotifications(appId, notifications);
+		for (Map.Entry<String, ApolloConfigNotification> notificationEntry : filteredNotifications.entrySet()) {
+			String normalizedNamespace = notificationEntry.getKey();
+			ApolloConfigNotification notification = notificationEntry.getValue();
+			namespaces.add(normalizedNamespace);
+			clientSideNotifications.put(normalizedNamespace, notification.getNotificationId());
+			if (!Objects.equals(notification.getNamespaceName(), normalizedNamespace)) {
+				stream.recordNamespaceNameNormalizedResult(notification.getNamespaceName(), normalizedNamespace);
+			}
+		}
+
+		if (CollectionUtils.isEmpty(namespaces)) {
+			throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+		}
+
+		Map<String, WatchKeyIds> watchedKeyIdsMap = watchKeysUtil.assembleAllWatchKeyIds(appId, cluster,
+				namespaces, dataCenter);
+		WatchKeyIds watchedKeyIds = WatchKeyIds.flatten(watchedKeyIdsMap.values());
+
+		// 超时后下发重连间隔并关闭
+		stream.onTimeout(() -> {
+			logWatchedKeys(watchedKeyIds, "Apollo.NotificationStream.TimeOutKeys");
+			stream.close(notificationStreamRetryInMilli());
+		});
+
+		stream.onCompletion(() -> {
+			openNotificationStreams.remove(stream);
+			notificationStreams.unregister(watchedKeyIds, stream);
+			logWatchedKeys(watchedKeyIds, "Apollo.NotificationStream.CompletedKeys");
+		});
+
+		// 与长轮询相同，先注册再检查新的通知，避免遗漏
+		notificationStreams.register(watchedKeyIds, stream);
+		openNotificationStreams.add(stream);
+		startNotificationStreamHeartbeat();
+
+		logWatchedKeys(watchedKeyIds, "Apollo.NotificationStream.RegisteredKeys");
+		logger.debug("Streaming {} watch keys from appId: {}, cluster: {}, namespace: {}, datacenter: {}",
+				watchedKeyIds.size(), appId, cluster, namespaces, dataCenter);
+
+		// 推送流期间不需要 db 连接
+		entityManagerUtil.closeEntityManager();
+
+		stream.retry(notificationStreamRetryInMilli());
+
+		List<ApolloConfigNotification> newNotifications = getApolloConfigNotifications(namespaces,
+				clientSideNotifications, watchedKeyIdsMap);
+		if (!CollectionUtils.isEmpty(newNotifications)) {
+			stream.send(newNotifications);
+		}
+
+		return stream.getEmitter();
+	}
+
+	/**
+	 * 解析 notificationsAsString 参数，创建 ApolloConfigNotification 数组
+	 */
+	private List<ApolloConfigNotification> parseNotifications(String notificationsAsString) {
+		List<ApolloConfigNotification> notifications = null;
+		try {
+            // 因为一个客户端可以订阅多个 Namespace ，所以该参数是 List 。
+            // 参数是{客户端需要使用的namespace-客户端最新更新编号}集合
+			/*
+			 * 接口真正返回的结果也是 List<ApolloConfigNotification> ，
+			 * 仅返回配置发生变化的 Namespace 对应的 ApolloConfigNotification 。
+			 * 也就说，当有几个 配置发生变化的 Namespace ，返回几个对应的 ApolloConfigNotification 。
+			 * 另外，客户端接收到返回后，会增量合并到本地的配置通知信息。客户端下次请求时，使用合并后的配置通知信息。
+			 */
+			// 客户端请求时，只传递 ApolloConfigNotification 的 namespaceName + notificationId ，不传递 messages 。
+			notifications = gson.fromJson(notificationsAsString, notificationsTypeReference);
+		} catch (Throwable ex) {
+			Tracer.logError(ex);
+		}
+		if (CollectionUtils.isEmpty(notifications)) {
+			throw new BadRequestException("Invalid format of notifications: " + notificationsAsString);
+		}
+		return notifications;
+	}
+
 	/**
      * 过滤并创建 ApolloConfigNotification Map 。其中，KEY 为 Namespace归一化后 的名字<br>
      * 目的是客户端传递的 Namespace 的名字不是正确的，例如大小写不对，需要做下归一化( normalized )处理。
@@ -295,158 +423,244 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
      *            等待通知的namespace数组
      * @param clientSideNotifications
      *            客户端通知编号
-     * @param watchedKeysMap
-     *            {namespace: watchKey}map
-     * @param latestReleaseMessages
-     *            最新的ReleaseMessage集合
+     * @param watchedKeyIdsMap
+     *            {namespace: watchKey编号}map
      * @return
      */
 	private List<ApolloConfigNotification> getApolloConfigNotifications(Set<String> namespaces,
-			Map<String, Long> clientSideNotifications, Multimap<String, String> watchedKeysMap,
-			List<ReleaseMessage> latestReleaseMessages) {
+			Map<String, Long> clientSideNotifications, Map<String, WatchKeyIds> watchedKeyIdsMap) {
 		// 创建 ApolloConfigNotification 数组
-		List<ApolloConfigNotification> newNotifications = Lists.newArrayList();
-		
-		if (!CollectionUtils.isEmpty(latestReleaseMessages)) {
-			// 创建最新通知的 Map 。其中 Key 为 Watch Key; value为ReleaseMessage.id 。
-			Map<String, Long> latestNotifications = Maps.newHashMap();
-            // 最新ReleaseMessage消息map
-			for (ReleaseMessage releaseMessage : latestReleaseMessages) {
-				latestNotifications.put(releaseMessage.getMessage(), releaseMessage.getId());
+		List<ApolloConfigNotification> newNotifications = Collections.emptyList();
+
+		// 循环 Namespace 的名字的集合，判断是否有配置更新
+		for (String namespace : namespaces) {
+			// 客户端编号
+			long clientSideId = clientSideNotifications.get(namespace);
+			// 记录当前最新通知编号
+			long latestId = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
+			// 获得 Namespace 对应的 Watch Key 编号数组
+			WatchKeyIds namespaceWatchedKeyIds = watchedKeyIdsMap.getOrDefault(namespace, WatchKeyIds.EMPTY);
+
+			// 获得最大的通知编号
+			for (int namespaceWatchedKeyId : namespaceWatchedKeyIds.getIds()) {
+				ReleaseMessage releaseMessage = releaseMessageService.findLatestReleaseMessage(namespaceWatchedKeyId);
+				if (releaseMessage != null && releaseMessage.getId() > latestId) {
+					latestId = releaseMessage.getId();
+				}
+			}
+			// 注册前还没有 ReleaseMessage 的 Watch Key，可能在注册期间收到了第一条 ReleaseMessage
+			for (String unknownWatchKey : namespaceWatchedKeyIds.getUnknownWatchKeys()) {
+				ReleaseMessage releaseMessage = findLatestReleaseMessage(unknownWatchKey);
+				if (releaseMessage != null && releaseMessage.getId() > latestId) {
+					latestId = releaseMessage.getId();
+				}
 			}
 
-			// 循环 Namespace 的名字的集合，判断是否有配置更新
-			for (String namespace : namespaces) {
-				// 客户端编号
-				long clientSideId = clientSideNotifications.get(namespace);
-                // 记录当前最新通知编号
-				long latestId = ConfigConsts.NOTIFICATION_ID_PLACEHOLDER;
-				// 获得 Namespace 对应的 Watch Key 集合
-				Collection<String> namespaceWatchedKeys = watchedKeysMap.get(namespace);
-				
-				// 获得最大的通知编号
-				for (String namespaceWatchedKey : namespaceWatchedKeys) {
-					long namespaceNotificationId = latestNotifications.getOrDefault(namespaceWatchedKey,
-							ConfigConsts.NOTIFICATION_ID_PLACEHOLDER);
-					if (namespaceNotificationId > latestId) {
-						latestId = namespaceNotificationId;
+			// 若服务器的通知编号大于客户端的通知编号，意味着有配置更新
+			if (latestId > clientSideId) {
+				// 创建 ApolloConfigNotification 对象
+				ApolloConfigNotification notification = new ApolloConfigNotification(namespace, latestId);
+				// 循环添加通知编号到 ApolloConfigNotification 中。
+				for (int namespaceWatchedKeyId : namespaceWatchedKeyIds.getIds()) {
+					ReleaseMessage releaseMessage = releaseMessageService.findLatestReleaseMessage(namespaceWatchedKeyId);
+					if (releaseMessage != null) {
+						notification.addMessage(releaseMessage.getMessage(), releaseMessage.getId());
 					}
 				}
-				
-				// 若服务器的通知编号大于客户端的通知编号，意味着有配置更新
-				if (latestId > clientSideId) {
-					// 创建 ApolloConfigNotification 对象
-					ApolloConfigNotification notification = new ApolloConfigNotification(namespace, latestId);
-					// 循环添加通知编号到 ApolloConfigNotification 中。
-					namespaceWatchedKeys.stream().filter(latestNotifications::containsKey)
-							.forEach(namespaceWatchedKey -> notification.addMessage(namespaceWatchedKey,
-									latestNotifications.get(namespaceWatchedKey)));
-					// 添加 ApolloConfigNotification 对象到结果
-					newNotifications.add(notification);
+				for (String unknownWatchKey : namespaceWatchedKeyIds.getUnknownWatchKeys()) {
+					ReleaseMessage releaseMessage = findLatestReleaseMessage(unknownWatchKey);
+					if (releaseMessage != null) {
+						notification.addMessage(releaseMessage.getMessage(), releaseMessage.getId());
+					}
+				}
+				// 添加 ApolloConfigNotification 对象到结果
+				if (newNotifications.isEmpty()) {
+					newNotifications = Lists.newArrayList();
 				}
+				newNotifications.add(notification);
 			}
 		}
 		return newNotifications;
 	}
 
+	/**
+	 * 未分配编号的 Watch Key 对应的最新的 ReleaseMessage 记录，不存在时返回 null
+	 */
+	private ReleaseMessage findLatestReleaseMessage(String watchKey) {
+		int watchKeyId = watchKeyDictionary.find(watchKey);
+		return watchKeyId == WatchKeyDictionary.NOT_FOUND ? null
+				: releaseMessageService.findLatestReleaseMessage(watchKeyId);
+	}
+
     // 当有新的 ReleaseMessage 时，通知其对应的 Namespace 的(设置deferredResults)，响应正在等待的请求。
 	@Override
 	public void handleMessage(ReleaseMessage message, String channel) {
-		logger.info("message received - channel: {}, message: {}", channel, message);
+		handleMessages(Collections.singletonList(message), channel);
+	}
 
-		// 【TODO 6001】Tracer 日志
-		String content = message.getMessage();
-		Tracer.logEvent("Apollo.LongPoll.Messages", content);
-		
-		// 仅处理 APOLLO_RELEASE_TOPIC
-		if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(content)) {
-			return;
-		}
+	// 一批 ReleaseMessage 中相同 Watch Key 的消息只通知最新的一条，客户端只需要最新的通知编号
+	@Override
+	public void handleMessages(List<ReleaseMessage> messages, String channel) {
+		// 收到消息时的注册序号，只通知此前注册的客户端；之后注册的客户端在注册后会检查到新的通知，
+		// 若在限速通知期间已收到通知的客户端重新注册，不会被重复通知
+		long streamSequence = notificationStreams.sequence();
+		long deferredResultSequence = deferredResults.sequence();
+		Map<Integer, ReleaseMessage> latestMessages = Maps.newLinkedHashMap();
+		for (ReleaseMessage message : messages) {
+			logger.info("message received - channel: {}, message: {}", channel, message);
+
+			// 【TODO 6001】Tracer 日志
+			String content = message.getMessage();
+			Tracer.logEvent("Apollo.LongPoll.Messages", content);
+
+			// 仅处理 APOLLO_RELEASE_TOPIC
+			if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(content)) {
+				continue;
+			}
 
-		// 获得对应的 Namespace 的名字
-		String changedNamespace = retrieveNamespaceFromReleaseMessage.apply(content);
+			// 获得对应的 Watch Key 编号, message should be appId+cluster+namespace
+			int watchKeyId = watchKeyDictionary.intern(content);
 
-		if (Strings.isNullOrEmpty(changedNamespace)) {
-			logger.error("message format invalid - {}", content);
-			return;
+			if (watchKeyId == WatchKeyDictionary.NOT_FOUND) {
+				logger.error("message format invalid - {}", content);
+				continue;
+			}
+			latestMessages.put(watchKeyId, message);
 		}
 
-		// `deferredResults` 存在对应的 Watch Key
-		if (!deferredResults.containsKey(content)) {
-			return;
-		}
+		latestMessages.forEach((watchKeyId, message) -> notifyWatchKey(watchKeyId, message, streamSequence,
+				deferredResultSequence));
+	}
+
+	/**
+	 * 通知 Watch Key 的推送流和长轮询
+	 */
+	private void notifyWatchKey(int watchKeyId, ReleaseMessage message, long streamSequence,
+			long deferredResultSequence) {
+		String content = message.getMessage();
+		// 获得对应的 Namespace 的名字
+		String changedNamespace = watchKeyDictionary.namespace(watchKeyId);
 
-		// create a new list to avoid ConcurrentModificationException
-		// 从 deferredResults 中读取并创建 DeferredResultWrapper 数组，避免并发问题。
-		List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
+		// 推送流与长轮询使用各自的 ApolloConfigNotification 对象，因为长轮询设置结果时会还原 Namespace 的名字
+		ApolloConfigNotification streamNotification = new ApolloConfigNotification(changedNamespace, message.getId());
+		streamNotification.addMessage(content, message.getId());
+		notifySubscribers(notificationStreams, watchKeyId, streamSequence, content,
+				stream -> stream.send(streamNotification));
 
 		// 创建 ApolloConfigNotification 对象
 		ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
 		configNotification.addMessage(content, message.getId());
+		notifySubscribers(deferredResults, watchKeyId, deferredResultSequence, content,
+				result -> result.setResult(configNotification));
+	}
+
+	/**
+	 * 通知 Watch Key 在快照点之前注册的订阅者
+	 */
+	private <T> void notifySubscribers(WatchKeyRegistry<T> subscribers, int watchKeyId, long sequence,
+			String content, Consumer<T> action) {
+		// 注册表存在对应的 Watch Key，包括注册时还没有 ReleaseMessage、按字符串注册的订阅者
+		int subscriberCount = subscribers.subscriberCount(watchKeyId) + subscribers.subscriberCount(content);
+		if (subscriberCount == 0) {
+			return;
+		}
 
 		// do async notification if too many clients
-		// 若需要通知的客户端过多，使用 ExecutorService 异步通知，避免“惊群效应”
-		if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-			largeNotificationBatchExecutorService.submit(() -> {
-				logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-						bizConfig.releaseMessageNotificationBatch());
-				// 假设一个公共 Namespace 有10W 台机器使用，如果该公共 Namespace 发布时直接下发配置更新消息的话，
-				// 就会导致这 10W 台机器一下子都来请求配置，这动静就有点大了，而且对 Config Service 的压力也会比较大。
-				
-				// 数量可通过 ServerConfig "apollo.release-message.notification.batch" 配置，默认 100 。
-				// 每通知 "apollo.release-message.notification.batch" 个客户端，sleep 一段时间。
-				//可通过 ServerConfig "apollo.release-message.notification.batch.interval" 配置，默认 100 毫秒。
-				for (int i = 0; i < results.size(); i++) {
-					// 每 N 个客户端，sleep 一段时间。
-					if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-						try {
-							TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-						} catch (InterruptedException e) {
-							// ignore
-						}
-					}
-					logger.debug("Async notify {}", results.get(i));
-					// 设置结果, 从而结束长轮询
-					results.get(i).setResult(configNotification);
-				}
-			});
+		// 若需要通知的客户端过多，交给 NotificationFanOutScheduler 限速异步通知，避免“惊群效应”
+		// 假设一个公共 Namespace 有10W 台机器使用，如果该公共 Namespace 发布时直接下发配置更新消息的话，
+		// 就会导致这 10W 台机器一下子都来请求配置，这动静就有点大了，而且对 Config Service 的压力也会比较大。
+		// 每秒通知数量可通过 ServerConfig "apollo.release-message.notification.rate" 配置，
+		// 默认为 "apollo.release-message.notification.batch" / "apollo.release-message.notification.batch.interval"。
+		// 直接遍历注册表中的订阅者，不复制列表；已完成的请求会在遍历过程中被注销，快照点之后注册的请求会被跳过
+		if (subscriberCount > bizConfig.releaseMessageNotificationBatch()) {
+			logger.debug("Async notify {} clients for key {}", subscriberCount, content);
+			notificationFanOutScheduler.submit(watchKeyId, content, subscriberCount,
+					Iterables.concat(subscribers.registeredBefore(watchKeyId, sequence),
+							subscribers.registeredBefore(content, sequence)), action);
 			return;
 		}
 
-		logger.debug("Notify {} clients for key {}", results.size(), content);
+		logger.debug("Notify {} clients for key {}", subscriberCount, content);
 
 		// 设置结果
-		for (DeferredResultWrapper result : results) {
-			result.setResult(configNotification);
-		}
+		subscribers.forEach(watchKeyId, sequence, action);
+		subscribers.forEach(content, sequence, action);
 		logger.debug("Notification completed");
 	}
 
 	/**
-	 * 通过 ReleaseMessage 的消息内容，获得对应 Namespace 的名字<br>
-	 * Function<T, R>, 方法参数类型为T, 方法返回值类型为R<br>
-	 * 实现是参数通过"+"分割, 获取截取到的字符串
+	 * 推送流的存活时间，增加最多 10% 的随机值，避免同时建立的连接同时过期
 	 */
-	private static final Function<String, String> retrieveNamespaceFromReleaseMessage = releaseMessage -> {
-		if (Strings.isNullOrEmpty(releaseMessage)) {
-			return null;
+	private long notificationStreamTimeoutInMilli() {
+		long timeout = bizConfig.notificationStreamTimeoutInMilli();
+		return timeout + ThreadLocalRandom.current().nextLong(timeout / 10 + 1);
+	}
+
+	/**
+	 * 下发给客户端的重连间隔: 最小间隔 + 随机值，随机范围为所有打开的推送流按建连 QPS 重连所需的时间，
+	 * 即使所有推送流同时断开，重连也会均匀分布而不会超过建连 QPS
+	 */
+	private long notificationStreamRetryInMilli() {
+		long spread = openNotificationStreams.size() * 1000L / bizConfig.notificationStreamConnectQps();
+		return bizConfig.notificationStreamRetryInMilli() + ThreadLocalRandom.current().nextLong(spread + 1);
+	}
+
+	private boolean tryAcquireNotificationStreamConnection() {
+		int qps = bizConfig.notificationStreamConnectQps();
+		RateLimiter rateLimiter = notificationStreamConnectRateLimiter;
+		if (rateLimiter == null || rateLimiter.getRate() != qps) {
+			rateLimiter = RateLimiter.create(qps);
+			notificationStreamConnectRateLimiter = rateLimiter;
 		}
-		List<String> keys = STRING_SPLITTER.splitToList(releaseMessage);
-		// message should be appId+cluster+namespace
-		if (keys.size() != 3) {
-			logger.error("message format invalid - {}", releaseMessage);
-			return null;
+		return rateLimiter.tryAcquire();
+	}
+
+	private void startNotificationStreamHeartbeat() {
+		if (notificationStreamHeartbeatStarted.compareAndSet(false, true)) {
+			scheduleNotificationStreamHeartbeat();
+		}
+	}
+
+	/**
+	 * 每次执行后按最新的心跳间隔重新调度，使间隔配置实时生效
+	 */
+	private void scheduleNotificationStreamHeartbeat() {
+		notificationStreamHeartbeatService.schedule(() -> {
+			try {
+				for (NotificationStreamWrapper stream : openNotificationStreams) {
+					stream.heartbeat();
+				}
+			} catch (Throwable ex) {
+				logger.error("Notification stream heartbeat failed", ex);
+			} finally {
+				scheduleNotificationStreamHeartbeat();
+			}
+		}, bizConfig.notificationStreamHeartbeatIntervalInMilli(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 服务下线时关闭所有推送流，并下发打散的重连间隔，使客户端分散重连到其他 Config Service
+	 */
+	@PreDestroy
+	public void closeNotificationStreams() {
+		notificationStreamHeartbeatService.shutdownNow();
+		for (NotificationStreamWrapper stream : openNotificationStreams) {
+			stream.close(notificationStreamRetryInMilli());
 		}
-		return keys.get(2);
-	};
+		// 已经提交的重连间隔继续发送
+		notificationStreamSendService.shutdown();
+	}
 
 	/**
 	 * 记录超时事件(超时会执行)
 	 * @param watchedKeys
 	 * @param eventName
 	 */
-	private void logWatchedKeys(Set<String> watchedKeys, String eventName) {
-		for (String watchedKey : watchedKeys) {
+	private void logWatchedKeys(WatchKeyIds watchedKeyIds, String eventName) {
+		for (int watchedKeyId : watchedKeyIds.getIds()) {
+			Tracer.logEvent(eventName, watchKeyDictionary.watchKey(watchedKeyId));
+		}
+		for (String watchedKey : watchedKeyIds.getUnknownWatchKeys()) {
 			Tracer.logEvent(eventName, watchedKey);
 		}
 	}
@@ -8,6 +8,7 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +20,7 @@ import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
@@ -41,6 +43,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 	private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageServiceWithCache.class);
 	private final ReleaseMessageRepository releaseMessageRepository;
 	private final BizConfig bizConfig;
+	private final WatchKeyDictionary watchKeyDictionary;
 
 	/**
 	 * 扫描周期
@@ -63,6 +66,13 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
      */
 	private ConcurrentMap<String, ReleaseMessage> releaseMessageCache;
 
+	/**
+	 * ReleaseMessage发布信息 缓存, 按 Watch Key 编号索引(忽略大小写)，供长轮询无分配地查询
+	 *
+	 * 下标：WatchKeyDictionary 分配的编号 VALUE：对应的最新的 ReleaseMessage 记录
+	 */
+	private volatile AtomicReferenceArray<ReleaseMessage> releaseMessageCacheById;
+
 	/**
 	 * 是否执行扫描任务
 	 */
@@ -74,9 +84,10 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 	private ExecutorService executorService;
 
 	public ReleaseMessageServiceWithCache(final ReleaseMessageRepository releaseMessageRepository,
-			final BizConfig bizConfig) {
+			final BizConfig bizConfig, final WatchKeyDictionary watchKeyDictionary) {
 		this.releaseMessageRepository = releaseMessageRepository;
 		this.bizConfig = bizConfig;
+		this.watchKeyDictionary = watchKeyDictionary;
 		initialize();
 	}
 
@@ -85,6 +96,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 	 */
 	private void initialize() {
 		releaseMessageCache = Maps.newConcurrentMap();
+		releaseMessageCacheById = new AtomicReferenceArray<>(1024);
 		doScan = new AtomicBoolean(true);
 		executorService = Executors
 				.newSingleThreadExecutor(ApolloThreadFactory.create("ReleaseMessageServiceWithCache", true));
@@ -115,6 +127,16 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 		return result;
 	}
 
+	/**
+	 * Watch Key 编号对应的最新的 ReleaseMessage 记录(从缓存中获取)，不存在时返回 null
+	 * @param watchKeyId WatchKeyDictionary 分配的编号
+	 * @return
+	 */
+	public ReleaseMessage findLatestReleaseMessage(int watchKeyId) {
+		AtomicReferenceArray<ReleaseMessage> cache = releaseMessageCacheById;
+		return watchKeyId >= 0 && watchKeyId < cache.length() ? cache.get(watchKeyId) : null;
+	}
+
 	/**
 	 * 每个 Watch Key 对应的最新的 ReleaseMessage 记录(从缓存中获取)。
 	 * @param messages
@@ -219,6 +241,33 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
 			releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
 			maxIdScanned = releaseMessage.getId();
 		}
+
+		mergeReleaseMessageById(releaseMessage);
+	}
+
+	/**
+	 * 合并到按 Watch Key 编号索引的缓存，调用方需持有锁
+	 * @param releaseMessage
+	 */
+	private void mergeReleaseMessageById(ReleaseMessage releaseMessage) {
+		int watchKeyId = watchKeyDictionary.intern(releaseMessage.getMessage());
+		if (watchKeyId == WatchKeyDictionary.NOT_FOUND) {
+			return;
+		}
+		AtomicReferenceArray<ReleaseMessage> cache = releaseMessageCacheById;
+		if (watchKeyId >= cache.length()) {
+			AtomicReferenceArray<ReleaseMessage> grown = new AtomicReferenceArray<>(
+					Math.max(cache.length() << 1, watchKeyId + 1));
+			for (int i = 0; i < cache.length(); i++) {
+				grown.set(i, cache.get(i));
+			}
+			cache = grown;
+			releaseMessageCacheById = grown;
+		}
+		ReleaseMessage old = cache.get(watchKeyId);
+		if (old == null || releaseMessage.getId() > old.getId()) {
+			cache.set(watchKeyId, releaseMessage);
+		}
 	}
 
 	/**
@@ -0,0 +1,178 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+
+/**
+ * ConfigServiceWithCache 缓存的本地快照文件，格式:<br>
+ * magic(int) version(int) watermark(long) count(int) [entry]* crc32(long)<br>
+ * entry: watchKey(utf) notificationId(long) hasRelease(boolean)
+ * [releaseId(long) name(utf) appId(utf) clusterName(utf) namespaceName(utf) releaseKey(utf)
+ * configurationsLength(int) gzip(configurations)]<br>
+ * watermark 为写快照时已经处理的最大 ReleaseMessage 编号，快照中的缓存与所有不大于 watermark 的 ReleaseMessage 一致。<br>
+ * 先写临时文件再原子替换，进程在写的过程中退出不会损坏已有的快照。
+ */
+class ConfigCacheSnapshotFile {
+	private static final int MAGIC = 0x41434353; // ACCS
+	private static final int VERSION = 1;
+
+	private final Path path;
+
+	ConfigCacheSnapshotFile(Path path) {
+		this.path = path;
+	}
+
+	Path getPath() {
+		return path;
+	}
+
+	boolean exists() {
+		return Files.isRegularFile(path);
+	}
+
+	void write(long watermark, Map<String, ConfigServiceWithCache.ConfigCacheEntry> entries) throws IOException {
+		Path parent = path.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+		CRC32 crc = new CRC32();
+		try (OutputStream fileOut = Files.newOutputStream(tmp)) {
+			DataOutputStream out = new DataOutputStream(
+					new CheckedOutputStream(new BufferedOutputStream(fileOut), crc));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(watermark);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, ConfigServiceWithCache.ConfigCacheEntry> entry : entries.entrySet()) {
+				writeEntry(out, entry.getKey(), entry.getValue());
+			}
+			out.flush();
+			// crc is not part of the checksum
+			DataOutputStream crcOut = new DataOutputStream(fileOut);
+			crcOut.writeLong(crc.getValue());
+			crcOut.flush();
+		}
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * @throws IOException 文件不存在、格式不对或校验失败
+	 */
+	Snapshot read() throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream fileIn = new BufferedInputStream(Files.newInputStream(path))) {
+			DataInputStream in = new DataInputStream(new CheckedInputStream(fileIn, crc));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Unknown config cache snapshot format: " + path);
+			}
+			long watermark = in.readLong();
+			int count = in.readInt();
+			Map<String, ConfigServiceWithCache.ConfigCacheEntry> entries = Maps.newHashMapWithExpectedSize(count);
+			for (int i = 0; i < count; i++) {
+				String watchKey = in.readUTF();
+				entries.put(watchKey, readEntry(in));
+			}
+			long expectedCrc = crc.getValue();
+			if (new DataInputStream(fileIn).readLong() != expectedCrc) {
+				throw new IOException("Config cache snapshot checksum mismatch: " + path);
+			}
+			return new Snapshot(watermark, entries);
+		}
+	}
+
+	private void writeEntry(DataOutputStream out, String watchKey, ConfigServiceWithCache.ConfigCacheEntry entry)
+			throws IOException {
+		out.writeUTF(watchKey);
+		out.writeLong(entry.getNotificationId());
+		Release release = entry.getRelease();
+		out.writeBoolean(release != null);
+		if (release == null) {
+			return;
+		}
+		out.writeLong(release.getId());
+		out.writeUTF(nullToEmpty(release.getName()));
+		out.writeUTF(release.getAppId());
+		out.writeUTF(release.getClusterName());
+		out.writeUTF(release.getNamespaceName());
+		out.writeUTF(release.getReleaseKey());
+		byte[] configurations = compress(release.getConfigurations());
+		out.writeInt(configurations.length);
+		out.write(configurations);
+	}
+
+	private ConfigServiceWithCache.ConfigCacheEntry readEntry(DataInputStream in) throws IOException {
+		long notificationId = in.readLong();
+		if (!in.readBoolean()) {
+			return new ConfigServiceWithCache.ConfigCacheEntry(notificationId, null);
+		}
+		Release release = new Release();
+		release.setId(in.readLong());
+		release.setName(in.readUTF());
+		release.setAppId(in.readUTF());
+		release.setClusterName(in.readUTF());
+		release.setNamespaceName(in.readUTF());
+		release.setReleaseKey(in.readUTF());
+		byte[] configurations = new byte[in.readInt()];
+		in.readFully(configurations);
+		release.setConfigurations(decompress(configurations));
+		return new ConfigServiceWithCache.ConfigCacheEntry(notificationId, release);
+	}
+
+	private static byte[] compress(String value) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+			gzip.write(nullToEmpty(value).getBytes(StandardCharsets.UTF_8));
+		}
+		return bytes.toByteArray();
+	}
+
+	private static String decompress(byte[] value) throws IOException {
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(value))) {
+			return new String(ByteStreams.toByteArray(gzip), StandardCharsets.UTF_8);
+		}
+	}
+
+	private static String nullToEmpty(String value) {
+		return value == null ? "" : value;
+	}
+
+	static class Snapshot {
+		private final long watermark;
+		private final Map<String, ConfigServiceWithCache.ConfigCacheEntry> entries;
+
+		Snapshot(long watermark, Map<String, ConfigServiceWithCache.ConfigCacheEntry> entries) {
+			this.watermark = watermark;
+			this.entries = entries;
+		}
+
+		long getWatermark() {
+			return watermark;
+		}
+
+		Map<String, ConfigServiceWithCache.ConfigCacheEntry> getEntries() {
+			return entries;
+		}
+	}
+}
@@ -0,0 +1,213 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * 计算并缓存两个(合并的) Release Key 之间的配置增量，客户端提交当前的 Release Key 时只返回变化的配置。<br>
+ * 变化的计算方式与 Portal 的 ReleaseService.compare 一致：基准中不存在的为新增，值不同的为修改，目标中不存在的为删除。<br>
+ * 基准 Release 不存在(例如已被删除)，或者增量不比全量小时，返回 null ，由调用方返回全量配置。<br>
+ * Release Key 由客户端提交，基准 Release 必须与目标 Release 逐个属于相同的 App 和 Namespace，
+ * 否则返回全量配置，避免通过其他 App 的 Release Key 获得其配置项。
+ */
+@Service
+public class ConfigDeltaService {
+	private static final Splitter RELEASE_KEY_SPLITTER = Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+			.omitEmptyStrings();
+	private static final Type CONFIGURATION_TYPE = new TypeToken<Map<String, String>>() {
+	}.getType();
+	private static final String TRACER_EVENT_DELTA_CALCULATE = "ConfigDelta.Calculate";
+	private static final String TRACER_EVENT_DELTA_MISMATCH = "ConfigDelta.BaseReleaseMismatch";
+
+	/**
+	 * 最多缓存的增量数量
+	 */
+	private static final long MAX_CACHED_DELTAS = 1000;
+	private static final long EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;
+
+	private final ReleaseService releaseService;
+	private final ConfigService configService;
+	private final Gson gson;
+
+	/**
+	 * KEY：基准 Release Key -> 目标 Release Key<br>
+	 * VALUE：增量，为空时返回全量
+	 */
+	private final Cache<String, Optional<ConfigDelta>> deltaCache;
+
+	public ConfigDeltaService(final ReleaseService releaseService, final ConfigService configService,
+			final Gson gson) {
+		this.releaseService = releaseService;
+		this.configService = configService;
+		this.gson = gson;
+		this.deltaCache = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_DELTAS)
+				.expireAfterAccess(EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES).build();
+	}
+
+	/**
+	 * 获得从基准配置到目标配置的增量
+	 *
+	 * @param baseReleaseKey  客户端当前的合并 Release Key
+	 * @param releases        最新的 Release 数组，顺序与合并 Release Key 一致
+	 * @param releaseKey      最新的合并 Release Key
+	 * @param configurations  最新的合并配置，只在没有缓存时调用
+	 * @return 增量，需要返回全量配置时返回 null
+	 */
+	public ConfigDelta findDelta(String baseReleaseKey, List<Release> releases, String releaseKey,
+			Supplier<Map<String, String>> configurations) {
+		try {
+			return deltaCache.get(baseReleaseKey + "->" + releaseKey,
+					() -> Optional.ofNullable(calculateDelta(baseReleaseKey, releases, configurations))).orElse(null);
+		} catch (ExecutionException ex) {
+			Tracer.logError(ex.getCause());
+			return null;
+		}
+	}
+
+	private ConfigDelta calculateDelta(String baseReleaseKey, List<Release> releases,
+			Supplier<Map<String, String>> configurationsSupplier) {
+		Tracer.logEvent(TRACER_EVENT_DELTA_CALCULATE, baseReleaseKey);
+		Map<String, String> baseConfigurations = loadConfigurations(baseReleaseKey, releases);
+		if (baseConfigurations == null) {
+			return null;
+		}
+		Map<String, String> configurations = configurationsSupplier.get();
+		ConfigDelta delta = ConfigDelta.between(baseConfigurations, configurations);
+		// the full payload is not larger than the delta
+		if (delta.size() >= configurations.size()) {
+			return null;
+		}
+		return delta;
+	}
+
+	/**
+	 * 加载合并 Release Key 对应的合并配置，合并方式与 ConfigController 一致，后面的 Release 优先级更低
+	 *
+	 * @param releases 最新的 Release 数组，基准 Release 需要逐个与其属于相同的 App 和 Namespace
+	 * @return 合并配置，有 Release 不存在或不属于请求的 Namespace 时返回 null
+	 */
+	private Map<String, String> loadConfigurations(String mergedReleaseKey, List<Release> releases) {
+		List<String> releaseKeys = RELEASE_KEY_SPLITTER.splitToList(mergedReleaseKey);
+		if (releaseKeys.isEmpty() || releaseKeys.size() != releases.size()) {
+			return null;
+		}
+		List<Release> baseReleases = releaseService.findByReleaseKeys(Sets.newHashSet(releaseKeys));
+		if (baseReleases == null) {
+			return null;
+		}
+		Map<String, Release> releasesByKey = Maps.newHashMap();
+		for (Release release : baseReleases) {
+			releasesByKey.put(release.getReleaseKey(), release);
+		}
+
+		List<Release> orderedReleases = Lists.newArrayListWithCapacity(releaseKeys.size());
+		for (int i = 0; i < releaseKeys.size(); i++) {
+			Release release = releasesByKey.get(releaseKeys.get(i));
+			if (release == null) {
+				return null;
+			}
+			if (!isSameNamespace(release, releases.get(i))) {
+				Tracer.logEvent(TRACER_EVENT_DELTA_MISMATCH, mergedReleaseKey);
+				return null;
+			}
+			orderedReleases.add(release);
+		}
+
+		Map<String, String> result = Maps.newHashMap();
+		for (Release release : Lists.reverse(orderedReleases)) {
+			ReleaseSnapshot snapshot = configService.findSnapshot(release);
+			if (snapshot != null) {
+				result.putAll(snapshot.getConfigurations());
+			} else {
+				Map<String, String> configurations = gson.fromJson(release.getConfigurations(), CONFIGURATION_TYPE);
+				if (configurations != null) {
+					result.putAll(configurations);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * 基准 Release 与最新的 Release 是否属于相同的 App 和 Namespace，Cluster 可能因为集群查找规则而不同
+	 */
+	private static boolean isSameNamespace(Release baseRelease, Release release) {
+		return baseRelease.getAppId().equalsIgnoreCase(release.getAppId())
+				&& baseRelease.getNamespaceName().equalsIgnoreCase(release.getNamespaceName());
+	}
+
+	/**
+	 * 配置增量
+	 */
+	public static class ConfigDelta {
+		/**
+		 * 新增和修改的配置
+		 */
+		private final Map<String, String> changes;
+		/**
+		 * 删除的配置项
+		 */
+		private final List<String> deletedKeys;
+
+		private ConfigDelta(Map<String, String> changes, List<String> deletedKeys) {
+			this.changes = Collections.unmodifiableMap(changes);
+			this.deletedKeys = Collections.unmodifiableList(deletedKeys);
+		}
+
+		static ConfigDelta between(Map<String, String> base, Map<String, String> target) {
+			Map<String, String> changes = Maps.newLinkedHashMap();
+			List<String> deletedKeys = Lists.newArrayList();
+			for (Map.Entry<String, String> entry : base.entrySet()) {
+				String targetValue = target.get(entry.getKey());
+				if (targetValue == null) {
+					// deleted
+					deletedKeys.add(entry.getKey());
+				} else if (!Objects.equals(entry.getValue(), targetValue)) {
+					// modified
+					changes.put(entry.getKey(), targetValue);
+				}
+			}
+			for (Map.Entry<String, String> entry : target.entrySet()) {
+				// added
+				if (!base.containsKey(entry.getKey())) {
+					changes.put(entry.getKey(), entry.getValue());
+				}
+			}
+			return new ConfigDelta(changes, deletedKeys);
+		}
+
+		public Map<String, String> getChanges() {
+			return changes;
+		}
+
+		public List<String> getDeletedKeys() {
+			return deletedKeys;
+		}
+
+		int size() {
+			return changes.size() + deletedKeys.size();
+		}
+	}
+}
@@ -34,4 +34,15 @@ public interface ConfigService extends ReleaseMessageListener {
 	 */
 	Release loadConfig(String clientAppId, String clientIp, String configAppId, String configClusterName,
 			String configNamespace, String dataCenter, ApolloNotificationMessages clientMessages);
+
+	/**
+	 * 获得 Release 的预计算快照，包括预解析的配置 Map 和预序列化的响应体
+	 *
+	 * @param release the Release
+	 * @return the snapshot, or null if the implementation does not keep snapshots,
+	 *         in which case the caller parses {@link Release#getConfigurations()} itself
+	 */
+	default ReleaseSnapshot findSnapshot(Release release) {
+		return null;
+	}
 }
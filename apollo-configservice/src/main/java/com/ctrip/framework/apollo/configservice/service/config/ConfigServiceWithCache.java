@@ -1,33 +1,54 @@
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.service.NamespaceService;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 
 import java.util.Optional;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 /**
  * config service with guava cache<br>
@@ -49,12 +70,26 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 	private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
 	private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
 	private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
+	private static final String TRACER_EVENT_CACHE_LOAD_SNAPSHOT = "ConfigCache.LoadSnapshot";
+	private static final String TRACER_EVENT_CACHE_SNAPSHOT_FILE = "ConfigCache.SnapshotFile";
+	private static final String TRACER_EVENT_CACHE_PREFETCH = "ConfigCache.Prefetch";
+
+	/**
+	 * 预加载时每批加载的 Release 数量
+	 */
+	private static final int PREFETCH_BATCH = 100;
+
+	/**
+	 * 与 ReleaseMessageRepository#findFirst500ByIdGreaterThanOrderByIdAsc 一致
+	 */
+	private static final int RELEASE_MESSAGE_BATCH = 500;
 	
 	/**
 	 * "+"分隔符
 	 */
 	private static final Splitter STRING_SPLITTER = Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
 			.omitEmptyStrings();
+	private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).useForNull("");
 
 	@Autowired
 	private ReleaseService releaseService;
@@ -62,6 +97,12 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 	@Autowired
 	private ReleaseMessageService releaseMessageService;
 
+	@Autowired
+	private NamespaceService namespaceService;
+
+	@Autowired
+	private BizConfig bizConfig;
+
 	/**
 	 * ConfigCacheEntry 缓存
 	 *
@@ -76,11 +117,63 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 	 */
 	private LoadingCache<Long, Optional<Release>> configIdCache;
 
+	/**
+	 * ReleaseSnapshot 缓存
+	 *
+	 * KEY ：appId + clusterName + namespaceName + releaseKey ，Release 不可变，所以不需要主动失效
+	 */
+	private Cache<String, ReleaseSnapshot> releaseSnapshotCache;
+
 	/**
 	 * 无,  ConfigCacheEntry 占位对象
 	 */
 	private ConfigCacheEntry nullConfigCacheEntry;
 
+	/**
+	 * 已经处理的最大 ReleaseMessage 编号，除 {@link #outdatedKeys} 外，configCache 与所有不大于它的 ReleaseMessage 一致。
+	 * -1 表示未知，此时不写快照
+	 */
+	private final AtomicLong releaseMessageWatermark = new AtomicLong(-1);
+
+	/**
+	 * 收到 ReleaseMessage 但没有成功加载到对应版本的 Watch Key 及其 ReleaseMessage 编号。<br>
+	 * watermark 会越过这些 ReleaseMessage ，因此在缓存追上之前，这些 Key 不写入快照
+	 */
+	private final ConcurrentMap<String, Long> outdatedKeys = Maps.newConcurrentMap();
+
+	/**
+	 * 上次写快照后 configCache 是否有变化
+	 */
+	private volatile boolean snapshotDirty;
+
+	private ConfigCacheSnapshotFile configCacheSnapshotFile;
+
+	private ScheduledExecutorService snapshotExecutorService;
+
+	/**
+	 * 合并同一个 Watch Key 的并发重新加载，版本为通知编号
+	 */
+	private final SingleFlightLoader<String, ConfigCacheEntry> configCacheReloader = new SingleFlightLoader<>(
+			this::reload, ConfigCacheEntry::getNotificationId);
+
+	/**
+	 * 重新加载期间使用旧缓存的次数
+	 */
+	private final LongAdder staleServes = new LongAdder();
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	/**
+	 * 是否预加载，预加载时 configCache 和 configIdCache 不会因为长时间未访问而过期，由 handleMessage 保持最新
+	 */
+	private boolean eagerLoad;
+
+	/**
+	 * 每个缓存中 Release 配置的总大小上限，按配置的字符数计算，近似字节数
+	 */
+	private long memoryBudget;
+
 	public ConfigServiceWithCache() {
 		nullConfigCacheEntry = new ConfigCacheEntry(ConfigConsts.NOTIFICATION_ID_PLACEHOLDER, null);
 	}
@@ -88,56 +181,26 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 	// 通过 Spring 调用，初始化缓存对象
 	@PostConstruct
 	void initialize() {
+		eagerLoad = bizConfig.isConfigServiceCacheEagerLoadEnabled();
+		memoryBudget = bizConfig.configServiceCacheMemoryBudgetInBytes();
+		if (memoryBudget <= 0) {
+			memoryBudget = Long.MAX_VALUE;
+		}
+
 		// 初始化 configCache
-		configCache = CacheBuilder.newBuilder()
-				.expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+		configCache = newCacheBuilder(!eagerLoad,
+				(Weigher<String, ConfigCacheEntry>) (key, entry) -> weigh(entry.getRelease()))
 				.build(new CacheLoader<String, ConfigCacheEntry>() {
 					
 					// 缓存中查询, 没有值, 调用load加载
 					@Override
 					public ConfigCacheEntry load(String key) throws Exception {
-						// 格式不正确，返回 nullConfigCacheEntry
-						List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
-						if (namespaceInfo.size() != 3) {
-							Tracer.logError(
-									new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
-							return nullConfigCacheEntry;
-						}
-
-						Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
-						try {
-							// 获得最新的 ReleaseMessage 对象
-							ReleaseMessage latestReleaseMessage = releaseMessageService
-									.findLatestReleaseMessageForMessages(Lists.newArrayList(key));
-							// 获得最新的，并且有效的 Release 对象
-							Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0),
-									namespaceInfo.get(1), namespaceInfo.get(2));
-
-							transaction.setStatus(Transaction.SUCCESS);
-
-							// 获得通知编号
-							long notificationId = latestReleaseMessage == null
-									? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER
-									: latestReleaseMessage.getId();
-
-							// 若 latestReleaseMessage 和 latestRelease 都为空，返回 nullConfigCacheEntry
-							if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
-								return nullConfigCacheEntry;
-							}
-
-							// 创建 ConfigCacheEntry 对象
-							return new ConfigCacheEntry(notificationId, latestRelease);
-						} catch (Throwable ex) {
-							transaction.setStatus(ex);
-							throw ex;
-						} finally {
-							transaction.complete();
-						}
+						return loadConfigCacheEntry(key);
 					}
 				});
 		
-		configIdCache = CacheBuilder.newBuilder()
-				.expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+		configIdCache = newCacheBuilder(!eagerLoad,
+				(Weigher<Long, Optional<Release>>) (key, release) -> weigh(release.orElse(null)))
 				.build(new CacheLoader<Long, Optional<Release>>() {
 					@Override
 					public Optional<Release> load(Long key) throws Exception {
@@ -159,6 +222,311 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 						}
 					}
 				});
+
+		// 快照按 releaseKey 缓存，旧 Release 的快照总是需要过期
+		releaseSnapshotCache = newCacheBuilder(true,
+				(Weigher<String, ReleaseSnapshot>) (key, snapshot) -> snapshot.getBody().length).build();
+
+		// 从本地快照文件预热 configCache ，并定期写快照
+		if (bizConfig.isConfigServiceCacheSnapshotEnabled()) {
+			configCacheSnapshotFile = new ConfigCacheSnapshotFile(
+					Paths.get(bizConfig.configServiceCacheSnapshotPath()));
+			warmUpFromSnapshot();
+
+			snapshotExecutorService = Executors.newSingleThreadScheduledExecutor(
+					ApolloThreadFactory.create("ConfigServiceWithCache", true));
+			snapshotExecutorService.scheduleWithFixedDelay(this::persistSnapshot,
+					bizConfig.configServiceCacheSnapshotInterval(), bizConfig.configServiceCacheSnapshotInterval(),
+					bizConfig.configServiceCacheSnapshotIntervalTimeUnit());
+		}
+
+		if (eagerLoad) {
+			prefetch();
+		}
+
+		if (meterRegistry != null) {
+			FunctionCounter.builder("apollo.config.cache.reloads", configCacheReloader, SingleFlightLoader::loads)
+					.register(meterRegistry);
+			FunctionCounter.builder("apollo.config.cache.dedup.hits", configCacheReloader,
+					SingleFlightLoader::dedupHits).register(meterRegistry);
+			FunctionCounter.builder("apollo.config.cache.stale.serves", staleServes, LongAdder::sum)
+					.register(meterRegistry);
+		}
+	}
+
+	/**
+	 * 重新加载次数
+	 */
+	long reloads() {
+		return configCacheReloader.loads();
+	}
+
+	/**
+	 * 合并到其它请求的重新加载的次数
+	 */
+	long dedupHits() {
+		return configCacheReloader.dedupHits();
+	}
+
+	/**
+	 * 重新加载期间使用旧缓存的次数
+	 */
+	long staleServes() {
+		return staleServes.sum();
+	}
+
+	/**
+	 * 按配置大小限制缓存，超过 {@link #memoryBudget} 时淘汰，被淘汰的缓存在下次访问时重新从 DB 加载
+	 */
+	private <K, V> CacheBuilder<K, V> newCacheBuilder(boolean expireAfterAccess, Weigher<K, V> weigher) {
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().maximumWeight(memoryBudget);
+		if (expireAfterAccess) {
+			builder.expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES);
+		}
+		return builder.weigher(weigher);
+	}
+
+	private static int weigh(Release release) {
+		if (release == null || release.getConfigurations() == null) {
+			return 0;
+		}
+		return release.getConfigurations().length();
+	}
+
+	/**
+	 * 按 Namespace 编号分页加载所有 Namespace 最新的有效 Release ，同时填充 configCache 和 configIdCache 。<br>
+	 * 已经在缓存中的(例如从快照文件加载的)不会覆盖；加载的配置总大小达到 {@link #memoryBudget} 后停止，其余的按需加载。
+	 */
+	private void prefetch() {
+		Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_PREFETCH, "prefetch");
+		long loaded = 0;
+		long loadedWeight = 0;
+		try {
+			long lastNamespaceId = 0;
+			List<Long> namespaceIds;
+			do {
+				namespaceIds = namespaceService.findIdsGreaterThan(lastNamespaceId, PREFETCH_BATCH);
+				if (namespaceIds.isEmpty()) {
+					break;
+				}
+				long fromNamespaceId = lastNamespaceId;
+				lastNamespaceId = namespaceIds.get(namespaceIds.size() - 1);
+				List<Long> releaseIds = releaseService.findLatestActiveReleaseIdsOfNamespaces(fromNamespaceId,
+						lastNamespaceId);
+				if (releaseIds.isEmpty()) {
+					continue;
+				}
+
+				Map<String, Release> releases = Maps.newHashMap();
+				for (Release release : releaseService.findByReleaseIds(Sets.newHashSet(releaseIds))) {
+					releases.put(ReleaseMessageKeyGenerator.generate(release.getAppId(), release.getClusterName(),
+							release.getNamespaceName()), release);
+				}
+				// ReleaseMessage 的 message 在 DB 中可能大小写不同
+				Map<String, Long> notificationIds = Maps.newTreeMap(String.CASE_INSENSITIVE_ORDER);
+				for (ReleaseMessage releaseMessage : releaseMessageService
+						.findLatestReleaseMessagesGroupByMessages(releases.keySet())) {
+					notificationIds.put(releaseMessage.getMessage(), releaseMessage.getId());
+				}
+
+				for (Map.Entry<String, Release> entry : releases.entrySet()) {
+					Release release = entry.getValue();
+					long notificationId = notificationIds.getOrDefault(entry.getKey(),
+							ConfigConsts.NOTIFICATION_ID_PLACEHOLDER);
+					// do not override the newer entry loaded by handleMessage
+					if (configCache.asMap().putIfAbsent(entry.getKey(),
+							new ConfigCacheEntry(notificationId, release)) == null) {
+						configIdCache.asMap().putIfAbsent(release.getId(), Optional.of(release));
+						loaded++;
+						loadedWeight += weigh(release);
+					}
+				}
+				snapshotDirty = true;
+			} while (namespaceIds.size() >= PREFETCH_BATCH && loadedWeight < memoryBudget);
+
+			transaction.setStatus(Transaction.SUCCESS);
+			logger.info("Prefetched {} releases with {} chars of configurations", loaded, loadedWeight);
+		} catch (Throwable ex) {
+			// the rest will be loaded lazily
+			transaction.setStatus(ex);
+			Tracer.logError(ex);
+			logger.warn("Prefetch releases failed after {} releases loaded", loaded, ex);
+		} finally {
+			transaction.complete();
+		}
+	}
+
+	/**
+	 * 从 DB 加载 Watch Key 对应的 ConfigCacheEntry
+	 */
+	private ConfigCacheEntry loadConfigCacheEntry(String key) {
+		// 格式不正确，返回 nullConfigCacheEntry
+		List<String> namespaceInfo = STRING_SPLITTER.splitToList(key);
+		if (namespaceInfo.size() != 3) {
+			Tracer.logError(
+					new IllegalArgumentException(String.format("Invalid cache load key %s", key)));
+			return nullConfigCacheEntry;
+		}
+
+		Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_LOAD, key);
+		try {
+			// 获得最新的 ReleaseMessage 对象
+			ReleaseMessage latestReleaseMessage = releaseMessageService
+					.findLatestReleaseMessageForMessages(Lists.newArrayList(key));
+			// 获得最新的，并且有效的 Release 对象
+			Release latestRelease = releaseService.findLatestActiveRelease(namespaceInfo.get(0),
+					namespaceInfo.get(1), namespaceInfo.get(2));
+
+			transaction.setStatus(Transaction.SUCCESS);
+
+			// 获得通知编号
+			long notificationId = latestReleaseMessage == null
+					? ConfigConsts.NOTIFICATION_ID_PLACEHOLDER
+					: latestReleaseMessage.getId();
+
+			// 若 latestReleaseMessage 和 latestRelease 都为空，返回 nullConfigCacheEntry
+			if (notificationId == ConfigConsts.NOTIFICATION_ID_PLACEHOLDER && latestRelease == null) {
+				return nullConfigCacheEntry;
+			}
+
+			snapshotDirty = true;
+
+			// 创建 ConfigCacheEntry 对象
+			return new ConfigCacheEntry(notificationId, latestRelease);
+		} catch (Throwable ex) {
+			transaction.setStatus(ex);
+			throw ex;
+		} finally {
+			transaction.complete();
+		}
+	}
+
+	/**
+	 * 重新加载并替换缓存，由 {@link #configCacheReloader} 调用，同一个 Key 不会并发执行。
+	 * 替换前缓存中的旧值继续可用(stale-while-revalidate)
+	 */
+	private ConfigCacheEntry reload(String key) {
+		Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
+		ConfigCacheEntry cacheEntry = loadConfigCacheEntry(key);
+		configCache.put(key, cacheEntry);
+		return cacheEntry;
+	}
+
+	@PreDestroy
+	void stop() {
+		if (snapshotExecutorService != null) {
+			snapshotExecutorService.shutdown();
+			persistSnapshot();
+		}
+	}
+
+	/**
+	 * 从快照文件加载 configCache ，再用快照之后的 ReleaseMessage 校验，只清空有新发布的 Key 。<br>
+	 * 快照不存在或不可用时，使用当前最大的 ReleaseMessage 编号作为 watermark ，缓存按需从 DB 加载。
+	 */
+	private void warmUpFromSnapshot() {
+		if (configCacheSnapshotFile.exists()) {
+			Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_SNAPSHOT_FILE, "load");
+			try {
+				ConfigCacheSnapshotFile.Snapshot snapshot = configCacheSnapshotFile.read();
+				configCache.putAll(snapshot.getEntries());
+				int invalidated = validateSnapshot(snapshot.getWatermark());
+				logger.info("Loaded {} config cache entries from {}, {} of them are out-dated",
+						snapshot.getEntries().size(), configCacheSnapshotFile.getPath(), invalidated);
+				transaction.setStatus(Transaction.SUCCESS);
+				return;
+			} catch (Throwable ex) {
+				// the snapshot is broken or could not be validated, fall back to lazy loading
+				configCache.invalidateAll();
+				transaction.setStatus(ex);
+				Tracer.logError(ex);
+				logger.warn("Load config cache snapshot from {} failed", configCacheSnapshotFile.getPath(), ex);
+			} finally {
+				transaction.complete();
+			}
+		}
+
+		try {
+			ReleaseMessage latestReleaseMessage = releaseMessageService.findLatestReleaseMessage();
+			updateWatermark(latestReleaseMessage == null ? 0 : latestReleaseMessage.getId());
+		} catch (Throwable ex) {
+			// the watermark will be known after the next release message
+			Tracer.logError(ex);
+		}
+	}
+
+	/**
+	 * 清空快照中在 watermark 之后有新 ReleaseMessage 的缓存
+	 *
+	 * @return 清空的数量
+	 */
+	private int validateSnapshot(long watermark) {
+		int invalidated = 0;
+		List<ReleaseMessage> releaseMessages;
+		do {
+			releaseMessages = releaseMessageService.findReleaseMessagesGreaterThan(watermark);
+			for (ReleaseMessage releaseMessage : releaseMessages) {
+				ConfigCacheEntry cacheEntry = configCache.getIfPresent(releaseMessage.getMessage());
+				if (cacheEntry != null && cacheEntry.getNotificationId() < releaseMessage.getId()) {
+					configCache.invalidate(releaseMessage.getMessage());
+					invalidated++;
+				}
+				watermark = Math.max(watermark, releaseMessage.getId());
+			}
+		} while (releaseMessages.size() >= RELEASE_MESSAGE_BATCH);
+
+		updateWatermark(watermark);
+		return invalidated;
+	}
+
+	private void updateWatermark(long releaseMessageId) {
+		releaseMessageWatermark.accumulateAndGet(releaseMessageId, Math::max);
+	}
+
+	/**
+	 * 把 configCache 写入快照文件
+	 */
+	void persistSnapshot() {
+		// read the watermark first, all the messages before it have been applied to the cache
+		long watermark = releaseMessageWatermark.get();
+		if (watermark < 0 || !snapshotDirty) {
+			return;
+		}
+		snapshotDirty = false;
+
+		Transaction transaction = Tracer.newTransaction(TRACER_EVENT_CACHE_SNAPSHOT_FILE, "persist");
+		try {
+			Map<String, ConfigCacheEntry> entries = Maps.newHashMap();
+			for (Map.Entry<String, ConfigCacheEntry> entry : configCache.asMap().entrySet()) {
+				if (entry.getValue() != nullConfigCacheEntry && !isOutdated(entry.getKey(), entry.getValue())) {
+					entries.put(entry.getKey(), entry.getValue());
+				}
+			}
+			configCacheSnapshotFile.write(watermark, entries);
+			transaction.setStatus(Transaction.SUCCESS);
+		} catch (Throwable ex) {
+			snapshotDirty = true;
+			transaction.setStatus(ex);
+			Tracer.logError(ex);
+			logger.warn("Persist config cache snapshot to {} failed", configCacheSnapshotFile.getPath(), ex);
+		} finally {
+			transaction.complete();
+		}
+	}
+
+	/**
+	 * 缓存是否落后于已经越过 watermark 的 ReleaseMessage ，已经追上的 Key 从 {@link #outdatedKeys} 中移除
+	 */
+	private boolean isOutdated(String key, ConfigCacheEntry cacheEntry) {
+		Long outdatedId = outdatedKeys.get(key);
+		if (outdatedId == null) {
+			return false;
+		}
+		if (cacheEntry.getNotificationId() < outdatedId) {
+			return true;
+		}
+		outdatedKeys.remove(key, outdatedId);
+		return false;
 	}
 
 	@Override
@@ -186,45 +554,93 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 		// cache is out-dated
 		if (clientMessages != null && clientMessages.has(key)
 				&& clientMessages.get(key) > cacheEntry.getNotificationId()) {
-			// invalidate the cache and try to load from db again
-			// 清空对应的缓存
-			invalidate(key);
-			// 读取 ConfigCacheEntry 对象，重新从 DB 中加载。
-			cacheEntry = configCache.getUnchecked(key);
+			// reload from db, concurrent requests for the same key share one load
+			// 重新从 DB 中加载，同一个 Key 的并发请求合并为一次加载
+			cacheEntry = configCacheReloader.load(key, clientMessages.get(key));
+		} else if (configCacheReloader.isLoading(key)) {
+			// 正在重新加载，不知道新通知的客户端继续使用旧的缓存
+			staleServes.increment();
 		}
 
 		// 返回 Release 对象
 		return cacheEntry.getRelease();
 	}
 
-	/**
-	 * 删除key对应缓存
-	 * @param key
-	 */
-	private void invalidate(String key) {
-		// 清空对应的缓存
-		configCache.invalidate(key);
-		Tracer.logEvent(TRACER_EVENT_CACHE_INVALIDATE, key);
+	@Override
+	public ReleaseSnapshot findSnapshot(Release release) {
+		if (release == null) {
+			return null;
+		}
+		String key = STRING_JOINER.join(release.getAppId(), release.getClusterName(), release.getNamespaceName(),
+				release.getReleaseKey());
+		try {
+			// 从缓存 releaseSnapshotCache 中，读取 ReleaseSnapshot 对象，不存在时解析 Release 创建
+			return releaseSnapshotCache.get(key, () -> {
+				Tracer.logEvent(TRACER_EVENT_CACHE_LOAD_SNAPSHOT, key);
+				return ReleaseSnapshot.of(release);
+			});
+		} catch (ExecutionException | RuntimeException ex) {
+			// the configurations are invalid, let the caller handle it
+			Tracer.logError(ex);
+			return null;
+		}
 	}
 
 	@Override
 	public void handleMessage(ReleaseMessage message, String channel) {
-		logger.info("message received - channel: {}, message: {}", channel, message);
-		
+		handleMessages(Collections.singletonList(message), channel);
+	}
+
+	@Override
+	public void handleMessages(List<ReleaseMessage> messages, String channel) {
 		// 仅处理 APOLLO_RELEASE_TOPIC
-		if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(message.getMessage())) {
+		if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || messages.isEmpty()) {
 			return;
 		}
 
-		try {
-			// 清空对应的缓存
-			invalidate(message.getMessage());
+		// 同一批中相同 Watch Key 的多条消息只需要按最新的一条重新加载
+		Map<String, ReleaseMessage> latestMessages = Maps.newLinkedHashMap();
+		for (ReleaseMessage message : messages) {
+			logger.info("message received - channel: {}, message: {}", channel, message);
+			if (!Strings.isNullOrEmpty(message.getMessage())) {
+				latestMessages.put(message.getMessage(), message);
+			}
+		}
 
-			// 预热缓存，读取 ConfigCacheEntry 对象，重新从 DB 中加载
-			// warm up the cache
-			configCache.getUnchecked(message.getMessage());
-		} catch (Throwable ex) {
-			// ignore
+		for (ReleaseMessage message : latestMessages.values()) {
+			try {
+				// 重新从 DB 中加载，加载期间请求继续使用旧的缓存，收到通知的客户端会合并到这次加载
+				// reload and warm up the cache
+				ConfigCacheEntry cacheEntry = configCacheReloader.load(message.getMessage(), message.getId());
+				if (cacheEntry.getNotificationId() < message.getId()) {
+					// 读到的数据比通知旧(例如从库延迟)
+					markOutdated(message);
+				}
+				// 预计算新 Release 的快照，避免客户端收到通知后同时解析
+				findSnapshot(cacheEntry.getRelease());
+			} catch (Throwable ex) {
+				Tracer.logError(ex);
+				markOutdated(message);
+				// 重新加载失败，清空过期的缓存，下次请求时从 DB 加载，避免一直使用旧的 Release
+				invalidateIfOutdated(message);
+			}
+		}
+		snapshotDirty = true;
+		// 没有加载成功的 Key 已经记录在 outdatedKeys 中，不会随 watermark 写入快照
+		updateWatermark(messages.get(messages.size() - 1).getId());
+	}
+
+	private void markOutdated(ReleaseMessage message) {
+		outdatedKeys.merge(message.getMessage(), message.getId(), Math::max);
+	}
+
+	/**
+	 * 若缓存比 ReleaseMessage 旧，清空缓存
+	 */
+	private void invalidateIfOutdated(ReleaseMessage message) {
+		ConfigCacheEntry cacheEntry = configCache.getIfPresent(message.getMessage());
+		if (cacheEntry != null && cacheEntry.getNotificationId() < message.getId()) {
+			configCache.invalidate(message.getMessage());
 		}
 	}
 
@@ -233,7 +649,7 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 	 * @author maj
 	 *
 	 */
-	private static class ConfigCacheEntry {
+	static class ConfigCacheEntry {
 		/**
 	     * 通知编号
 	     */
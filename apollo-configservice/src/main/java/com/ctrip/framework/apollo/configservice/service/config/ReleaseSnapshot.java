@@ -0,0 +1,100 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Release 的预计算快照，由 (appId, clusterName, namespaceName, releaseKey) 唯一确定，创建后不可变。<br>
+ * 1, 预解析的配置 Map，合并多个 Release 时不需要再解析 {@link Release#getConfigurations()} 。<br>
+ * 2, 预序列化的 UTF-8 响应体，即该 Release 对应的 {@link ApolloConfig} 的 JSON ，
+ * 客户端请求的 appId, cluster, namespace 与 Release 一致时可以直接写出。
+ */
+public class ReleaseSnapshot {
+	private static final Gson GSON = new Gson();
+	private static final Type CONFIGURATION_TYPE = new TypeToken<Map<String, String>>() {
+	}.getType();
+
+	private final String appId;
+	private final String clusterName;
+	private final String namespaceName;
+	private final String releaseKey;
+	/**
+	 * 不可变的配置 Map ，保持 Release 中的顺序
+	 */
+	private final Map<String, String> configurations;
+	/**
+	 * ApolloConfig 的 JSON ，UTF-8 编码
+	 */
+	private final byte[] body;
+
+	private ReleaseSnapshot(String appId, String clusterName, String namespaceName, String releaseKey,
+			Map<String, String> configurations) {
+		this.appId = appId;
+		this.clusterName = clusterName;
+		this.namespaceName = namespaceName;
+		this.releaseKey = releaseKey;
+		this.configurations = Collections.unmodifiableMap(configurations);
+
+		ApolloConfig apolloConfig = new ApolloConfig(appId, clusterName, namespaceName, releaseKey);
+		apolloConfig.setConfigurations(configurations);
+		this.body = GSON.toJson(apolloConfig).getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 解析 Release 创建快照
+	 *
+	 * @throws com.google.gson.JsonSyntaxException Release 的配置不是合法的 JSON
+	 */
+	public static ReleaseSnapshot of(Release release) {
+		Map<String, String> configurations = GSON.fromJson(release.getConfigurations(), CONFIGURATION_TYPE);
+		if (configurations == null) {
+			configurations = Maps.newLinkedHashMap();
+		}
+		return new ReleaseSnapshot(release.getAppId(), release.getClusterName(), release.getNamespaceName(),
+				release.getReleaseKey(), configurations);
+	}
+
+	/**
+	 * 请求的 appId, cluster, namespace 是否和快照一致，一致时可以直接使用 {@link #getBody()} 作为响应
+	 */
+	public boolean matches(String appId, String clusterName, String namespaceName) {
+		return Objects.equals(this.appId, appId) && Objects.equals(this.clusterName, clusterName)
+				&& Objects.equals(this.namespaceName, namespaceName);
+	}
+
+	public String getAppId() {
+		return appId;
+	}
+
+	public String getClusterName() {
+		return clusterName;
+	}
+
+	public String getNamespaceName() {
+		return namespaceName;
+	}
+
+	public String getReleaseKey() {
+		return releaseKey;
+	}
+
+	public Map<String, String> getConfigurations() {
+		return configurations;
+	}
+
+	/**
+	 * 预序列化的响应体，多个请求共享同一个数组，调用方不能修改
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+}
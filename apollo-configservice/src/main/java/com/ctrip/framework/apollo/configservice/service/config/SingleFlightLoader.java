@@ -0,0 +1,121 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * 合并同一个 Key 的并发加载，每个 Key 同一时间最多只有一个加载在执行。<br>
+ * 每次加载都带有需要的最小版本(例如客户端已知的通知编号)：<br>
+ * 1, 已有加载在执行，且它开始时需要的版本不小于当前需要的版本，直接等待它的结果(dedup hit)；<br>
+ * 2, 已有加载在执行，但它开始时需要的版本更小，可能读不到新版本，等待它结束后，结果版本仍不够时再发起一次加载；<br>
+ * 3, 没有加载在执行，由当前线程加载，其它线程等待。
+ *
+ * @param <K> Key
+ * @param <V> 加载的结果
+ */
+class SingleFlightLoader<K, V> {
+	private final ConcurrentMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+	private final Function<K, V> loader;
+	private final ToLongFunction<V> versionFunction;
+
+	private final LongAdder loads = new LongAdder();
+	private final LongAdder dedupHits = new LongAdder();
+
+	/**
+	 * @param loader          加载函数，同一个 Key 不会被并发调用
+	 * @param versionFunction 获得结果的版本
+	 */
+	SingleFlightLoader(Function<K, V> loader, ToLongFunction<V> versionFunction) {
+		this.loader = loader;
+		this.versionFunction = versionFunction;
+	}
+
+	/**
+	 * 加载 Key
+	 *
+	 * @param requiredVersion 需要的最小版本
+	 * @return 版本不小于 requiredVersion 的结果，或者在知道 requiredVersion 之后开始的加载的结果
+	 */
+	V load(K key, long requiredVersion) {
+		while (true) {
+			Flight<V> flight = flights.get(key);
+			if (flight == null) {
+				Flight<V> newFlight = new Flight<>(requiredVersion);
+				flight = flights.putIfAbsent(key, newFlight);
+				if (flight == null) {
+					return fly(key, newFlight);
+				}
+			}
+
+			dedupHits.increment();
+			V value = flight.await();
+			if (flight.requiredVersion >= requiredVersion || versionFunction.applyAsLong(value) >= requiredVersion) {
+				return value;
+			}
+			// the flight started before the required version is known, it may read the old value
+		}
+	}
+
+	/**
+	 * Key 是否正在加载
+	 */
+	boolean isLoading(K key) {
+		return flights.containsKey(key);
+	}
+
+	/**
+	 * 实际执行的加载次数
+	 */
+	long loads() {
+		return loads.sum();
+	}
+
+	/**
+	 * 等待其它线程加载结果的次数
+	 */
+	long dedupHits() {
+		return dedupHits.sum();
+	}
+
+	private V fly(K key, Flight<V> flight) {
+		loads.increment();
+		try {
+			V value = loader.apply(key);
+			flight.future.complete(value);
+			return value;
+		} catch (Throwable ex) {
+			flight.future.completeExceptionally(ex);
+			throw ex;
+		} finally {
+			flights.remove(key, flight);
+		}
+	}
+
+	private static class Flight<V> {
+		private final long requiredVersion;
+		private final CompletableFuture<V> future = new CompletableFuture<>();
+
+		private Flight(long requiredVersion) {
+			this.requiredVersion = requiredVersion;
+		}
+
+		private V await() {
+			try {
+				return future.join();
+			} catch (CompletionException ex) {
+				if (ex.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) ex.getCause();
+				}
+				if (ex.getCause() instanceof Error) {
+					throw (Error) ex.getCause();
+				}
+				throw ex;
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Instance 配置获取记录的环形队列，多个请求线程写入，一个线程读取。<br>
+ * 1, 槽位预先分配并重复使用，写入时只复制字段，不创建对象；<br>
+ * 2, 写入线程通过 CAS 申请序号，写完字段后设置槽位的序号表示可以读取，不需要加锁；<br>
+ * 3, 队列已满时直接丢弃，不等待。
+ */
+final class InstanceConfigAuditRingBuffer {
+    private final AuditEvent[] events;
+    private final int mask;
+
+    /**
+     * 每个槽位已写完的序号，读取线程根据它判断槽位是否可以读取
+     */
+    private final AtomicLongArray publishedSequences;
+
+    /**
+     * 下一个可以申请的序号
+     */
+    private final AtomicLong producerSequence = new AtomicLong();
+
+    /**
+     * 下一个要读取的序号，只有读取线程修改
+     */
+    private volatile long consumerSequence;
+
+    InstanceConfigAuditRingBuffer(int bufferSize) {
+        int capacity = Integer.highestOneBit(Math.max(bufferSize, 2) - 1) << 1;
+        events = new AuditEvent[capacity];
+        publishedSequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            events[i] = new AuditEvent();
+            publishedSequences.set(i, -1);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * 写入一条记录
+     *
+     * @return 队列已满时返回 false
+     */
+    boolean publish(String appId, String clusterName, String dataCenter, String ip, String configAppId,
+            String configClusterName, String configNamespace, String releaseKey, long offerTime) {
+        long sequence;
+        do {
+            sequence = producerSequence.get();
+            if (sequence - consumerSequence >= events.length) {
+                return false;
+            }
+        } while (!producerSequence.compareAndSet(sequence, sequence + 1));
+
+        int index = (int) sequence & mask;
+        AuditEvent event = events[index];
+        event.appId = appId;
+        event.clusterName = clusterName;
+        event.dataCenter = dataCenter;
+        event.ip = ip;
+        event.configAppId = configAppId;
+        event.configClusterName = configClusterName;
+        event.configNamespace = configNamespace;
+        event.releaseKey = releaseKey;
+        event.offerTime = offerTime;
+        publishedSequences.lazySet(index, sequence);
+        return true;
+    }
+
+    /**
+     * 按写入顺序读取已写完的记录，只能在一个线程中调用。回调返回后槽位会被重复使用，不能保留 {@link AuditEvent} 对象
+     *
+     * @param maxEvents 最多读取的数量
+     * @return 读取的数量
+     */
+    int drain(Consumer<AuditEvent> handler, int maxEvents) {
+        long sequence = consumerSequence;
+        int drained = 0;
+        try {
+            while (drained < maxEvents) {
+                int index = (int) sequence & mask;
+                if (publishedSequences.get(index) != sequence) {
+                    break;
+                }
+                try {
+                    handler.accept(events[index]);
+                } finally {
+                    // skip the event even if the handler fails
+                    sequence++;
+                    drained++;
+                }
+            }
+        } finally {
+            consumerSequence = sequence;
+        }
+        return drained;
+    }
+
+    /**
+     * 已写入未读取的数量
+     */
+    int size() {
+        return (int) Math.max(0, producerSequence.get() - consumerSequence);
+    }
+
+    int capacity() {
+        return events.length;
+    }
+
+    /**
+     * 槽位，字段与 {@link InstanceConfigAuditUtil.InstanceConfigAuditModel} 一致
+     */
+    static final class AuditEvent {
+        String appId;
+        String clusterName;
+        String dataCenter;
+        String ip;
+        String configAppId;
+        String configClusterName;
+        String configNamespace;
+        String releaseKey;
+        long offerTime;
+    }
+}
@@ -1,21 +1,29 @@
 package com.ctrip.framework.apollo.configservice.util;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
-import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.InstanceStore;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
@@ -24,17 +32,37 @@ import com.google.common.base.Strings;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
 /**
+ * 记录 Instance 获取配置的情况，异步批量写入 {@link InstanceStore} 。<br>
+ * 0, 请求线程先用线程内的缓存过滤掉最近记录过的 (appId, ip, namespace, releaseKey) ，再把记录的字段复制到预先分配的
+ * 环形队列({@link InstanceConfigAuditRingBuffer})中，不加锁、不创建对象；一个分发线程从环形队列中取出记录后合并；<br>
+ * 1, 待写入的记录按 Instance + configAppId + configNamespace 去重，同一个 Instance 的同一个 Namespace
+ * 只保留最新的一条，大量客户端重启时不会重复写入；<br>
+ * 2, 多个线程并行写入("apollo.instance-config-audit.threads")，每批最多
+ * "apollo.instance-config-audit.batch" 条，不足一批时最多等待 "apollo.instance-config-audit.flush.interval"
+ * 毫秒；每批的 Instance 和 InstanceConfig 各自按分组一次查询、批量写入；<br>
+ * 3, 指标: 丢弃的记录数 apollo.instance-config-audit.dropped，待写入的记录数
+ * apollo.instance-config-audit.pending，每批的记录数 apollo.instance-config-audit.batch.size，每批的写入耗时
+ * apollo.instance-config-audit.flush.latency。
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
-public class InstanceConfigAuditUtil implements InitializingBean {
-    /**
-     * {@link #audits} 大小
-     */
-    private static final int INSTANCE_CONFIG_AUDIT_MAX_SIZE = 10000;
+public class InstanceConfigAuditUtil implements InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(InstanceConfigAuditUtil.class);
+    private static final String DROPPED_METRIC = "apollo.instance-config-audit.dropped";
+    private static final String PENDING_METRIC = "apollo.instance-config-audit.pending";
+    private static final String BATCH_SIZE_METRIC = "apollo.instance-config-audit.batch.size";
+    private static final String FLUSH_LATENCY_METRIC = "apollo.instance-config-audit.flush.latency";
     /**
      * {@link #instanceCache} 大小
      */
@@ -46,11 +74,43 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     private static final long OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI = TimeUnit.MINUTES.toMillis(10);// 10
                                                                                                                // minutes
     private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+    /**
+     * 请求线程内过滤重复记录的时间窗口，远小于 {@link #instanceConfigReleaseKeyCache} 的过期时间
+     */
+    private static final long RECENT_AUDIT_WINDOW_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * 每个请求线程缓存的最近记录数量，必须是 2 的幂
+     */
+    private static final int RECENT_AUDIT_CACHE_SIZE = 1024;
+    /**
+     * 分发线程每次从环形队列中取出的最大数量
+     */
+    private static final int DISPATCH_BATCH = 1024;
+
+    /**
+     * 请求线程写入的环形队列
+     */
+    private final InstanceConfigAuditRingBuffer ringBuffer;
+
+    /**
+     * 请求线程最近记录过的 (appId, ip, namespace, releaseKey)
+     */
+    private final ThreadLocal<RecentAudits> recentAudits = ThreadLocal.withInitial(RecentAudits::new);
+
+    /**
+     * 分发线程，环形队列为空时挂起，由请求线程唤醒
+     */
+    private volatile Thread dispatcher;
+
+    /**
+     * 分发线程是否已经(或即将)挂起
+     */
+    private final AtomicBoolean dispatcherParked = new AtomicBoolean();
 
     /**
-     * ExecutorService 对象。队列大小为 1 。
+     * 分发线程和写入线程
      */
-    private final ExecutorService auditExecutorService;
+    private ExecutorService auditExecutorService;
 
     /**
      * 是否停止
@@ -58,10 +118,18 @@ public class InstanceConfigAuditUtil implements InitializingBean {
     private final AtomicBoolean auditStopped;
 
     /**
-     * 队列
+     * 待写入的记录的 KEY 队列，每个 KEY 在队列中最多出现一次
+     *
+     * KEY：{@link #assembleAuditKey(InstanceConfigAuditModel)}
      */
-    private BlockingQueue<InstanceConfigAuditModel> audits = Queues
-            .newLinkedBlockingQueue(INSTANCE_CONFIG_AUDIT_MAX_SIZE);
+    private final BlockingQueue<String> auditKeys;
+
+    /**
+     * 待写入的记录，同一个 KEY 只保留最新的一条
+     *
+     * KEY：{@link #assembleAuditKey(InstanceConfigAuditModel)}
+     */
+    private final ConcurrentMap<String, InstanceConfigAuditModel> audits = Maps.newConcurrentMap();
 
     /**
      * Instance 的编号的缓存
@@ -79,21 +147,32 @@ public class InstanceConfigAuditUtil implements InitializingBean {
      */
     private Cache<String, String> instanceConfigReleaseKeyCache;
 
-    private final InstanceService instanceService;
+    private final InstanceStore instanceStore;
+    private final BizConfig bizConfig;
+    private final Counter droppedCounter;
+    private final DistributionSummary batchSizeSummary;
+    private final Timer flushTimer;
 
-    public InstanceConfigAuditUtil(final InstanceService instanceService) {
-        this.instanceService = instanceService;
-        auditExecutorService = Executors
-                .newSingleThreadExecutor(ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
+    public InstanceConfigAuditUtil(final InstanceStore instanceStore, final BizConfig bizConfig,
+            final MeterRegistry meterRegistry) {
+        this.instanceStore = instanceStore;
+        this.bizConfig = bizConfig;
         auditStopped = new AtomicBoolean(false);
+        ringBuffer = new InstanceConfigAuditRingBuffer(bizConfig.instanceConfigAuditRingBufferSize());
+        auditKeys = Queues.newLinkedBlockingQueue(bizConfig.instanceConfigAuditMaxSize());
         instanceCache = CacheBuilder.newBuilder().expireAfterAccess(1, TimeUnit.HOURS)
                 .maximumSize(INSTANCE_CACHE_MAX_SIZE).build();
         instanceConfigReleaseKeyCache = CacheBuilder.newBuilder().expireAfterWrite(1, TimeUnit.DAYS)
                 .maximumSize(INSTANCE_CONFIG_CACHE_MAX_SIZE).build();
+        droppedCounter = Counter.builder(DROPPED_METRIC).register(meterRegistry);
+        batchSizeSummary = DistributionSummary.builder(BATCH_SIZE_METRIC).register(meterRegistry);
+        flushTimer = Timer.builder(FLUSH_LATENCY_METRIC).register(meterRegistry);
+        Gauge.builder(PENDING_METRIC, this, util -> util.ringBuffer.size() + util.auditKeys.size())
+                .register(meterRegistry);
     }
 
     /**
-     * 添加到队列
+     * 添加到待写入的记录，在请求线程中调用。最近记录过的直接忽略，其余的写入环形队列后立即返回
      * 
      * @param appId
      * @param clusterName
@@ -103,144 +182,267 @@ public class InstanceConfigAuditUtil implements InitializingBean {
      * @param configClusterName
      * @param configNamespace
      * @param releaseKey
-     * @return boolean
+     * @return boolean 环形队列已满时返回 false
      * @date: 2020年4月21日 上午11:24:32
      */
     public boolean audit(String appId, String clusterName, String dataCenter, String ip, String configAppId,
             String configClusterName, String configNamespace, String releaseKey) {
-        // 创建InstanceConfigAuditModel对象
-        return this.audits.offer(new InstanceConfigAuditModel(appId, clusterName, dataCenter, ip, configAppId,
-                configClusterName, configNamespace, releaseKey));
+        long now = System.currentTimeMillis();
+        RecentAudits recent = recentAudits.get();
+        if (recent.isRecent(appId, ip, configNamespace, releaseKey, now)) {
+            return true;
+        }
+        if (ringBuffer.publish(appId, clusterName, dataCenter, ip, configAppId, configClusterName, configNamespace,
+                releaseKey, now)) {
+            wakeUpDispatcher();
+            return true;
+        }
+        // dropped, so let the next request try again
+        recent.forget(appId, ip, configNamespace, releaseKey);
+        droppedCounter.increment();
+        return false;
     }
 
     /**
-     * 记录 Instance 和 InstanceConfig
-     * 
-     * @param auditModel
-     *            void
-     * @date: 2020年4月21日 上午11:27:42
+     * 从环形队列中取出记录并合并到待写入的记录，只在分发线程中调用
+     *
+     * @return 取出的记录数量
      */
-    void doAudit(InstanceConfigAuditModel auditModel) {
-        // 拼接 instanceCache 的 KEY
-        String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel.getClusterName(),
-                auditModel.getIp(), auditModel.getDataCenter());
-        // 获得 Instance 编号
-        Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
-        // 查询不到，从 DB 加载或者创建，并添加到缓存中。
-        if (instanceId == null) {
-            instanceId = prepareInstanceId(auditModel);
-            instanceCache.put(instanceCacheKey, instanceId);
-        }
-
-        // 获得 instanceConfigReleaseKeyCache 的 KEY
-        // load instance config release key from cache, and check if release key
-        // is the same
-        String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel.getConfigAppId(),
-                auditModel.getConfigNamespace());
-        // 获得缓存的 cacheReleaseKey
-        String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
-
-        // 若相等，跳过
-        // if release key is the same, then skip audit
-        if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
-            return;
-        }
-
-        // 更新对应的 instanceConfigReleaseKeyCache 缓存
-        instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
+    int dispatchAudits() {
+        return ringBuffer.drain(event -> merge(new InstanceConfigAuditModel(event.appId, event.clusterName,
+                event.dataCenter, event.ip, event.configAppId, event.configClusterName, event.configNamespace,
+                event.releaseKey, new Date(event.offerTime))), DISPATCH_BATCH);
+    }
 
-        // if release key is not the same or cannot find in cache, then do audit
-        InstanceConfig instanceConfig = instanceService.findInstanceConfig(instanceId, auditModel.getConfigAppId(),
-                auditModel.getConfigNamespace());
+    /**
+     * 合并到待写入的记录，同一个 Instance 的同一个 Namespace 未写入的记录会被覆盖
+     *
+     * @return 待写入的记录已满时返回 false
+     */
+    boolean merge(InstanceConfigAuditModel auditModel) {
+        String auditKey = assembleAuditKey(auditModel);
+        // 已有未写入的记录，覆盖即可，KEY 已经在队列中
+        if (audits.put(auditKey, auditModel) != null) {
+            return true;
+        }
+        if (auditKeys.offer(auditKey)) {
+            return true;
+        }
+        // 队列已满，丢弃这个 KEY 的记录（包括并发覆盖的），保证 audits 中的 KEY 都在队列中
+        audits.remove(auditKey);
+        droppedCounter.increment();
+        return false;
+    }
 
-        if (instanceConfig != null) {
-            if (!Objects.equals(instanceConfig.getReleaseKey(), auditModel.getReleaseKey())) {
-                instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-                instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-                instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-            } else if (offerTimeAndLastModifiedTimeCloseEnough(auditModel.getOfferTime(),
-                    instanceConfig.getDataChangeLastModifiedTime())) {
-                // when releaseKey is the same, optimize to reduce writes if the
-                // record was updated not long ago
-                return;
+    /**
+     * 批量记录 Instance 和 InstanceConfig
+     * 
+     * @param auditModels
+     *            去重后的记录
+     * @date: 2020年4月21日 上午11:27:42
+     */
+    void doAudit(List<InstanceConfigAuditModel> auditModels) {
+        // 获得 Instance 编号，查询不到的，从 DB 批量加载或者创建，并添加到缓存中。
+        Map<String, Long> instanceIds = prepareInstanceIds(auditModels);
+
+        List<InstanceConfig> instanceConfigs = Lists.newArrayListWithCapacity(auditModels.size());
+        for (InstanceConfigAuditModel auditModel : auditModels) {
+            long instanceId = instanceIds.get(assembleInstanceKey(auditModel.getAppId(), auditModel.getClusterName(),
+                    auditModel.getIp(), auditModel.getDataCenter()));
+
+            // 获得 instanceConfigReleaseKeyCache 的 KEY
+            // load instance config release key from cache, and check if release key
+            // is the same
+            String instanceConfigCacheKey = assembleInstanceConfigKey(instanceId, auditModel.getConfigAppId(),
+                    auditModel.getConfigNamespace());
+            // 获得缓存的 cacheReleaseKey
+            String cacheReleaseKey = instanceConfigReleaseKeyCache.getIfPresent(instanceConfigCacheKey);
+
+            // 若相等，跳过
+            // if release key is the same, then skip audit
+            if (cacheReleaseKey != null && Objects.equals(cacheReleaseKey, auditModel.getReleaseKey())) {
+                continue;
             }
-            // we need to update no matter the release key is the same or not,
-            // to ensure the
-            // last modified time is updated each day
+
+            // 更新对应的 instanceConfigReleaseKeyCache 缓存
+            instanceConfigReleaseKeyCache.put(instanceConfigCacheKey, auditModel.getReleaseKey());
+
+            // if release key is not the same or cannot find in cache, then do audit
+            InstanceConfig instanceConfig = new InstanceConfig();
+            instanceConfig.setInstanceId(instanceId);
+            instanceConfig.setConfigAppId(auditModel.getConfigAppId());
+            instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
+            instanceConfig.setConfigNamespaceName(auditModel.getConfigNamespace());
+            instanceConfig.setReleaseKey(auditModel.getReleaseKey());
+            instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
+            instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
             instanceConfig.setDataChangeLastModifiedTime(auditModel.getOfferTime());
-            instanceService.updateInstanceConfig(instanceConfig);
-            return;
+            instanceConfigs.add(instanceConfig);
         }
 
-        // 若 InstanceConfig 不存在，创建 InstanceConfig 对象
-        instanceConfig = new InstanceConfig();
-        instanceConfig.setInstanceId(instanceId);
-        instanceConfig.setConfigAppId(auditModel.getConfigAppId());
-        instanceConfig.setConfigClusterName(auditModel.getConfigClusterName());
-        instanceConfig.setConfigNamespaceName(auditModel.getConfigNamespace());
-        instanceConfig.setReleaseKey(auditModel.getReleaseKey());
-        instanceConfig.setReleaseDeliveryTime(auditModel.getOfferTime());
-        instanceConfig.setDataChangeCreatedTime(auditModel.getOfferTime());
-
+        if (instanceConfigs.isEmpty()) {
+            return;
+        }
         try {
-            instanceService.createInstanceConfig(instanceConfig);
+            instanceStore.upsertInstanceConfigs(instanceConfigs, OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI);
         } catch (DataIntegrityViolationException ex) {
-            // concurrent insertion, safe to ignore
+            // concurrent insertion by other config services, the existed records will be updated this time
+            instanceStore.upsertInstanceConfigs(instanceConfigs, OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI);
         }
     }
 
-    private boolean offerTimeAndLastModifiedTimeCloseEnough(Date offerTime, Date lastModifiedTime) {
-        return (offerTime.getTime() - lastModifiedTime.getTime()) < OFFER_TIME_LAST_MODIFIED_TIME_THRESHOLD_IN_MILLI;
-    }
-
     /**
-     * 从 DB 加载或者创建，并添加到缓存
+     * 从缓存获取 Instance 编号，缓存中没有的从 DB 批量加载或者创建，并添加到缓存
      * 
-     * @param auditModel
-     * @return long
+     * @param auditModels
+     * @return KEY：{@link #assembleInstanceKey(String, String, String, String)} VALUE：{@link Instance#id}
      * @date: 2020年4月21日 上午11:29:45
      */
-    private long prepareInstanceId(InstanceConfigAuditModel auditModel) {
-        Instance instance = instanceService.findInstance(auditModel.getAppId(), auditModel.getClusterName(),
-                auditModel.getDataCenter(), auditModel.getIp());
-        if (instance != null) {
-            return instance.getId();
-        }
-        instance = new Instance();
-        instance.setAppId(auditModel.getAppId());
-        instance.setClusterName(auditModel.getClusterName());
-        instance.setDataCenter(auditModel.getDataCenter());
-        instance.setIp(auditModel.getIp());
+    private Map<String, Long> prepareInstanceIds(Collection<InstanceConfigAuditModel> auditModels) {
+        Map<String, Long> instanceIds = Maps.newHashMapWithExpectedSize(auditModels.size());
+        Map<String, Instance> missingInstances = Maps.newHashMap();
+        for (InstanceConfigAuditModel auditModel : auditModels) {
+            // 拼接 instanceCache 的 KEY
+            String instanceCacheKey = assembleInstanceKey(auditModel.getAppId(), auditModel.getClusterName(),
+                    auditModel.getIp(), auditModel.getDataCenter());
+            if (instanceIds.containsKey(instanceCacheKey) || missingInstances.containsKey(instanceCacheKey)) {
+                continue;
+            }
+            Long instanceId = instanceCache.getIfPresent(instanceCacheKey);
+            if (instanceId != null) {
+                instanceIds.put(instanceCacheKey, instanceId);
+                continue;
+            }
+            Instance instance = new Instance();
+            instance.setAppId(auditModel.getAppId());
+            instance.setClusterName(auditModel.getClusterName());
+            instance.setDataCenter(auditModel.getDataCenter());
+            instance.setIp(auditModel.getIp());
+            missingInstances.put(instanceCacheKey, instance);
+        }
+
+        if (missingInstances.isEmpty()) {
+            return instanceIds;
+        }
 
         try {
-            return instanceService.createInstance(instance).getId();
+            instanceStore.findOrCreateInstances(missingInstances.values());
         } catch (DataIntegrityViolationException ex) {
-            // return the one exists
-            return instanceService.findInstance(instance.getAppId(), instance.getClusterName(),
-                    instance.getDataCenter(), instance.getIp()).getId();
+            // concurrent insertion by other config services, load the ones exist this time
+            instanceStore.findOrCreateInstances(missingInstances.values());
         }
+        for (Map.Entry<String, Instance> entry : missingInstances.entrySet()) {
+            long instanceId = entry.getValue().getId();
+            instanceIds.put(entry.getKey(), instanceId);
+            instanceCache.put(entry.getKey(), instanceId);
+        }
+        return instanceIds;
     }
 
     // spring调用, 初始化任务
     @Override
     public void afterPropertiesSet() throws Exception {
-        auditExecutorService.submit(() -> {
-            while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
-                try {
-                    // 获得队首 InstanceConfigAuditModel 元素，非阻塞
-                    InstanceConfigAuditModel model = audits.poll();
-                    // 若获取不到，sleep 等待 1 秒
-                    if (model == null) {
-                        TimeUnit.SECONDS.sleep(1);
-                        continue;
-                    }
-                    // 若获取到，记录 Instance 和 InstanceConfig
-                    doAudit(model);
-                } catch (Throwable ex) {
-                    Tracer.logError(ex);
+        int threads = bizConfig.instanceConfigAuditThreads();
+        auditExecutorService = Executors.newFixedThreadPool(threads + 1,
+                ApolloThreadFactory.create("InstanceConfigAuditUtil", true));
+        auditExecutorService.submit(this::dispatchLoop);
+        for (int i = 0; i < threads; i++) {
+            auditExecutorService.submit(this::flushAudits);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        auditStopped.set(true);
+        if (auditExecutorService != null) {
+            auditExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * 分发线程：环形队列为空时挂起，直到请求线程写入新的记录后唤醒
+     */
+    private void dispatchLoop() {
+        dispatcher = Thread.currentThread();
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+            try {
+                if (dispatchAudits() == 0) {
+                    parkDispatcher();
+                }
+            } catch (Throwable ex) {
+                logger.error("Dispatch instance config audits failed", ex);
+                Tracer.logError(ex);
+            }
+        }
+    }
+
+    /**
+     * 先标记挂起再检查环形队列，与 {@link #wakeUpDispatcher()} 的先写入再检查标记配合，不会错过新写入的记录
+     */
+    private void parkDispatcher() {
+        dispatcherParked.set(true);
+        if (ringBuffer.size() == 0) {
+            LockSupport.park(this);
+        }
+        dispatcherParked.set(false);
+    }
+
+    /**
+     * 分发线程挂起时唤醒，分发线程忙碌时只有一次 volatile 读
+     */
+    private void wakeUpDispatcher() {
+        if (dispatcherParked.get() && dispatcherParked.compareAndSet(true, false)) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * 写入线程：攒够一批或者等待超时后写入
+     */
+    private void flushAudits() {
+        List<String> batchKeys = Lists.newArrayList();
+        List<InstanceConfigAuditModel> batch = Lists.newArrayList();
+        while (!auditStopped.get() && !Thread.currentThread().isInterrupted()) {
+            try {
+                Queues.drain(auditKeys, batchKeys, bizConfig.instanceConfigAuditBatch(),
+                        bizConfig.instanceConfigAuditFlushIntervalInMilli(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (batchKeys.isEmpty()) {
+                continue;
+            }
+            for (String auditKey : batchKeys) {
+                InstanceConfigAuditModel auditModel = audits.remove(auditKey);
+                if (auditModel != null) {
+                    batch.add(auditModel);
                 }
             }
-        });
+            batchKeys.clear();
+            if (batch.isEmpty()) {
+                continue;
+            }
+
+            batchSizeSummary.record(batch.size());
+            long start = System.nanoTime();
+            try {
+                doAudit(batch);
+            } catch (Throwable ex) {
+                logger.error("Audit {} instance configs failed", batch.size(), ex);
+                Tracer.logError(ex);
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 待写入记录的 KEY ，同一个 Instance 的同一个 Namespace 只保留一条
+     */
+    private String assembleAuditKey(InstanceConfigAuditModel auditModel) {
+        return STRING_JOINER.join(auditModel.getAppId(), auditModel.getClusterName(), auditModel.getIp(),
+                auditModel.getDataCenter(), auditModel.getConfigAppId(), auditModel.getConfigNamespace());
     }
 
     private String assembleInstanceKey(String appId, String cluster, String ip, String datacenter) {
@@ -255,6 +457,53 @@ public class InstanceConfigAuditUtil implements InitializingBean {
         return STRING_JOINER.join(instanceId, configAppId, configNamespace);
     }
 
+    /**
+     * 请求线程最近记录过的 (appId, ip, namespace, releaseKey) ，按哈希值直接定位槽位，冲突时覆盖
+     */
+    private static final class RecentAudits {
+        private final String[] appIds = new String[RECENT_AUDIT_CACHE_SIZE];
+        private final String[] ips = new String[RECENT_AUDIT_CACHE_SIZE];
+        private final String[] namespaces = new String[RECENT_AUDIT_CACHE_SIZE];
+        private final String[] releaseKeys = new String[RECENT_AUDIT_CACHE_SIZE];
+        private final long[] expireTimes = new long[RECENT_AUDIT_CACHE_SIZE];
+
+        /**
+         * 是否在时间窗口内记录过，没有记录过的同时记录下来
+         */
+        boolean isRecent(String appId, String ip, String namespace, String releaseKey, long now) {
+            int index = indexOf(appId, ip, namespace, releaseKey);
+            if (expireTimes[index] > now && matches(index, appId, ip, namespace, releaseKey)) {
+                return true;
+            }
+            appIds[index] = appId;
+            ips[index] = ip;
+            namespaces[index] = namespace;
+            releaseKeys[index] = releaseKey;
+            expireTimes[index] = now + RECENT_AUDIT_WINDOW_IN_MILLI;
+            return false;
+        }
+
+        void forget(String appId, String ip, String namespace, String releaseKey) {
+            int index = indexOf(appId, ip, namespace, releaseKey);
+            if (matches(index, appId, ip, namespace, releaseKey)) {
+                expireTimes[index] = 0;
+            }
+        }
+
+        private boolean matches(int index, String appId, String ip, String namespace, String releaseKey) {
+            return Objects.equals(releaseKeys[index], releaseKey) && Objects.equals(ips[index], ip)
+                    && Objects.equals(namespaces[index], namespace) && Objects.equals(appIds[index], appId);
+        }
+
+        private int indexOf(String appId, String ip, String namespace, String releaseKey) {
+            int hash = Objects.hashCode(releaseKey);
+            hash = 31 * hash + Objects.hashCode(ip);
+            hash = 31 * hash + Objects.hashCode(namespace);
+            hash = 31 * hash + Objects.hashCode(appId);
+            return (hash ^ (hash >>> 16)) & (RECENT_AUDIT_CACHE_SIZE - 1);
+        }
+    }
+
     public static class InstanceConfigAuditModel {
         private String appId;
         private String clusterName;
@@ -269,7 +518,14 @@ public class InstanceConfigAuditUtil implements InitializingBean {
         public InstanceConfigAuditModel(String appId, String clusterName, String dataCenter, String clientIp,
                 String configAppId, String configClusterName, String configNamespace, String releaseKey) {
             // offerTime 属性，入队时间，取得当前时间，避免异步处理的时间差。
-            this.offerTime = new Date();
+            this(appId, clusterName, dataCenter, clientIp, configAppId, configClusterName, configNamespace,
+                    releaseKey, new Date());
+        }
+
+        InstanceConfigAuditModel(String appId, String clusterName, String dataCenter, String clientIp,
+                String configAppId, String configClusterName, String configNamespace, String releaseKey,
+                Date offerTime) {
+            this.offerTime = offerTime;
             this.appId = appId;
             this.clusterName = clusterName;
             this.dataCenter = Strings.isNullOrEmpty(dataCenter) ? "" : dataCenter;
@@ -0,0 +1,245 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.stereotype.Component;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.collect.Queues;
+import com.google.common.util.concurrent.RateLimiter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * 大量客户端通知的调度器，替代单线程按批次 sleep 的通知方式。<br>
+ * 1, 所有正在通知的 Watch Key 共享一个每秒通知数量的上限("apollo.release-message.notification.rate")，
+ * 避免大量客户端同时来拉取配置。<br>
+ * 2, 每个 Watch Key 的通知为一个任务，每次通知一个批次("apollo.release-message.notification.batch")后放回队尾，
+ * 多个同时发布的 Watch Key 轮流通知，后发布的不需要等待前面的全部通知完。<br>
+ * 3, 多个线程并行通知("apollo.release-message.notification.threads")。<br>
+ * 4, 指标: 队列中的任务数 apollo.notification.fanout.queue.depth，待通知的客户端数
+ * apollo.notification.fanout.pending，Watch Key 从收到消息到通知完成的耗时 apollo.notification.fanout.lag
+ * (不按 Watch Key 区分，避免指标数量随 Namespace 增长，单个 Watch Key 的耗时见 {@link #lagInMillis(int)} 和日志)。
+ */
+@Component
+public class NotificationFanOutScheduler implements InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationFanOutScheduler.class);
+    private static final String QUEUE_DEPTH_METRIC = "apollo.notification.fanout.queue.depth";
+    private static final String PENDING_METRIC = "apollo.notification.fanout.pending";
+    private static final String LAG_METRIC = "apollo.notification.fanout.lag";
+
+    private final BizConfig bizConfig;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * 待通知的任务队列，轮流处理
+     */
+    private final BlockingQueue<FanOut<?>> fanOuts = Queues.newLinkedBlockingQueue();
+
+    /**
+     * 未完成的任务，用于计算每个 Watch Key 的通知延迟
+     */
+    private final Set<FanOut<?>> inflightFanOuts = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 待通知的客户端数量
+     */
+    private final AtomicLong pendingNotifications = new AtomicLong();
+
+    private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+    private ExecutorService fanOutExecutorService;
+
+    private volatile RateLimiter rateLimiter;
+
+    private Timer lagTimer;
+
+    public NotificationFanOutScheduler(final BizConfig bizConfig, final MeterRegistry meterRegistry) {
+        this.bizConfig = bizConfig;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        // registered before the workers start, so that they always see it
+        lagTimer = Timer.builder(LAG_METRIC).register(meterRegistry);
+        int threads = bizConfig.releaseMessageNotificationThreads();
+        fanOutExecutorService = Executors.newFixedThreadPool(threads,
+                ApolloThreadFactory.create("NotificationFanOutScheduler", true));
+        for (int i = 0; i < threads; i++) {
+            fanOutExecutorService.submit(this::fanOut);
+        }
+
+        Gauge.builder(QUEUE_DEPTH_METRIC, this, NotificationFanOutScheduler::queueDepth).register(meterRegistry);
+        Gauge.builder(PENDING_METRIC, this, NotificationFanOutScheduler::pendingNotifications)
+                .register(meterRegistry);
+    }
+
+    /**
+     * 提交一个 Watch Key 的通知任务
+     *
+     * @param watchKeyId      Watch Key 编号
+     * @param watchKey        Watch Key，用于日志和指标
+     * @param subscriberCount 预计通知的客户端数量
+     * @param subscribers     待通知的客户端，遍历期间允许并发修改
+     * @param action          通知动作
+     */
+    public <T> void submit(int watchKeyId, String watchKey, int subscriberCount, Iterable<T> subscribers,
+            Consumer<? super T> action) {
+        FanOut<T> fanOut = new FanOut<>(watchKeyId, watchKey, subscriberCount, subscribers.iterator(), action);
+        pendingNotifications.addAndGet(subscriberCount);
+        inflightFanOuts.add(fanOut);
+        fanOuts.offer(fanOut);
+    }
+
+    /**
+     * 队列中的任务数
+     */
+    public int queueDepth() {
+        return inflightFanOuts.size();
+    }
+
+    /**
+     * 待通知的客户端数(预计)
+     */
+    public long pendingNotifications() {
+        return pendingNotifications.get();
+    }
+
+    /**
+     * Watch Key 最早未完成的通知任务已等待的时间，没有未完成的任务时返回 0
+     */
+    public long lagInMillis(int watchKeyId) {
+        long now = System.nanoTime();
+        long lag = 0;
+        for (FanOut<?> fanOut : inflightFanOuts) {
+            if (fanOut.watchKeyId == watchKeyId) {
+                lag = Math.max(lag, now - fanOut.submittedAt);
+            }
+        }
+        return TimeUnit.NANOSECONDS.toMillis(lag);
+    }
+
+    private void fanOut() {
+        while (!stopped.get() && !Thread.currentThread().isInterrupted()) {
+            FanOut<?> fanOut;
+            try {
+                fanOut = fanOuts.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                return;
+            }
+            if (fanOut == null) {
+                continue;
+            }
+            try {
+                if (fanOut.notifyBatch(bizConfig.releaseMessageNotificationBatch())) {
+                    // put back to the tail, so that the concurrent releases are notified in turn
+                    fanOuts.offer(fanOut);
+                    continue;
+                }
+            } catch (Throwable ex) {
+                logger.error("Notify clients for key {} failed", fanOut.watchKey, ex);
+                Tracer.logError(ex);
+            }
+            complete(fanOut);
+        }
+    }
+
+    private void complete(FanOut<?> fanOut) {
+        inflightFanOuts.remove(fanOut);
+        // the subscribers may be less than expected since some of them are completed during notification
+        pendingNotifications.addAndGet(-fanOut.remaining);
+        long lag = System.nanoTime() - fanOut.submittedAt;
+        lagTimer.record(lag, TimeUnit.NANOSECONDS);
+        logger.debug("Notified {} clients for key {} in {} ms", fanOut.notified, fanOut.watchKey,
+                TimeUnit.NANOSECONDS.toMillis(lag));
+    }
+
+    private RateLimiter rateLimiter() {
+        int rate = bizConfig.releaseMessageNotificationRate();
+        RateLimiter current = rateLimiter;
+        if (current == null) {
+            synchronized (this) {
+                if (rateLimiter == null) {
+                    rateLimiter = RateLimiter.create(rate);
+                }
+                current = rateLimiter;
+            }
+        }
+        if (current.getRate() != rate) {
+            current.setRate(rate);
+        }
+        return current;
+    }
+
+    @Override
+    public void destroy() {
+        stopped.set(true);
+        if (fanOutExecutorService != null) {
+            fanOutExecutorService.shutdownNow();
+        }
+    }
+
+    /**
+     * 一个 Watch Key 的通知任务，同一时间只会被一个线程处理
+     */
+    private final class FanOut<T> {
+        private final int watchKeyId;
+        private final String watchKey;
+        private final Iterator<T> subscribers;
+        private final Consumer<? super T> action;
+        private final long submittedAt = System.nanoTime();
+        private long remaining;
+        private long notified;
+
+        private FanOut(int watchKeyId, String watchKey, int subscriberCount, Iterator<T> subscribers,
+                Consumer<? super T> action) {
+            this.watchKeyId = watchKeyId;
+            this.watchKey = watchKey;
+            this.remaining = subscriberCount;
+            this.subscribers = subscribers;
+            this.action = action;
+        }
+
+        /**
+         * 通知一个批次
+         *
+         * @return 是否还有未通知的客户端
+         */
+        private boolean notifyBatch(int batch) {
+            RateLimiter limiter = rateLimiter();
+            for (int i = 0; i < batch && subscribers.hasNext(); i++) {
+                limiter.acquire();
+                T subscriber = subscribers.next();
+                try {
+                    action.accept(subscriber);
+                } catch (Throwable ex) {
+                    logger.error("Notify {} for key {} failed", subscriber, watchKey, ex);
+                }
+                notified++;
+                if (remaining > 0) {
+                    remaining--;
+                    pendingNotifications.decrementAndGet();
+                }
+            }
+            return subscribers.hasNext();
+        }
+    }
+}
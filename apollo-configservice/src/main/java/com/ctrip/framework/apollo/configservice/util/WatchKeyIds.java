@@ -0,0 +1,97 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
+
+/**
+ * 需要监听的 Watch Key。<br>
+ * 1, 已有 ReleaseMessage 的 Watch Key 使用 {@link WatchKeyDictionary} 分配的编号表示。<br>
+ * 2, 还没有 ReleaseMessage 的 Watch Key 使用字符串表示，不分配编号。字典的编号分配后不回收，
+ * 若为客户端传入的任意 Namespace 分配编号，字典会无限增长；这些 Watch Key 在收到第一条 ReleaseMessage 时才分配编号。
+ */
+public final class WatchKeyIds {
+	public static final WatchKeyIds EMPTY = new WatchKeyIds(new int[0], new String[0]);
+
+	private final int[] ids;
+	private final String[] unknownWatchKeys;
+
+	public WatchKeyIds(int[] ids, String[] unknownWatchKeys) {
+		this.ids = ids;
+		this.unknownWatchKeys = unknownWatchKeys;
+	}
+
+	/**
+	 * 已分配的 Watch Key 编号
+	 */
+	public int[] getIds() {
+		return ids;
+	}
+
+	/**
+	 * 未分配编号的 Watch Key(appId+cluster+namespace)
+	 */
+	public String[] getUnknownWatchKeys() {
+		return unknownWatchKeys;
+	}
+
+	public int size() {
+		return ids.length + unknownWatchKeys.length;
+	}
+
+	public boolean isEmpty() {
+		return ids.length == 0 && unknownWatchKeys.length == 0;
+	}
+
+	public WatchKeyIds concat(WatchKeyIds other) {
+		if (other.isEmpty()) {
+			return this;
+		}
+		if (isEmpty()) {
+			return other;
+		}
+		return new WatchKeyIds(concat(ids, other.ids), concat(unknownWatchKeys, other.unknownWatchKeys));
+	}
+
+	/**
+	 * 合并多个 Namespace 的 Watch Key
+	 */
+	public static WatchKeyIds flatten(Collection<WatchKeyIds> watchKeyIds) {
+		int idCount = 0;
+		int unknownCount = 0;
+		for (WatchKeyIds keys : watchKeyIds) {
+			idCount += keys.ids.length;
+			unknownCount += keys.unknownWatchKeys.length;
+		}
+		int[] ids = new int[idCount];
+		String[] unknownWatchKeys = new String[unknownCount];
+		int idOffset = 0;
+		int unknownOffset = 0;
+		for (WatchKeyIds keys : watchKeyIds) {
+			System.arraycopy(keys.ids, 0, ids, idOffset, keys.ids.length);
+			idOffset += keys.ids.length;
+			System.arraycopy(keys.unknownWatchKeys, 0, unknownWatchKeys, unknownOffset, keys.unknownWatchKeys.length);
+			unknownOffset += keys.unknownWatchKeys.length;
+		}
+		return new WatchKeyIds(ids, unknownWatchKeys);
+	}
+
+	private static int[] concat(int[] first, int[] second) {
+		int[] result = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	private static String[] concat(String[] first, String[] second) {
+		String[] result = Arrays.copyOf(first, first.length + second.length);
+		System.arraycopy(second, 0, result, first.length, second.length);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "WatchKeyIds{ids=" + Arrays.toString(ids) + ", unknownWatchKeys=" + Arrays.toString(unknownWatchKeys)
+				+ '}';
+	}
+}
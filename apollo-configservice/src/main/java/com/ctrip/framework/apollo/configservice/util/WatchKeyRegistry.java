@@ -0,0 +1,305 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
+import com.google.common.collect.Iterables;
+
+/**
+ * Watch Key 与订阅者(长轮询请求)的注册表，用于替代 synchronized Multimap。<br>
+ * 1, Watch Key 使用 {@link WatchKeyDictionary} 分配的编号，按编号直接定位订阅者 Set，无需哈希字符串。<br>
+ * 2, 每个 Watch Key 对应一个并发 Map，注册/注销无全局锁，不同 Key 之间互不竞争；注销为 O(1)。
+ * 订阅者 Map 创建后不会移除，数量与 Watch Key 编号数量相当。<br>
+ * 3, 每次注册记录一个递增的注册序号。通知时先取 {@link #sequence()} 作为快照点，
+ * {@link #forEach(int, long, Consumer)} 直接遍历订阅者 Map（弱一致性）并跳过快照点之后注册的订阅者，
+ * 通知时无需复制列表，已收到通知后重新注册的客户端也不会被重复通知。<br>
+ * 4, 还没有分配编号的 Watch Key(见 {@link WatchKeyIds}) 按忽略大小写的字符串注册，没有订阅者时移除，
+ * 数量与正在等待的订阅者相当；收到 ReleaseMessage 时与编号一起通知。
+ *
+ * @param <T> 订阅者类型，依赖其 equals/hashCode 去重
+ */
+public class WatchKeyRegistry<T> {
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * 下标: Watch Key 编号 VALUE: 订阅者与其注册序号
+	 */
+	private volatile AtomicReferenceArray<ConcurrentMap<T, Long>> subscribers =
+			new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+	/**
+	 * 未分配编号的 Watch Key 与订阅者，KEY 为小写的 Watch Key
+	 */
+	private final ConcurrentMap<String, ConcurrentMap<T, Long>> unknownKeySubscribers = new ConcurrentHashMap<>();
+
+	/**
+	 * 最后分配的注册序号
+	 */
+	private final AtomicLong registrationSequence = new AtomicLong();
+
+	/**
+	 * 注册总数 (Watch Key, 订阅者) 对的数量
+	 */
+	private final LongAdder size = new LongAdder();
+
+	/**
+	 * 注册订阅者
+	 *
+	 * @return 是否新增注册
+	 */
+	public boolean register(int watchKeyId, T subscriber) {
+		long sequence = registrationSequence.incrementAndGet();
+		boolean added = subscribersOf(watchKeyId).putIfAbsent(subscriber, sequence) == null;
+		if (added) {
+			size.increment();
+		}
+		return added;
+	}
+
+	/**
+	 * 注销订阅者
+	 *
+	 * @return 是否移除成功
+	 */
+	public boolean unregister(int watchKeyId, T subscriber) {
+		Map<T, Long> map = find(watchKeyId);
+		boolean removed = map != null && map.remove(subscriber) != null;
+		if (removed) {
+			size.decrement();
+		}
+		return removed;
+	}
+
+	/**
+	 * 注册未分配编号的 Watch Key 的订阅者
+	 *
+	 * @return 是否新增注册
+	 */
+	public boolean register(String watchKey, T subscriber) {
+		long sequence = registrationSequence.incrementAndGet();
+		boolean[] added = new boolean[1];
+		unknownKeySubscribers.compute(normalize(watchKey), (key, map) -> {
+			if (map == null) {
+				map = new ConcurrentHashMap<>();
+			}
+			added[0] = map.putIfAbsent(subscriber, sequence) == null;
+			return map;
+		});
+		if (added[0]) {
+			size.increment();
+		}
+		return added[0];
+	}
+
+	/**
+	 * 注销未分配编号的 Watch Key 的订阅者，没有订阅者时移除该 Watch Key
+	 *
+	 * @return 是否移除成功
+	 */
+	public boolean unregister(String watchKey, T subscriber) {
+		boolean[] removed = new boolean[1];
+		unknownKeySubscribers.computeIfPresent(normalize(watchKey), (key, map) -> {
+			removed[0] = map.remove(subscriber) != null;
+			return map.isEmpty() ? null : map;
+		});
+		if (removed[0]) {
+			size.decrement();
+		}
+		return removed[0];
+	}
+
+	/**
+	 * 注册订阅者监听的所有 Watch Key
+	 */
+	public void register(WatchKeyIds watchKeyIds, T subscriber) {
+		for (int watchKeyId : watchKeyIds.getIds()) {
+			register(watchKeyId, subscriber);
+		}
+		for (String watchKey : watchKeyIds.getUnknownWatchKeys()) {
+			register(watchKey, subscriber);
+		}
+	}
+
+	/**
+	 * 注销订阅者监听的所有 Watch Key
+	 */
+	public void unregister(WatchKeyIds watchKeyIds, T subscriber) {
+		for (int watchKeyId : watchKeyIds.getIds()) {
+			unregister(watchKeyId, subscriber);
+		}
+		for (String watchKey : watchKeyIds.getUnknownWatchKeys()) {
+			unregister(watchKey, subscriber);
+		}
+	}
+
+	public boolean contains(int watchKeyId) {
+		return subscriberCount(watchKeyId) > 0;
+	}
+
+	/**
+	 * Watch Key 对应的订阅者数量
+	 */
+	public int subscriberCount(int watchKeyId) {
+		Map<T, Long> map = find(watchKeyId);
+		return map == null ? 0 : map.size();
+	}
+
+	/**
+	 * 按字符串注册的 Watch Key 对应的订阅者数量
+	 */
+	public int subscriberCount(String watchKey) {
+		Map<T, Long> map = findUnknown(watchKey);
+		return map == null ? 0 : map.size();
+	}
+
+	/**
+	 * 当前的注册序号，通知时作为快照点，之后注册的订阅者序号都大于它
+	 */
+	public long sequence() {
+		return registrationSequence.get();
+	}
+
+	/**
+	 * 遍历 Watch Key 的所有订阅者，遍历期间允许并发注册/注销
+	 *
+	 * @return 遍历到的订阅者数量
+	 */
+	public int forEach(int watchKeyId, Consumer<? super T> action) {
+		return forEach(watchKeyId, Long.MAX_VALUE, action);
+	}
+
+	/**
+	 * 遍历 Watch Key 在快照点(含)之前注册的订阅者，遍历期间允许并发注册/注销
+	 *
+	 * @param sequence {@link #sequence()} 返回的快照点
+	 * @return 遍历到的订阅者数量
+	 */
+	public int forEach(int watchKeyId, long sequence, Consumer<? super T> action) {
+		return forEach(find(watchKeyId), sequence, action);
+	}
+
+	/**
+	 * 遍历按字符串注册的 Watch Key 在快照点(含)之前注册的订阅者
+	 *
+	 * @param sequence {@link #sequence()} 返回的快照点
+	 * @return 遍历到的订阅者数量
+	 */
+	public int forEach(String watchKey, long sequence, Consumer<? super T> action) {
+		return forEach(findUnknown(watchKey), sequence, action);
+	}
+
+	private static <T> int forEach(Map<T, Long> map, long sequence, Consumer<? super T> action) {
+		if (map == null) {
+			return 0;
+		}
+		int count = 0;
+		for (Map.Entry<T, Long> entry : map.entrySet()) {
+			if (entry.getValue() <= sequence) {
+				action.accept(entry.getKey());
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Watch Key 在快照点(含)之前注册的订阅者，惰性遍历，遍历期间允许并发注册/注销
+	 *
+	 * @param sequence {@link #sequence()} 返回的快照点
+	 */
+	public Iterable<T> registeredBefore(int watchKeyId, long sequence) {
+		return registeredBefore(find(watchKeyId), sequence);
+	}
+
+	/**
+	 * 按字符串注册的 Watch Key 在快照点(含)之前注册的订阅者，惰性遍历
+	 *
+	 * @param sequence {@link #sequence()} 返回的快照点
+	 */
+	public Iterable<T> registeredBefore(String watchKey, long sequence) {
+		return registeredBefore(findUnknown(watchKey), sequence);
+	}
+
+	private static <T> Iterable<T> registeredBefore(Map<T, Long> map, long sequence) {
+		if (map == null) {
+			return Collections.emptySet();
+		}
+		return Iterables.transform(Iterables.filter(map.entrySet(), entry -> entry.getValue() <= sequence),
+				Map.Entry::getKey);
+	}
+
+	/**
+	 * Watch Key 对应订阅者的只读视图
+	 */
+	public Collection<T> get(int watchKeyId) {
+		Map<T, Long> map = find(watchKeyId);
+		return map == null ? Collections.emptySet() : Collections.unmodifiableSet(map.keySet());
+	}
+
+	/**
+	 * 注册的 (Watch Key, 订阅者) 对的总数
+	 */
+	public int size() {
+		return size.intValue();
+	}
+
+	private ConcurrentMap<T, Long> findUnknown(String watchKey) {
+		// most of the watch keys are allocated, avoid normalizing the key in that case
+		return unknownKeySubscribers.isEmpty() ? null : unknownKeySubscribers.get(normalize(watchKey));
+	}
+
+	private static String normalize(String watchKey) {
+		return watchKey.toLowerCase(Locale.ROOT);
+	}
+
+	private ConcurrentMap<T, Long> find(int watchKeyId) {
+		AtomicReferenceArray<ConcurrentMap<T, Long>> current = subscribers;
+		return watchKeyId < current.length() ? current.get(watchKeyId) : null;
+	}
+
+	private ConcurrentMap<T, Long> subscribersOf(int watchKeyId) {
+		AtomicReferenceArray<ConcurrentMap<T, Long>> current = subscribers;
+		while (watchKeyId >= current.length()) {
+			grow(watchKeyId);
+			current = subscribers;
+		}
+		return ensureMap(current, watchKeyId);
+	}
+
+	private static <T> ConcurrentMap<T, Long> ensureMap(AtomicReferenceArray<ConcurrentMap<T, Long>> array,
+			int index) {
+		ConcurrentMap<T, Long> map = array.get(index);
+		if (map == null) {
+			array.compareAndSet(index, null, new ConcurrentHashMap<>());
+			map = array.get(index);
+		}
+		return map;
+	}
+
+	private synchronized void grow(int watchKeyId) {
+		AtomicReferenceArray<ConcurrentMap<T, Long>> current = subscribers;
+		if (watchKeyId < current.length()) {
+			return;
+		}
+		int capacity = current.length();
+		while (capacity <= watchKeyId) {
+			capacity <<= 1;
+		}
+		AtomicReferenceArray<ConcurrentMap<T, Long>> grown = new AtomicReferenceArray<>(capacity);
+		for (int i = 0; i < current.length(); i++) {
+			// fill the empty slots of the old array as well, so that a map created concurrently in the old array
+			// is always carried over
+			grown.set(i, ensureMap(current, i));
+		}
+		subscribers = grown;
+	}
+}
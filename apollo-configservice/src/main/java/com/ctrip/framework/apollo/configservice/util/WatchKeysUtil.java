@@ -1,17 +1,21 @@
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -27,10 +31,14 @@ public class WatchKeysUtil {
 	 * "+" 拼接器
 	 */
 	private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+	private static final String[] EMPTY_WATCH_KEYS = new String[0];
 	private final AppNamespaceServiceWithCache appNamespaceService;
+	private final WatchKeyDictionary watchKeyDictionary;
 
-	public WatchKeysUtil(final AppNamespaceServiceWithCache appNamespaceService) {
+	public WatchKeysUtil(final AppNamespaceServiceWithCache appNamespaceService,
+			final WatchKeyDictionary watchKeyDictionary) {
 		this.appNamespaceService = appNamespaceService;
+		this.watchKeyDictionary = watchKeyDictionary;
 	}
 
 	/**
@@ -88,6 +96,46 @@ public class WatchKeysUtil {
 		return watchedKeysMap;
 	}
 
+	/**
+	 * 组装所有的 Watch Key 编号。<br>
+	 * 与 {@link #assembleAllWatchKeys(String, String, Set, String)} 规则相同，但 Watch Key 使用
+	 * WatchKeyDictionary 分配的编号表示，不拼接字符串。<br>
+	 * 只查询编号，不分配编号：Watch Key 来自客户端传入的参数，还没有 ReleaseMessage 的 Watch Key 使用字符串表示，
+	 * 避免任意的 Namespace 使 WatchKeyDictionary 无限增长。
+	 * @param appId App 编号
+	 * @param clusterName Cluster 名
+	 * @param namespaces Namespace 的名字的数组
+	 * @param dataCenter IDC 的 Cluster 名
+	 * @return Key 为 Namespace 的名字，Value 为 Watch Key
+	 */
+	public Map<String, WatchKeyIds> assembleAllWatchKeyIds(String appId, String clusterName, Set<String> namespaces,
+			String dataCenter) {
+		Map<String, WatchKeyIds> watchedKeyIdsMap = Maps.newHashMapWithExpectedSize(namespaces.size());
+		for (String namespace : namespaces) {
+			watchedKeyIdsMap.put(namespace, assembleWatchKeyIds(appId, clusterName, namespace, dataCenter));
+		}
+
+		// Every app has an 'application' namespace
+		if (!(namespaces.size() == 1 && namespaces.contains(ConfigConsts.NAMESPACE_APPLICATION))) {
+			Set<String> namespacesBelongToAppId = namespacesBelongToAppId(appId, namespaces);
+			Set<String> publicNamespaces = Sets.difference(namespaces, namespacesBelongToAppId);
+
+			// Listen on more namespaces if it's a public namespace
+			if (!publicNamespaces.isEmpty()) {
+				for (AppNamespace appNamespace : appNamespaceService.findPublicNamespacesByNames(publicNamespaces)) {
+					// check whether the namespace's appId equals to current one
+					if (Objects.equals(appId, appNamespace.getAppId())) {
+						continue;
+					}
+					watchedKeyIdsMap.merge(appNamespace.getName(), assembleWatchKeyIds(appNamespace.getAppId(),
+							clusterName, appNamespace.getName(), dataCenter), WatchKeyIds::concat);
+				}
+			}
+		}
+
+		return watchedKeyIdsMap;
+	}
+
 	/**
 	 * 获得 Namespace 类型为 public 对应的 Watch Key Multimap
 	 *
@@ -171,6 +219,69 @@ public class WatchKeysUtil {
 		return watchedKeys;
 	}
 
+	/**
+	 * 组装指定 Namespace 的 Watch Key，规则同 {@link #assembleWatchKeys(String, String, String, String)}
+	 */
+	private WatchKeyIds assembleWatchKeyIds(String appId, String clusterName, String namespace, String dataCenter) {
+		if (ConfigConsts.NO_APPID_PLACEHOLDER.equalsIgnoreCase(appId)) {
+			return WatchKeyIds.EMPTY;
+		}
+		String[] clusters = new String[3];
+		int clusterCount = 0;
+
+		// watch specified cluster config change
+		if (!Objects.equals(ConfigConsts.CLUSTER_NAME_DEFAULT, clusterName)) {
+			clusters[clusterCount++] = clusterName;
+		}
+
+		// watch data center config change
+		if (!Strings.isNullOrEmpty(dataCenter) && !Objects.equals(dataCenter, clusterName)) {
+			clusters[clusterCount++] = dataCenter;
+		}
+
+		// watch default cluster config change
+		clusters[clusterCount++] = ConfigConsts.CLUSTER_NAME_DEFAULT;
+
+		int[] watchedKeyIds = new int[clusterCount];
+		int size = 0;
+		String[] unknownWatchKeys = EMPTY_WATCH_KEYS;
+		for (int i = 0; i < clusterCount; i++) {
+			int watchKeyId = watchKeyDictionary.find(appId, clusters[i], namespace);
+			if (watchKeyId != WatchKeyDictionary.NOT_FOUND) {
+				size = addWatchKeyId(watchedKeyIds, size, watchKeyId);
+				continue;
+			}
+			// no release message yet, keep the key as string so that the dictionary is not grown by clients
+			String watchKey = assembleKey(appId, clusters[i], namespace);
+			if (!containsIgnoreCase(unknownWatchKeys, watchKey)) {
+				unknownWatchKeys = Arrays.copyOf(unknownWatchKeys, unknownWatchKeys.length + 1);
+				unknownWatchKeys[unknownWatchKeys.length - 1] = watchKey;
+			}
+		}
+
+		return new WatchKeyIds(size == watchedKeyIds.length ? watchedKeyIds : Arrays.copyOf(watchedKeyIds, size),
+				unknownWatchKeys);
+	}
+
+	private static int addWatchKeyId(int[] watchedKeyIds, int size, int watchKeyId) {
+		for (int i = 0; i < size; i++) {
+			if (watchedKeyIds[i] == watchKeyId) {
+				return size;
+			}
+		}
+		watchedKeyIds[size] = watchKeyId;
+		return size + 1;
+	}
+
+	private static boolean containsIgnoreCase(String[] watchKeys, String watchKey) {
+		for (String key : watchKeys) {
+			if (key.equalsIgnoreCase(watchKey)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * 组装 Watch Key Multimap
 	 *
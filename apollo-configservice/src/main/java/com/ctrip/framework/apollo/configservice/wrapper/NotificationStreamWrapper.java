@@ -0,0 +1,217 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+
+/**
+ * SseEmitter 包装器，对应一个客户端的通知推送流(一个连接复用该客户端的所有 Namespace)。<br>
+ * 与 {@link DeferredResultWrapper} 不同，推送流在发送通知后不会结束，直到超时、出错或服务端下发重连间隔后关闭。<br>
+ * 事件先进入有界的待发送队列，再由发送线程池写出，慢客户端不会阻塞扫描和通知线程；待发送事件超过上限或线程池已满时关闭推送流，
+ * 客户端重连后会重新获取最新的通知。
+ */
+public class NotificationStreamWrapper {
+	/**
+	 * 通知事件名，data 为 List&lt;ApolloConfigNotification&gt; 的 JSON
+	 */
+	public static final String NOTIFICATIONS_EVENT = "notifications";
+
+	private static final String HEARTBEAT_COMMENT = "heartbeat";
+
+	/**
+	 * 每个推送流最多待发送的事件数
+	 */
+	static final int MAX_PENDING_EVENTS = 16;
+
+	/**
+	 * 归一化和原始的 Namespace 的名字的 Map，推送给客户端时还原为原始名字
+	 */
+	private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
+
+	private final SseEmitter emitter;
+
+	private final Gson gson;
+
+	private final Executor sendExecutor;
+
+	private final BlockingQueue<SseEmitter.SseEventBuilder> pendingEvents = new LinkedBlockingQueue<>(
+			MAX_PENDING_EVENTS);
+
+	/**
+	 * 是否已经提交了发送任务，保证同一个推送流同时只有一个线程写出
+	 */
+	private final AtomicBoolean draining = new AtomicBoolean(false);
+
+	/**
+	 * 不再接受新的事件，待发送队列写完后结束连接
+	 */
+	private volatile boolean closed;
+
+	/**
+	 * 连接已经结束
+	 */
+	private volatile boolean completed;
+
+	public NotificationStreamWrapper(long timeoutInMilli, Gson gson, Executor sendExecutor) {
+		this.emitter = new SseEmitter(timeoutInMilli);
+		this.gson = gson;
+		this.sendExecutor = sendExecutor;
+	}
+
+	public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
+		if (normalizedNamespaceNameToOriginalNamespaceName == null) {
+			normalizedNamespaceNameToOriginalNamespaceName = Maps.newHashMap();
+		}
+		normalizedNamespaceNameToOriginalNamespaceName.put(normalizedNamespaceName, originalNamespaceName);
+	}
+
+	public void onTimeout(Runnable timeoutCallback) {
+		emitter.onTimeout(timeoutCallback);
+	}
+
+	/**
+	 * 添加连接结束时回调，包括正常关闭、超时和出错
+	 */
+	public void onCompletion(Runnable completionCallback) {
+		emitter.onCompletion(completionCallback);
+	}
+
+	public void send(ApolloConfigNotification notification) {
+		send(Lists.newArrayList(notification));
+	}
+
+	/**
+	 * 推送通知。通知对象可能被多个推送流共享，所以还原 Namespace 名字时复制一份，不修改原对象
+	 */
+	public void send(List<ApolloConfigNotification> notifications) {
+		List<ApolloConfigNotification> toSend = notifications;
+		if (normalizedNamespaceNameToOriginalNamespaceName != null) {
+			toSend = Lists.newArrayListWithCapacity(notifications.size());
+			for (ApolloConfigNotification notification : notifications) {
+				String originalNamespaceName = normalizedNamespaceNameToOriginalNamespaceName
+						.get(notification.getNamespaceName());
+				if (originalNamespaceName == null) {
+					toSend.add(notification);
+					continue;
+				}
+				ApolloConfigNotification restored = new ApolloConfigNotification(originalNamespaceName,
+						notification.getNotificationId());
+				restored.setMessages(notification.getMessages());
+				toSend.add(restored);
+			}
+		}
+		doSend(SseEmitter.event().name(NOTIFICATIONS_EVENT).data(gson.toJson(toSend)));
+	}
+
+	/**
+	 * 发送心跳注释，使代理和客户端的读超时不会在空闲时触发
+	 */
+	public void heartbeat() {
+		doSend(SseEmitter.event().comment(HEARTBEAT_COMMENT));
+	}
+
+	/**
+	 * 下发重连间隔，客户端在连接断开后等待该间隔再重连
+	 */
+	public void retry(long retryInMilli) {
+		doSend(SseEmitter.event().reconnectTime(retryInMilli));
+	}
+
+	/**
+	 * 下发重连间隔并关闭连接
+	 */
+	public void close(long retryInMilli) {
+		retry(retryInMilli);
+		close();
+	}
+
+	/**
+	 * 已经加入队列的事件写完后结束连接
+	 */
+	public void close() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		scheduleDrain();
+	}
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	public SseEmitter getEmitter() {
+		return emitter;
+	}
+
+	private void doSend(SseEmitter.SseEventBuilder event) {
+		if (closed) {
+			return;
+		}
+		if (!pendingEvents.offer(event)) {
+			// the client could not keep up, drop the pending events and let it reconnect
+			closed = true;
+			pendingEvents.clear();
+		}
+		scheduleDrain();
+	}
+
+	private void scheduleDrain() {
+		if (!draining.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			sendExecutor.execute(this::drain);
+		} catch (RejectedExecutionException ex) {
+			// no sender available, nothing is being written to the emitter now, so complete it right here
+			closed = true;
+			pendingEvents.clear();
+			completed = true;
+			draining.set(false);
+			emitter.complete();
+		}
+	}
+
+	/**
+	 * 在发送线程中写出待发送的事件，关闭后结束连接
+	 */
+	private void drain() {
+		try {
+			SseEmitter.SseEventBuilder event;
+			while (!completed && (event = pendingEvents.poll()) != null) {
+				try {
+					emitter.send(event);
+				} catch (IOException | IllegalStateException ex) {
+					// client disconnected
+					closed = true;
+					completed = true;
+					pendingEvents.clear();
+					emitter.completeWithError(ex);
+				}
+			}
+			if (closed && !completed) {
+				completed = true;
+				pendingEvents.clear();
+				emitter.complete();
+			}
+		} finally {
+			draining.set(false);
+		}
+		// events added or closed after the last poll
+		if (!completed && (!pendingEvents.isEmpty() || closed)) {
+			scheduleDrain();
+		}
+	}
+}
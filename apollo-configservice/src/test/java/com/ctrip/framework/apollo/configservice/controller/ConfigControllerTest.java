@@ -3,11 +3,16 @@ package com.ctrip.framework.apollo.configservice.controller;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDeltaService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDeltaService.ConfigDelta;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseSnapshot;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQuery;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigQueryResult;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
@@ -19,13 +24,19 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletResponse;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -59,13 +70,15 @@ public class ConfigControllerTest {
   @Mock
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
   @Mock
+  private ConfigDeltaService configDeltaService;
+  @Mock
   private HttpServletRequest someRequest;
   private Gson gson = new Gson();
 
   @Before
   public void setUp() throws Exception {
     configController = spy(new ConfigController(
-        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, gson
+        configService, appNamespaceService, namespaceUtil, instanceConfigAuditUtil, configDeltaService, gson
     ));
 
     someAppId = "1";
@@ -116,6 +129,158 @@ public class ConfigControllerTest {
         someClientIp, someAppId, someClusterName, defaultNamespaceName, someServerSideNewReleaseKey);
   }
 
+  @Test
+  public void testQueryConfigs() throws Exception {
+    String someServerSideReleaseKey = "2";
+    String anotherNamespaceName = "anotherNamespace";
+
+    when(namespaceUtil.filterNamespaceName(anotherNamespaceName)).thenReturn(anotherNamespaceName);
+    when(namespaceUtil.normalizeNamespace(someAppId, anotherNamespaceName)).thenReturn(anotherNamespaceName);
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, somePublicNamespaceName,
+        someDataCenter, null)).thenReturn(someRelease);
+    when(appNamespaceService.findByAppIdAndNamespace(someAppId, somePublicNamespaceName))
+        .thenReturn(mock(AppNamespace.class));
+    when(appNamespaceService.findByAppIdAndNamespace(someAppId, anotherNamespaceName)).thenReturn(null);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+
+    List<ApolloConfigQueryResult> results = configController.queryConfigs(someAppId, someClusterName,
+        someDataCenter, someClientIp, Lists.newArrayList(
+            new ApolloConfigQuery(defaultNamespaceName, "1", someNotificationMessages),
+            new ApolloConfigQuery(somePublicNamespaceName, someServerSideReleaseKey, null),
+            new ApolloConfigQuery(anotherNamespaceName, null, null)), someRequest);
+
+    assertEquals(3, results.size());
+
+    ApolloConfigQueryResult found = results.get(0);
+    assertEquals(defaultNamespaceName, found.getNamespaceName());
+    assertEquals(HttpServletResponse.SC_OK, found.getStatusCode());
+    assertEquals(someServerSideReleaseKey, found.getConfig().getReleaseKey());
+    assertEquals(someClusterName, found.getConfig().getCluster());
+    assertEquals("foo", found.getConfig().getConfigurations().get("apollo.bar"));
+
+    ApolloConfigQueryResult notModified = results.get(1);
+    assertEquals(somePublicNamespaceName, notModified.getNamespaceName());
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, notModified.getStatusCode());
+    assertNull(notModified.getConfig());
+
+    ApolloConfigQueryResult notFound = results.get(2);
+    assertEquals(anotherNamespaceName, notFound.getNamespaceName());
+    assertEquals(HttpServletResponse.SC_NOT_FOUND, notFound.getStatusCode());
+    assertNull(notFound.getConfig());
+
+    verify(instanceConfigAuditUtil, times(2)).audit(someAppId, someClusterName, someDataCenter,
+        someClientIp, someAppId, someClusterName, defaultNamespaceName, someServerSideReleaseKey);
+  }
+
+  @Test
+  public void testQueryConfigWithDelta() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    ConfigDelta someDelta = mock(ConfigDelta.class);
+    Map<String, String> someChanges = ImmutableMap.of("apollo.bar", "foo");
+    List<String> someDeletedKeys = Lists.newArrayList("apollo.deleted");
+
+    when(someRequest.getParameter("delta")).thenReturn("true");
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(configDeltaService.findDelta(eq(someClientSideReleaseKey), eq(Lists.newArrayList(someRelease)),
+        eq(someServerSideNewReleaseKey), any()))
+        .thenReturn(someDelta);
+    when(someDelta.getChanges()).thenReturn(someChanges);
+    when(someDelta.getDeletedKeys()).thenReturn(someDeletedKeys);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, someRequest, someResponse);
+
+    assertTrue(result.isDelta());
+    assertEquals(someClientSideReleaseKey, result.getBaseReleaseKey());
+    assertEquals(someServerSideNewReleaseKey, result.getReleaseKey());
+    assertEquals(someChanges, result.getConfigurations());
+    assertEquals(someDeletedKeys, result.getDeletedKeys());
+  }
+
+  @Test
+  public void testQueryConfigWithUnknownDeltaBase() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+
+    when(someRequest.getParameter("delta")).thenReturn("true");
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    when(configDeltaService.findDelta(eq(someClientSideReleaseKey), eq(Lists.newArrayList(someRelease)),
+        eq(someServerSideNewReleaseKey), any()))
+        .thenReturn(null);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, someRequest, someResponse);
+
+    assertFalse(result.isDelta());
+    assertEquals("foo", result.getConfigurations().get("apollo.bar"));
+  }
+
+  @Test
+  public void testQueryConfigWithSnapshot() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    MockHttpServletResponse someResponse = new MockHttpServletResponse();
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(someRelease.getNamespaceName()).thenReturn(defaultNamespaceName);
+    ReleaseSnapshot someSnapshot = ReleaseSnapshot.of(someRelease);
+    when(configService.findSnapshot(someRelease)).thenReturn(someSnapshot);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, someRequest, someResponse);
+
+    assertNull(result);
+    assertEquals(HttpServletResponse.SC_OK, someResponse.getStatus());
+    assertArrayEquals(someSnapshot.getBody(), someResponse.getContentAsByteArray());
+
+    ApolloConfig written = gson.fromJson(someResponse.getContentAsString(), ApolloConfig.class);
+    assertEquals(someAppId, written.getAppId());
+    assertEquals(someClusterName, written.getCluster());
+    assertEquals(defaultNamespaceName, written.getNamespaceName());
+    assertEquals(someServerSideNewReleaseKey, written.getReleaseKey());
+    assertEquals("foo", written.getConfigurations().get("apollo.bar"));
+  }
+
+  @Test
+  public void testLoadConfigWithSnapshot() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    Map<String, String> someConfigurations = ImmutableMap.of("apollo.bar", "fromSnapshot");
+    ReleaseSnapshot someSnapshot = mock(ReleaseSnapshot.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(configService.findSnapshot(someRelease)).thenReturn(someSnapshot);
+    when(someSnapshot.getConfigurations()).thenReturn(someConfigurations);
+
+    ApolloConfig result = configController.loadConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, someRequest, someResponse);
+
+    assertEquals(someConfigurations, result.getConfigurations());
+    verify(someResponse, never()).getOutputStream();
+    verify(someRelease, never()).getConfigurations();
+  }
+
   @Test
   public void testQueryConfigFile() throws Exception {
     String someClientSideReleaseKey = "1";
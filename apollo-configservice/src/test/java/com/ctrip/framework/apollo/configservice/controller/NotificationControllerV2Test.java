@@ -3,20 +3,31 @@ package com.ctrip.framework.apollo.configservice.controller;
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.common.exception.NotFoundException;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.NotificationFanOutScheduler;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyIds;
+import com.ctrip.framework.apollo.configservice.util.WatchKeyRegistry;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.configservice.wrapper.NotificationStreamWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.base.Joiner;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.gson.Gson;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -26,9 +37,11 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
@@ -61,18 +74,28 @@ public class NotificationControllerV2Test {
   private BizConfig bizConfig;
 
   private Gson gson;
+  private WatchKeyDictionary watchKeyDictionary;
+  private NotificationFanOutScheduler notificationFanOutScheduler;
 
-  private Multimap<String, DeferredResultWrapper> deferredResults;
+  private WatchKeyRegistry<DeferredResultWrapper> deferredResults;
+  private WatchKeyRegistry<NotificationStreamWrapper> notificationStreams;
 
   @Before
   public void setUp() throws Exception {
     gson = new Gson();
+    watchKeyDictionary = new WatchKeyDictionary();
+    when(bizConfig.releaseMessageNotificationThreads()).thenReturn(2);
+    notificationFanOutScheduler = new NotificationFanOutScheduler(bizConfig, new SimpleMeterRegistry());
+    notificationFanOutScheduler.afterPropertiesSet();
     controller = new NotificationControllerV2(
-        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig
+        watchKeysUtil, releaseMessageService, entityManagerUtil, namespaceUtil, gson, bizConfig,
+        watchKeyDictionary, notificationFanOutScheduler
     );
+    // send the stream events in the calling thread
+    ReflectionTestUtils.setField(controller, "notificationStreamSendService",
+        MoreExecutors.newDirectExecutorService());
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(5);
 
     someAppId = "someAppId";
     someCluster = "someCluster";
@@ -89,13 +112,20 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
 
     deferredResults =
-        (Multimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
+        (WatchKeyRegistry<DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
+    notificationStreams = (WatchKeyRegistry<NotificationStreamWrapper>) ReflectionTestUtils
+        .getField(controller, "notificationStreams");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    notificationFanOutScheduler.destroy();
   }
 
   @Test
   public void testPollNotificationWithDefaultNamespace() throws Exception {
-    String someWatchKey = "someKey";
-    String anotherWatchKey = "anotherKey";
+    String someWatchKey = "someAppId+someCluster+someKey";
+    String anotherWatchKey = "someAppId+someCluster+anotherKey";
 
     Multimap<String, String> watchKeysMap =
         assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey, anotherWatchKey));
@@ -104,9 +134,8 @@ public class NotificationControllerV2Test {
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
-            someDataCenter)).thenReturn(
-        watchKeysMap);
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
@@ -123,8 +152,8 @@ public class NotificationControllerV2Test {
     String namespace = String.format("%s.%s", defaultNamespace, "properties");
     when(namespaceUtil.filterNamespaceName(namespace)).thenReturn(defaultNamespace);
 
-    String someWatchKey = "someKey";
-    String anotherWatchKey = "anotherKey";
+    String someWatchKey = "someAppId+someCluster+someKey";
+    String anotherWatchKey = "someAppId+someCluster+anotherKey";
 
     Multimap<String, String> watchKeysMap =
         assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey, anotherWatchKey));
@@ -133,9 +162,8 @@ public class NotificationControllerV2Test {
         transformApolloConfigNotificationsToString(namespace, someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
-            someDataCenter)).thenReturn(
-        watchKeysMap);
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
@@ -157,10 +185,10 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.filterNamespaceName(somePublicNamespaceAsFile)).thenReturn(somePublicNamespaceAsFile);
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespaceAsFile)).thenReturn(somePublicNamespaceAsFile);
 
-    String someWatchKey = "someKey";
-    String anotherWatchKey = "anotherKey";
-    String somePublicWatchKey = "somePublicWatchKey";
-    String somePublicFileWatchKey = "somePublicFileWatchKey";
+    String someWatchKey = "someAppId+someCluster+someKey";
+    String anotherWatchKey = "someAppId+someCluster+anotherKey";
+    String somePublicWatchKey = "someAppId+someCluster+somePublicWatchKey";
+    String somePublicFileWatchKey = "someAppId+someCluster+somePublicFileWatchKey";
 
     Multimap<String, String> watchKeysMap =
         assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey, anotherWatchKey));
@@ -176,10 +204,9 @@ public class NotificationControllerV2Test {
             someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster,
+        .assembleAllWatchKeyIds(someAppId, someCluster,
             Sets.newHashSet(defaultNamespace, somePublicNamespace, somePublicNamespaceAsFile),
-            someDataCenter)).thenReturn(
-        watchKeysMap);
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
@@ -190,7 +217,7 @@ public class NotificationControllerV2Test {
 
     assertWatchKeys(watchKeysMap, deferredResult);
 
-    verify(watchKeysUtil, times(1)).assembleAllWatchKeys(someAppId, someCluster,
+    verify(watchKeysUtil, times(1)).assembleAllWatchKeyIds(someAppId, someCluster,
         Sets.newHashSet(defaultNamespace, somePublicNamespace, somePublicNamespaceAsFile),
         someDataCenter);
   }
@@ -198,7 +225,7 @@ public class NotificationControllerV2Test {
   @Test
   public void testPollNotificationWithMultipleNamespaceWithNotificationIdOutDated()
       throws Exception {
-    String someWatchKey = "someKey";
+    String someWatchKey = "someAppId+someCluster+someKey";
     String anotherWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
         .join(someAppId, someCluster, somePublicNamespace);
     String yetAnotherWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
@@ -212,9 +239,9 @@ public class NotificationControllerV2Test {
         .putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(anotherWatchKey, yetAnotherWatchKey)));
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster,
-            Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter)).thenReturn(
-        watchKeysMap);
+        .assembleAllWatchKeyIds(someAppId, someCluster,
+            Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter))
+        .thenReturn(toWatchKeyIds(watchKeysMap));
 
     ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
     when(someReleaseMessage.getId()).thenReturn(notificationId);
@@ -222,9 +249,10 @@ public class NotificationControllerV2Test {
     ReleaseMessage yetAnotherReleaseMessage = mock(ReleaseMessage.class);
     when(yetAnotherReleaseMessage.getId()).thenReturn(yetAnotherNotificationId);
     when(yetAnotherReleaseMessage.getMessage()).thenReturn(yetAnotherWatchKey);
-    when(releaseMessageService
-        .findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(watchKeysMap.values())))
-        .thenReturn(Lists.newArrayList(someReleaseMessage, yetAnotherReleaseMessage));
+    when(releaseMessageService.findLatestReleaseMessage(watchKeyDictionary.find(anotherWatchKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseMessageService.findLatestReleaseMessage(watchKeyDictionary.find(yetAnotherWatchKey)))
+        .thenReturn(yetAnotherReleaseMessage);
 
     String notificationAsString =
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId,
@@ -251,7 +279,7 @@ public class NotificationControllerV2Test {
 
   @Test
   public void testPollNotificationWithMultipleNamespacesAndHandleMessage() throws Exception {
-    String someWatchKey = "someKey";
+    String someWatchKey = "someAppId+someCluster+someKey";
     String anotherWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
         .join(someAppId, someCluster, somePublicNamespace);
 
@@ -261,9 +289,9 @@ public class NotificationControllerV2Test {
         .putAll(assembleMultiMap(somePublicNamespace, Lists.newArrayList(anotherWatchKey)));
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster,
-            Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter)).thenReturn(
-        watchKeysMap);
+        .assembleAllWatchKeyIds(someAppId, someCluster,
+            Sets.newHashSet(defaultNamespace, somePublicNamespace), someDataCenter))
+        .thenReturn(toWatchKeyIds(watchKeysMap));
 
     String notificationAsString =
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId,
@@ -296,6 +324,39 @@ public class NotificationControllerV2Test {
     assertEquals(someId, notificationMessages.get(anotherWatchKey).longValue());
   }
 
+  @Test
+  public void testPollNotificationWithHandleMessages() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeyIds(someAppId, someCluster,
+            Sets.newHashSet(defaultNamespace), someDataCenter))
+        .thenReturn(toWatchKeyIds(assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey))));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(1);
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(someWatchKey);
+    anotherReleaseMessage.setId(2);
+
+    controller.handleMessages(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(1, response.getBody().size());
+    assertEquals(anotherReleaseMessage.getId(), response.getBody().get(0).getNotificationId());
+  }
+
   @Test
   public void testPollNotificationWithHandleMessageInBatch() throws Exception {
     String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
@@ -310,11 +371,11 @@ public class NotificationControllerV2Test {
         transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
 
     when(watchKeysUtil
-        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
-            someDataCenter)).thenReturn(watchKeysMap);
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
-    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(someBatch * 1000 / someBatchInterval);
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
@@ -340,6 +401,92 @@ public class NotificationControllerV2Test {
     assertTrue(deferredResult.hasResult() && anotherDeferredResult.hasResult());
   }
 
+  @Test
+  public void testPollNotificationWithRePollDuringBatchNotification() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    int someBatch = 1;
+    int someBatchInterval = 10;
+    int someClientCount = 5;
+
+    when(watchKeysUtil
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter))
+        .thenReturn(toWatchKeyIds(assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey))));
+
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(someBatch * 1000 / someBatchInterval);
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+    List<DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>> deferredResultList =
+        Lists.newArrayList();
+    for (int i = 0; i < someClientCount; i++) {
+      deferredResultList.add(controller.pollNotification(someAppId, someCluster, notificationAsString,
+          someDataCenter, someClientIp));
+    }
+
+    long someId = 10;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //clients notified in the first batches poll again with the new notification id
+    String newNotificationAsString = transformApolloConfigNotificationsToString(defaultNamespace, someId);
+    List<DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>> rePolledDeferredResults =
+        Lists.newArrayList();
+    for (int i = 0; i < someClientCount; i++) {
+      rePolledDeferredResults.add(controller.pollNotification(someAppId, someCluster,
+          newNotificationAsString, someDataCenter, someClientIp));
+    }
+
+    TimeUnit.MILLISECONDS.sleep(someBatchInterval * someClientCount * 10);
+
+    for (DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> deferredResult : deferredResultList) {
+      assertTrue(deferredResult.hasResult());
+    }
+    //the new polls are registered after the message, so they should not be notified again
+    for (DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> deferredResult :
+        rePolledDeferredResults) {
+      assertFalse(deferredResult.hasResult());
+    }
+  }
+
+  @Test
+  public void testPollNotificationWithWatchKeyWithoutReleaseMessage() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter))
+        .thenReturn(ImmutableMap.of(defaultNamespace, new WatchKeyIds(new int[0], new String[]{someWatchKey})));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    assertEquals(1, deferredResults.size());
+    assertEquals(0, watchKeyDictionary.size());
+
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey.toUpperCase());
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(1, response.getBody().size());
+    assertEquals(someId, response.getBody().get(0).getNotificationId());
+  }
+
   @Test
   public void testPollNotificationWithIncorrectCase() throws Exception {
     String appIdWithIncorrectCase = someAppId.toUpperCase();
@@ -358,8 +505,8 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.filterNamespaceName(namespaceWithIncorrectCase)).thenReturn(namespaceWithIncorrectCase);
     when(namespaceUtil.normalizeNamespace(appIdWithIncorrectCase, namespaceWithIncorrectCase)).thenReturn(defaultNamespace);
     when(watchKeysUtil
-        .assembleAllWatchKeys(appIdWithIncorrectCase, someCluster, Sets.newHashSet(defaultNamespace),
-            someDataCenter)).thenReturn(watchKeysMap);
+        .assembleAllWatchKeyIds(appIdWithIncorrectCase, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
 
     DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
         deferredResult = controller
@@ -389,6 +536,134 @@ public class NotificationControllerV2Test {
 
   }
 
+  @Test
+  public void testStreamNotification() throws Exception {
+    stubNotificationStream(100);
+    String someWatchKey = "someAppId+someCluster+application";
+    String anotherWatchKey = "someAppId+default+application";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey, anotherWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
+
+    SseEmitter emitter = controller
+        .streamNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    assertEquals(watchKeysMap.size(), notificationStreams.size());
+    assertTrue(sentEvents(emitter).contains("retry:"));
+    assertFalse(sentEvents(emitter).contains(NotificationStreamWrapper.NOTIFICATIONS_EVENT));
+
+    long someId = 10;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    long anotherId = 11;
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(anotherWatchKey);
+    anotherReleaseMessage.setId(anotherId);
+    controller.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    String events = sentEvents(emitter);
+    assertTrue(events.contains("event:" + NotificationStreamWrapper.NOTIFICATIONS_EVENT));
+    assertTrue(events.contains("\"notificationId\":" + someId));
+    assertTrue(events.contains("\"notificationId\":" + anotherId));
+    //stream is kept open after notified
+    assertEquals(watchKeysMap.size(), notificationStreams.size());
+
+    controller.closeNotificationStreams();
+  }
+
+  @Test
+  public void testStreamNotificationWithNewNotification() throws Exception {
+    stubNotificationStream(100);
+    String someWatchKey = "someAppId+someCluster+application";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
+
+    long someId = 10;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+    when(releaseMessageService.findLatestReleaseMessage(watchKeyDictionary.find(someWatchKey)))
+        .thenReturn(someReleaseMessage);
+
+    SseEmitter emitter = controller
+        .streamNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    String events = sentEvents(emitter);
+    assertTrue(events.contains("event:" + NotificationStreamWrapper.NOTIFICATIONS_EVENT));
+    assertTrue(events.contains("\"notificationId\":" + someId));
+
+    controller.closeNotificationStreams();
+  }
+
+  @Test
+  public void testStreamNotificationRejectedWhenConnectingTooFast() throws Exception {
+    stubNotificationStream(1);
+    String someWatchKey = "someAppId+someCluster+application";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(toWatchKeyIds(watchKeysMap));
+
+    controller.streamNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+    SseEmitter rejected = controller
+        .streamNotification(someAppId, someCluster, notificationAsString, someDataCenter, someClientIp);
+
+    assertEquals(1, notificationStreams.size());
+    assertTrue(sentEvents(rejected).contains("retry:"));
+    assertTrue((Boolean) ReflectionTestUtils.getField(rejected, "complete"));
+
+    controller.closeNotificationStreams();
+  }
+
+  @Test(expected = NotFoundException.class)
+  public void testStreamNotificationDisabled() throws Exception {
+    when(bizConfig.isNotificationStreamEnabled()).thenReturn(false);
+
+    controller.streamNotification(someAppId, someCluster,
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId), someDataCenter,
+        someClientIp);
+  }
+
+  private void stubNotificationStream(int connectQps) {
+    when(bizConfig.isNotificationStreamEnabled()).thenReturn(true);
+    when(bizConfig.notificationStreamTimeoutInMilli()).thenReturn(TimeUnit.MINUTES.toMillis(30));
+    when(bizConfig.notificationStreamConnectQps()).thenReturn(connectQps);
+    when(bizConfig.notificationStreamRetryInMilli()).thenReturn(1000);
+    when(bizConfig.notificationStreamHeartbeatIntervalInMilli()).thenReturn(TimeUnit.SECONDS.toMillis(30));
+  }
+
+  /**
+   * emitter is not initialized by spring mvc in unit test, so the events are kept in the early send attempts
+   */
+  private String sentEvents(SseEmitter emitter) {
+    StringBuilder events = new StringBuilder();
+    for (Object data : (Collection<?>) ReflectionTestUtils.getField(emitter, "earlySendAttempts")) {
+      events.append((Object) ReflectionTestUtils.invokeMethod(data, "getData"));
+    }
+    return events.toString();
+  }
+
   private String transformApolloConfigNotificationsToString(
       String namespace, long notificationId) {
     List<ApolloConfigNotification> notifications =
@@ -429,9 +704,19 @@ public class NotificationControllerV2Test {
     return multimap;
   }
 
+  private Map<String, WatchKeyIds> toWatchKeyIds(Multimap<String, String> watchKeysMap) {
+    Map<String, WatchKeyIds> watchKeyIdsMap = Maps.newHashMap();
+    for (String namespace : watchKeysMap.keySet()) {
+      watchKeyIdsMap.put(namespace, new WatchKeyIds(watchKeysMap.get(namespace).stream()
+          .mapToInt(watchKeyDictionary::intern).toArray(), new String[0]));
+    }
+    return watchKeyIdsMap;
+  }
+
   private void assertWatchKeys(Multimap<String, String> watchKeysMap, DeferredResult deferredResult) {
     for (String watchKey : watchKeysMap.values()) {
-      Collection<DeferredResultWrapper> deferredResultWrappers = deferredResults.get(watchKey);
+      Collection<DeferredResultWrapper> deferredResultWrappers =
+          deferredResults.get(watchKeyDictionary.find(watchKey));
       boolean found = false;
       for (DeferredResultWrapper wrapper: deferredResultWrappers) {
         if (Objects.equals(wrapper.getResult(), deferredResult)) {
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.configservice.service;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.google.common.collect.Lists;
@@ -36,6 +37,8 @@ public class ReleaseMessageServiceWithCacheTest {
   @Mock
   private BizConfig bizConfig;
 
+  private WatchKeyDictionary watchKeyDictionary;
+
   private int scanInterval;
 
   private TimeUnit scanIntervalTimeUnit;
@@ -43,8 +46,9 @@ public class ReleaseMessageServiceWithCacheTest {
   @Before
 
   public void setUp() throws Exception {
+    watchKeyDictionary = new WatchKeyDictionary();
     releaseMessageServiceWithCache = new ReleaseMessageServiceWithCache(
-        releaseMessageRepository, bizConfig
+        releaseMessageRepository, bizConfig, watchKeyDictionary
     );
 
     scanInterval = 10;
@@ -143,6 +147,29 @@ public class ReleaseMessageServiceWithCacheTest {
     assertEquals(501, latestReleaseMsgGroupByMsgContent.get(0).getId());
   }
 
+  @Test
+  public void testFindLatestReleaseMessageByWatchKeyId() throws Exception {
+    String someMsgContent = "someAppId+default+application";
+    ReleaseMessage someMsg = assembleReleaseMsg(1, someMsgContent);
+    ReleaseMessage someRepeatMsg = assembleReleaseMsg(2, someMsgContent.toUpperCase());
+    String anotherMsgContent = "someAppId+default+anotherNamespace";
+    ReleaseMessage anotherMsg = assembleReleaseMsg(3, anotherMsgContent);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L))
+        .thenReturn(Arrays.asList(someMsg, someRepeatMsg, anotherMsg));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    int someWatchKeyId = watchKeyDictionary.find("someAppId", "default", "application");
+    int anotherWatchKeyId = watchKeyDictionary.find(anotherMsgContent);
+    int unknownWatchKeyId = watchKeyDictionary.intern("someAppId", "default", "unknownNamespace");
+
+    assertEquals(2, releaseMessageServiceWithCache.findLatestReleaseMessage(someWatchKeyId).getId());
+    assertEquals(3, releaseMessageServiceWithCache.findLatestReleaseMessage(anotherWatchKeyId).getId());
+    assertNull(releaseMessageServiceWithCache.findLatestReleaseMessage(unknownWatchKeyId));
+    assertNull(releaseMessageServiceWithCache.findLatestReleaseMessage(WatchKeyDictionary.NOT_FOUND));
+  }
+
   @Test
   public void testNewReleaseMessagesBeforeHandleMessage() throws Exception {
     String someMessageContent = "someMessage";
@@ -0,0 +1,162 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDeltaService.ConfigDelta;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigDeltaServiceTest {
+  @Mock
+  private ReleaseService releaseService;
+  @Mock
+  private ConfigService configService;
+  private ConfigDeltaService configDeltaService;
+  private Gson gson = new Gson();
+  private String someAppId = "someAppId";
+  private String someNamespace = "application";
+  private String somePublicAppId = "somePublicAppId";
+  private String somePublicNamespace = "somePublicNamespace";
+
+  @Before
+  public void setUp() throws Exception {
+    configDeltaService = new ConfigDeltaService(releaseService, configService, gson);
+  }
+
+  @Test
+  public void testFindDelta() throws Exception {
+    String someBaseReleaseKey = "someBaseReleaseKey";
+    String someReleaseKey = "someReleaseKey";
+    Map<String, String> baseConfigurations = Maps.newHashMap();
+    for (int i = 0; i < 10; i++) {
+      baseConfigurations.put("key" + i, "value" + i);
+    }
+    Map<String, String> configurations = Maps.newHashMap(baseConfigurations);
+    configurations.put("key1", "newValue1");
+    configurations.remove("key2");
+    configurations.put("key10", "value10");
+    Release someBaseRelease = assembleRelease(someBaseReleaseKey, baseConfigurations);
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Lists.newArrayList(someBaseRelease));
+
+    AtomicInteger supplierCalls = new AtomicInteger();
+    Supplier<Map<String, String>> supplier = () -> {
+      supplierCalls.incrementAndGet();
+      return configurations;
+    };
+    List<Release> releases = Lists.newArrayList(assembleRelease(someReleaseKey, configurations));
+    ConfigDelta delta = configDeltaService.findDelta(someBaseReleaseKey, releases, someReleaseKey, supplier);
+    ConfigDelta anotherDelta = configDeltaService.findDelta(someBaseReleaseKey, releases, someReleaseKey,
+        supplier);
+
+    assertEquals(ImmutableMap.of("key1", "newValue1", "key10", "value10"), delta.getChanges());
+    assertEquals(Collections.singletonList("key2"), delta.getDeletedKeys());
+    assertEquals(delta, anotherDelta);
+    assertEquals(1, supplierCalls.get());
+    verify(releaseService, times(1)).findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey));
+  }
+
+  @Test
+  public void testFindDeltaWithMergedReleaseKey() throws Exception {
+    String someAppReleaseKey = "someAppReleaseKey";
+    String somePublicReleaseKey = "somePublicReleaseKey";
+    Release someAppRelease = assembleRelease(someAppReleaseKey, ImmutableMap.of("k1", "app", "k2", "v2"));
+    Release somePublicRelease = assembleRelease(somePublicAppId, somePublicNamespace, somePublicReleaseKey,
+        ImmutableMap.of("k1", "public", "k3", "v3", "k4", "v4"));
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someAppReleaseKey, somePublicReleaseKey)))
+        .thenReturn(Lists.newArrayList(somePublicRelease, someAppRelease));
+    Map<String, String> configurations = ImmutableMap.of("k1", "app", "k2", "v2", "k3", "v3", "k4", "newV4");
+
+    List<Release> releases = Lists.newArrayList(assembleRelease("someNewAppReleaseKey", configurations),
+        assembleRelease(somePublicAppId, somePublicNamespace, "someNewPublicReleaseKey", configurations));
+
+    ConfigDelta delta = configDeltaService.findDelta(someAppReleaseKey + "+" + somePublicReleaseKey,
+        releases, "someNewAppReleaseKey+someNewPublicReleaseKey", () -> configurations);
+
+    assertEquals(ImmutableMap.of("k4", "newV4"), delta.getChanges());
+    assertEquals(Collections.emptyList(), delta.getDeletedKeys());
+  }
+
+  @Test
+  public void testFindDeltaWithUnknownBase() throws Exception {
+    String someBaseReleaseKey = "someBaseReleaseKey";
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Collections.emptyList());
+
+    assertNull(configDeltaService.findDelta(someBaseReleaseKey, assembleReleases("someReleaseKey"),
+        "someReleaseKey", () -> ImmutableMap.of("k1", "v1")));
+  }
+
+  @Test
+  public void testFindDeltaNotSmallerThanFullConfigurations() throws Exception {
+    String someBaseReleaseKey = "someBaseReleaseKey";
+    Release someBaseRelease = assembleRelease(someBaseReleaseKey, ImmutableMap.of("k1", "v1"));
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Lists.newArrayList(someBaseRelease));
+
+    assertNull(configDeltaService.findDelta(someBaseReleaseKey, assembleReleases("someReleaseKey"),
+        "someReleaseKey", () -> ImmutableMap.of("k1", "v2")));
+  }
+
+  @Test
+  public void testFindDeltaWithBaseReleaseOfAnotherNamespace() throws Exception {
+    String someBaseReleaseKey = "someBaseReleaseKey";
+    Map<String, String> baseConfigurations = Maps.newHashMap();
+    for (int i = 0; i < 10; i++) {
+      baseConfigurations.put("secret" + i, "value" + i);
+    }
+    Release anotherAppRelease = assembleRelease("anotherAppId", someNamespace, someBaseReleaseKey,
+        baseConfigurations);
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Lists.newArrayList(anotherAppRelease));
+    Map<String, String> configurations = Maps.newHashMap(baseConfigurations);
+    configurations.put("k1", "v1");
+
+    assertNull(configDeltaService.findDelta(someBaseReleaseKey, assembleReleases("someReleaseKey"),
+        "someReleaseKey", () -> configurations));
+
+    //base release count does not match
+    assertNull(configDeltaService.findDelta(someBaseReleaseKey + "+" + someBaseReleaseKey,
+        assembleReleases("someReleaseKey"), "someReleaseKey", () -> configurations));
+  }
+
+  private List<Release> assembleReleases(String releaseKey) {
+    return Lists.newArrayList(assembleRelease(releaseKey, Collections.emptyMap()));
+  }
+
+  private Release assembleRelease(String releaseKey, Map<String, String> configurations) {
+    return assembleRelease(someAppId, someNamespace, releaseKey, configurations);
+  }
+
+  private Release assembleRelease(String appId, String namespaceName, String releaseKey,
+      Map<String, String> configurations) {
+    Release release = new Release();
+    release.setAppId(appId);
+    release.setClusterName("default");
+    release.setNamespaceName(namespaceName);
+    release.setReleaseKey(releaseKey);
+    release.setConfigurations(gson.toJson(configurations));
+    return release;
+  }
+}
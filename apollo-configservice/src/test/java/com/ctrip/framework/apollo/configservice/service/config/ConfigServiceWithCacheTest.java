@@ -1,25 +1,47 @@
 package com.ctrip.framework.apollo.configservice.service.config;
 
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.service.NamespaceService;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
 
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -36,6 +58,10 @@ public class ConfigServiceWithCacheTest {
   @Mock
   private ReleaseMessageService releaseMessageService;
   @Mock
+  private NamespaceService namespaceService;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
   private Release someRelease;
   @Mock
   private ReleaseMessage someReleaseMessage;
@@ -47,11 +73,16 @@ public class ConfigServiceWithCacheTest {
   private long someNotificationId;
   private ApolloNotificationMessages someNotificationMessages;
 
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   @Before
   public void setUp() throws Exception {
     configServiceWithCache = new ConfigServiceWithCache();
     ReflectionTestUtils.setField(configServiceWithCache, "releaseService", releaseService);
     ReflectionTestUtils.setField(configServiceWithCache, "releaseMessageService", releaseMessageService);
+    ReflectionTestUtils.setField(configServiceWithCache, "namespaceService", namespaceService);
+    ReflectionTestUtils.setField(configServiceWithCache, "bizConfig", bizConfig);
 
     configServiceWithCache.initialize();
 
@@ -121,6 +152,170 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(1)).findActiveOne(someId);
   }
 
+  @Test
+  public void testFindSnapshot() throws Exception {
+    Release release = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    Release sameRelease = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    Release anotherRelease = assembleRelease("anotherReleaseKey", "{\"someKey\":\"anotherValue\"}");
+
+    ReleaseSnapshot snapshot = configServiceWithCache.findSnapshot(release);
+    ReleaseSnapshot anotherSnapshot = configServiceWithCache.findSnapshot(anotherRelease);
+
+    assertSame(snapshot, configServiceWithCache.findSnapshot(sameRelease));
+    assertEquals("someValue", snapshot.getConfigurations().get("someKey"));
+    assertEquals("anotherValue", anotherSnapshot.getConfigurations().get("someKey"));
+    assertTrue(snapshot.matches(someAppId, someClusterName, someNamespaceName));
+
+    ApolloConfig apolloConfig = new Gson().fromJson(new String(snapshot.getBody(), StandardCharsets.UTF_8),
+        ApolloConfig.class);
+    assertEquals(someAppId, apolloConfig.getAppId());
+    assertEquals(someClusterName, apolloConfig.getCluster());
+    assertEquals(someNamespaceName, apolloConfig.getNamespaceName());
+    assertEquals("someReleaseKey", apolloConfig.getReleaseKey());
+    assertEquals(snapshot.getConfigurations(), apolloConfig.getConfigurations());
+  }
+
+  @Test
+  public void testFindSnapshotWithInvalidConfigurations() throws Exception {
+    assertNull(configServiceWithCache.findSnapshot(assembleRelease("someReleaseKey", "invalid")));
+    assertNull(configServiceWithCache.findSnapshot(null));
+  }
+
+  @Test
+  public void testWarmUpFromSnapshot() throws Exception {
+    File snapshotFile = new File(temporaryFolder.getRoot(), "config-cache.snapshot");
+    Release release = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    release.setId(10);
+    someNotificationMessages.put(someKey, someNotificationId);
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn(release);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(releaseMessageService.findLatestReleaseMessage()).thenReturn(someReleaseMessage);
+    enableSnapshot(snapshotFile);
+
+    ConfigServiceWithCache someService = assembleConfigServiceWithCache();
+    someService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName, someNotificationMessages);
+    someService.stop();
+
+    assertTrue(snapshotFile.isFile());
+
+    when(releaseMessageService.findReleaseMessagesGreaterThan(someNotificationId))
+        .thenReturn(Collections.emptyList());
+    ConfigServiceWithCache anotherService = assembleConfigServiceWithCache();
+    Release restored = anotherService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    anotherService.stop();
+
+    assertEquals(release.getId(), restored.getId());
+    assertEquals(release.getReleaseKey(), restored.getReleaseKey());
+    assertEquals(release.getConfigurations(), restored.getConfigurations());
+    assertEquals(someNamespaceName, restored.getNamespaceName());
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testWarmUpFromSnapshotWithNewReleaseMessage() throws Exception {
+    File snapshotFile = new File(temporaryFolder.getRoot(), "config-cache.snapshot");
+    Release release = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    Release newRelease = assembleRelease("newReleaseKey", "{\"someKey\":\"newValue\"}");
+    long newNotificationId = someNotificationId + 1;
+    ReleaseMessage newReleaseMessage = new ReleaseMessage(someKey);
+    newReleaseMessage.setId(newNotificationId);
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage, newReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(release, newRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(releaseMessageService.findLatestReleaseMessage()).thenReturn(someReleaseMessage);
+    enableSnapshot(snapshotFile);
+
+    ConfigServiceWithCache someService = assembleConfigServiceWithCache();
+    someService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName, someNotificationMessages);
+    someService.stop();
+
+    when(releaseMessageService.findReleaseMessagesGreaterThan(someNotificationId))
+        .thenReturn(Lists.newArrayList(newReleaseMessage));
+    ConfigServiceWithCache anotherService = assembleConfigServiceWithCache();
+    Release result = anotherService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    anotherService.stop();
+
+    assertEquals(newRelease, result);
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testWarmUpFromBrokenSnapshot() throws Exception {
+    File snapshotFile = temporaryFolder.newFile("config-cache.snapshot");
+    Files.write(snapshotFile.toPath(), "broken".getBytes(StandardCharsets.UTF_8));
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(releaseMessageService.findLatestReleaseMessage()).thenReturn(someReleaseMessage);
+    enableSnapshot(snapshotFile);
+
+    ConfigServiceWithCache someService = assembleConfigServiceWithCache();
+    Release result = someService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    someService.stop();
+
+    assertEquals(someRelease, result);
+  }
+
+  @Test
+  public void testPrefetch() throws Exception {
+    long someReleaseId = 10;
+    long someNamespaceId = 20;
+    Release release = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    release.setId(someReleaseId);
+    ReleaseMessage releaseMessage = new ReleaseMessage(someKey);
+    releaseMessage.setId(someNotificationId);
+    when(bizConfig.isConfigServiceCacheEagerLoadEnabled()).thenReturn(true);
+    when(namespaceService.findIdsGreaterThan(0, 100)).thenReturn(Lists.newArrayList(someNamespaceId));
+    when(releaseService.findLatestActiveReleaseIdsOfNamespaces(0, someNamespaceId))
+        .thenReturn(Lists.newArrayList(someReleaseId));
+    when(releaseService.findByReleaseIds(Sets.newHashSet(someReleaseId))).thenReturn(Lists.newArrayList(release));
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someKey)))
+        .thenReturn(Lists.newArrayList(releaseMessage));
+    someNotificationMessages.put(someKey, someNotificationId);
+
+    ConfigServiceWithCache someService = assembleConfigServiceWithCache();
+
+    assertEquals(release, someService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages));
+    assertEquals(release, someService.findActiveOne(someReleaseId, someNotificationMessages));
+    verify(releaseService, never()).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+    verify(releaseService, never()).findActiveOne(someReleaseId);
+    verify(releaseMessageService, never()).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+  }
+
+  @Test
+  public void testPrefetchWithMemoryBudget() throws Exception {
+    long someReleaseId = 10;
+    long someNamespaceId = 20;
+    Release release = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    release.setId(someReleaseId);
+    when(bizConfig.isConfigServiceCacheEagerLoadEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheMemoryBudgetInBytes()).thenReturn(10L);
+    when(namespaceService.findIdsGreaterThan(0, 100)).thenReturn(Lists.newArrayList(someNamespaceId));
+    when(releaseService.findLatestActiveReleaseIdsOfNamespaces(0, someNamespaceId))
+        .thenReturn(Lists.newArrayList(someReleaseId));
+    when(releaseService.findByReleaseIds(Sets.newHashSet(someReleaseId))).thenReturn(Lists.newArrayList(release));
+    when(releaseMessageService.findLatestReleaseMessagesGroupByMessages(Sets.newHashSet(someKey)))
+        .thenReturn(Collections.emptyList());
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn(release);
+
+    ConfigServiceWithCache someService = assembleConfigServiceWithCache();
+
+    // the release is larger than the budget, so it is evicted and loaded lazily
+    assertEquals(release, someService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages));
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
   @Test
   public void testFindLatestActiveRelease() throws Exception {
     when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
@@ -247,6 +442,144 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
 
+  @Test
+  public void testHandleMessagesReloadsEachWatchKeyOnce() throws Exception {
+    ReleaseMessage someNewReleaseMessage = new ReleaseMessage(someKey);
+    someNewReleaseMessage.setId(someNotificationId + 1);
+    ReleaseMessage anotherNewReleaseMessage = new ReleaseMessage(someKey);
+    anotherNewReleaseMessage.setId(someNotificationId + 2);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(anotherNewReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease);
+
+    configServiceWithCache.handleMessages(Lists.newArrayList(someNewReleaseMessage, anotherNewReleaseMessage),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertEquals(someRelease, release);
+    verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testHandleMessageWithReloadFailure() throws Exception {
+    ReleaseMessage someNewReleaseMessage = new ReleaseMessage(someKey);
+    someNewReleaseMessage.setId(someNotificationId + 1);
+    Release anotherRelease = mock(Release.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage, someNewReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease)
+        .thenThrow(new RuntimeException("some exception"))
+        .thenReturn(anotherRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    configServiceWithCache.handleMessage(someNewReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    Release shouldBeNewRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertEquals(someRelease, release);
+    assertEquals(anotherRelease, shouldBeNewRelease);
+    verify(releaseService, times(3)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testPersistSnapshotSkipsOutdatedEntry() throws Exception {
+    File snapshotFile = new File(temporaryFolder.getRoot(), "config-cache.snapshot");
+    Release release = assembleRelease("someReleaseKey", "{\"someKey\":\"someValue\"}");
+    Release newRelease = assembleRelease("newReleaseKey", "{\"someKey\":\"newValue\"}");
+    long newNotificationId = someNotificationId + 1;
+    ReleaseMessage newReleaseMessage = new ReleaseMessage(someKey);
+    newReleaseMessage.setId(newNotificationId);
+    // the second load reads a lagging replica which has not seen the new release yet
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage, someReleaseMessage, newReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(release, release, newRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(releaseMessageService.findLatestReleaseMessage()).thenReturn(someReleaseMessage);
+    enableSnapshot(snapshotFile);
+
+    ConfigServiceWithCache someService = assembleConfigServiceWithCache();
+    someService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName, someNotificationMessages);
+    someService.handleMessage(newReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+    someService.persistSnapshot();
+
+    ConfigCacheSnapshotFile.Snapshot snapshot = new ConfigCacheSnapshotFile(snapshotFile.toPath()).read();
+    assertEquals(newNotificationId, snapshot.getWatermark());
+    assertFalse(snapshot.getEntries().containsKey(someKey));
+
+    someNotificationMessages.put(someKey, newNotificationId);
+    Release result = someService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    someService.persistSnapshot();
+    someService.stop();
+
+    snapshot = new ConfigCacheSnapshotFile(snapshotFile.toPath()).read();
+    assertEquals(newRelease, result);
+    assertEquals(newNotificationId, snapshot.getEntries().get(someKey).getNotificationId());
+  }
+
+  @Test
+  public void testFindLatestActiveReleaseWithConcurrentDirtyRequests() throws Exception {
+    long someNewNotificationId = someNotificationId + 1;
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+    CountDownLatch reloadLatch = new CountDownLatch(1);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey)))
+        .thenReturn(someReleaseMessage, anotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName))
+        .thenReturn(someRelease)
+        .thenAnswer(invocation -> {
+          reloadLatch.await(5, TimeUnit.SECONDS);
+          return anotherRelease;
+        });
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+    when(anotherReleaseMessage.getId()).thenReturn(someNewNotificationId);
+
+    assertEquals(someRelease, configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages));
+
+    ApolloNotificationMessages newNotificationMessages = new ApolloNotificationMessages();
+    newNotificationMessages.put(someKey, someNewNotificationId);
+    int callers = 10;
+    ExecutorService executorService = Executors.newFixedThreadPool(callers);
+    List<Future<Release>> results = Lists.newArrayList();
+    for (int i = 0; i < callers; i++) {
+      results.add(executorService.submit(() -> configServiceWithCache.findLatestActiveRelease(someAppId,
+          someClusterName, someNamespaceName, newNotificationMessages)));
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (configServiceWithCache.dedupHits() < callers - 1 && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+
+    // requests without the new notification are served from the old cache during the reload
+    assertEquals(someRelease, configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages));
+    reloadLatch.countDown();
+
+    for (Future<Release> result : results) {
+      assertEquals(anotherRelease, result.get(5, TimeUnit.SECONDS));
+    }
+    executorService.shutdown();
+
+    assertEquals(1, configServiceWithCache.reloads());
+    assertEquals(callers - 1, configServiceWithCache.dedupHits());
+    assertEquals(1, configServiceWithCache.staleServes());
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
   @Test
   public void testFindLatestActiveReleaseWithIrrelevantMessages() throws Exception {
     long someNewNotificationId = someNotificationId + 1;
@@ -276,4 +609,31 @@ public class ConfigServiceWithCacheTest {
     verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
+
+  private Release assembleRelease(String releaseKey, String configurations) {
+    Release release = new Release();
+    release.setAppId(someAppId);
+    release.setClusterName(someClusterName);
+    release.setNamespaceName(someNamespaceName);
+    release.setReleaseKey(releaseKey);
+    release.setConfigurations(configurations);
+    return release;
+  }
+
+  private void enableSnapshot(File snapshotFile) {
+    when(bizConfig.isConfigServiceCacheSnapshotEnabled()).thenReturn(true);
+    when(bizConfig.configServiceCacheSnapshotPath()).thenReturn(snapshotFile.getAbsolutePath());
+    when(bizConfig.configServiceCacheSnapshotInterval()).thenReturn(60);
+    when(bizConfig.configServiceCacheSnapshotIntervalTimeUnit()).thenReturn(TimeUnit.SECONDS);
+  }
+
+  private ConfigServiceWithCache assembleConfigServiceWithCache() {
+    ConfigServiceWithCache service = new ConfigServiceWithCache();
+    ReflectionTestUtils.setField(service, "releaseService", releaseService);
+    ReflectionTestUtils.setField(service, "releaseMessageService", releaseMessageService);
+    ReflectionTestUtils.setField(service, "namespaceService", namespaceService);
+    ReflectionTestUtils.setField(service, "bizConfig", bizConfig);
+    service.initialize();
+    return service;
+  }
 }
@@ -0,0 +1,93 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.google.common.collect.Maps;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares the per request cost of a single release /configs response: the legacy path parses
+ * {@link Release#getConfigurations()}, merges it into a new map and serializes the {@link ApolloConfig} again, while
+ * the snapshot path looks up the cached {@link ReleaseSnapshot} and returns its pre-serialized body.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ctrip.framework.apollo.configservice.service.config.ReleaseSnapshotBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReleaseSnapshotBenchmark {
+  private static final Type CONFIGURATION_TYPE = new TypeToken<Map<String, String>>() {
+  }.getType();
+
+  @Param({"100", "1000", "10000"})
+  private int keys;
+
+  private Gson gson;
+  private Release release;
+  private ConfigServiceWithCache configServiceWithCache;
+
+  @Setup
+  public void setUp() {
+    gson = new Gson();
+    Map<String, String> configurations = Maps.newLinkedHashMap();
+    for (int i = 0; i < keys; i++) {
+      configurations.put("some.config.key." + i, "someValue-" + i + "-" + System.nanoTime());
+    }
+    release = new Release();
+    release.setAppId("someAppId");
+    release.setClusterName("default");
+    release.setNamespaceName("application");
+    release.setReleaseKey("20200101000000-someReleaseKey");
+    release.setConfigurations(gson.toJson(configurations));
+
+    configServiceWithCache = new ConfigServiceWithCache();
+    ReflectionTestUtils.setField(configServiceWithCache, "bizConfig", mock(BizConfig.class));
+    configServiceWithCache.initialize();
+  }
+
+  @Benchmark
+  public byte[] legacy() {
+    Map<String, String> merged = Maps.newLinkedHashMap();
+    merged.putAll(gson.fromJson(release.getConfigurations(), CONFIGURATION_TYPE));
+    ApolloConfig apolloConfig = new ApolloConfig(release.getAppId(), release.getClusterName(),
+        release.getNamespaceName(), release.getReleaseKey());
+    apolloConfig.setConfigurations(merged);
+    return gson.toJson(apolloConfig).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public byte[] snapshot() {
+    return configServiceWithCache.findSnapshot(release).getBody();
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(ReleaseSnapshotBenchmark.class.getSimpleName()).build()).run();
+  }
+}
@@ -0,0 +1,121 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.Lists;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightLoaderTest {
+  private static final String SOME_KEY = "someKey";
+
+  private ExecutorService executorService;
+  private AtomicInteger loaderCalls;
+  private AtomicLong currentVersion;
+  private CountDownLatch loaderLatch;
+  private SingleFlightLoader<String, Long> loader;
+
+  @Before
+  public void setUp() throws Exception {
+    executorService = Executors.newCachedThreadPool();
+    loaderCalls = new AtomicInteger();
+    currentVersion = new AtomicLong(1);
+    loaderLatch = new CountDownLatch(0);
+    loader = new SingleFlightLoader<>(key -> {
+      loaderCalls.incrementAndGet();
+      long version = currentVersion.get();
+      try {
+        loaderLatch.await(5, TimeUnit.SECONDS);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+      return version;
+    }, Long::longValue);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    executorService.shutdownNow();
+  }
+
+  @Test
+  public void testConcurrentLoadsAreCoalesced() throws Exception {
+    int callers = 10;
+    loaderLatch = new CountDownLatch(1);
+
+    List<Future<Long>> results = Lists.newArrayList();
+    for (int i = 0; i < callers; i++) {
+      results.add(executorService.submit(() -> loader.load(SOME_KEY, 1)));
+    }
+    waitFor(() -> loader.dedupHits() == callers - 1);
+    assertTrue(loader.isLoading(SOME_KEY));
+    loaderLatch.countDown();
+
+    for (Future<Long> result : results) {
+      assertEquals(1L, (long) result.get(5, TimeUnit.SECONDS));
+    }
+    assertEquals(1, loaderCalls.get());
+    assertEquals(1, loader.loads());
+    assertFalse(loader.isLoading(SOME_KEY));
+  }
+
+  @Test
+  public void testLoadAgainWhenFlightIsOlderThanRequiredVersion() throws Exception {
+    loaderLatch = new CountDownLatch(1);
+
+    Future<Long> oldResult = executorService.submit(() -> loader.load(SOME_KEY, 1));
+    waitFor(() -> loader.isLoading(SOME_KEY));
+    // the new version is published after the old flight read the data
+    currentVersion.set(2);
+    Future<Long> newResult = executorService.submit(() -> loader.load(SOME_KEY, 2));
+    waitFor(() -> loader.dedupHits() == 1);
+    loaderLatch.countDown();
+
+    assertEquals(1L, (long) oldResult.get(5, TimeUnit.SECONDS));
+    assertEquals(2L, (long) newResult.get(5, TimeUnit.SECONDS));
+    assertEquals(2, loaderCalls.get());
+  }
+
+  @Test
+  public void testLoadFailed() throws Exception {
+    SingleFlightLoader<String, Long> failingLoader = new SingleFlightLoader<>(key -> {
+      throw new IllegalStateException("some error");
+    }, Long::longValue);
+
+    try {
+      failingLoader.load(SOME_KEY, 1);
+      fail("should fail");
+    } catch (IllegalStateException ex) {
+      assertEquals("some error", ex.getMessage());
+    }
+    assertFalse(failingLoader.isLoading(SOME_KEY));
+  }
+
+  private void waitFor(Condition condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!condition.met()) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("timeout");
+      }
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+  }
+
+  private interface Condition {
+    boolean met();
+  }
+}
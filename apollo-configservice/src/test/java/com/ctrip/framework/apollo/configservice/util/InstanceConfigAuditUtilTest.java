@@ -1,20 +1,33 @@
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Instance;
 import com.ctrip.framework.apollo.biz.entity.InstanceConfig;
-import com.ctrip.framework.apollo.biz.service.InstanceService;
+import com.ctrip.framework.apollo.biz.service.InstanceStore;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Collection;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
-import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.*;
 
 /**
@@ -25,8 +38,12 @@ public class InstanceConfigAuditUtilTest {
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
 
   @Mock
-  private InstanceService instanceService;
-  private BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
+  private InstanceStore instanceStore;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
+  private BlockingQueue<String> auditKeys;
+  private Map<String, InstanceConfigAuditUtil.InstanceConfigAuditModel> audits;
 
   private String someAppId;
   private String someConfigClusterName;
@@ -41,9 +58,13 @@ public class InstanceConfigAuditUtilTest {
 
   @Before
   public void setUp() throws Exception {
-    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceService);
+    meterRegistry = new SimpleMeterRegistry();
+    when(bizConfig.instanceConfigAuditMaxSize()).thenReturn(1);
+    when(bizConfig.instanceConfigAuditRingBufferSize()).thenReturn(16);
+    instanceConfigAuditUtil = new InstanceConfigAuditUtil(instanceStore, bizConfig, meterRegistry);
 
-    audits = (BlockingQueue<InstanceConfigAuditUtil.InstanceConfigAuditModel>)
+    auditKeys = (BlockingQueue<String>) ReflectionTestUtils.getField(instanceConfigAuditUtil, "auditKeys");
+    audits = (Map<String, InstanceConfigAuditUtil.InstanceConfigAuditModel>)
         ReflectionTestUtils.getField(instanceConfigAuditUtil, "audits");
 
     someAppId = "someAppId";
@@ -65,29 +86,119 @@ public class InstanceConfigAuditUtilTest {
     boolean result = instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
         someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey);
 
-    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.poll();
+    assertEquals(1, instanceConfigAuditUtil.dispatchAudits());
+    InstanceConfigAuditUtil.InstanceConfigAuditModel audit = audits.remove(auditKeys.poll());
 
     assertTrue(result);
     assertTrue(Objects.equals(someAuditModel, audit));
   }
 
   @Test
-  public void testDoAudit() throws Exception {
-    long someInstanceId = 1;
-    Instance someInstance = mock(Instance.class);
-
-    when(someInstance.getId()).thenReturn(someInstanceId);
-    when(instanceService.createInstance(any(Instance.class))).thenReturn(someInstance);
+  public void testAuditMergedAndDropped() throws Exception {
+    String anotherReleaseKey = "anotherReleaseKey";
+
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    //same instance and namespace, merged into the pending one
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, anotherReleaseKey));
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        "anotherIp", someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+
+    //the last one exceeds the max size
+    assertEquals(3, instanceConfigAuditUtil.dispatchAudits());
+    assertEquals(1, auditKeys.size());
+    assertEquals(1, audits.size());
+    assertEquals(anotherReleaseKey, audits.get(auditKeys.poll()).getReleaseKey());
+    assertEquals(1, meterRegistry.counter("apollo.instance-config-audit.dropped").count(), 0);
+  }
 
-    instanceConfigAuditUtil.doAudit(someAuditModel);
+  @Test
+  public void testAuditFilteredAndRingBufferFull() throws Exception {
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    //recorded recently
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+
+    assertEquals(1, instanceConfigAuditUtil.dispatchAudits());
+
+    for (int i = 0; i < 16; i++) {
+      assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+          "someIp" + i, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    }
+    assertFalse(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        "anotherIp", someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    assertEquals(1, meterRegistry.counter("apollo.instance-config-audit.dropped").count(), 0);
+
+    //not filtered since it was dropped
+    assertEquals(16, instanceConfigAuditUtil.dispatchAudits());
+    assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+        "anotherIp", someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+    assertEquals(1, instanceConfigAuditUtil.dispatchAudits());
+  }
 
-    verify(instanceService, times(1)).findInstance(someAppId, someClusterName, someDataCenter,
-        someIp);
-    verify(instanceService, times(1)).createInstance(any(Instance.class));
-    verify(instanceService, times(1)).findInstanceConfig(someInstanceId, someConfigAppId,
-        someConfigNamespace);
-    verify(instanceService, times(1)).createInstanceConfig(any(InstanceConfig.class));
+  @Test
+  public void testAuditWakesUpParkedDispatcher() throws Exception {
+    AtomicBoolean dispatcherParked = (AtomicBoolean) ReflectionTestUtils.getField(instanceConfigAuditUtil,
+        "dispatcherParked");
+    //no writer threads, so the dispatched audit stays in the queue
+    instanceConfigAuditUtil.afterPropertiesSet();
+    try {
+      waitUntil(dispatcherParked::get);
+      Thread.sleep(50);
+
+      assertTrue(instanceConfigAuditUtil.audit(someAppId, someClusterName, someDataCenter,
+          someIp, someConfigAppId, someConfigClusterName, someConfigNamespace, someReleaseKey));
+
+      waitUntil(() -> auditKeys.size() == 1);
+      assertTrue(Objects.equals(someAuditModel, audits.get(auditKeys.peek())));
+    } finally {
+      instanceConfigAuditUtil.destroy();
+    }
   }
 
+  @Test
+  public void testDoAudit() throws Exception {
+    long someInstanceId = 1;
+    InstanceConfigAuditUtil.InstanceConfigAuditModel anotherAuditModel =
+        new InstanceConfigAuditUtil.InstanceConfigAuditModel(someAppId, someClusterName,
+            someDataCenter, someIp, someConfigAppId, someConfigClusterName, "anotherConfigNamespace",
+            someReleaseKey);
+
+    doAnswer(invocation -> {
+      Collection<Instance> instances = invocation.getArgument(0);
+      instances.forEach(instance -> instance.setId(someInstanceId));
+      return null;
+    }).when(instanceStore).findOrCreateInstances(anyCollection());
+
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel, anotherAuditModel));
+
+    ArgumentCaptor<Collection<Instance>> instances = ArgumentCaptor.forClass(Collection.class);
+    ArgumentCaptor<Collection<InstanceConfig>> instanceConfigs = ArgumentCaptor.forClass(Collection.class);
+    verify(instanceStore, times(1)).findOrCreateInstances(instances.capture());
+    verify(instanceStore, times(1)).upsertInstanceConfigs(instanceConfigs.capture(), anyLong());
+
+    Instance instance = Iterables.getOnlyElement(instances.getValue());
+    assertEquals(someIp, instance.getIp());
+    assertEquals(2, instanceConfigs.getValue().size());
+    for (InstanceConfig instanceConfig : instanceConfigs.getValue()) {
+      assertEquals(someInstanceId, instanceConfig.getInstanceId());
+      assertEquals(someReleaseKey, instanceConfig.getReleaseKey());
+    }
+
+    //release key cached, so no more writes
+    instanceConfigAuditUtil.doAudit(Lists.newArrayList(someAuditModel));
+
+    verify(instanceStore, times(1)).findOrCreateInstances(anyCollection());
+    verify(instanceStore, times(1)).upsertInstanceConfigs(anyCollection(), anyLong());
+  }
 
+  private void waitUntil(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 1000;
+    while (!condition.getAsBoolean()) {
+      assertTrue(System.currentTimeMillis() < deadline);
+      TimeUnit.MILLISECONDS.sleep(5);
+    }
+  }
 }
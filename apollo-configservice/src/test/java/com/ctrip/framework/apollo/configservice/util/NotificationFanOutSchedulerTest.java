@@ -0,0 +1,134 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class NotificationFanOutSchedulerTest {
+  private NotificationFanOutScheduler notificationFanOutScheduler;
+  @Mock
+  private BizConfig bizConfig;
+  private SimpleMeterRegistry meterRegistry;
+
+  @Before
+  public void setUp() throws Exception {
+    meterRegistry = new SimpleMeterRegistry();
+    when(bizConfig.releaseMessageNotificationThreads()).thenReturn(1);
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(2);
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(1000);
+    notificationFanOutScheduler = new NotificationFanOutScheduler(bizConfig, meterRegistry);
+    notificationFanOutScheduler.afterPropertiesSet();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    notificationFanOutScheduler.destroy();
+  }
+
+  @Test
+  public void testConcurrentFanOutsAreInterleaved() throws Exception {
+    List<String> notified = Collections.synchronizedList(Lists.newArrayList());
+    CountDownLatch latch = new CountDownLatch(2);
+
+    notificationFanOutScheduler.submit(1, "someWatchKey", 100, range("some", 100), subscriber -> {
+      notified.add(subscriber);
+      if (subscriber.equals("some99")) {
+        latch.countDown();
+      }
+    });
+    notificationFanOutScheduler.submit(2, "anotherWatchKey", 4, range("another", 4), subscriber -> {
+      notified.add(subscriber);
+      if (subscriber.equals("another3")) {
+        latch.countDown();
+      }
+    });
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+    //the small fan out should not wait for the large one
+    assertTrue(notified.indexOf("another3") < notified.indexOf("some99"));
+    assertTrue(notified.indexOf("another3") < 20);
+    assertEquals(104, notified.size());
+  }
+
+  @Test
+  public void testFanOutIsRateLimited() throws Exception {
+    when(bizConfig.releaseMessageNotificationRate()).thenReturn(100);
+    int count = 30;
+    CountDownLatch latch = new CountDownLatch(count);
+
+    long start = System.nanoTime();
+    notificationFanOutScheduler.submit(1, "someWatchKey", count, range("some", count), subscriber -> latch.countDown());
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    //30 notifications with 100 permits per second
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 250);
+  }
+
+  @Test
+  public void testMetrics() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    int someWatchKeyId = 1;
+    String someWatchKey = "someAppId+default+application";
+
+    notificationFanOutScheduler.submit(someWatchKeyId, someWatchKey, 3, range("some", 3), subscriber -> {
+      started.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        // ignore
+      }
+    });
+
+    assertTrue(started.await(5, TimeUnit.SECONDS));
+    TimeUnit.MILLISECONDS.sleep(50);
+
+    assertEquals(1, notificationFanOutScheduler.queueDepth());
+    assertEquals(3, notificationFanOutScheduler.pendingNotifications());
+    assertTrue(notificationFanOutScheduler.lagInMillis(someWatchKeyId) >= 50);
+    assertEquals(0, notificationFanOutScheduler.lagInMillis(2));
+    assertEquals(1, meterRegistry.get("apollo.notification.fanout.queue.depth").gauge().value(), 0);
+
+    release.countDown();
+
+    long deadline = System.currentTimeMillis() + 5000;
+    while (notificationFanOutScheduler.queueDepth() > 0 && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+
+    assertEquals(0, notificationFanOutScheduler.queueDepth());
+    assertEquals(0, notificationFanOutScheduler.pendingNotifications());
+    assertEquals(0, notificationFanOutScheduler.lagInMillis(someWatchKeyId));
+    Timer lagTimer = meterRegistry.get("apollo.notification.fanout.lag").timer();
+    while (lagTimer.count() == 0 && System.currentTimeMillis() < deadline) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+    assertEquals(1, lagTimer.count());
+    assertTrue(lagTimer.getId().getTags().isEmpty());
+  }
+
+  private List<String> range(String prefix, int count) {
+    List<String> subscribers = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      subscribers.add(prefix + i);
+    }
+    return subscribers;
+  }
+}
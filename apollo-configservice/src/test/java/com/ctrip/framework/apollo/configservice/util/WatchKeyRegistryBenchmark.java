@@ -0,0 +1,122 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.TreeMultimap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention benchmark of the long polling watch key registry: 100k pollers, each watching 3 keys, are registered
+ * up front and then re-registered/unregistered from 16 threads, which is what a config service node sees when every
+ * long poll times out and reconnects.
+ * <p>
+ * Run with {@code mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=com.ctrip.framework.apollo.configservice.util.WatchKeyRegistryBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+public class WatchKeyRegistryBenchmark {
+  private static final int POLLERS = 100000;
+  private static final int APPS = 2000;
+  private static final String HOT_KEY = "somePublicAppId+default+somePublicNamespace";
+
+  private String[][] pollerKeys;
+  private int[][] pollerKeyIds;
+  private int hotKeyId;
+  private Object[] pollers;
+
+  private WatchKeyRegistry<Object> registry;
+  private Multimap<String, Object> legacy;
+
+  @Setup
+  public void setUp() {
+    WatchKeyDictionary watchKeyDictionary = new WatchKeyDictionary();
+    hotKeyId = watchKeyDictionary.intern(HOT_KEY);
+    pollerKeys = new String[POLLERS][];
+    pollerKeyIds = new int[POLLERS][];
+    pollers = new Object[POLLERS];
+    registry = new WatchKeyRegistry<>();
+    legacy = Multimaps.synchronizedSetMultimap(TreeMultimap.create(String.CASE_INSENSITIVE_ORDER,
+        Ordering.arbitrary()));
+
+    for (int i = 0; i < POLLERS; i++) {
+      String appId = "app" + (i % APPS);
+      pollerKeys[i] = new String[]{appId + "+default+application", appId + "+someCluster+application", HOT_KEY};
+      pollerKeyIds[i] = new int[pollerKeys[i].length];
+      pollers[i] = new Object();
+      for (int j = 0; j < pollerKeys[i].length; j++) {
+        pollerKeyIds[i][j] = watchKeyDictionary.intern(pollerKeys[i][j]);
+        registry.register(pollerKeyIds[i][j], pollers[i]);
+        legacy.put(pollerKeys[i][j], pollers[i]);
+      }
+    }
+  }
+
+  @Benchmark
+  public void registryRegisterAndUnregister() {
+    int poller = ThreadLocalRandom.current().nextInt(POLLERS);
+    for (int keyId : pollerKeyIds[poller]) {
+      registry.unregister(keyId, pollers[poller]);
+    }
+    for (int keyId : pollerKeyIds[poller]) {
+      registry.register(keyId, pollers[poller]);
+    }
+  }
+
+  @Benchmark
+  public void legacyRegisterAndUnregister() {
+    int poller = ThreadLocalRandom.current().nextInt(POLLERS);
+    for (String key : pollerKeys[poller]) {
+      legacy.remove(key, pollers[poller]);
+    }
+    for (String key : pollerKeys[poller]) {
+      legacy.put(key, pollers[poller]);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void registryNotifyHotKey(Blackhole blackhole) {
+    registry.forEach(hotKeyId, blackhole::consume);
+  }
+
+  @Benchmark
+  @Threads(1)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public void legacyNotifyHotKey(Blackhole blackhole) {
+    List<Object> results = Lists.newArrayList(legacy.get(HOT_KEY));
+    for (Object result : results) {
+      blackhole.consume(result);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    new Runner(new OptionsBuilder().include(WatchKeyRegistryBenchmark.class.getSimpleName()).build()).run();
+  }
+}
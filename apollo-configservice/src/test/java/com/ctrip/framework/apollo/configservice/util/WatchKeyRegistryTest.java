@@ -0,0 +1,155 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WatchKeyRegistryTest {
+  private WatchKeyRegistry<Object> registry;
+  private int someKey;
+  private int anotherKey;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new WatchKeyRegistry<>();
+    someKey = 1;
+    anotherKey = 5000;
+  }
+
+  @Test
+  public void testRegisterAndUnregister() throws Exception {
+    Object someSubscriber = new Object();
+    Object anotherSubscriber = new Object();
+
+    assertTrue(registry.register(someKey, someSubscriber));
+    assertFalse(registry.register(someKey, someSubscriber));
+    assertTrue(registry.register(someKey, anotherSubscriber));
+    assertTrue(registry.register(anotherKey, someSubscriber));
+
+    assertEquals(3, registry.size());
+    assertEquals(2, registry.subscriberCount(someKey));
+    assertTrue(registry.get(anotherKey).contains(someSubscriber));
+
+    assertTrue(registry.unregister(someKey, someSubscriber));
+    assertFalse(registry.unregister(someKey, someSubscriber));
+    assertTrue(registry.unregister(someKey, anotherSubscriber));
+
+    assertFalse(registry.contains(someKey));
+    assertEquals(1, registry.size());
+    assertFalse(registry.unregister(12345, someSubscriber));
+  }
+
+  @Test
+  public void testRegisterAndUnregisterUnknownWatchKey() throws Exception {
+    String someWatchKey = "someAppId+someCluster+someNamespace";
+    Object someSubscriber = new Object();
+    Object anotherSubscriber = new Object();
+    WatchKeyIds someWatchKeyIds = new WatchKeyIds(new int[]{someKey}, new String[]{someWatchKey});
+
+    registry.register(someWatchKeyIds, someSubscriber);
+    assertTrue(registry.register(someWatchKey.toUpperCase(), anotherSubscriber));
+
+    assertEquals(3, registry.size());
+    assertEquals(1, registry.subscriberCount(someKey));
+    assertEquals(2, registry.subscriberCount(someWatchKey));
+    long sequence = registry.sequence();
+    assertEquals(2, registry.forEach(someWatchKey.toLowerCase(), sequence, subscriber -> {
+    }));
+
+    registry.unregister(someWatchKeyIds, someSubscriber);
+    assertTrue(registry.unregister(someWatchKey, anotherSubscriber));
+    assertFalse(registry.unregister(someWatchKey, anotherSubscriber));
+
+    assertEquals(0, registry.size());
+    assertEquals(0, registry.subscriberCount(someWatchKey));
+    assertFalse(registry.registeredBefore(someWatchKey, sequence).iterator().hasNext());
+  }
+
+  @Test
+  public void testForEachWithConcurrentUnregister() throws Exception {
+    List<Object> subscribers = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      Object subscriber = new Object();
+      subscribers.add(subscriber);
+      registry.register(someKey, subscriber);
+    }
+
+    int notified = registry.forEach(someKey, subscriber -> registry.unregister(someKey, subscriber));
+
+    assertEquals(subscribers.size(), notified);
+    assertFalse(registry.contains(someKey));
+    assertEquals(0, registry.size());
+    assertEquals(0, registry.forEach(someKey, subscriber -> {
+    }));
+  }
+
+  @Test
+  public void testRegisteredBeforeWithReRegisterDuringIteration() throws Exception {
+    List<Object> subscribers = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      Object subscriber = new Object();
+      subscribers.add(subscriber);
+      registry.register(someKey, subscriber);
+    }
+    long sequence = registry.sequence();
+
+    List<Object> reRegistered = Lists.newArrayList();
+    List<Object> notified = Lists.newArrayList();
+    for (Object subscriber : registry.registeredBefore(someKey, sequence)) {
+      notified.add(subscriber);
+      //the notified subscriber completes and polls again
+      registry.unregister(someKey, subscriber);
+      Object newSubscriber = new Object();
+      reRegistered.add(newSubscriber);
+      registry.register(someKey, newSubscriber);
+    }
+
+    assertEquals(subscribers.size(), notified.size());
+    assertTrue(notified.containsAll(subscribers));
+    assertEquals(reRegistered.size(), registry.subscriberCount(someKey));
+    assertEquals(0, registry.forEach(someKey, sequence, subscriber -> {
+    }));
+    assertEquals(reRegistered.size(), registry.forEach(someKey, registry.sequence(), subscriber -> {
+    }));
+  }
+
+  @Test
+  public void testConcurrentRegisterAndUnregister() throws Exception {
+    int threads = 8;
+    int subscribersPerThread = 1000;
+    ExecutorService executorService = Executors.newFixedThreadPool(threads);
+    CountDownLatch latch = new CountDownLatch(threads);
+
+    for (int i = 0; i < threads; i++) {
+      executorService.submit(() -> {
+        try {
+          for (int j = 0; j < subscribersPerThread; j++) {
+            Object subscriber = new Object();
+            int growingKey = anotherKey + j;
+            registry.register(someKey, subscriber);
+            registry.register(growingKey, subscriber);
+            registry.unregister(someKey, subscriber);
+            registry.unregister(growingKey, subscriber);
+          }
+        } finally {
+          latch.countDown();
+        }
+      });
+    }
+
+    assertTrue(latch.await(10, TimeUnit.SECONDS));
+    executorService.shutdown();
+
+    assertEquals(0, registry.size());
+  }
+}
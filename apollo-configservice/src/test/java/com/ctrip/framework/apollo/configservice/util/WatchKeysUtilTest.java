@@ -1,5 +1,6 @@
 package com.ctrip.framework.apollo.configservice.util;
 
+import com.ctrip.framework.apollo.biz.message.WatchKeyDictionary;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -14,8 +15,10 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
@@ -34,6 +37,7 @@ public class WatchKeysUtilTest {
   @Mock
   private AppNamespace somePublicAppNamespace;
   private WatchKeysUtil watchKeysUtil;
+  private WatchKeyDictionary watchKeyDictionary;
   private String someAppId;
   private String someCluster;
   private String someNamespace;
@@ -45,7 +49,8 @@ public class WatchKeysUtilTest {
 
   @Before
   public void setUp() throws Exception {
-    watchKeysUtil = new WatchKeysUtil(appNamespaceService);
+    watchKeyDictionary = new WatchKeyDictionary();
+    watchKeysUtil = new WatchKeysUtil(appNamespaceService, watchKeyDictionary);
 
     someAppId = "someId";
     someCluster = "someCluster";
@@ -160,6 +165,73 @@ public class WatchKeysUtilTest {
     assertWatchKeys(somePublicAppId, clusters, somePublicNamespace, watchKeysMap.get(somePublicNamespace));
   }
 
+  @Test
+  public void testAssembleAllWatchKeyIdsWithPrivateAndPublicNamespaces() throws Exception {
+    Map<String, WatchKeyIds> watchKeyIdsMap =
+        watchKeysUtil.assembleAllWatchKeyIds(someAppId, someCluster,
+            Sets.newHashSet(someNamespace, anotherNamespace, somePublicNamespace), someDC);
+
+    Set<String> clusters = Sets.newHashSet(defaultCluster, someCluster, someDC);
+
+    assertEquals(3, watchKeyIdsMap.size());
+    assertEquals(clusters.size() * 2, watchKeyIdsMap.get(somePublicNamespace).size());
+
+    assertWatchKeys(someAppId, clusters, someNamespace, toWatchKeys(watchKeyIdsMap.get(someNamespace)));
+    assertWatchKeys(someAppId, clusters, anotherNamespace, toWatchKeys(watchKeyIdsMap.get(anotherNamespace)));
+    assertWatchKeys(someAppId, clusters, somePublicNamespace,
+        toWatchKeys(watchKeyIdsMap.get(somePublicNamespace)));
+    assertWatchKeys(somePublicAppId, clusters, somePublicNamespace,
+        toWatchKeys(watchKeyIdsMap.get(somePublicNamespace)));
+  }
+
+  @Test
+  public void testAssembleAllWatchKeyIdsWithDefaultClusterAsDC() throws Exception {
+    Map<String, WatchKeyIds> watchKeyIdsMap =
+        watchKeysUtil.assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(someNamespace),
+            defaultCluster);
+
+    Set<String> clusters = Sets.newHashSet(defaultCluster, someCluster);
+
+    assertEquals(clusters.size(), watchKeyIdsMap.get(someNamespace).size());
+    assertWatchKeys(someAppId, clusters, someNamespace, toWatchKeys(watchKeyIdsMap.get(someNamespace)));
+  }
+
+  @Test
+  public void testAssembleAllWatchKeyIdsWithoutInterningUnknownKeys() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, defaultCluster, someNamespace);
+    int someWatchKeyId = watchKeyDictionary.intern(someWatchKey.toUpperCase());
+
+    Map<String, WatchKeyIds> watchKeyIdsMap =
+        watchKeysUtil.assembleAllWatchKeyIds(someAppId, someCluster, Sets.newHashSet(someNamespace), someDC);
+
+    WatchKeyIds watchKeyIds = watchKeyIdsMap.get(someNamespace);
+    assertArrayEquals(new int[]{someWatchKeyId}, watchKeyIds.getIds());
+    assertEquals(2, watchKeyIds.getUnknownWatchKeys().length);
+    assertWatchKeys(someAppId, Sets.newHashSet(someCluster, someDC), someNamespace,
+        Sets.newHashSet(watchKeyIds.getUnknownWatchKeys()));
+    //keys without release message are not allocated
+    assertEquals(1, watchKeyDictionary.size());
+  }
+
+  @Test
+  public void testAssembleWatchKeyIdsForNoAppIdPlaceHolder() throws Exception {
+    Map<String, WatchKeyIds> watchKeyIdsMap =
+        watchKeysUtil.assembleAllWatchKeyIds(ConfigConsts.NO_APPID_PLACEHOLDER, someCluster,
+            Sets.newHashSet(someNamespace, anotherNamespace), someDC);
+
+    assertTrue(watchKeyIdsMap.get(someNamespace).isEmpty());
+    assertTrue(watchKeyIdsMap.get(anotherNamespace).isEmpty());
+  }
+
+  private Set<String> toWatchKeys(WatchKeyIds watchKeyIds) {
+    Set<String> watchKeys = Sets.newHashSet(watchKeyIds.getUnknownWatchKeys());
+    for (int watchKeyId : watchKeyIds.getIds()) {
+      watchKeys.add(watchKeyDictionary.watchKey(watchKeyId));
+    }
+    return watchKeys;
+  }
+
   private void assertWatchKeys(String appId, Set<String> clusters, String namespaceName,
                                Collection<String> watchedKeys) {
     for (String cluster : clusters) {
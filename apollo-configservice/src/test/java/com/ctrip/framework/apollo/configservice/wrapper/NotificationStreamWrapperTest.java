@@ -0,0 +1,122 @@
+package com.ctrip.framework.apollo.configservice.wrapper;
+
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.google.common.collect.Lists;
+import com.google.gson.Gson;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationStreamWrapperTest {
+  private List<Runnable> sendTasks;
+  private Gson gson;
+  private ApolloConfigNotification someNotification;
+
+  @Before
+  public void setUp() throws Exception {
+    sendTasks = Lists.newArrayList();
+    gson = new Gson();
+    someNotification = new ApolloConfigNotification("someNamespace", 1);
+  }
+
+  @Test
+  public void testSendInSendExecutor() throws Exception {
+    NotificationStreamWrapper stream = new NotificationStreamWrapper(TimeUnit.MINUTES.toMillis(1), gson,
+        sendTasks::add);
+
+    stream.send(someNotification);
+    stream.heartbeat();
+
+    assertEquals(1, sendTasks.size());
+    assertEquals("", sentEvents(stream));
+
+    runSendTasks();
+
+    String events = sentEvents(stream);
+    assertTrue(events.contains("event:" + NotificationStreamWrapper.NOTIFICATIONS_EVENT));
+    assertTrue(events.contains("heartbeat"));
+    assertFalse(stream.isClosed());
+  }
+
+  @Test
+  public void testCloseAfterPendingEventsSent() throws Exception {
+    NotificationStreamWrapper stream = new NotificationStreamWrapper(TimeUnit.MINUTES.toMillis(1), gson,
+        sendTasks::add);
+
+    stream.close(1000);
+    stream.send(someNotification);
+
+    assertTrue(stream.isClosed());
+    assertFalse(isCompleted(stream));
+
+    runSendTasks();
+
+    String events = sentEvents(stream);
+    assertTrue(events.contains("retry:1000"));
+    assertFalse(events.contains(NotificationStreamWrapper.NOTIFICATIONS_EVENT));
+    assertTrue(isCompleted(stream));
+  }
+
+  @Test
+  public void testCloseSlowStream() throws Exception {
+    NotificationStreamWrapper stream = new NotificationStreamWrapper(TimeUnit.MINUTES.toMillis(1), gson,
+        sendTasks::add);
+
+    for (int i = 0; i <= NotificationStreamWrapper.MAX_PENDING_EVENTS; i++) {
+      stream.send(someNotification);
+    }
+
+    assertTrue(stream.isClosed());
+
+    runSendTasks();
+
+    assertEquals("", sentEvents(stream));
+    assertTrue(isCompleted(stream));
+  }
+
+  @Test
+  public void testCloseWhenSendExecutorRejected() throws Exception {
+    Executor rejectingExecutor = command -> {
+      throw new RejectedExecutionException();
+    };
+    NotificationStreamWrapper stream = new NotificationStreamWrapper(TimeUnit.MINUTES.toMillis(1), gson,
+        rejectingExecutor);
+
+    stream.send(someNotification);
+
+    assertTrue(stream.isClosed());
+    assertTrue(isCompleted(stream));
+  }
+
+  private void runSendTasks() {
+    while (!sendTasks.isEmpty()) {
+      sendTasks.remove(0).run();
+    }
+  }
+
+  private boolean isCompleted(NotificationStreamWrapper stream) {
+    return (Boolean) ReflectionTestUtils.getField(stream.getEmitter(), "complete");
+  }
+
+  /**
+   * emitter is not initialized by spring mvc in unit test, so the events are kept in the early send attempts
+   */
+  private String sentEvents(NotificationStreamWrapper stream) {
+    StringBuilder events = new StringBuilder();
+    for (Object data : (Collection<?>) ReflectionTestUtils.getField(stream.getEmitter(), "earlySendAttempts")) {
+      events.append((Object) ReflectionTestUtils.invokeMethod(data, "getData"));
+    }
+    return events.toString();
+  }
+}
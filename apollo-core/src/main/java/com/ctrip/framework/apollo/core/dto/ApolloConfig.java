@@ -1,5 +1,6 @@
 package com.ctrip.framework.apollo.core.dto;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -31,6 +32,16 @@ public class ApolloConfig {
 	 * `Release.releaseKey` 拼接，使用 '+' 拼接。
 	 */
 	private String releaseKey;
+	/**
+	 * 增量配置的基准 Release Key<br>
+	 * 不为空时，{@link #configurations} 只包含相对基准新增和修改的配置，删除的配置项在 {@link #deletedKeys} 中；
+	 * 为空时 {@link #configurations} 为全量配置。
+	 */
+	private String baseReleaseKey;
+	/**
+	 * 增量配置中删除的配置项
+	 */
+	private List<String> deletedKeys;
 
 	public ApolloConfig() {
 	}
@@ -82,6 +93,29 @@ public class ApolloConfig {
 		this.configurations = configurations;
 	}
 
+	public String getBaseReleaseKey() {
+		return baseReleaseKey;
+	}
+
+	public void setBaseReleaseKey(String baseReleaseKey) {
+		this.baseReleaseKey = baseReleaseKey;
+	}
+
+	public List<String> getDeletedKeys() {
+		return deletedKeys;
+	}
+
+	public void setDeletedKeys(List<String> deletedKeys) {
+		this.deletedKeys = deletedKeys;
+	}
+
+	/**
+	 * 是否为增量配置
+	 */
+	public boolean isDelta() {
+		return baseReleaseKey != null;
+	}
+
 	@Override
 	public String toString() {
 		final StringBuilder sb = new StringBuilder("ApolloConfig{");
@@ -90,6 +124,10 @@ public class ApolloConfig {
 		sb.append(", namespaceName='").append(namespaceName).append('\'');
 		sb.append(", configurations=").append(configurations);
 		sb.append(", releaseKey='").append(releaseKey).append('\'');
+		if (baseReleaseKey != null) {
+			sb.append(", baseReleaseKey='").append(baseReleaseKey).append('\'');
+			sb.append(", deletedKeys=").append(deletedKeys);
+		}
 		sb.append('}');
 		return sb.toString();
 	}
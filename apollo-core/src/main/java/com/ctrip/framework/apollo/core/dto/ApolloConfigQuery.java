@@ -0,0 +1,59 @@
+package com.ctrip.framework.apollo.core.dto;
+
+/**
+ * 批量查询配置时，一个 Namespace 的查询条件
+ */
+public class ApolloConfigQuery {
+	/**
+	 * Namespace 名字
+	 */
+	private String namespaceName;
+	/**
+	 * 客户端当前的 Release Key ，和服务端一致时不返回配置
+	 */
+	private String releaseKey;
+	/**
+	 * 客户端当前的 Namespace 的通知消息明细
+	 */
+	private ApolloNotificationMessages messages;
+
+	// for json converter
+	public ApolloConfigQuery() {
+	}
+
+	public ApolloConfigQuery(String namespaceName, String releaseKey, ApolloNotificationMessages messages) {
+		this.namespaceName = namespaceName;
+		this.releaseKey = releaseKey;
+		this.messages = messages;
+	}
+
+	public String getNamespaceName() {
+		return namespaceName;
+	}
+
+	public void setNamespaceName(String namespaceName) {
+		this.namespaceName = namespaceName;
+	}
+
+	public String getReleaseKey() {
+		return releaseKey;
+	}
+
+	public void setReleaseKey(String releaseKey) {
+		this.releaseKey = releaseKey;
+	}
+
+	public ApolloNotificationMessages getMessages() {
+		return messages;
+	}
+
+	public void setMessages(ApolloNotificationMessages messages) {
+		this.messages = messages;
+	}
+
+	@Override
+	public String toString() {
+		return "ApolloConfigQuery{" + "namespaceName='" + namespaceName + '\'' + ", releaseKey='" + releaseKey
+				+ '\'' + ", messages=" + messages + '}';
+	}
+}
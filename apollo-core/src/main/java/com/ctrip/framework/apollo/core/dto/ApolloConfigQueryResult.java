@@ -0,0 +1,60 @@
+package com.ctrip.framework.apollo.core.dto;
+
+/**
+ * 批量查询配置时，一个 Namespace 的结果<br>
+ * 状态码和单个查询的响应一致：200 时 config 为新的配置，304 表示配置没有变化，404 表示找不到配置
+ */
+public class ApolloConfigQueryResult {
+	/**
+	 * Namespace 名字，和查询条件中的一致
+	 */
+	private String namespaceName;
+	/**
+	 * 状态码
+	 */
+	private int statusCode;
+	/**
+	 * 配置，仅状态码为 200 时有值
+	 */
+	private ApolloConfig config;
+
+	// for json converter
+	public ApolloConfigQueryResult() {
+	}
+
+	public ApolloConfigQueryResult(String namespaceName, int statusCode, ApolloConfig config) {
+		this.namespaceName = namespaceName;
+		this.statusCode = statusCode;
+		this.config = config;
+	}
+
+	public String getNamespaceName() {
+		return namespaceName;
+	}
+
+	public void setNamespaceName(String namespaceName) {
+		this.namespaceName = namespaceName;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public void setStatusCode(int statusCode) {
+		this.statusCode = statusCode;
+	}
+
+	public ApolloConfig getConfig() {
+		return config;
+	}
+
+	public void setConfig(ApolloConfig config) {
+		this.config = config;
+	}
+
+	@Override
+	public String toString() {
+		return "ApolloConfigQueryResult{" + "namespaceName='" + namespaceName + '\'' + ", statusCode=" + statusCode
+				+ ", config=" + config + '}';
+	}
+}